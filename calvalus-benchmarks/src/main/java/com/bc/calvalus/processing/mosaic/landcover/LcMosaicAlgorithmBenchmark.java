@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.mosaic.landcover;
+
+import com.bc.calvalus.processing.mosaic.TileIndexWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.esa.snap.binning.support.VariableContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the temporal aggregation of the land cover mosaic algorithms on synthetic MERIS FR tiles:
+ * one tile aggregated over a number of weekly samples, including the final division by the weights.
+ * <p/>
+ * Run with
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar calvalus-benchmarks/target/benchmarks.jar LcMosaicAlgorithmBenchmark
+ * </pre>
+ * Add {@code -jvmArgsAppend -XX:-UseSuperWord} to compare against the kernels without auto-vectorisation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class LcMosaicAlgorithmBenchmark {
+
+    private static final int NUM_SDR_BANDS = 15;
+    private static final int[] LC_STATUS = {
+            AbstractLcMosaicAlgorithm.STATUS_LAND, AbstractLcMosaicAlgorithm.STATUS_LAND, AbstractLcMosaicAlgorithm.STATUS_LAND,
+            AbstractLcMosaicAlgorithm.STATUS_LAND, AbstractLcMosaicAlgorithm.STATUS_LAND, AbstractLcMosaicAlgorithm.STATUS_LAND,
+            AbstractLcMosaicAlgorithm.STATUS_WATER, AbstractLcMosaicAlgorithm.STATUS_SNOW,
+            AbstractLcMosaicAlgorithm.STATUS_CLOUD, AbstractLcMosaicAlgorithm.STATUS_CLOUD,
+            AbstractLcMosaicAlgorithm.STATUS_CLOUD_SHADOW, AbstractLcMosaicAlgorithm.STATUS_HAZE,
+            AbstractLcMosaicAlgorithm.STATUS_BRIGHT, AbstractLcMosaicAlgorithm.STATUS_DARK
+    };
+
+    @Param({"360"})
+    private int tileSize;
+
+    @Param({"7"})
+    private int numWeeks;
+
+    @Param({"false", "true"})
+    private boolean temporalCloudFilter;
+
+    private LCMosaicAlgorithm lcAlgorithm;
+    private LcSDR8MosaicAlgorithm sdr8Algorithm;
+    private LCSeasonMosaicAlgorithm seasonAlgorithm;
+    private float[][][] weeklySamples;
+    private float[][][] weeklySeasonSamples;
+    private float[][] sdrCloudDataSamples;
+    private TileIndexWritable tileIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Configuration conf = new Configuration(false);
+        conf.set("calvalus.lc.sensor", "MERIS");
+        conf.set("spatialResolution", "300m");
+        conf.setInt("calvalus.mosaic.tileSize", tileSize);
+        conf.set("calvalus.lc.temporalCloudBandName", "sdr_8");
+        conf.set("calvalus.lc.temporalCloudFilterThreshold", "0.075");
+
+        VariableContextImpl variableContext = new VariableContextImpl();
+        variableContext.defineVariable("status");
+        for (int i = 1; i <= NUM_SDR_BANDS; i++) {
+            variableContext.defineVariable("sdr_" + i);
+        }
+        variableContext.defineVariable("ndvi");
+        for (int i = 1; i <= NUM_SDR_BANDS; i++) {
+            variableContext.defineVariable("sdr_error_" + i);
+        }
+        variableContext.defineVariable("mjd");
+
+        lcAlgorithm = new LCMosaicAlgorithm();
+        lcAlgorithm.setConf(conf);
+        lcAlgorithm.setVariableContext(variableContext);
+        sdr8Algorithm = new LcSDR8MosaicAlgorithm();
+        sdr8Algorithm.setConf(conf);
+        sdr8Algorithm.setVariableContext(variableContext);
+        seasonAlgorithm = new LCSeasonMosaicAlgorithm();
+        seasonAlgorithm.setConf(conf);
+        seasonAlgorithm.setVariableContext(variableContext);
+
+        Random random = new Random(4711);
+        int numElems = tileSize * tileSize;
+        int numVariables = variableContext.getVariableCount();
+        weeklySamples = new float[numWeeks][numVariables][numElems];
+        // status, 5 counts, 15 sdr, ndvi, 15 sdr_error
+        weeklySeasonSamples = new float[numWeeks][1 + 5 + NUM_SDR_BANDS + 1 + NUM_SDR_BANDS][numElems];
+        for (int week = 0; week < numWeeks; week++) {
+            float[][] samples = weeklySamples[week];
+            float[][] seasonSamples = weeklySeasonSamples[week];
+            for (int i = 0; i < numElems; i++) {
+                int status = LC_STATUS[random.nextInt(LC_STATUS.length)];
+                samples[0][i] = status;
+                boolean deepWater = status == AbstractLcMosaicAlgorithm.STATUS_WATER && random.nextBoolean();
+                for (int band = 1; band < numVariables - 1; band++) {
+                    samples[band][i] = deepWater ? Float.NaN : 0.5f * random.nextFloat();
+                }
+                samples[numVariables - 1][i] = 55000.0f + 7 * week + random.nextFloat();
+
+                int seasonStatus = Math.min(status, LCSeasonMosaicAlgorithm.STATUS_CLOUD_SHADOW);
+                seasonSamples[0][i] = seasonStatus;
+                if (seasonStatus != LCSeasonMosaicAlgorithm.STATUS_INVALID) {
+                    seasonSamples[seasonStatus][i] = 1 + random.nextInt(3);
+                }
+                for (int band = 6; band < seasonSamples.length; band++) {
+                    seasonSamples[band][i] = 0.5f * random.nextFloat();
+                }
+            }
+        }
+        sdrCloudDataSamples = new float[2][numElems];
+        for (int i = 0; i < numElems; i++) {
+            sdrCloudDataSamples[0][i] = 0.4f + 0.1f * random.nextFloat();
+            sdrCloudDataSamples[1][i] = 0.05f * random.nextFloat();
+        }
+        tileIndex = new TileIndexWritable(0, 0, 0, 0);
+    }
+
+    @Benchmark
+    public float[][] lcMosaic() throws IOException {
+        lcAlgorithm.initTemporal(tileIndex);
+        if (temporalCloudFilter) {
+            lcAlgorithm.sdrCloudDataSamples = sdrCloudDataSamples;
+        }
+        for (float[][] samples : weeklySamples) {
+            lcAlgorithm.processTemporal(samples);
+        }
+        return lcAlgorithm.getTemporalResult();
+    }
+
+    @Benchmark
+    public float[][] sdr8Mosaic() throws IOException {
+        sdr8Algorithm.initTemporal(tileIndex);
+        for (float[][] samples : weeklySamples) {
+            sdr8Algorithm.processTemporal(samples);
+        }
+        return sdr8Algorithm.getTemporalResult();
+    }
+
+    @Benchmark
+    public float[][] seasonMosaic() throws IOException {
+        seasonAlgorithm.initTemporal(tileIndex);
+        for (float[][] samples : weeklySeasonSamples) {
+            seasonAlgorithm.processTemporal(samples);
+        }
+        return seasonAlgorithm.getTemporalResult();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the histogram of the region analysis on a synthetic 512 x 512 float tile with 5 % NaN:
+ * {@link Histogram64} counting a raster and counting into its bins as the statistics did before,
+ * against {@link LongHistogram} counting the samples in bulk. The concurrent benchmarks update
+ * one histogram from 4 threads, a synchronized {@link Histogram64} against a striped {@link LongHistogram},
+ * hence the state is shared by the threads.
+ * <p/>
+ * Run with
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar calvalus-benchmarks/target/benchmarks.jar HistogramBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class HistogramBenchmark {
+
+    private static final int TILE_SIZE = 512;
+    private static final double LOW_VALUE = 0.0;
+    private static final double HIGH_VALUE = 1.0;
+
+    @Param({"10", "1000"})
+    private int numBins;
+
+    private float[] samples;
+    private Raster raster;
+    private Histogram64 histogram64;
+    private LongHistogram longHistogram;
+    private LongHistogram concurrentHistogram;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        samples = createSamples();
+        WritableRaster writableRaster = Raster.createWritableRaster(
+                new BandedSampleModel(DataBuffer.TYPE_FLOAT, TILE_SIZE, TILE_SIZE, 1), null);
+        writableRaster.setSamples(0, 0, TILE_SIZE, TILE_SIZE, 0, samples);
+        raster = writableRaster;
+        histogram64 = new Histogram64(numBins, LOW_VALUE, HIGH_VALUE, 1);
+        longHistogram = new LongHistogram(numBins, LOW_VALUE, HIGH_VALUE);
+        concurrentHistogram = new LongHistogram(new int[]{numBins}, new double[]{LOW_VALUE}, new double[]{HIGH_VALUE}, 8);
+    }
+
+    @Benchmark
+    public long[] histogram64Raster() {
+        histogram64.clearHistogram();
+        histogram64.countPixels(raster, null, 0, 0, 1, 1);
+        return histogram64.getBins(0);
+    }
+
+    @Benchmark
+    public long histogram64Bins() {
+        histogram64.clearHistogram();
+        return countIntoBins(histogram64, samples) + histogram64.getBins(0)[0];
+    }
+
+    @Benchmark
+    public long longHistogram() {
+        longHistogram.clear();
+        longHistogram.countSamples(0, samples, 0, samples.length);
+        return longHistogram.getTotal(0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long histogram64Synchronized() {
+        synchronized (histogram64) {
+            return countIntoBins(histogram64, samples);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public LongHistogram longHistogramConcurrent() {
+        concurrentHistogram.countSamples(0, samples, 0, samples.length);
+        return concurrentHistogram;
+    }
+
+    private static float[] createSamples() {
+        Random random = new Random(4711);
+        float[] samples = new float[TILE_SIZE * TILE_SIZE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(20) == 0 ? Float.NaN : 1.2f * random.nextFloat() - 0.1f;
+        }
+        return samples;
+    }
+
+    /**
+     * The counting of {@link Statistics} with {@link Histogram64}, before it used {@link LongHistogram}.
+     *
+     * @return the number of samples outside of the histogram
+     */
+    private static long countIntoBins(Histogram64 histogram, float[] samples) {
+        final long[] bins = histogram.getBins(0);
+        final double lowValue = histogram.getLowValue(0);
+        final double highValue = histogram.getHighValue(0);
+        final double binWidth = (highValue - lowValue) / bins.length;
+        long belowHistogram = 0;
+        long aboveHistogram = 0;
+        for (float value : samples) {
+            if (!Float.isNaN(value)) {
+                if (value < lowValue) {
+                    belowHistogram++;
+                } else if (value > highValue) {
+                    aboveHistogram++;
+                } else {
+                    int i = (int) ((value - lowValue) / binWidth);
+                    if (i == bins.length) {
+                        i--;
+                    }
+                    bins[i]++;
+                }
+            }
+        }
+        return belowHistogram + aboveHistogram;
+    }
+}
@@ -19,7 +19,11 @@ package com.bc.calvalus.commons;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A collection of one or more work items.
@@ -214,4 +218,134 @@ public abstract class Workflow extends AbstractWorkflowItem implements WorkflowS
             }
         }
     }
+
+    /**
+     * A workflow whose items depend on other items of the workflow (a directed acyclic graph).
+     * An item is submitted as soon as all items it depends on have successfully completed
+     * (or are done, if the workflow is not sustainable), so independent branches proceed
+     * without waiting for each other. Optionally, the number of submitted items that are not yet
+     * done is limited.
+     */
+    public static class Graph extends Workflow {
+
+        private final int maxRunning;
+        private final Map<WorkflowItem, List<WorkflowItem>> dependencies;
+        private final Set<WorkflowItem> submittedItems;
+        private boolean submitted;
+        private boolean killed;
+        private boolean submitting;
+        private boolean rescan;
+
+        public Graph() {
+            this(0);
+        }
+
+        /**
+         * @param maxRunning the maximum number of items running concurrently, 0 for no limit
+         */
+        public Graph(int maxRunning) {
+            super();
+            this.maxRunning = maxRunning;
+            this.dependencies = new HashMap<WorkflowItem, List<WorkflowItem>>();
+            this.submittedItems = new HashSet<WorkflowItem>();
+        }
+
+        /**
+         * Adds an item that is submitted after the given items, which must have been added before.
+         * Items added by {@link #add(WorkflowItem...)} have no dependencies.
+         */
+        public void addAfter(WorkflowItem item, WorkflowItem... predecessors) {
+            for (WorkflowItem predecessor : predecessors) {
+                if (!itemList.contains(predecessor)) {
+                    throw new IllegalArgumentException("predecessor not part of the workflow: " + predecessor);
+                }
+            }
+            dependencies.put(item, Arrays.asList(predecessors));
+            add(item);
+        }
+
+        /**
+         * Submits all items without dependencies, up to the limit of running items.
+         * Further items are submitted when their predecessors have completed.
+         */
+        @Override
+        public void submit() throws WorkflowException {
+            submitted = true;
+            if (itemList.size() == 0) {
+                setStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
+            } else {
+                submitReadyItems();
+            }
+        }
+
+        @Override
+        public void kill() throws WorkflowException {
+            killed = true;
+            super.kill();
+        }
+
+        @Override
+        public void handleStatusChanged(WorkflowStatusEvent event) {
+            super.handleStatusChanged(event);
+            if (submitted && !killed && event.getSource() != this && event.getNewStatus().isDone()) {
+                submitReadyItems();
+            }
+        }
+
+        private void submitReadyItems() {
+            // items may change their status already while being submitted, re-entering here
+            if (submitting) {
+                rescan = true;
+                return;
+            }
+            submitting = true;
+            try {
+                do {
+                    rescan = false;
+                    submitReadyItemsOnce();
+                } while (rescan);
+            } finally {
+                submitting = false;
+            }
+        }
+
+        private void submitReadyItemsOnce() {
+            int running = 0;
+            for (WorkflowItem item : submittedItems) {
+                if (!item.getStatus().isDone()) {
+                    running++;
+                }
+            }
+            for (WorkflowItem item : itemList) {
+                if (killed || maxRunning > 0 && running >= maxRunning) {
+                    return;
+                }
+                if (!submittedItems.contains(item) && isReady(item)) {
+                    submittedItems.add(item);
+                    try {
+                        item.submit();
+                    } catch (WorkflowException e) {
+                        item.setStatus(new ProcessStatus(ProcessState.ERROR, 0.0F, e.getMessage()));
+                    }
+                    if (!item.getStatus().isDone()) {
+                        running++;
+                    }
+                }
+            }
+        }
+
+        private boolean isReady(WorkflowItem item) {
+            List<WorkflowItem> predecessors = dependencies.get(item);
+            if (predecessors == null) {
+                return true;
+            }
+            for (WorkflowItem predecessor : predecessors) {
+                ProcessStatus status = predecessor.getStatus();
+                if (isSustainable() ? status.getState() != ProcessState.COMPLETED : !status.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -370,6 +370,94 @@ public class WorkflowTest {
         assertEquals("stopTime", stopTime, workflow.getStopTime());
     }
 
+    @Test
+    public void testGraph() throws Exception {
+
+        // job1 -> job3, job2 -> job3 and job4, job4 does not wait for job1
+        Workflow.Graph wf = new Workflow.Graph();
+        LifeStepWorkflowItem job1 = new LifeStepWorkflowItem(2);
+        LifeStepWorkflowItem job2 = new LifeStepWorkflowItem();
+        LifeStepWorkflowItem job3 = new LifeStepWorkflowItem();
+        LifeStepWorkflowItem job4 = new LifeStepWorkflowItem();
+        wf.add(job1, job2);
+        wf.addAfter(job3, job1, job2);
+        wf.addAfter(job4, job2);
+
+        wf.submit();
+        assertTrue(job1.isSubmitted());
+        assertTrue(job2.isSubmitted());
+        assertFalse(job3.isSubmitted());
+        assertFalse(job4.isSubmitted());
+
+        incLifeStep(job1, job2, job3, job4);
+        incLifeStep(job1, job2, job3, job4);
+        incLifeStep(job1, job2, job3, job4);
+        assertEquals(ProcessState.RUNNING, job1.getStatus().getState());
+        assertEquals(ProcessState.COMPLETED, job2.getStatus().getState());
+        assertFalse(job3.isSubmitted());
+        assertTrue(job4.isSubmitted());
+        assertEquals(ProcessState.RUNNING, wf.getStatus().getState());
+
+        incLifeStep(job1, job2, job3, job4);
+        assertEquals(ProcessState.COMPLETED, job1.getStatus().getState());
+        assertTrue(job3.isSubmitted());
+
+        incLifeStep(job1, job2, job3, job4);
+        incLifeStep(job1, job2, job3, job4);
+        incLifeStep(job1, job2, job3, job4);
+        assertEquals(ProcessState.COMPLETED, job3.getStatus().getState());
+        assertEquals(ProcessState.COMPLETED, job4.getStatus().getState());
+        assertEquals(ProcessState.COMPLETED, wf.getStatus().getState());
+
+        assertEquals(1, job1.getSubmitCount());
+        assertEquals(1, job2.getSubmitCount());
+        assertEquals(1, job3.getSubmitCount());
+        assertEquals(1, job4.getSubmitCount());
+    }
+
+    @Test
+    public void testGraph_maxRunning() throws Exception {
+
+        Workflow.Graph wf = new Workflow.Graph(2);
+        LifeStepWorkflowItem job1 = new LifeStepWorkflowItem();
+        LifeStepWorkflowItem job2 = new LifeStepWorkflowItem();
+        LifeStepWorkflowItem job3 = new LifeStepWorkflowItem();
+        wf.add(job1, job2, job3);
+
+        wf.submit();
+        assertTrue(job1.isSubmitted());
+        assertTrue(job2.isSubmitted());
+        assertFalse(job3.isSubmitted());
+
+        incLifeStep(job1, job2, job3);
+        incLifeStep(job1, job2, job3);
+        assertFalse(job3.isSubmitted());
+
+        incLifeStep(job1, job2, job3);
+        assertEquals(ProcessState.COMPLETED, job1.getStatus().getState());
+        assertTrue(job3.isSubmitted());
+
+        incLifeStep(job1, job2, job3);
+        incLifeStep(job1, job2, job3);
+        incLifeStep(job1, job2, job3);
+        assertEquals(ProcessState.COMPLETED, wf.getStatus().getState());
+    }
+
+    @Test
+    public void testGraph_failedPredecessor() throws Exception {
+
+        Workflow.Graph wf = new Workflow.Graph();
+        LifeStepWorkflowItem job1 = new LifeStepWorkflowItem();
+        LifeStepWorkflowItem job2 = new LifeStepWorkflowItem();
+        wf.add(job1);
+        wf.addAfter(job2, job1);
+
+        wf.submit();
+        job1.setStatus(new ProcessStatus(ProcessState.ERROR));
+        assertFalse(job2.isSubmitted());
+        assertEquals(ProcessState.ERROR, wf.getStatus().getState());
+    }
+
     static void incLifeStep(LifeStepWorkflowItem... jobs) {
         for (LifeStepWorkflowItem job : jobs) {
             job.incLifeStep();
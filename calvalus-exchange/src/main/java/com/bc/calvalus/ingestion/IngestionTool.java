@@ -2,21 +2,41 @@ package com.bc.calvalus.ingestion;
 
 import com.bc.calvalus.commons.DateUtils;
 import org.apache.commons.cli.CommandLine;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IOUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,8 +46,10 @@ import java.util.regex.Pattern;
  * into a computed directory in the HDFS archive.
  * <pre>
  * Usage:
- *    hadoop --config ${configDir} jar ${jobJar} com.bc.calvalus.ingestion.IngestionTool ( ${sourceDir} | ${sourceFiles} ) [-producttype=${productType}] [-revision=${revision}] [-replication=${replication}] [-blocksize=${blocksize}]
+ *    hadoop --config ${configDir} jar ${jobJar} com.bc.calvalus.ingestion.IngestionTool ( ${sourceDir} | ${sourceFiles} ) [-producttype=${productType}] [-revision=${revision}] [-replication=${replication}] [-blocksize=${blocksize}] [-streams=${streams}] [-journal=${journalFile}] [-checksum]
  * </pre>
+ * With -streams several files are copied in parallel. With -journal the copied files are recorded
+ * in a local file, and files recorded there are skipped when the ingestion is repeated after an interruption.
  */
 public class IngestionTool {
 
@@ -93,6 +115,15 @@ public class IngestionTool {
         }
 
         boolean verify = commandLine.hasOption("verify");
+        boolean checksum = commandLine.hasOption("checksum");
+        int streams = 1;
+        if (commandLine.hasOption("streams")) {
+            streams = Integer.parseInt(commandLine.getOptionValue("streams"));
+        }
+        File journalFile = null;
+        if (commandLine.hasOption("journal")) {
+            journalFile = new File(commandLine.getOptionValue("journal"));
+        }
 
         // determine input files
         List<IngestionFile> ingestionFiles = new ArrayList<IngestionFile>();
@@ -106,7 +137,7 @@ public class IngestionTool {
         System.out.format("%d files to be ingested\n", ingestionFiles.size());
 
 
-        return ingest(productType, revision, blockSizeParameter, pattern, hdfs, replication, verify, ingestionFiles);
+        return ingest(blockSizeParameter, hdfs, replication, verify, streams, journalFile, checksum, ingestionFiles);
     }
 
     static class IngestionFile {
@@ -121,68 +152,267 @@ public class IngestionTool {
         }
     }
 
-    private static int ingest(String productType, String revision, long blockSizeParameter, Pattern pattern, FileSystem hdfs, short replication, boolean verify, List<IngestionFile> sourceFiles) throws IOException {
+    /**
+     * Copies the source files with the given number of parallel streams.
+     * Files recorded in the journal as already copied are skipped without accessing HDFS.
+     * With verify, existence and size of the targets are checked with one listing per target directory.
+     */
+    static int ingest(long blockSizeParameter, FileSystem hdfs, short replication, boolean verify, int streams, File journalFile, boolean checksum, List<IngestionFile> sourceFiles) throws IOException {
+        final IngestionJournal journal = journalFile != null ? IngestionJournal.open(journalFile) : null;
+        try {
+            List<IngestionFile> pendingFiles = new ArrayList<IngestionFile>();
+            for (IngestionFile sourceFile : sourceFiles) {
+                if (journal != null && journal.contains(sourceFile)) {
+                    System.out.println(MessageFormat.format("skipping {0} recorded in journal", sourceFile));
+                } else {
+                    pendingFiles.add(sourceFile);
+                }
+            }
+            if (verify) {
+                pendingFiles = filterExisting(hdfs, pendingFiles);
+            }
+            System.out.format("%d files to be copied with %d streams\n", pendingFiles.size(), streams);
+
+            final IngestionProgress progress = new IngestionProgress(pendingFiles.size());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, streams));
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (final IngestionFile sourceFile : pendingFiles) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            String digest = copyFile(sourceFile, blockSizeParameter, hdfs, replication, checksum);
+                            if (journal != null) {
+                                journal.record(sourceFile, digest);
+                            }
+                            progress.completed(sourceFile, digest);
+                            return null;
+                        }
+                    }));
+                }
+                IOException exception = null;
+                int failures = 0;
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failures++;
+                        if (exception == null) {
+                            exception = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IOException("ingestion interrupted", e);
+                    }
+                }
+                progress.report();
+                if (exception != null) {
+                    throw new IOException(failures + " of " + pendingFiles.size() + " files failed to copy", exception);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Removes files that exist in the archive with at least the size of the source,
+     * listing each target directory once instead of querying each file.
+     */
+    private static List<IngestionFile> filterExisting(FileSystem hdfs, List<IngestionFile> sourceFiles) throws IOException {
+        Map<String, Map<String, Long>> dirListings = new HashMap<String, Map<String, Long>>();
+        List<IngestionFile> missingFiles = new ArrayList<IngestionFile>();
+        for (IngestionFile sourceFile : sourceFiles) {
+            Map<String, Long> dirListing = dirListings.get(sourceFile.output);
+            if (dirListing == null) {
+                dirListing = new HashMap<String, Long>();
+                try {
+                    for (FileStatus status : hdfs.listStatus(new Path(sourceFile.output))) {
+                        dirListing.put(status.getPath().getName(), status.getLen());
+                    }
+                } catch (FileNotFoundException e) {
+                    // target directory does not exist yet
+                }
+                dirListings.put(sourceFile.output, dirListing);
+            }
+            Long existingSize = dirListing.get(sourceFile.input.getName());
+            if (existingSize == null || existingSize < sourceFile.input.length()) {
+                missingFiles.add(sourceFile);
+            } else {
+                System.out.println(MessageFormat.format("skipping {0} existing in {1}", sourceFile, sourceFile.output));
+            }
+        }
+        return missingFiles;
+    }
+
+    /**
+     * Copies one file with up to three attempts.
+     *
+     * @return the hex MD5 digest of the file if requested, else null
+     */
+    private static String copyFile(IngestionFile sourceFile, long blockSizeParameter, FileSystem hdfs, short replication, boolean checksum) throws IOException {
         // cache HDFS parameters for block size
         final int bufferSize = hdfs.getConf().getInt("io.file.buffer.size", 4096);
         final int checksumSize = hdfs.getConf().getInt("io.bytes.per.checksum", 512);
+        final String archivePath = sourceFile.output;
 
-        // loop over input files
-        for (IngestionFile sourceFile : sourceFiles) {
-            //String archivePath = getArchivePath(sourceFile, productType, revision, pattern);
-            final String archivePath = sourceFile.output;
-
-            // calculate block size to cover complete N1
-            // blocksize must be a multiple of checksum size
-            long fileSize = sourceFile.input.length();
-            long blockSize;
-            if (blockSizeParameter == -1) {
-                blockSize = ((fileSize + checksumSize - 1) / checksumSize) * checksumSize;
-                if (blockSize < MINIMUM_BLOCK_SIZE) {
-                    blockSize = MINIMUM_BLOCK_SIZE;
-                } else if (blockSize > MAXIMUM_BLOCK_SIZE) {
-                    blockSize = MAXIMUM_BLOCK_SIZE;
+        // calculate block size to cover complete N1
+        // blocksize must be a multiple of checksum size
+        long fileSize = sourceFile.input.length();
+        long blockSize;
+        if (blockSizeParameter == -1) {
+            blockSize = ((fileSize + checksumSize - 1) / checksumSize) * checksumSize;
+            if (blockSize < MINIMUM_BLOCK_SIZE) {
+                blockSize = MINIMUM_BLOCK_SIZE;
+            } else if (blockSize > MAXIMUM_BLOCK_SIZE) {
+                blockSize = MAXIMUM_BLOCK_SIZE;
+            }
+        } else {
+            blockSize = ((blockSizeParameter + checksumSize - 1) / checksumSize) * checksumSize;
+        }
+
+        // construct HDFS output stream
+        Path destPath = new Path(archivePath, sourceFile.input.getName());
+        int attempt = 1;
+        IOException exception = null;
+        System.out.println(MessageFormat.format("archiving {0} in {1}", sourceFile, archivePath));
+        while (attempt <= 3) {
+            short actualReplication = attempt == 1 ? replication : 3;
+            MessageDigest digest = checksum ? createDigest() : null;
+            OutputStream out = hdfs.create(destPath, true, bufferSize, actualReplication, blockSize);
+            InputStream in = new FileInputStream(sourceFile.input);
+            if (digest != null) {
+                in = new DigestInputStream(in, digest);
+            }
+            try  {
+                IOUtils.copyBytes(in, out, hdfs.getConf(), true);
+                if (actualReplication != replication) {
+                    hdfs.setReplication(destPath, replication);
                 }
-            } else {
-                blockSize = ((blockSizeParameter + checksumSize - 1) / checksumSize) * checksumSize;
+                return digest != null ? toHex(digest.digest()) : null;
+            }catch (IOException ioe){
+                System.err.print("copying attempt " + attempt + " of " + sourceFile + " failed.");
+                ioe.printStackTrace();
+                exception = ioe;
+            } finally {
+                out.close();
+                in.close();
             }
+            attempt++;
+        }
+        throw new IOException("Failed to copy: " + sourceFile, exception);
+    }
 
-            // construct HDFS output stream
-            Path destPath = new Path(archivePath, sourceFile.input.getName());
-            // copy if either verification is off or target does not exist or target has different size
-            if (! verify || ! hdfs.exists(destPath) || hdfs.listStatus(destPath) == null || hdfs.listStatus(destPath)[0].getLen() < fileSize) {
-                int attempt = 1;
-                boolean finished = false;
-                IOException exception = null;
-                System.out.println(MessageFormat.format("archiving {0} in {1}", sourceFile, archivePath));
-                while (attempt <= 3 && !finished) {
-                    short actualReplication = attempt == 1 ? replication : 3;
-                    OutputStream out = hdfs.create(destPath, true, bufferSize, actualReplication, blockSize);
-                    FileInputStream in = new FileInputStream(sourceFile.input);
-                    try  {
-                        IOUtils.copyBytes(in, out, hdfs.getConf(), true);
-                        finished = true;
-                        if (actualReplication != replication) {
-                            hdfs.setReplication(destPath, replication);
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A journal of the copied files, one line per file with path, size and modification time of the source,
+     * target directory and MD5 digest (or "-"), separated by tabs. Lines are written and flushed when a copy
+     * is complete, so an interrupted ingestion can be resumed.
+     */
+    static class IngestionJournal {
+
+        private final Set<String> entries;
+        private final Writer writer;
+
+        private IngestionJournal(Set<String> entries, Writer writer) {
+            this.entries = entries;
+            this.writer = writer;
+        }
+
+        static IngestionJournal open(File journalFile) throws IOException {
+            Set<String> entries = new HashSet<String>();
+            if (journalFile.exists()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] columns = line.split("\t");
+                        if (columns.length >= 4) {
+                            entries.add(createKey(columns[0], columns[1], columns[2], columns[3]));
                         }
-                    }catch (IOException ioe){
-                        System.err.print("copying attempt " + attempt + " failed.");
-                        ioe.printStackTrace();
-                        exception = ioe;
-                    } finally {
-                        out.close();
-                        in.close();
                     }
-                    attempt++;
-                }
-                if (!finished) {
-                    throw new IOException("Failed to copy: " + sourceFile, exception);
+                } finally {
+                    reader.close();
                 }
-            } else {
-                System.out.println(MessageFormat.format("skipping {0} existing in {1}", sourceFile, archivePath));
             }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+            return new IngestionJournal(entries, writer);
         }
 
-        return 0;
+        boolean contains(IngestionFile file) {
+            return entries.contains(createKey(file));
+        }
+
+        synchronized void record(IngestionFile file, String digest) throws IOException {
+            entries.add(createKey(file));
+            writer.write(createKey(file) + "\t" + (digest != null ? digest : "-") + "\n");
+            writer.flush();
+        }
+
+        synchronized void close() throws IOException {
+            writer.close();
+        }
+
+        private static String createKey(IngestionFile file) {
+            return createKey(file.input.getAbsolutePath(), String.valueOf(file.input.length()),
+                             String.valueOf(file.input.lastModified()), file.output);
+        }
+
+        private static String createKey(String path, String size, String lastModified, String output) {
+            return path + "\t" + size + "\t" + lastModified + "\t" + output;
+        }
+    }
+
+    /**
+     * Reports the throughput of the ingestion.
+     */
+    static class IngestionProgress {
+
+        private final int numFiles;
+        private final long startTime = System.currentTimeMillis();
+        private int filesDone;
+        private long bytesDone;
+
+        IngestionProgress(int numFiles) {
+            this.numFiles = numFiles;
+        }
+
+        synchronized void completed(IngestionFile file, String digest) {
+            filesDone++;
+            bytesDone += file.input.length();
+            System.out.println(MessageFormat.format("archived {0}{1} ({2}/{3} files, {4})", file,
+                                                    digest != null ? " md5=" + digest : "",
+                                                    filesDone, numFiles, getThroughput()));
+        }
+
+        synchronized void report() {
+            System.out.format("%d files with %d MB copied in %d s, %s\n", filesDone, bytesDone / (1024 * 1024),
+                              (System.currentTimeMillis() - startTime) / 1000, getThroughput());
+        }
+
+        private String getThroughput() {
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            return String.format("%.1f MB/s", bytesDone / (1024.0 * 1024.0) / (millis / 1000.0));
+        }
     }
 
     private static void collectInputFiles(String rootDir, File file, Pattern pattern, String timeElements, String timeFormat, String productType, String revision, String pathTemplate, List<IngestionFile> accu) throws IOException {
@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
@@ -65,4 +66,39 @@ public class IngestionToolTest {
 //        assertFalse(filenameFilter.accept(null, "MER_RR__2POBCM20060718_091715_000001012049_00308_22907_0113.N1"));
 //    }
 
+
+    @Test
+    public void testJournalRecordsCopiedFiles() throws IOException {
+        File dir = Files.createTempDirectory("ingestion-test").toFile();
+        try {
+            File input = new File(dir, "A2006199xxx.hdf");
+            Files.write(input.toPath(), new byte[100]);
+            File journalFile = new File(dir, "journal.txt");
+            IngestionTool.IngestionFile ingestionFile = new IngestionTool.IngestionFile(input, "/calvalus/eodata/2006/07/18");
+
+            IngestionTool.IngestionJournal journal = IngestionTool.IngestionJournal.open(journalFile);
+            assertFalse(journal.contains(ingestionFile));
+            journal.record(ingestionFile, "0123");
+            journal.close();
+
+            journal = IngestionTool.IngestionJournal.open(journalFile);
+            assertTrue(journal.contains(ingestionFile));
+            journal.close();
+
+            Files.write(input.toPath(), new byte[200]);
+            journal = IngestionTool.IngestionJournal.open(journalFile);
+            assertFalse(journal.contains(ingestionFile));
+            journal.close();
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testToHex() {
+        assertEquals("00ff10", IngestionTool.toHex(new byte[]{0, (byte) 0xff, 0x10}));
+    }
 }
@@ -14,6 +14,7 @@ import com.bc.calvalus.portal.shared.DtoCalvalusConfig;
 import com.bc.calvalus.portal.shared.DtoProcessorDescriptor;
 import com.bc.calvalus.portal.shared.DtoProductSet;
 import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionChanges;
 import com.bc.calvalus.portal.shared.DtoRegion;
 import com.google.gwt.core.client.EntryPoint;
 import com.google.gwt.core.client.GWT;
@@ -34,6 +35,7 @@ import com.google.gwt.view.client.SingleSelectionModel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -48,6 +50,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     public static final Logger LOG = Logger.getLogger("CalvalusPortal");
 
     public static final String NO_FILTER = "";
+    private static final int PRODUCTION_CHANGES_PAGE_SIZE = 500;
     private static final String[] VIEW_NAMES = {
                 "newsView",
                 "l2View",
@@ -84,6 +87,13 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     private Map<String, DtoProduction> productionsMap;
     // A timer that periodically retrieves production statuses from server
     private Timer productionsUpdateTimer;
+    // The version of the production list received last, the server sends the changes since this version
+    private long productionsVersion;
+    // The productions of a full list received page by page
+    private Map<String, DtoProduction> fullProductionList;
+    // Incremented when the filter changes, to ignore pages requested with the previous filter
+    private int productionChangesSequence;
+    private boolean productionChangesPending;
     private RegionMapModel regionMapModel;
     private ManageProductionsView manageProductionsView;
     private boolean productionListFiltered;
@@ -150,7 +160,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
                                              new InitProcessorsCallback(BundleFilter.PROVIDER_ALL_USERS));
                 // aggregators from other users are currently not shown
                 // backendService.getAggregators(allUserFilter.toString(), new InitAggregatorsCallback(BundleFilter.PROVIDER_ALL_USERS));
-                backendService.getProductions(getProductionFilterString(), new InitProductionsCallback());
+                requestProductionChanges(true);
 
                 GWT.log("checking for user roles asynchronously");
                 backendService.getCalvalusConfig(new CalvalusConfigCallback());
@@ -240,7 +250,10 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     public void setProductionListFiltered(boolean productionListFiltered) {
         if (productionListFiltered != this.productionListFiltered) {
             this.productionListFiltered = productionListFiltered;
-            updateProductionList();
+            productionsVersion = 0;
+            fullProductionList = null;
+            productionChangesSequence++;
+            requestProductionChanges(false);
         }
     }
 
@@ -410,14 +423,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
             DtoProduction unknownProduction = unknownProductions[i];
             DtoProduction knownProduction = productionsMap.get(unknownProduction.getId());
             if (knownProduction != null) {
-                if (!unknownProduction.getProcessingStatus().equals(knownProduction.getProcessingStatus())) {
-                    knownProduction.setProcessingStatus(unknownProduction.getProcessingStatus());
-                    propertyChange = true;
-                }
-                if (!unknownProduction.getStagingStatus().equals(knownProduction.getStagingStatus())) {
-                    knownProduction.setStagingStatus(unknownProduction.getStagingStatus());
-                    propertyChange = true;
-                }
+                propertyChange |= updateStatuses(knownProduction, unknownProduction);
                 deletedProductions.remove(knownProduction);
             } else {
                 productions.getList().add(i, unknownProduction);
@@ -430,6 +436,46 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
             productionsMap.remove(deletedProduction.getId());
             listChange = true;
         }
+        fireProductionsChanged(listChange, propertyChange);
+    }
+
+    private synchronized void updateProductions(DtoProduction[] changedProductions, String[] removedProductionIds) {
+        boolean listChange = false;
+        boolean propertyChange = false;
+        for (DtoProduction changedProduction : changedProductions) {
+            DtoProduction knownProduction = productionsMap.get(changedProduction.getId());
+            if (knownProduction != null) {
+                propertyChange |= updateStatuses(knownProduction, changedProduction);
+            } else {
+                productions.getList().add(changedProduction);
+                productionsMap.put(changedProduction.getId(), changedProduction);
+                listChange = true;
+            }
+        }
+        for (String removedProductionId : removedProductionIds) {
+            DtoProduction removedProduction = productionsMap.remove(removedProductionId);
+            if (removedProduction != null) {
+                productions.getList().remove(removedProduction);
+                listChange = true;
+            }
+        }
+        fireProductionsChanged(listChange, propertyChange);
+    }
+
+    private static boolean updateStatuses(DtoProduction knownProduction, DtoProduction unknownProduction) {
+        boolean propertyChange = false;
+        if (!unknownProduction.getProcessingStatus().equals(knownProduction.getProcessingStatus())) {
+            knownProduction.setProcessingStatus(unknownProduction.getProcessingStatus());
+            propertyChange = true;
+        }
+        if (!unknownProduction.getStagingStatus().equals(knownProduction.getStagingStatus())) {
+            knownProduction.setStagingStatus(unknownProduction.getStagingStatus());
+            propertyChange = true;
+        }
+        return propertyChange;
+    }
+
+    private void fireProductionsChanged(boolean listChange, boolean propertyChange) {
         if (listChange) {
             if (manageProductionsView != null) {
                 manageProductionsView.fireSortListEvent();
@@ -441,8 +487,41 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
         }
     }
 
+    /**
+     * Applies a page of changes. The pages of a full list are collected and replace the list when complete.
+     */
+    private synchronized void applyProductionChanges(DtoProductionChanges changes) {
+        if (changes.isFullList()) {
+            fullProductionList = new LinkedHashMap<String, DtoProduction>();
+        }
+        if (fullProductionList != null) {
+            for (String removedProductionId : changes.getRemovedProductionIds()) {
+                fullProductionList.remove(removedProductionId);
+            }
+            for (DtoProduction production : changes.getProductions()) {
+                fullProductionList.put(production.getId(), production);
+            }
+            if (changes.isComplete()) {
+                updateProductions(fullProductionList.values().toArray(new DtoProduction[fullProductionList.size()]));
+                fullProductionList = null;
+            }
+        } else {
+            updateProductions(changes.getProductions(), changes.getRemovedProductionIds());
+        }
+        productionsVersion = changes.getVersion();
+    }
+
     private void updateProductionList() {
-        backendService.getProductions(getProductionFilterString(), new UpdateProductionsCallback());
+        // skip the update if the pages of the previous one are still on their way
+        if (!productionChangesPending) {
+            requestProductionChanges(false);
+        }
+    }
+
+    private void requestProductionChanges(boolean init) {
+        productionChangesPending = true;
+        backendService.getProductionChanges(getProductionFilterString(), productionsVersion, PRODUCTION_CHANGES_PAGE_SIZE,
+                                            new ProductionChangesCallback(productionChangesSequence, init));
     }
 
     private String getProductionFilterString() {
@@ -547,33 +626,46 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
         }
     }
 
-    private class InitProductionsCallback implements AsyncCallback<DtoProduction[]> {
+    private class ProductionChangesCallback implements AsyncCallback<DtoProductionChanges> {
 
-        @Override
-        public void onSuccess(DtoProduction[] productions) {
-            updateProductions(productions);
-            maybeInitFrontend();
-        }
+        private final int sequence;
+        private final boolean init;
 
-        @Override
-        public void onFailure(Throwable caught) {
-            caught.printStackTrace(System.err);
-            Dialog.error("Server-side Error", caught.getMessage());
-            CalvalusPortal.this.productions = new ListDataProvider<DtoProduction>();
+        public ProductionChangesCallback(int sequence, boolean init) {
+            this.sequence = sequence;
+            this.init = init;
         }
-    }
-
-    private class UpdateProductionsCallback implements AsyncCallback<DtoProduction[]> {
 
         @Override
-        public void onSuccess(DtoProduction[] unknownProductions) {
-            updateProductions(unknownProductions);
+        public void onSuccess(DtoProductionChanges changes) {
+            if (sequence != productionChangesSequence) {
+                return;
+            }
+            applyProductionChanges(changes);
+            if (!changes.isComplete()) {
+                requestProductionChanges(init);
+            } else {
+                productionChangesPending = false;
+                if (init) {
+                    maybeInitFrontend();
+                }
+            }
         }
 
         @Override
         public void onFailure(Throwable caught) {
+            if (sequence != productionChangesSequence) {
+                return;
+            }
+            productionChangesPending = false;
             caught.printStackTrace(System.err);
-            GWT.log("Failed to get productions from server", caught);
+            if (init) {
+                Dialog.error("Server-side Error", caught.getMessage());
+                CalvalusPortal.this.productions = new ListDataProvider<DtoProduction>();
+                CalvalusPortal.this.productionsMap = new HashMap<String, DtoProduction>();
+            } else {
+                GWT.log("Failed to get productions from server", caught);
+            }
         }
     }
 
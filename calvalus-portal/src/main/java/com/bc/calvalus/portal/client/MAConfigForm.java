@@ -1,5 +1,6 @@
 package com.bc.calvalus.portal.client;
 
+import com.bc.calvalus.portal.shared.DtoRecordTile;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.event.dom.client.ChangeEvent;
@@ -19,7 +20,9 @@ import com.google.gwt.uibinder.client.UiField;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.ui.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -156,9 +159,13 @@ public class MAConfigForm extends Composite {
     }
 
     private void viewRecordSource(final String recordSource) {
-        portalContext.getBackendService().listUserRecordSource(recordSource, new AsyncCallback<float[]>() {
+        // the whole world at zoom level 0 gives the bounds of the records and a coarse overview
+        portalContext.getBackendService().getUserRecordTile(recordSource, -90.0, -180.0, 90.0, 180.0, 0, new AsyncCallback<DtoRecordTile>() {
             @Override
-            public void onSuccess(float[] points) {
+            public void onSuccess(DtoRecordTile overview) {
+                if (overview.getNumRecords() == 0) {
+                    return;
+                }
                 MapOptions mapOptions = MapOptions.newInstance();
                 mapOptions.setCenter(LatLng.newInstance(0.0, 0.0));
                 mapOptions.setDisableDoubleClickZoom(false);
@@ -169,36 +176,20 @@ public class MAConfigForm extends Composite {
                 mapOptions.setStreetViewControl(false);
                 final MapWidget mapWidget = new MapWidget(mapOptions);
                 mapWidget.setSize("800px", "520px");
-                LatLngBounds bounds = null;
-                MarkerImage markerImage = MarkerImage.newInstance("https://maps.gstatic.com/intl/en_ALL/mapfiles/markers2/measle.png");
-                for (int i = 0; i < points.length; ) {
-                    final float lat = points[i++];
-                    final float lon = points[i++];
-                    LatLng latLngPoint = LatLng.newInstance(lat, lon);
-                    if (bounds == null) {
-                        bounds = LatLngBounds.newInstance(latLngPoint, latLngPoint);
-                    } else {
-                        bounds.extend(latLngPoint);
+                final LatLngBounds bounds = LatLngBounds.newInstance(LatLng.newInstance(overview.getSouth(), overview.getWest()),
+                                                                     LatLng.newInstance(overview.getNorth(), overview.getEast()));
+                final RecordTileLayer recordTileLayer = new RecordTileLayer(recordSource, mapWidget);
+                mapWidget.addIdleHandler(event -> recordTileLayer.update());
+                String title = "Viewing " + recordSource + " with " + overview.getNumRecords() + " measurements";
+                Dialog dialog = new Dialog(title, mapWidget, Dialog.ButtonType.CLOSE) {
+                    @Override
+                    protected void onShow() {
+                        mapWidget.triggerResize();
+                        mapWidget.fitBounds(bounds);
+                        mapWidget.panTo(bounds.getCenter());
                     }
-                    MarkerOptions markerOptions = MarkerOptions.newInstance();
-                    markerOptions.setPosition(latLngPoint);
-                    Marker marker = Marker.newInstance(markerOptions);
-                    marker.setIcon(markerImage);
-                    marker.setMap(mapWidget);
-                }
-                if (bounds != null) {
-                    final LatLngBounds finalBounds = bounds;
-                    String title = "Viewing " + recordSource + " with " + (points.length / 2) + " measurements";
-                    Dialog dialog = new Dialog(title, mapWidget, Dialog.ButtonType.CLOSE) {
-                        @Override
-                        protected void onShow() {
-                            mapWidget.triggerResize();
-                            mapWidget.fitBounds(finalBounds);
-                            mapWidget.panTo(finalBounds.getCenter());
-                        }
-                    };
-                    dialog.show();
-                }
+                };
+                dialog.show();
             }
 
             @Override
@@ -315,4 +306,80 @@ public class MAConfigForm extends Composite {
         }
     }
 
+    /**
+     * Shows the records of a record source within the viewport of a map, aggregated into clusters
+     * by the server unless there are only a few. Reloaded whenever the map gets idle after panning or zooming.
+     */
+    private class RecordTileLayer {
+
+        private final String recordSource;
+        private final MapWidget mapWidget;
+        private final MarkerImage pointImage;
+        private final List<Marker> markers;
+        private int requestCount;
+
+        private RecordTileLayer(String recordSource, MapWidget mapWidget) {
+            this.recordSource = recordSource;
+            this.mapWidget = mapWidget;
+            this.pointImage = MarkerImage.newInstance("https://maps.gstatic.com/intl/en_ALL/mapfiles/markers2/measle.png");
+            this.markers = new ArrayList<>();
+        }
+
+        private void update() {
+            LatLngBounds bounds = mapWidget.getBounds();
+            if (bounds == null) {
+                return;
+            }
+            final int request = ++requestCount;
+            portalContext.getBackendService().getUserRecordTile(recordSource,
+                                                                bounds.getSouthWest().getLatitude(),
+                                                                bounds.getSouthWest().getLongitude(),
+                                                                bounds.getNorthEast().getLatitude(),
+                                                                bounds.getNorthEast().getLongitude(),
+                                                                mapWidget.getZoom(),
+                                                                new AsyncCallback<DtoRecordTile>() {
+                @Override
+                public void onSuccess(DtoRecordTile tile) {
+                    // responses of outdated viewports are dropped
+                    if (request == requestCount) {
+                        show(tile);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable caught) {
+                    if (request == requestCount) {
+                        Dialog.error("Failed", "Failed to view " + recordSource + ": " + caught.getMessage());
+                    }
+                }
+            });
+        }
+
+        private void show(DtoRecordTile tile) {
+            for (Marker marker : markers) {
+                marker.setMap((MapWidget) null);
+            }
+            markers.clear();
+            float[] latLons = tile.getLatLons();
+            int[] counts = tile.getCounts();
+            for (int i = 0; i < counts.length; i++) {
+                final LatLng position = LatLng.newInstance(latLons[2 * i], latLons[2 * i + 1]);
+                MarkerOptions markerOptions = MarkerOptions.newInstance();
+                markerOptions.setPosition(position);
+                Marker marker = Marker.newInstance(markerOptions);
+                if (tile.isClustered()) {
+                    marker.setTitle(counts[i] + " measurements");
+                    marker.addClickHandler(event -> {
+                        mapWidget.panTo(position);
+                        mapWidget.setZoom(mapWidget.getZoom() + 2);
+                    });
+                } else {
+                    marker.setIcon(pointImage);
+                }
+                marker.setMap(mapWidget);
+                markers.add(marker);
+            }
+        }
+    }
+
 }
@@ -37,8 +37,10 @@ import com.bc.calvalus.portal.shared.DtoProcessorDescriptor;
 import com.bc.calvalus.portal.shared.DtoProcessorVariable;
 import com.bc.calvalus.portal.shared.DtoProductSet;
 import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionChanges;
 import com.bc.calvalus.portal.shared.DtoProductionRequest;
 import com.bc.calvalus.portal.shared.DtoProductionResponse;
+import com.bc.calvalus.portal.shared.DtoRecordTile;
 import com.bc.calvalus.portal.shared.DtoRegion;
 import com.bc.calvalus.portal.shared.DtoRegionDataInfo;
 import com.bc.calvalus.portal.shared.DtoValueRange;
@@ -68,6 +70,7 @@ import com.bc.calvalus.production.util.TokenGenerator;
 import com.bc.ceres.binding.ValueRange;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.esa.snap.core.datamodel.GeoPos;
 import org.jasig.cas.client.validation.AssertionImpl;
@@ -109,7 +112,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -152,10 +157,20 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     public static final String COPYRIGHT_YEAR = "2017";
 
     private static final int PRODUCTION_STATUS_OBSERVATION_PERIOD = 5000;
+    private static final long PRODUCTION_CHANGE_FEED_UPDATE_PERIOD = 1000;
+    private static final int RECORD_POINT_INDEX_CACHE_SIZE = 8;
 
     private ServiceContainer serviceContainer;
     private BackendConfig backendConfig;
     private Timer statusObserver;
+    private final ProductionChangeFeed productionChangeFeed = new ProductionChangeFeed(this::convert);
+    private long productionChangeFeedUpdateTime;
+    private final Map<String, RecordPointIndex> recordPointIndexCache = new LinkedHashMap<String, RecordPointIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RecordPointIndex> eldest) {
+            return size() > RECORD_POINT_INDEX_CACHE_SIZE;
+        }
+    };
     private static final DateFormat CCSDS_FORMAT = DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
     /**
@@ -402,6 +417,59 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
         }
     }
 
+    @Override
+    public DtoProductionChanges getProductionChanges(String filter, long sinceVersion, int maxCount) throws BackendServiceException {
+        Map<String, String> filterParameters = parseFilter(filter);
+        String userName = "true".equals(filterParameters.get(PARAM_NAME_CURRENT_USER_ONLY)) ? getUserName() : null;
+        Set<DtoProcessState> states = null;
+        if (filterParameters.get(PARAM_NAME_STATES) != null) {
+            states = EnumSet.noneOf(DtoProcessState.class);
+            try {
+                for (String state : filterParameters.get(PARAM_NAME_STATES).split(",")) {
+                    states.add(DtoProcessState.valueOf(state.trim()));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new BackendServiceException("Invalid production filter: " + filter, e);
+            }
+        }
+        try {
+            updateProductionChangeFeed();
+            DtoProductionChanges changes = productionChangeFeed.getChanges(sinceVersion, userName, states, maxCount);
+            LOG.fine("getProductionChanges returns " + changes.getProductions().length + " changed and "
+                     + changes.getRemovedProductionIds().length + " removed productions");
+            return changes;
+        } catch (ProductionException e) {
+            throw convert(e);
+        }
+    }
+
+    /**
+     * Updates the change feed from the production store, at most once per second for all clients.
+     * The feed is shared by all clients, so it is always updated unfiltered.
+     */
+    private void updateProductionChangeFeed() throws ProductionException {
+        synchronized (productionChangeFeed) {
+            long now = System.currentTimeMillis();
+            if (now - productionChangeFeedUpdateTime >= PRODUCTION_CHANGE_FEED_UPDATE_PERIOD) {
+                productionChangeFeed.update(serviceContainer.getProductionService().getProductions(null));
+                productionChangeFeedUpdateTime = now;
+            }
+        }
+    }
+
+    static Map<String, String> parseFilter(String filter) {
+        Map<String, String> parameters = new HashMap<>();
+        if (filter != null) {
+            for (String parameter : filter.split("&")) {
+                int separatorPos = parameter.indexOf('=');
+                if (separatorPos > 0) {
+                    parameters.put(parameter.substring(0, separatorPos).trim(), parameter.substring(separatorPos + 1).trim());
+                }
+            }
+        }
+        return parameters;
+    }
+
     @Override
     public DtoProductionRequest getProductionRequest(String productionId) throws BackendServiceException {
         try {
@@ -685,6 +753,42 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
         }
     }
 
+    @Override
+    public DtoRecordTile getUserRecordTile(String filePath, double south, double west, double north, double east, int zoom) throws BackendServiceException {
+        UserGroupInformation remoteUser = UserGroupInformation.createRemoteUser(getUserName());
+        try {
+            return remoteUser.doAs((PrivilegedExceptionAction<DtoRecordTile>) () -> {
+                String url = serviceContainer.getFileSystemService().getQualifiedPath(getUserName(), filePath);
+                return getRecordPointIndex(url).getTile(south, west, north, east, zoom);
+            });
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
+    /**
+     * Gets the index of the record locations of a record source, built once per file and modification time.
+     * Concurrent first requests of the same file may build it twice, but do not block requests of other files.
+     */
+    private RecordPointIndex getRecordPointIndex(String url) throws Exception {
+        Path path = new Path(url);
+        long modificationTime = path.getFileSystem(serviceContainer.getHadoopConfiguration()).getFileStatus(path).getModificationTime();
+        synchronized (recordPointIndexCache) {
+            RecordPointIndex index = recordPointIndexCache.get(url);
+            if (index != null && index.getModificationTime() == modificationTime) {
+                return index;
+            }
+        }
+        RecordSourceSpi recordSourceSpi = RecordSourceSpi.getForUrl(url);
+        RecordSource recordSource = recordSourceSpi.createRecordSource(url, serviceContainer.getHadoopConfiguration());
+        RecordPointIndex index = RecordPointIndex.create(recordSource.getRecords(), modificationTime);
+        LOG.info("indexed " + index.getNumRecords() + " record locations of " + url);
+        synchronized (recordPointIndexCache) {
+            recordPointIndexCache.put(url, index);
+        }
+        return index;
+    }
+
     private String createRequestId(String productionType) {
         DateFormat dateFormat = DateUtils.createDateFormat("yyyyMMdd_HHmmssSSS");
         return dateFormat.format(new Date()) + "_" + productionType + REQUEST_FILE_EXTENSION;
@@ -826,19 +930,10 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     }
 
     private DtoProcessStatus convert(ProcessStatus status, WorkflowItem workflow) {
-        Date startTime = workflow.getStartTime();
-        Date stopTime = workflow.getStopTime();
-        int processingSeconds = 0;
-        if (startTime != null) {
-            if (stopTime == null) {
-                stopTime = new Date();
-            }
-            processingSeconds = (int) ((stopTime.getTime() - startTime.getTime()) / 1000);
-        }
         return new DtoProcessStatus(DtoProcessState.valueOf(status.getState().name()),
                 status.getMessage(),
                 status.getProgress(),
-                processingSeconds);
+                ProductionChangeFeed.getProcessingSeconds(workflow));
     }
 
     private DtoProcessStatus convert(ProcessStatus status) {
@@ -4,19 +4,29 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Servlet to handle file download requests.
+ * <p>
+ * Supports range requests (single and multiple ranges, If-Range) so that interrupted downloads
+ * of large products can be resumed, and ETag/Last-Modified validators for client caching.
+ * File content is copied through a 1 MB buffer into a 4 MB buffered output stream.
  *
  * @author Norman
  */
 public class FileDownloadServlet extends HttpServlet {
 
+    private static final int MAX_RANGES = 32;
+    private static final String MULTIPART_BOUNDARY = "CALVALUS_BYTERANGES";
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         doGet(req, resp);
@@ -32,24 +42,63 @@ public class FileDownloadServlet extends HttpServlet {
 
         File downloadDir = new BackendConfig(getServletContext()).getLocalStagingDir();
         File file = new File(downloadDir, filePath);
-        if (file.length() > Integer.MAX_VALUE) {
-            throw new ServletException(String.format("File size too big (expected less than 2 GB, but got %d bytes).", file.length()));
+        if (!file.isFile()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, filePath);
+            return;
+        }
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String eTag = createETag(length, lastModified);
+
+        if (isNotModified(req, eTag, lastModified)) {
+            resp.setHeader("ETag", eTag);
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<long[]> ranges = null;
+        String rangeHeader = req.getHeader("Range");
+        if (rangeHeader != null && isIfRangeSatisfied(req, eTag, lastModified)) {
+            ranges = parseRanges(rangeHeader, length);
+            if (ranges != null && ranges.isEmpty()) {
+                resp.setHeader("Content-Range", "bytes */" + length);
+                resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
         }
-        int contentLength = (int) file.length();
 
-        BufferedInputStream input = new BufferedInputStream(new FileInputStream(file), 4 * 1024 * 1024);
+        FileInputStream input = new FileInputStream(file);
         try {
             resp.reset();
-            resp.setContentType("application/octet-stream");
-            resp.setContentLength(contentLength);
+            resp.setHeader("Accept-Ranges", "bytes");
+            resp.setHeader("ETag", eTag);
+            resp.setDateHeader("Last-Modified", lastModified);
             resp.setHeader("Content-disposition",
                            String.format("attachment; filename=\"%s\"", file.getName()));
             BufferedOutputStream output = new BufferedOutputStream(resp.getOutputStream(), 4 * 1024 * 1024);
             byte[] buffer = new byte[1024 * 1024];
-            int bytesRead, bytesWritten = 0;
-            while ((bytesRead = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytesRead);
-                bytesWritten += bytesRead;
+            long bytesWritten = 0;
+            if (ranges == null) {
+                resp.setContentType("application/octet-stream");
+                resp.setHeader("Content-Length", String.valueOf(length));
+                bytesWritten += copy(input, 0, length, output, buffer);
+            } else if (ranges.size() == 1) {
+                long[] range = ranges.get(0);
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setContentType("application/octet-stream");
+                resp.setHeader("Content-Range", formatContentRange(range, length));
+                resp.setHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+                bytesWritten += copy(input, range[0], range[1] - range[0] + 1, output, buffer);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+                for (long[] range : ranges) {
+                    print(output, "\r\n--" + MULTIPART_BOUNDARY + "\r\n");
+                    print(output, "Content-Type: application/octet-stream\r\n");
+                    print(output, "Content-Range: " + formatContentRange(range, length) + "\r\n\r\n");
+                    bytesWritten += copy(input, range[0], range[1] - range[0] + 1, output, buffer);
+                }
+                print(output, "\r\n--" + MULTIPART_BOUNDARY + "--\r\n");
             }
             output.flush();
             log(bytesWritten + " bytes sent");
@@ -58,5 +107,123 @@ public class FileDownloadServlet extends HttpServlet {
         }
     }
 
+    private static long copy(FileInputStream input, long position, long count, OutputStream output, byte[] buffer) throws IOException {
+        input.getChannel().position(position);
+        long copied = 0;
+        while (copied < count) {
+            int n = input.read(buffer, 0, (int) Math.min(buffer.length, count - copied));
+            if (n <= 0) {
+                throw new IOException("unexpected end of file at position " + (position + copied));
+            }
+            output.write(buffer, 0, n);
+            copied += n;
+        }
+        return copied;
+    }
 
+    private static void print(OutputStream output, String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static String createETag(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, String eTag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.trim().equals("*") || matchesETag(ifNoneMatch, eTag);
+        }
+        long ifModifiedSince = getDateHeader(req, "If-Modified-Since");
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean isIfRangeSatisfied(HttpServletRequest req, String eTag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+            return ifRange.trim().equals(eTag);
+        }
+        long ifRangeDate = getDateHeader(req, "If-Range");
+        return ifRangeDate != -1 && lastModified / 1000 == ifRangeDate / 1000;
+    }
+
+    private static boolean matchesETag(String header, String eTag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the value of a Range header.
+     *
+     * @param header the header value, e.g. "bytes=0-499,1000-"
+     * @param length the length of the file
+     * @return the satisfiable ranges as inclusive {first, last} byte positions, an empty list if
+     * no range is satisfiable, or {@code null} if the header is invalid and shall be ignored
+     */
+    static List<long[]> parseRanges(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String firstString = spec.substring(0, dash).trim();
+                String lastString = spec.substring(dash + 1).trim();
+                long first;
+                long last;
+                if (firstString.isEmpty()) {
+                    long suffixLength = Long.parseLong(lastString);
+                    if (suffixLength <= 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffixLength);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(firstString);
+                    last = lastString.isEmpty() ? length - 1 : Math.min(Long.parseLong(lastString), length - 1);
+                    if (first < 0 || (!lastString.isEmpty() && Long.parseLong(lastString) < first)) {
+                        return null;
+                    }
+                }
+                if (first < length && first <= last) {
+                    ranges.add(new long[]{first, last});
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    private static String formatContentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
 }
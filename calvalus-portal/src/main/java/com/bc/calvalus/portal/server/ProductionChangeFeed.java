@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.commons.WorkflowItem;
+import com.bc.calvalus.portal.shared.DtoProcessState;
+import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionChanges;
+import com.bc.calvalus.production.Production;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A versioned change feed of the productions of the production store.
+ * <p/>
+ * Each production carries the version of its last modification, i.e. of the last change of its processing
+ * or staging status or of its processing time. The portal clients ask for the changes since their last version
+ * and thus only get the productions that changed since, converted once per change.
+ * Deleted productions are kept as removal marks up to a maximum number. Clients with a version older than the
+ * oldest known change get the full list.
+ * <p/>
+ * Versions start with the creation time of the feed in microseconds, so that versions of a previous server run
+ * are older.
+ */
+class ProductionChangeFeed {
+
+    static final int MAX_REMOVAL_MARKS = 1000;
+
+    private final Function<Production, DtoProduction> converter;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeMap<Long, Entry> changes = new TreeMap<>();
+    private long version;
+    private long oldestVersion;
+    private int numRemovalMarks;
+
+    ProductionChangeFeed(Function<Production, DtoProduction> converter) {
+        this(converter, System.currentTimeMillis() * 1000);
+    }
+
+    ProductionChangeFeed(Function<Production, DtoProduction> converter, long startVersion) {
+        this.converter = converter;
+        this.version = startVersion;
+        this.oldestVersion = startVersion;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Compares the productions of the store with the known ones and records new, changed, and removed ones.
+     *
+     * @param productions all productions of the store
+     */
+    synchronized void update(Production[] productions) {
+        Set<String> ids = new HashSet<>(productions.length);
+        for (Production production : productions) {
+            ids.add(production.getId());
+            Entry entry = entries.get(production.getId());
+            if (entry == null) {
+                entry = new Entry(production.getId());
+                entries.put(entry.id, entry);
+                record(entry, production);
+            } else if (entry.removed || entry.isModified(production)) {
+                if (entry.removed) {
+                    numRemovalMarks--;
+                }
+                record(entry, production);
+            }
+        }
+        for (Entry entry : entries.values()) {
+            if (!entry.removed && !ids.contains(entry.id)) {
+                record(entry, null);
+                numRemovalMarks++;
+            }
+        }
+        pruneRemovalMarks();
+    }
+
+    /**
+     * Gets a page of the changes since a version, filtered by user and state.
+     * A production that changed to a state not matching the filter is reported as removed.
+     * Pages of a full list never end before the oldest version, because a client continuing
+     * from there would otherwise get the first page of the full list again.
+     *
+     * @param sinceVersion the version of the client, or 0 for the full list
+     * @param userName     the user whose productions are requested, or {@code null} for all users
+     * @param states       the processing states requested, or {@code null} for all states
+     * @param maxCount     the maximum number of productions and removals of the page
+     * @return the page of changes
+     */
+    synchronized DtoProductionChanges getChanges(long sinceVersion, String userName, Set<DtoProcessState> states, int maxCount) {
+        boolean fullList = sinceVersion < oldestVersion || sinceVersion > version;
+        List<DtoProduction> productions = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        long fromVersion = fullList ? Long.MIN_VALUE : sinceVersion;
+        for (Entry entry : changes.tailMap(fromVersion, false).values()) {
+            if (productions.size() + removedIds.size() >= Math.max(1, maxCount)
+                && changes.lowerKey(entry.version) >= oldestVersion) {
+                long pageVersion = changes.lowerKey(entry.version);
+                return new DtoProductionChanges(pageVersion, false, fullList,
+                                                productions.toArray(new DtoProduction[0]),
+                                                removedIds.toArray(new String[0]));
+            }
+            if (userName != null && (entry.userName == null || !userName.equalsIgnoreCase(entry.userName))) {
+                continue;
+            }
+            if (!entry.removed && (states == null || states.contains(entry.state))) {
+                productions.add(entry.dtoProduction);
+            } else if (!fullList) {
+                removedIds.add(entry.id);
+            }
+        }
+        return new DtoProductionChanges(version, true, fullList,
+                                        productions.toArray(new DtoProduction[0]),
+                                        removedIds.toArray(new String[0]));
+    }
+
+    static int getProcessingSeconds(WorkflowItem workflow) {
+        Date startTime = workflow.getStartTime();
+        Date stopTime = workflow.getStopTime();
+        int processingSeconds = 0;
+        if (startTime != null) {
+            if (stopTime == null) {
+                stopTime = new Date();
+            }
+            processingSeconds = (int) ((stopTime.getTime() - startTime.getTime()) / 1000);
+        }
+        return processingSeconds;
+    }
+
+    private void record(Entry entry, Production production) {
+        changes.remove(entry.version);
+        entry.version = ++version;
+        changes.put(entry.version, entry);
+        entry.set(production, production != null ? converter.apply(production) : null);
+    }
+
+    private void pruneRemovalMarks() {
+        Iterator<Entry> iterator = changes.values().iterator();
+        while (numRemovalMarks > MAX_REMOVAL_MARKS && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.removed) {
+                // clients older than this removal would miss it, they get the full list instead
+                oldestVersion = entry.version;
+                iterator.remove();
+                entries.remove(entry.id);
+                numRemovalMarks--;
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String id;
+        private long version;
+        private boolean removed;
+        private String userName;
+        private DtoProcessState state;
+        private DtoProduction dtoProduction;
+        private ProcessStatus processingStatus;
+        private ProcessStatus stagingStatus;
+        private int processingSeconds;
+
+        private Entry(String id) {
+            this.id = id;
+        }
+
+        private boolean isModified(Production production) {
+            return !production.getProcessingStatus().equals(processingStatus)
+                   || !production.getStagingStatus().equals(stagingStatus)
+                   || getProcessingSeconds(production.getWorkflow()) != processingSeconds;
+        }
+
+        private void set(Production production, DtoProduction dtoProduction) {
+            this.removed = production == null;
+            this.dtoProduction = dtoProduction;
+            if (production != null) {
+                this.userName = production.getProductionRequest().getUserName();
+                this.state = dtoProduction.getProcessingStatus().getState();
+                this.processingStatus = production.getProcessingStatus();
+                this.stagingStatus = production.getStagingStatus();
+                this.processingSeconds = getProcessingSeconds(production.getWorkflow());
+            }
+        }
+    }
+}
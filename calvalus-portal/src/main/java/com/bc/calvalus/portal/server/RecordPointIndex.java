@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.portal.shared.DtoRecordTile;
+import com.bc.calvalus.processing.ma.Record;
+import org.esa.snap.core.datamodel.GeoPos;
+
+import java.util.Arrays;
+
+/**
+ * A quad-tree index of the locations of the records of a record source, built once per file.
+ * <p/>
+ * The locations are quantised to a grid of 2^31 x 2^31 cells of equal size in degrees and sorted by the
+ * Z-order (Morton) code of their cell. The records of a quad-tree cell of any level are then a contiguous
+ * range of the sorted codes, found by binary search. Prefix sums of the locations give the mean location
+ * of the records of a cell in constant time.
+ * <p/>
+ * A viewport is aggregated into cells of about 64 pixels of the map at the given zoom level.
+ * The individual records are returned if the viewport contains at most {@link #MAX_POINTS} of them.
+ */
+class RecordPointIndex {
+
+    static final int MAX_LEVEL = 31;
+    static final int MAX_POINTS = 1000;
+    static final int MAX_CELLS = 4096;
+    // cells of 64 pixels on the 256 pixel tiles of the map, i.e. 4 x 4 cells per tile
+    private static final int CLUSTER_LEVEL_OFFSET = 2;
+    private static final long NUM_CELLS = 1L << MAX_LEVEL;
+
+    private final long modificationTime;
+    private final long[] codes;
+    private final double[] latSums;
+    private final double[] lonSums;
+    private final double south;
+    private final double west;
+    private final double north;
+    private final double east;
+
+    /**
+     * @param codes            the codes of the record locations, see {@link #encode(double, double)}, will be sorted
+     * @param numCodes         the number of codes used
+     * @param modificationTime the modification time of the record source
+     */
+    RecordPointIndex(long[] codes, int numCodes, long modificationTime) {
+        this.modificationTime = modificationTime;
+        this.codes = Arrays.copyOf(codes, numCodes);
+        Arrays.sort(this.codes);
+        latSums = new double[numCodes + 1];
+        lonSums = new double[numCodes + 1];
+        double latMin = +Double.MAX_VALUE;
+        double latMax = -Double.MAX_VALUE;
+        double lonMin = +Double.MAX_VALUE;
+        double lonMax = -Double.MAX_VALUE;
+        for (int i = 0; i < numCodes; i++) {
+            double lat = decodeLat(this.codes[i]);
+            double lon = decodeLon(this.codes[i]);
+            latSums[i + 1] = latSums[i] + lat;
+            lonSums[i + 1] = lonSums[i] + lon;
+            latMin = Math.min(latMin, lat);
+            latMax = Math.max(latMax, lat);
+            lonMin = Math.min(lonMin, lon);
+            lonMax = Math.max(lonMax, lon);
+        }
+        if (numCodes > 0) {
+            south = latMin;
+            north = latMax;
+            west = lonMin;
+            east = lonMax;
+        } else {
+            south = west = north = east = 0.0;
+        }
+    }
+
+    static RecordPointIndex create(Iterable<Record> records, long modificationTime) {
+        long[] codes = new long[1024];
+        int numCodes = 0;
+        for (Record record : records) {
+            GeoPos location = record.getLocation();
+            if (location != null && location.isValid()) {
+                if (numCodes == codes.length) {
+                    codes = Arrays.copyOf(codes, 2 * codes.length);
+                }
+                codes[numCodes++] = encode(location.getLat(), location.getLon());
+            }
+        }
+        return new RecordPointIndex(codes, numCodes, modificationTime);
+    }
+
+    long getModificationTime() {
+        return modificationTime;
+    }
+
+    int getNumRecords() {
+        return codes.length;
+    }
+
+    /**
+     * Gets the clusters or records within a viewport.
+     *
+     * @param south the southern bound of the viewport
+     * @param west  the western bound of the viewport, greater than the eastern bound if crossing the antimeridian
+     * @param north the northern bound of the viewport
+     * @param east  the eastern bound of the viewport
+     * @param zoom  the zoom level of the map
+     * @return the clusters, or the records if there are not more than {@link #MAX_POINTS}
+     */
+    DtoRecordTile getTile(double south, double west, double north, double east, int zoom) {
+        int level = Math.max(0, Math.min(MAX_LEVEL, zoom + CLUSTER_LEVEL_OFFSET));
+        double[][] lonRanges = west <= east ? new double[][]{{west, east}} : new double[][]{{west, 180.0}, {-180.0, east}};
+        while (level > 0 && countCells(level, south, north, lonRanges) > MAX_CELLS) {
+            level--;
+        }
+
+        int[] ranges = new int[32];
+        int numRanges = 0;
+        int numPoints = 0;
+        int shift = MAX_LEVEL - level;
+        long y0 = cellIndex(toY(south), level);
+        long y1 = cellIndex(toY(north), level);
+        for (double[] lonRange : lonRanges) {
+            long x0 = cellIndex(toX(lonRange[0]), level);
+            long x1 = cellIndex(toX(lonRange[1]), level);
+            for (long y = y0; y <= y1; y++) {
+                for (long x = x0; x <= x1; x++) {
+                    long start = interleave(x, y) << (2 * shift);
+                    long end = start + (1L << (2 * shift));
+                    int lo = lowerBound(start);
+                    int hi = lowerBound(end);
+                    if (hi > lo) {
+                        if (numRanges + 2 > ranges.length) {
+                            ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+                        }
+                        ranges[numRanges++] = lo;
+                        ranges[numRanges++] = hi;
+                        numPoints += hi - lo;
+                    }
+                }
+            }
+        }
+
+        boolean clustered = numPoints > MAX_POINTS;
+        int numLocations = clustered ? numRanges / 2 : numPoints;
+        float[] latLons = new float[2 * numLocations];
+        int[] counts = new int[numLocations];
+        int k = 0;
+        for (int r = 0; r < numRanges; r += 2) {
+            int lo = ranges[r];
+            int hi = ranges[r + 1];
+            if (clustered) {
+                int count = hi - lo;
+                latLons[2 * k] = (float) ((latSums[hi] - latSums[lo]) / count);
+                latLons[2 * k + 1] = (float) ((lonSums[hi] - lonSums[lo]) / count);
+                counts[k++] = count;
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    latLons[2 * k] = (float) decodeLat(codes[i]);
+                    latLons[2 * k + 1] = (float) decodeLon(codes[i]);
+                    counts[k++] = 1;
+                }
+            }
+        }
+        return new DtoRecordTile(codes.length, this.south, this.west, this.north, this.east, clustered, latLons, counts);
+    }
+
+    static long encode(double lat, double lon) {
+        return interleave(toX(lon), toY(lat));
+    }
+
+    static double decodeLat(long code) {
+        return (compact(code >>> 1) + 0.5) * 360.0 / NUM_CELLS - 90.0;
+    }
+
+    static double decodeLon(long code) {
+        return (compact(code) + 0.5) * 360.0 / NUM_CELLS - 180.0;
+    }
+
+    private static long countCells(int level, double south, double north, double[][] lonRanges) {
+        long numRows = cellIndex(toY(north), level) - cellIndex(toY(south), level) + 1;
+        long numCells = 0;
+        for (double[] lonRange : lonRanges) {
+            numCells += (cellIndex(toX(lonRange[1]), level) - cellIndex(toX(lonRange[0]), level) + 1) * numRows;
+        }
+        return numCells;
+    }
+
+    private static long toX(double lon) {
+        return quantize((lon + 180.0) / 360.0);
+    }
+
+    // latitudes are scaled like longitudes to get square cells, the upper half of the y range is unused
+    private static long toY(double lat) {
+        return quantize((lat + 90.0) / 360.0);
+    }
+
+    private static long quantize(double fraction) {
+        long index = (long) Math.floor(fraction * NUM_CELLS);
+        return Math.max(0, Math.min(NUM_CELLS - 1, index));
+    }
+
+    private static long cellIndex(long index, int level) {
+        return index >>> (MAX_LEVEL - level);
+    }
+
+    private static long interleave(long x, long y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(long v) {
+        v &= 0x00000000FFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static long compact(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
+    }
+
+    private int lowerBound(long code) {
+        int lo = 0;
+        int hi = codes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (codes[mid] < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
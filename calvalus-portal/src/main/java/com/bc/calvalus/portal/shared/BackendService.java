@@ -10,6 +10,7 @@ import com.google.gwt.user.client.rpc.RemoteServiceRelativePath;
 public interface BackendService extends RemoteService {
 
     String PARAM_NAME_CURRENT_USER_ONLY = "currentUserOnly";
+    String PARAM_NAME_STATES = "states";
 
 
     /**
@@ -85,6 +86,20 @@ public interface BackendService extends RemoteService {
      */
     DtoProduction[] getProductions(String filter) throws BackendServiceException;
 
+    /**
+     * Gets the changes of the productions since the given version, one page at a time.
+     *
+     * @param filter       A filter expression of parameters separated by '&amp;',
+     *                     e.g. currentUserOnly=true&amp;states=RUNNING,SCHEDULED
+     * @param sinceVersion The version of the last page received, or 0 for the full list.
+     * @param maxCount     The maximum number of changes of the page.
+     *
+     * @return The page of changes.
+     *
+     * @throws BackendServiceException If a server error occurred.
+     */
+    DtoProductionChanges getProductionChanges(String filter, long sinceVersion, int maxCount) throws BackendServiceException;
+
     /**
      * Orders a new productions.
      *
@@ -180,6 +195,23 @@ public interface BackendService extends RemoteService {
 
     float[] listUserRecordSource(String filePath) throws BackendServiceException;
 
+    /**
+     * Gets the locations of the records of a record source within a viewport of the map,
+     * aggregated into clusters unless there are only a few of them.
+     *
+     * @param filePath A relative path into the user's file space.
+     * @param south    The southern bound of the viewport.
+     * @param west     The western bound of the viewport.
+     * @param north    The northern bound of the viewport.
+     * @param east     The eastern bound of the viewport.
+     * @param zoom     The zoom level of the map.
+     *
+     * @return The clusters or records within the viewport.
+     *
+     * @throws BackendServiceException If an error occurred, e.g. the record source could not be read.
+     */
+    DtoRecordTile getUserRecordTile(String filePath, double south, double west, double north, double east, int zoom) throws BackendServiceException;
+
     DtoCalvalusConfig getCalvalusConfig();
 
     /**
@@ -31,6 +31,8 @@ public interface BackendServiceAsync {
 
     void getProductions(String filter, AsyncCallback<DtoProduction[]> callback);
 
+    void getProductionChanges(String filter, long sinceVersion, int maxCount, AsyncCallback<DtoProductionChanges> callback);
+
     void orderProduction(DtoProductionRequest request, AsyncCallback<DtoProductionResponse> callback);
 
     void cancelProductions(String[] productionIds, AsyncCallback<Void> callback);
@@ -51,6 +53,8 @@ public interface BackendServiceAsync {
 
     void listUserRecordSource(String s, AsyncCallback<float[]> callback);
 
+    void getUserRecordTile(String filePath, double south, double west, double north, double east, int zoom, AsyncCallback<DtoRecordTile> callback);
+
     void listSystemFiles(String baseDir, AsyncCallback<String[]> callback);
 
     void getCalvalusConfig(AsyncCallback<DtoCalvalusConfig> callback);
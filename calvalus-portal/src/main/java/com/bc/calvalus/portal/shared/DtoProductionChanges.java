@@ -0,0 +1,79 @@
+package com.bc.calvalus.portal.shared;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * A page of the changes of the production list since a version of the list.
+ * <p/>
+ * The client keeps the version of its last page and asks for the changes since that version.
+ * If the page is not complete, the next page is requested with the version of this page.
+ * If the server does not know the client's version anymore, e.g. after a restart, it sends
+ * the full list, and the client replaces its list by the productions of all pages.
+ */
+public class DtoProductionChanges implements IsSerializable {
+
+    private long version;
+    private boolean complete;
+    private boolean fullList;
+    private DtoProduction[] productions;
+    private String[] removedProductionIds;
+
+    /**
+     * No-arg constructor as required by {@link IsSerializable}. Don't use directly.
+     */
+    public DtoProductionChanges() {
+    }
+
+    public DtoProductionChanges(long version,
+                                boolean complete,
+                                boolean fullList,
+                                DtoProduction[] productions,
+                                String[] removedProductionIds) {
+        if (productions == null) {
+            throw new NullPointerException("productions");
+        }
+        if (removedProductionIds == null) {
+            throw new NullPointerException("removedProductionIds");
+        }
+        this.version = version;
+        this.complete = complete;
+        this.fullList = fullList;
+        this.productions = productions;
+        this.removedProductionIds = removedProductionIds;
+    }
+
+    /**
+     * @return The version to ask for the next changes with.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return {@code true} if there are no more changes after this page.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return {@code true} if the changes start with the full list of productions.
+     */
+    public boolean isFullList() {
+        return fullList;
+    }
+
+    /**
+     * @return The new or changed productions matching the filter.
+     */
+    public DtoProduction[] getProductions() {
+        return productions;
+    }
+
+    /**
+     * @return The IDs of productions deleted or not matching the filter anymore.
+     */
+    public String[] getRemovedProductionIds() {
+        return removedProductionIds;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bc.calvalus.portal.shared;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The locations of the records of a record source within a viewport of the map.
+ * <p/>
+ * If the viewport contains many records, they are aggregated into clusters given by the mean location
+ * and the number of their records. Otherwise the individual record locations are given with a count of one.
+ */
+public class DtoRecordTile implements IsSerializable {
+
+    private int numRecords;
+    private double south;
+    private double west;
+    private double north;
+    private double east;
+    private boolean clustered;
+    private float[] latLons;
+    private int[] counts;
+
+    /**
+     * No-arg constructor as required by {@link IsSerializable}. Don't use directly.
+     */
+    public DtoRecordTile() {
+    }
+
+    public DtoRecordTile(int numRecords,
+                         double south, double west, double north, double east,
+                         boolean clustered,
+                         float[] latLons,
+                         int[] counts) {
+        if (latLons == null) {
+            throw new NullPointerException("latLons");
+        }
+        if (counts == null) {
+            throw new NullPointerException("counts");
+        }
+        if (latLons.length != 2 * counts.length) {
+            throw new IllegalArgumentException("latLons.length != 2 * counts.length");
+        }
+        this.numRecords = numRecords;
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+        this.clustered = clustered;
+        this.latLons = latLons;
+        this.counts = counts;
+    }
+
+    /**
+     * @return The number of records with a valid location in the whole record source.
+     */
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return The southern bound of the locations of all records.
+     */
+    public double getSouth() {
+        return south;
+    }
+
+    /**
+     * @return The western bound of the locations of all records.
+     */
+    public double getWest() {
+        return west;
+    }
+
+    /**
+     * @return The northern bound of the locations of all records.
+     */
+    public double getNorth() {
+        return north;
+    }
+
+    /**
+     * @return The eastern bound of the locations of all records.
+     */
+    public double getEast() {
+        return east;
+    }
+
+    /**
+     * @return {@code true} if the locations are clusters, {@code false} if they are individual records.
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * @return The lat/lon pairs of the clusters or records within the viewport.
+     */
+    public float[] getLatLons() {
+        return latLons;
+    }
+
+    /**
+     * @return The number of records of each cluster, one for individual records.
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+}
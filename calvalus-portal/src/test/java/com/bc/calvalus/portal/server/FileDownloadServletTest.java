@@ -0,0 +1,58 @@
+package com.bc.calvalus.portal.server;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileDownloadServletTest {
+
+    @Test
+    public void testParseSingleRanges() {
+        assertRange(0, 499, FileDownloadServlet.parseRanges("bytes=0-499", 1000));
+        assertRange(500, 999, FileDownloadServlet.parseRanges("bytes=500-", 1000));
+        assertRange(900, 999, FileDownloadServlet.parseRanges("bytes=-100", 1000));
+        assertRange(0, 999, FileDownloadServlet.parseRanges("bytes=-2000", 1000));
+        assertRange(990, 999, FileDownloadServlet.parseRanges("bytes=990-5000", 1000));
+    }
+
+    @Test
+    public void testParseMultipleRanges() {
+        List<long[]> ranges = FileDownloadServlet.parseRanges("bytes=0-99, 200-299,-10", 1000);
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new long[]{0, 99}, ranges.get(0));
+        assertArrayEquals(new long[]{200, 299}, ranges.get(1));
+        assertArrayEquals(new long[]{990, 999}, ranges.get(2));
+    }
+
+    @Test
+    public void testParseUnsatisfiableRanges() {
+        assertTrue(FileDownloadServlet.parseRanges("bytes=1000-", 1000).isEmpty());
+        assertTrue(FileDownloadServlet.parseRanges("bytes=-0", 1000).isEmpty());
+    }
+
+    @Test
+    public void testParseInvalidRanges() {
+        assertNull(FileDownloadServlet.parseRanges("items=0-1", 1000));
+        assertNull(FileDownloadServlet.parseRanges("bytes=abc", 1000));
+        assertNull(FileDownloadServlet.parseRanges("bytes=5-1", 1000));
+        assertNull(FileDownloadServlet.parseRanges("bytes=x-1", 1000));
+    }
+
+    @Test
+    public void testETagDependsOnLengthAndModificationTime() {
+        assertEquals(FileDownloadServlet.createETag(1000, 1L), FileDownloadServlet.createETag(1000, 1L));
+        assertNotEquals(FileDownloadServlet.createETag(1000, 1L), FileDownloadServlet.createETag(1000, 2L));
+        assertNotEquals(FileDownloadServlet.createETag(1000, 1L), FileDownloadServlet.createETag(1001, 1L));
+    }
+
+    private static void assertRange(long first, long last, List<long[]> ranges) {
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[]{first, last}, ranges.get(0));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.commons.AbstractWorkflowItem;
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.portal.shared.DtoProcessState;
+import com.bc.calvalus.portal.shared.DtoProcessStatus;
+import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionChanges;
+import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ProductionChangeFeedTest {
+
+    private ProductionChangeFeed feed;
+    private int numConversions;
+
+    @Before
+    public void setUp() throws Exception {
+        numConversions = 0;
+        feed = new ProductionChangeFeed(production -> {
+            numConversions++;
+            DtoProcessState state = DtoProcessState.valueOf(production.getProcessingStatus().getState().name());
+            return new DtoProduction(production.getId(), production.getName(),
+                                     production.getProductionRequest().getUserName(),
+                                     production.getProductionRequest().getProductionType(),
+                                     null, "", null, false,
+                                     new DtoProcessStatus(state), new DtoProcessStatus());
+        }, 1000);
+    }
+
+    @Test
+    public void testFullListThenChangesOnly() throws Exception {
+        Production p1 = production("p1", "alice", ProcessState.COMPLETED);
+        Production p2 = production("p2", "bob", ProcessState.RUNNING);
+        Production p3 = production("p3", "alice", ProcessState.SCHEDULED);
+        feed.update(new Production[]{p1, p2, p3});
+
+        DtoProductionChanges changes = feed.getChanges(0, null, null, 100);
+        assertTrue(changes.isFullList());
+        assertTrue(changes.isComplete());
+        assertIds(changes.getProductions(), "p1", "p2", "p3");
+        assertEquals(1003, changes.getVersion());
+
+        feed.update(new Production[]{p1, p2, p3});
+        changes = feed.getChanges(changes.getVersion(), null, null, 100);
+        assertFalse(changes.isFullList());
+        assertEquals(0, changes.getProductions().length);
+        assertEquals(1003, changes.getVersion());
+
+        p3.setProcessingStatus(new ProcessStatus(ProcessState.RUNNING, 0.5f, ""));
+        feed.update(new Production[]{p1, p2, p3});
+        changes = feed.getChanges(changes.getVersion(), null, null, 100);
+        assertIds(changes.getProductions(), "p3");
+        assertEquals(DtoProcessState.RUNNING, changes.getProductions()[0].getProcessingStatus().getState());
+        assertEquals(1004, changes.getVersion());
+        assertEquals(4, numConversions);
+    }
+
+    @Test
+    public void testRemovedProductions() throws Exception {
+        Production p1 = production("p1", "alice", ProcessState.COMPLETED);
+        Production p2 = production("p2", "bob", ProcessState.COMPLETED);
+        feed.update(new Production[]{p1, p2});
+        long version = feed.getChanges(0, null, null, 100).getVersion();
+
+        feed.update(new Production[]{p2});
+        DtoProductionChanges changes = feed.getChanges(version, null, null, 100);
+        assertEquals(0, changes.getProductions().length);
+        assertArrayEquals(new String[]{"p1"}, changes.getRemovedProductionIds());
+
+        // the full list does not report removals
+        changes = feed.getChanges(0, null, null, 100);
+        assertIds(changes.getProductions(), "p2");
+        assertEquals(0, changes.getRemovedProductionIds().length);
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        feed.update(new Production[]{
+                production("p1", "alice", ProcessState.COMPLETED),
+                production("p2", "alice", ProcessState.COMPLETED),
+                production("p3", "alice", ProcessState.COMPLETED),
+                production("p4", "alice", ProcessState.COMPLETED),
+                production("p5", "alice", ProcessState.COMPLETED)
+        });
+        DtoProductionChanges page1 = feed.getChanges(0, null, null, 2);
+        assertTrue(page1.isFullList());
+        assertFalse(page1.isComplete());
+        assertIds(page1.getProductions(), "p1", "p2");
+        DtoProductionChanges page2 = feed.getChanges(page1.getVersion(), null, null, 2);
+        assertFalse(page2.isFullList());
+        assertFalse(page2.isComplete());
+        assertIds(page2.getProductions(), "p3", "p4");
+        DtoProductionChanges page3 = feed.getChanges(page2.getVersion(), null, null, 2);
+        assertTrue(page3.isComplete());
+        assertIds(page3.getProductions(), "p5");
+        assertEquals(feed.getVersion(), page3.getVersion());
+    }
+
+    @Test
+    public void testUserAndStateFilter() throws Exception {
+        Production p1 = production("p1", "alice", ProcessState.RUNNING);
+        Production p2 = production("p2", "bob", ProcessState.RUNNING);
+        Production p3 = production("p3", "Alice", ProcessState.COMPLETED);
+        feed.update(new Production[]{p1, p2, p3});
+
+        assertIds(feed.getChanges(0, "alice", null, 100).getProductions(), "p1", "p3");
+        EnumSet<DtoProcessState> running = EnumSet.of(DtoProcessState.RUNNING);
+        DtoProductionChanges changes = feed.getChanges(0, "alice", running, 100);
+        assertIds(changes.getProductions(), "p1");
+
+        // a production leaving the requested states is removed from the client's list
+        p1.setProcessingStatus(new ProcessStatus(ProcessState.COMPLETED));
+        feed.update(new Production[]{p1, p2, p3});
+        changes = feed.getChanges(changes.getVersion(), "alice", running, 100);
+        assertEquals(0, changes.getProductions().length);
+        assertArrayEquals(new String[]{"p1"}, changes.getRemovedProductionIds());
+    }
+
+    @Test
+    public void testUnknownVersionGetsFullList() throws Exception {
+        feed.update(new Production[]{production("p1", "alice", ProcessState.COMPLETED)});
+        assertTrue(feed.getChanges(999, null, null, 100).isFullList());
+        assertTrue(feed.getChanges(5000, null, null, 100).isFullList());
+        assertFalse(feed.getChanges(1000, null, null, 100).isFullList());
+    }
+
+    @Test
+    public void testPrunedRemovalsForceFullList() throws Exception {
+        int numProductions = ProductionChangeFeed.MAX_REMOVAL_MARKS + 10;
+        Production[] productions = new Production[numProductions];
+        for (int i = 0; i < numProductions; i++) {
+            productions[i] = production("p" + i, "alice", ProcessState.COMPLETED);
+        }
+        feed.update(productions);
+        long version = feed.getVersion();
+        feed.update(new Production[0]);
+        assertTrue(feed.getChanges(version, null, null, 100).isFullList());
+        assertFalse(feed.getChanges(feed.getVersion(), null, null, 100).isFullList());
+    }
+
+    @Test
+    public void testPagedFullListAfterPruningTerminates() throws Exception {
+        List<Production> live = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            live.add(production("p" + i, "alice", ProcessState.COMPLETED));
+        }
+        List<Production> all = new ArrayList<>(live);
+        for (int i = 0; i < ProductionChangeFeed.MAX_REMOVAL_MARKS + 10; i++) {
+            all.add(production("x" + i, "alice", ProcessState.COMPLETED));
+        }
+        feed.update(all.toArray(new Production[0]));
+        for (int i = 20; i < 30; i++) {
+            live.add(production("p" + i, "alice", ProcessState.COMPLETED));
+        }
+        feed.update(live.toArray(new Production[0]));
+        assertTrue(feed.getChanges(1000, null, null, 100).isFullList());
+
+        Set<String> ids = new HashSet<>();
+        long version = 0;
+        DtoProductionChanges changes;
+        int numPages = 0;
+        do {
+            changes = feed.getChanges(version, null, null, 5);
+            assertEquals(numPages == 0, changes.isFullList());
+            for (DtoProduction production : changes.getProductions()) {
+                ids.add(production.getId());
+            }
+            ids.removeAll(Arrays.asList(changes.getRemovedProductionIds()));
+            version = changes.getVersion();
+            numPages++;
+            assertTrue("paging does not terminate", numPages <= (ProductionChangeFeed.MAX_REMOVAL_MARKS + 30) / 5 + 1);
+        } while (!changes.isComplete());
+        assertEquals(30, ids.size());
+        for (Production production : live) {
+            assertTrue(ids.contains(production.getId()));
+        }
+    }
+
+    private static void assertIds(DtoProduction[] productions, String... expectedIds) {
+        String[] ids = new String[productions.length];
+        for (int i = 0; i < productions.length; i++) {
+            ids[i] = productions[i].getId();
+        }
+        assertArrayEquals(expectedIds, ids);
+    }
+
+    private static Production production(String id, String user, ProcessState state) {
+        ProductionRequest productionRequest = new ProductionRequest("L2", user);
+        return new Production(id, id, null, new String[0], "staging", false, productionRequest,
+                              new TestWorkflowItem(new ProcessStatus(state)));
+    }
+
+    private static class TestWorkflowItem extends AbstractWorkflowItem {
+
+        private TestWorkflowItem(ProcessStatus status) {
+            super(status);
+        }
+
+        @Override
+        public void submit() {
+        }
+
+        @Override
+        public void kill() {
+        }
+
+        @Override
+        public void updateStatus() {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.portal.shared.DtoRecordTile;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecordPointIndexTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        long code = RecordPointIndex.encode(53.5, 10.25);
+        assertEquals(53.5, RecordPointIndex.decodeLat(code), 1e-6);
+        assertEquals(10.25, RecordPointIndex.decodeLon(code), 1e-6);
+        code = RecordPointIndex.encode(-90.0, 180.0);
+        assertEquals(-90.0, RecordPointIndex.decodeLat(code), 1e-6);
+        assertEquals(180.0, RecordPointIndex.decodeLon(code), 1e-6);
+    }
+
+    @Test
+    public void testFewRecordsAreReturnedIndividually() throws Exception {
+        RecordPointIndex index = index(new double[]{10.0, 20.0, -30.0, 40.0, 50.0, -60.0});
+        DtoRecordTile tile = index.getTile(-90.0, -180.0, 90.0, 180.0, 0);
+        assertEquals(3, tile.getNumRecords());
+        assertFalse(tile.isClustered());
+        assertArrayEquals(new int[]{1, 1, 1}, tile.getCounts());
+        assertEquals(-30.0, tile.getSouth(), 1e-6);
+        assertEquals(50.0, tile.getNorth(), 1e-6);
+        assertEquals(-60.0, tile.getWest(), 1e-6);
+        assertEquals(40.0, tile.getEast(), 1e-6);
+    }
+
+    @Test
+    public void testManyRecordsAreClustered() throws Exception {
+        // two dense groups, one in the north-east and one in the south-west
+        int numRecords = RecordPointIndex.MAX_POINTS;
+        double[] latLons = new double[4 * numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            latLons[4 * i] = 45.0 + 0.001 * i;
+            latLons[4 * i + 1] = 100.0;
+            latLons[4 * i + 2] = -45.0;
+            latLons[4 * i + 3] = -100.0 - 0.001 * i;
+        }
+        RecordPointIndex index = index(latLons);
+
+        DtoRecordTile tile = index.getTile(-90.0, -180.0, 90.0, 180.0, 0);
+        assertTrue(tile.isClustered());
+        assertEquals(2, tile.getCounts().length);
+        int total = 0;
+        for (int count : tile.getCounts()) {
+            total += count;
+        }
+        assertEquals(2 * numRecords, total);
+
+        // the viewport of one group at a high zoom level gets its records
+        tile = index.getTile(40.0, 90.0, 50.0, 110.0, 12);
+        assertFalse(tile.isClustered());
+        assertEquals(numRecords, tile.getCounts().length);
+        assertEquals(45.0, tile.getLatLons()[0], 1e-4);
+        assertEquals(100.0, tile.getLatLons()[1], 1e-4);
+    }
+
+    @Test
+    public void testClusterLocationIsMeanOfRecords() throws Exception {
+        int numRecords = RecordPointIndex.MAX_POINTS + 1;
+        double[] latLons = new double[2 * numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            latLons[2 * i] = i % 2 == 0 ? 1.0 : 2.0;
+            latLons[2 * i + 1] = i % 2 == 0 ? 3.0 : 4.0;
+        }
+        DtoRecordTile tile = index(latLons).getTile(0.0, 0.0, 10.0, 10.0, 0);
+        assertTrue(tile.isClustered());
+        assertArrayEquals(new int[]{numRecords}, tile.getCounts());
+        assertEquals(1.5, tile.getLatLons()[0], 1e-3);
+        assertEquals(3.5, tile.getLatLons()[1], 1e-3);
+    }
+
+    @Test
+    public void testViewportCrossingAntimeridian() throws Exception {
+        RecordPointIndex index = index(new double[]{0.0, 179.0, 0.0, -179.0, 0.0, 0.0});
+        DtoRecordTile tile = index.getTile(-10.0, 170.0, 10.0, -170.0, 5);
+        assertEquals(2, tile.getCounts().length);
+    }
+
+    @Test
+    public void testEmptyViewport() throws Exception {
+        RecordPointIndex index = index(new double[]{10.0, 20.0});
+        DtoRecordTile tile = index.getTile(-50.0, -50.0, -40.0, -40.0, 8);
+        assertEquals(1, tile.getNumRecords());
+        assertEquals(0, tile.getCounts().length);
+        assertEquals(0, tile.getLatLons().length);
+    }
+
+    private static RecordPointIndex index(double[] latLons) {
+        long[] codes = new long[latLons.length / 2];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = RecordPointIndex.encode(latLons[2 * i], latLons[2 * i + 1]);
+        }
+        return new RecordPointIndex(codes, codes.length, 0L);
+    }
+}
@@ -40,11 +40,21 @@ public interface JobConfigNames {
     String CALVALUS_INPUT_PRODUCT_IDENTIFIERS = "calvalus.input.productIdentifiers";
     String CALVALUS_INPUT_COLLECTION_NAME = "calvalus.input.collectionName";
     String CALVALUS_INPUT_PRODUCT_TYPE = "calvalus.input.productType";
+    String CALVALUS_INPUT_CACHE_DIR = "calvalus.input.cache.dir";
+    String CALVALUS_INPUT_CACHE_SIZE = "calvalus.input.cache.size";
+    String CALVALUS_INPUT_CACHE_LINK = "calvalus.input.cache.link";
+    String CALVALUS_INPUT_PREFETCH = "calvalus.input.prefetch";
+    String CALVALUS_INPUT_EXTRACTION_THREADS = "calvalus.input.extractionThreads";
+    String CALVALUS_INPUT_PRODUCTS_PER_SPLIT = "calvalus.input.productsPerSplit";
+    String CALVALUS_INPUT_SPLIT_SIZE = "calvalus.input.splitSize";
+    String CALVALUS_INPUT_FAIL_ON_PRODUCT_ERROR = "calvalus.input.failOnProductError";
 
     String CALVALUS_OUTPUT_DIR = "calvalus.output.dir";
     String CALVALUS_OUTPUT_FORMAT = "calvalus.output.format";
     String CALVALUS_OUTPUT_PRODUCT_TYPE = "calvalus.output.productType";
     String CALVALUS_OUTPUT_COMPRESSION = "calvalus.output.compression";
+    String CALVALUS_OUTPUT_COMPRESSION_THREADS = "calvalus.output.compressionThreads";
+    String CALVALUS_OUTPUT_COMPRESSION_MEMORY = "calvalus.output.compressionMemory";
     String CALVALUS_OUTPUT_REPLACE_NAN_VALUE = "calvalus.output.replaceNanValue";
     String CALVALUS_OUTPUT_CRS = "calvalus.output.crs";
     String CALVALUS_OUTPUT_BANDLIST = "calvalus.output.bandList";
@@ -57,6 +67,10 @@ public interface JobConfigNames {
 
     String CALVALUS_OUTPUT_QUICKLOOKS = "calvalus.output.quicklooks";
     String CALVALUS_QUICKLOOK_PARAMETERS = "calvalus.ql.parameters";
+    String CALVALUS_QUICKLOOK_MOSAIC = "calvalus.ql.mosaic";
+    String CALVALUS_QUICKLOOK_MOSAIC_LEVEL = "calvalus.ql.mosaic.level";
+    String CALVALUS_QUICKLOOK_MOSAIC_COMPOSITING = "calvalus.ql.mosaic.compositing";
+    String CALVALUS_QUICKLOOK_MOSAIC_REDUCERS = "calvalus.ql.mosaic.reducers";
 
     String CALVALUS_REQUEST_SIZE_LIMIT = "calvalus.requestSizeLimit";
 
@@ -114,6 +128,12 @@ public interface JobConfigNames {
 
     String CALVALUS_DEBUG_TILECACHE = "calvalus.debug.tileCache";
     String CALVALUS_DEBUG_FIRE = "calvalus.debug.fire";
+    String CALVALUS_FIRE_GRID_THREADS = "calvalus.fire.gridThreads";
+    String CALVALUS_METRICS_FILE = "calvalus.metrics.file";
+    String CALVALUS_STAGING_DISTRIBUTED = "calvalus.staging.distributed";
+    String CALVALUS_PRODUCTION_MAX_RUNNING_JOBS = "calvalus.production.maxRunningJobs";
+    String CALVALUS_L3_MULTI_PERIOD = "calvalus.l3.multiPeriod";
+    String CALVALUS_L3_PERIODS = "calvalus.l3.periods";
     String CALVALUS_INPUT_SUBSETTING = "calvalus.input.subsetting";
     String CALVALUS_OUTPUT_SUBSETTING = "calvalus.output.subsetting";
     String CALVALUS_OUTPUT_DATE_ELEMENT = "calvalus.output.dateElement";
@@ -140,6 +160,7 @@ public interface JobConfigNames {
     String OUTPUT_VERSION = "outputVersion";
     String OUTPUT_FORMAT = "outputFormat";
     String OUTPUT_COMPRESSION = "outputCompression";
+    String OUTPUT_COMPRESSION_THREADS = "outputCompressionThreads";
     String OUTPUT_CRS = "outputCrs";
     String REPLACE_NAN_VALUE = "replaceNanValue";
     String OUTPUT_BANDS = "outputBands";
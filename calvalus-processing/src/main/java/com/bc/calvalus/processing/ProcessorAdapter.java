@@ -21,10 +21,12 @@ import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.beam.GpfUtils;
 import com.bc.calvalus.processing.hadoop.ParameterizedSplit;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
@@ -44,6 +46,10 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -92,6 +98,7 @@ public abstract class ProcessorAdapter {
     public enum MODE {TARGET, EXECUTE}
 
     private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final Set<String> COPIED_PATCHES = new HashSet<>();
     public static final String[] EMPTY_PARAMETERS = new String[0];
 
     private final MapContext mapContext;
@@ -103,10 +110,21 @@ public abstract class ProcessorAdapter {
     private Rectangle roiRectangle;
     private File inputFile;
     private AffineTransform input2OutputTransform;
+    private final List<File> localFiles = new ArrayList<>();
 
     public ProcessorAdapter(MapContext mapContext) {
+        this(mapContext, mapContext.getInputSplit());
+    }
+
+    /**
+     * Creates an adapter for one product of a multi-product split.
+     *
+     * @param mapContext the context of the map task
+     * @param inputSplit the split of the product to be processed by this adapter
+     */
+    public ProcessorAdapter(MapContext mapContext, InputSplit inputSplit) {
         this.mapContext = mapContext;
-        this.inputSplit = mapContext.getInputSplit();
+        this.inputSplit = inputSplit;
         this.conf = mapContext.getConfiguration();
         if (conf.getBoolean("calvalus.snap.setSnapProperties", true)) {
             String cwd = new File(".").getAbsolutePath();
@@ -138,6 +156,13 @@ public abstract class ProcessorAdapter {
         return conf;
     }
 
+    /**
+     * @return the split of the product processed by this adapter
+     */
+    public InputSplit getInputSplit() {
+        return inputSplit;
+    }
+
     protected Logger getLogger() {
         return LOG;
     }
@@ -151,6 +176,11 @@ public abstract class ProcessorAdapter {
         //shallowCopyPatches(new File(".").getAbsolutePath());
     }
 
+    /**
+     * Merges the patch bundles linked as {@code <name>-patch} into the working directory by a tree
+     * {@code <name>} of symbolic links. Each patch link is merged once per JVM and target, so that patches
+     * linked by later tasks running in the same JVM, e.g. in uber jobs, are merged as well.
+     */
     protected static void shallowCopyPatches(String wd) throws IOException {
         java.nio.file.Path dir = Paths.get(wd);
         try (DirectoryStream<java.nio.file.Path> directoryStream =
@@ -162,6 +192,13 @@ public abstract class ProcessorAdapter {
                                                   }
                                               })) {
             for (java.nio.file.Path srcChild : directoryStream) {
+                String patch = srcChild + " -> " + srcChild.toRealPath();
+                synchronized (COPIED_PATCHES) {
+                    if (COPIED_PATCHES.contains(patch)) {
+                        LOG.info("patch already merged: " + patch);
+                        continue;
+                    }
+                }
                 String srcName = srcChild.getFileName().toString();
                 String destName = srcName.substring(0, srcName.length() - "-patch".length());
                 java.nio.file.Path destChild = dir.resolve(destName);
@@ -169,6 +206,9 @@ public abstract class ProcessorAdapter {
                     Files.createDirectory(destChild);
                 } catch (FileAlreadyExistsException ignore) {}
                 shallowCopyRecursive(srcChild, destChild);
+                synchronized (COPIED_PATCHES) {
+                    COPIED_PATCHES.add(patch);
+                }
             }
         }
     }
@@ -281,7 +321,7 @@ public abstract class ProcessorAdapter {
      * @return the "year/month/day" part of the inputProductPath,
      * returns {@null}, if the input product path contains no date part
      */
-    static String getDatePart(Path inputProductPath) {
+    public static String getDatePart(Path inputProductPath) {
         Path day = inputProductPath.getParent();
         if (day != null && !day.getName().isEmpty()) {
             Path month = day.getParent();
@@ -430,11 +470,19 @@ public abstract class ProcessorAdapter {
     }
 
     private Product openInputProduct() throws IOException {
+        // covers both the already local input file and the input path, incl. copying and unpacking
+        try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.PRODUCT_OPEN)) {
+            return readInputProduct();
+        }
+    }
+
+    private Product readInputProduct() throws IOException {
         Configuration conf = getConfiguration();
         String inputFormat = conf.get(JobConfigNames.CALVALUS_INPUT_FORMAT, null);
         if (inputFile != null) {
             Product product;
-            getMapContext().getCounter("Direct File System Counters", "INPUT_FILE_BYTES_READ").setValue(inputFile.length());
+            getMapContext().getCounter("Direct File System Counters", "INPUT_FILE_BYTES_READ").increment(inputFile.length());
+            TaskMetrics.get().addBytesRead(TaskMetrics.PRODUCT_OPEN, inputFile.length());
             if (inputFormat != null) {
                 LOG.info(String.format("openInputProduct: inputFile  = %s inputFormat  = %s", inputFile, inputFormat));
                 product = ProductIO.readProduct(inputFile, inputFormat);
@@ -446,11 +494,17 @@ public abstract class ProcessorAdapter {
             return product;
         } else {
             LOG.info(String.format("openInputProduct: inputPath  = %s inputFormat  = %s", getInputPath(), inputFormat));
-            Product product = CalvalusProductIO.readProduct(getInputPath(), getConfiguration(), inputFormat);
+            Product product;
+            CalvalusProductIO.beginRecordingLocalFiles();
+            try {
+                product = CalvalusProductIO.readProduct(getInputPath(), getConfiguration(), inputFormat);
+            } finally {
+                localFiles.addAll(CalvalusProductIO.endRecordingLocalFiles());
+            }
 
             if (inputSplit instanceof FileSplit) {
                 FileSplit fileSplit = (FileSplit) inputSplit;
-                getMapContext().getCounter("Direct File System Counters", "FILE_SPLIT_BYTES_READ").setValue(fileSplit.getLength());
+                getMapContext().getCounter("Direct File System Counters", "FILE_SPLIT_BYTES_READ").increment(fileSplit.getLength());
             }
             File fileLocation = product.getFileLocation();
             LOG.info(String.format("openInputProduct: fileLocation  = %s", fileLocation));
@@ -472,9 +526,24 @@ public abstract class ProcessorAdapter {
     /**
      * Disposes the resources allocated by this processor adapter.
      * All products opened or processed by this adapter are disposed as well.
+     * Local copies and extracted archives of the input product are deleted,
+     * so that a task processing several products does not fill up its local disk.
      */
     public void dispose() {
         closeInputProduct();
+        deleteLocalFiles();
+    }
+
+    private void deleteLocalFiles() {
+        for (File localFile : localFiles) {
+            if (localFile.exists() || Files.isSymbolicLink(localFile.toPath())) {
+                LOG.info("deleting local copy " + localFile);
+                if (!FileUtil.fullyDelete(localFile)) {
+                    LOG.warning("failed to delete local copy " + localFile);
+                }
+            }
+        }
+        localFiles.clear();
     }
 
     public void closeInputProduct() {
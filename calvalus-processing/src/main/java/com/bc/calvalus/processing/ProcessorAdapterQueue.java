@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.hadoop.MultiProductSplit;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides the processor adapters for the products of a map task, one after the other.
+ * <p/>
+ * A task with a {@link CombineFileSplit}, usually a {@link MultiProductSplit}, processes several products.
+ * While the caller processes the product of the current adapter, the input product of the next adapter is
+ * opened in the background, which includes the copy to local disk and the uncompression done by
+ * {@code CalvalusProductIO.readProduct}.
+ * Thus the CPU is kept busy during the input I/O of the next product. The input product is opened in advance
+ * only for adapters supporting pull processing; the executable adapter has its own input prefetch.
+ * <p/>
+ * Usage:
+ * <pre>
+ * try (ProcessorAdapterQueue queue = new ProcessorAdapterQueue(context)) {
+ *     while (queue.hasNext()) {
+ *         ProcessorAdapter processorAdapter = queue.next();
+ *         try {
+ *             ...
+ *         } finally {
+ *             processorAdapter.dispose();
+ *         }
+ *     }
+ * }
+ * </pre>
+ * A task with a single-product split gets a single adapter for its split.
+ * <p/>
+ * A mapper that can skip a failed product passes the exception to {@link #productFailed} instead
+ * of failing the task. The task fails only if all its products failed, or on the first failure if
+ * {@code calvalus.input.failOnProductError} is set.
+ */
+public class ProcessorAdapterQueue implements Closeable {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
+
+    /**
+     * Creates the adapter for the split of a product, by default {@link ProcessorFactory#createAdapter(MapContext, InputSplit)}.
+     */
+    interface AdapterFactory {
+
+        ProcessorAdapter createAdapter(MapContext mapContext, InputSplit productSplit) throws IOException;
+    }
+
+    private final MapContext mapContext;
+    private final List<InputSplit> productSplits;
+    private final AdapterFactory adapterFactory;
+    private final ExecutorService executor;
+    private int nextIndex;
+    private ProcessorAdapter nextAdapter;
+    private Future<?> nextOpening;
+    private int numFailed;
+
+    public ProcessorAdapterQueue(MapContext mapContext) {
+        this(mapContext, getProductSplits(mapContext.getInputSplit()));
+    }
+
+    ProcessorAdapterQueue(MapContext mapContext, List<InputSplit> productSplits) {
+        this(mapContext, productSplits, ProcessorFactory::createAdapter);
+    }
+
+    ProcessorAdapterQueue(MapContext mapContext, List<InputSplit> productSplits, AdapterFactory adapterFactory) {
+        this.mapContext = mapContext;
+        this.productSplits = productSplits;
+        this.adapterFactory = adapterFactory;
+        this.executor = productSplits.size() > 1 ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "product-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * @return the splits of the single products of a task's split
+     */
+    public static List<InputSplit> getProductSplits(InputSplit inputSplit) {
+        if (!(inputSplit instanceof CombineFileSplit)) {
+            return Collections.singletonList(inputSplit);
+        }
+        CombineFileSplit combineFileSplit = (CombineFileSplit) inputSplit;
+        String[] locations;
+        try {
+            locations = combineFileSplit.getLocations();
+        } catch (IOException e) {
+            locations = new String[0];
+        }
+        List<InputSplit> productSplits = new ArrayList<>();
+        for (int i = 0; i < combineFileSplit.getNumPaths(); i++) {
+            productSplits.add(new FileSplit(combineFileSplit.getPath(i),
+                                            combineFileSplit.getOffset(i),
+                                            combineFileSplit.getLength(i),
+                                            locations));
+        }
+        return productSplits;
+    }
+
+    public int size() {
+        return productSplits.size();
+    }
+
+    public boolean hasNext() {
+        return nextIndex < productSplits.size();
+    }
+
+    /**
+     * Returns the adapter for the next product and starts opening the product after it.
+     * The caller has to dispose the returned adapter.
+     *
+     * @return the adapter for the next product
+     * @throws IOException if the adapter cannot be created, or if opening its product in advance failed with an error.
+     *                     An exception while opening the product in advance only closes the product, it is opened
+     *                     again when processed, so that the failure is handled with the product.
+     */
+    public ProcessorAdapter next() throws IOException {
+        ProcessorAdapter adapter;
+        if (nextAdapter != null) {
+            adapter = nextAdapter;
+            awaitOpening();
+            nextAdapter = null;
+        } else {
+            adapter = adapterFactory.createAdapter(mapContext, productSplits.get(nextIndex));
+        }
+        if (mapContext.getInputSplit() instanceof MultiProductSplit) {
+            ((MultiProductSplit) mapContext.getInputSplit()).setProductIndex(nextIndex);
+        }
+        nextIndex++;
+        if (executor != null && hasNext()) {
+            nextAdapter = adapterFactory.createAdapter(mapContext, productSplits.get(nextIndex));
+            if (nextAdapter.supportsPullProcessing()) {
+                final ProcessorAdapter prefetchedAdapter = nextAdapter;
+                nextOpening = executor.submit(() -> openInputProduct(prefetchedAdapter));
+            }
+        }
+        return adapter;
+    }
+
+    /**
+     * Counts and logs the failure of a product of the task.
+     *
+     * @param adapter the adapter of the failed product, already disposed by the caller
+     * @param e       the cause of the failure
+     * @throws IOException if the task shall fail, i.e. if all its products failed or if
+     *                     {@code calvalus.input.failOnProductError} is set
+     */
+    public void productFailed(ProcessorAdapter adapter, Exception e) throws IOException {
+        numFailed++;
+        mapContext.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product failed").increment(1);
+        LOG.log(Level.SEVERE, "processing " + adapter.getInputPath() + " failed: " + e.toString(), e);
+        if (numFailed == productSplits.size()
+            || mapContext.getConfiguration().getBoolean(JobConfigNames.CALVALUS_INPUT_FAIL_ON_PRODUCT_ERROR, false)) {
+            throw e instanceof IOException ? (IOException) e : new IOException("Processing exception: " + e.toString(), e);
+        }
+        LOG.warning(String.format("%d of %d products failed, continuing with the next product", numFailed, productSplits.size()));
+    }
+
+    private static void openInputProduct(ProcessorAdapter adapter) {
+        try {
+            adapter.getInputProduct();
+            LOG.info("prefetched input " + adapter.getInputPath());
+        } catch (Exception e) {
+            // the product is opened again when it is processed, and then the failure is handled by the caller
+            LOG.log(Level.WARNING, "prefetching input " + adapter.getInputPath() + " failed: " + e.getMessage(), e);
+            adapter.closeInputProduct();
+        }
+    }
+
+    private void awaitOpening() throws IOException {
+        if (nextOpening == null) {
+            return;
+        }
+        try {
+            nextOpening.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while prefetching input", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            nextOpening = null;
+        }
+    }
+
+    /**
+     * Disposes the prefetched adapter, if any, and stops the prefetching thread.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (nextAdapter != null) {
+                try {
+                    awaitOpening();
+                } finally {
+                    nextAdapter.dispose();
+                    nextAdapter = null;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
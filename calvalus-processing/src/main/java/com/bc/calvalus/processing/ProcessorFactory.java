@@ -27,6 +27,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.esa.snap.core.datamodel.Product;
 
@@ -51,17 +52,24 @@ public class ProcessorFactory {
     enum ProcessorType {OPERATOR, GRAPH, EXEC, NONE}
 
     public static ProcessorAdapter createAdapter(MapContext mapContext) throws IOException {
+        return createAdapter(mapContext, mapContext.getInputSplit());
+    }
+
+    /**
+     * Creates an adapter for one product of the task, used for tasks with multi-product splits.
+     */
+    public static ProcessorAdapter createAdapter(MapContext mapContext, InputSplit inputSplit) throws IOException {
         String processorTypeString = mapContext.getConfiguration().get(JobConfigNames.CALVALUS_L2_PROCESSOR_TYPE, "NONE");
         ProcessorType processorType = ProcessorType.valueOf(processorTypeString);
         switch (processorType) {
             case OPERATOR:
-                return new SnapOperatorAdapter(mapContext);
+                return new SnapOperatorAdapter(mapContext, inputSplit);
             case GRAPH:
-                return new SnapGraphAdapter(mapContext);
+                return new SnapGraphAdapter(mapContext, inputSplit);
             case EXEC:
-                return new ExecutableProcessorAdapter(mapContext);
+                return new ExecutableProcessorAdapter(mapContext, inputSplit);
             case NONE:
-                return new SubsetProcessorAdapter(mapContext);
+                return new SubsetProcessorAdapter(mapContext, inputSplit);
 
         }
         throw new IllegalArgumentException("Unknown processor type.");
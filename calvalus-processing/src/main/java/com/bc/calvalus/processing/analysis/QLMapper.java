@@ -37,6 +37,7 @@ import java.awt.image.RenderedImage;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -60,7 +61,9 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
                 final String inputFileName = processorAdapter.getInputPath().getName();
                 final String productName = FileUtils.getFilenameWithoutExtension(inputFileName);
                 final Quicklooks.QLConfig[] configs = Quicklooks.get(context.getConfiguration());
-                for (Quicklooks.QLConfig config : configs) {
+                final String[] imageFileNames = new String[configs.length];
+                for (int i = 0; i < configs.length; i++) {
+                    final Quicklooks.QLConfig config = configs[i];
                     final String imageFileName;
                     if (context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REGEX) != null
                             && context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REPLACEMENT) != null) {
@@ -72,7 +75,13 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
                     } else {
                         imageFileName = productName + "_" + config.getBandName();
                     }
-                    createQuicklook(product, imageFileName, context, config);
+                    imageFileNames[i] = imageFileName;
+                }
+                Map<Quicklooks.QLConfig, Exception> errors = writeQuicklooks(product, imageFileNames, context, configs);
+                if (!errors.isEmpty()) {
+                    Map.Entry<Quicklooks.QLConfig, Exception> error = errors.entrySet().iterator().next();
+                    throw new IOException(String.format("Could not create quicklook image '%s'.", error.getKey().getBandName()),
+                                          error.getValue());
                 }
             }
         } finally {
@@ -100,6 +109,19 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
 //        }
     }
 
+    /**
+     * Creates the quicklooks of a product in one pass, see {@link QuicklookEngine}.
+     *
+     * @return the errors of the quicklooks that could not be created, empty if all have been created
+     */
+    public static Map<Quicklooks.QLConfig, Exception> writeQuicklooks(Product product, String[] imageFileNames,
+                                                                     Mapper.Context context, Quicklooks.QLConfig[] configs)
+            throws IOException, InterruptedException {
+        QuicklookEngine engine = new QuicklookEngine(context, product, configs);
+        return engine.writeQuicklooks(imageFileNames,
+                                      fileName -> new BytesCountingOutputStream(createOutputStream(context, fileName), context));
+    }
+
     private static OutputStream createOutputStream(Mapper.Context context, String fileName) throws IOException, InterruptedException {
         Path path = new Path(FileOutputFormat.getWorkOutputPath(context), fileName);
         final FSDataOutputStream fsDataOutputStream = path.getFileSystem(context.getConfiguration()).create(path);
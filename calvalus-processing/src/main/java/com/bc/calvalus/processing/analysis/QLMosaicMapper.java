@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.ProcessorAdapter;
+import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.GPF;
+import org.esa.snap.core.util.ProductUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A mapper contributing the quicklooks of a product to a global quicklook mosaic.
+ * <p/>
+ * The product is reprojected to the geographic grid of the mosaic at its finest level, rendered
+ * with a transparent background, and downsampled level by level. The pixels of each level are cut
+ * into the tiles of {@link #TILE_SIZE} pixels of the global XYZ pyramid, level 0 being two tiles
+ * for the western and the eastern hemisphere. Each non-empty tile fragment is emitted with the key
+ * {@code <bandName>_tiles/<z>/<x>/<y>} for the {@link QLMosaicReducer} to composite.
+ * <p/>
+ * Products crossing the anti-meridian are reprojected to the full longitude range.
+ */
+public class QLMosaicMapper extends Mapper<NullWritable, NullWritable, Text, QLTileWritable> {
+
+    static final int TILE_SIZE = QuicklookEngine.PYRAMID_TILE_SIZE;
+    static final int DEFAULT_LEVEL = 4;
+
+    private static final Logger LOGGER = CalvalusLogger.getLogger();
+
+    /**
+     * Receives the tile fragments of a product.
+     */
+    interface FragmentCollector {
+
+        void collect(String tileKey, QLTileWritable fragment) throws IOException, InterruptedException;
+    }
+
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
+        ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
+        pm.beginTask("Mosaic image generation", 100);
+        try {
+            Product product = processorAdapter.getProcessedProduct(SubProgressMonitor.create(pm, 5));
+            if (product == null) {
+                return;
+            }
+            int maxLevel = context.getConfiguration().getInt(JobConfigNames.CALVALUS_QUICKLOOK_MOSAIC_LEVEL, DEFAULT_LEVEL);
+            Rectangle region = getGlobalPixelRegion(product, maxLevel);
+            if (region.isEmpty()) {
+                LOGGER.warning("product " + product.getName() + " has no geographic extent, skipped");
+                return;
+            }
+            long time = product.getStartTime() != null ? product.getStartTime().getAsDate().getTime() : 0L;
+            Product mosaicProduct = reproject(product, region, maxLevel);
+            Text tileKey = new Text();
+            for (Quicklooks.QLConfig config : Quicklooks.get(context.getConfiguration())) {
+                // mosaic tiles are PNG images, transparent where no product contributes
+                config.setImageType("png");
+                config.setBackgroundColor(new Color(0, 0, 0, 0));
+                config.setLegendEnabled(false);
+                config.setPyramidEnabled(false);
+                RenderedImage image = new QuicklookGenerator(context, mosaicProduct, config).createImage();
+                if (image == null) {
+                    continue;
+                }
+                int[] argb = getArgb(image, region.width, region.height);
+                collectFragments(config.getBandName(), argb, region, maxLevel, time, (key, fragment) -> {
+                    tileKey.set(key);
+                    context.write(tileKey, fragment);
+                });
+                context.progress();
+            }
+        } finally {
+            pm.done();
+            processorAdapter.dispose();
+        }
+    }
+
+    /**
+     * @return the pixel size of a mosaic level in degrees
+     */
+    static double getPixelSize(int level) {
+        return 180.0 / ((long) TILE_SIZE << level);
+    }
+
+    /**
+     * @return the region of the global raster of a mosaic level covering the bounding box,
+     * the whole longitude range if the box is wider than a hemisphere
+     */
+    static Rectangle getGlobalPixelRegion(double lonMin, double latMin, double lonMax, double latMax, int level) {
+        if (lonMax - lonMin > 180.0) {
+            lonMin = -180.0;
+            lonMax = 180.0;
+        }
+        double pixelSize = getPixelSize(level);
+        int globalWidth = 2 * TILE_SIZE << level;
+        int globalHeight = TILE_SIZE << level;
+        int x0 = Math.max(0, (int) Math.floor((lonMin + 180.0) / pixelSize));
+        int x1 = Math.min(globalWidth, (int) Math.ceil((lonMax + 180.0) / pixelSize));
+        int y0 = Math.max(0, (int) Math.floor((90.0 - latMax) / pixelSize));
+        int y1 = Math.min(globalHeight, (int) Math.ceil((90.0 - latMin) / pixelSize));
+        return new Rectangle(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+    }
+
+    /**
+     * Cuts the pixels of a region of the global raster into tile fragments, level by level.
+     *
+     * @param argb     the ARGB pixels of the region at the finest level, transparent where there is no data
+     * @param region   the region in the global raster of the finest level
+     * @param maxLevel the finest level
+     */
+    static void collectFragments(String bandName, int[] argb, Rectangle region, int maxLevel, long time,
+                                 FragmentCollector collector) throws IOException, InterruptedException {
+        for (int level = maxLevel; level >= 0; level--) {
+            if (level < maxLevel) {
+                Rectangle downsampledRegion = getDownsampledRegion(region);
+                argb = downsample(argb, region, downsampledRegion);
+                region = downsampledRegion;
+            }
+            int tileX0 = region.x / TILE_SIZE;
+            int tileX1 = (region.x + region.width - 1) / TILE_SIZE;
+            int tileY0 = region.y / TILE_SIZE;
+            int tileY1 = (region.y + region.height - 1) / TILE_SIZE;
+            for (int tileY = tileY0; tileY <= tileY1; tileY++) {
+                for (int tileX = tileX0; tileX <= tileX1; tileX++) {
+                    Rectangle tile = new Rectangle(tileX * TILE_SIZE, tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                    Rectangle fragment = tile.intersection(region);
+                    int[] fragmentArgb = new int[fragment.width * fragment.height];
+                    boolean hasData = false;
+                    for (int y = 0; y < fragment.height; y++) {
+                        int srcPos = (fragment.y - region.y + y) * region.width + fragment.x - region.x;
+                        int destPos = y * fragment.width;
+                        System.arraycopy(argb, srcPos, fragmentArgb, destPos, fragment.width);
+                        for (int i = destPos; !hasData && i < destPos + fragment.width; i++) {
+                            hasData = fragmentArgb[i] >>> 24 != 0;
+                        }
+                    }
+                    if (hasData) {
+                        String tileKey = String.format("%s_tiles/%d/%d/%d", bandName, level, tileX, tileY);
+                        collector.collect(tileKey, new QLTileWritable(fragment.x - tile.x, fragment.y - tile.y,
+                                                                      fragment.width, fragment.height,
+                                                                      time, fragmentArgb));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the region of the next coarser level covering a region
+     */
+    static Rectangle getDownsampledRegion(Rectangle region) {
+        int x0 = region.x / 2;
+        int y0 = region.y / 2;
+        int x1 = (region.x + region.width + 1) / 2;
+        int y1 = (region.y + region.height + 1) / 2;
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Downsamples the pixels of a region by 2 x 2, averaging the pixels with data only.
+     * The pixels are aligned to the global raster, so that neighbouring products downsample alike.
+     */
+    static int[] downsample(int[] argb, Rectangle region, Rectangle downsampledRegion) {
+        int[] downsampled = new int[downsampledRegion.width * downsampledRegion.height];
+        for (int y = 0; y < downsampledRegion.height; y++) {
+            for (int x = 0; x < downsampledRegion.width; x++) {
+                int a = 0;
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                int count = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    int srcY = 2 * (downsampledRegion.y + y) + dy - region.y;
+                    if (srcY < 0 || srcY >= region.height) {
+                        continue;
+                    }
+                    for (int dx = 0; dx < 2; dx++) {
+                        int srcX = 2 * (downsampledRegion.x + x) + dx - region.x;
+                        if (srcX < 0 || srcX >= region.width) {
+                            continue;
+                        }
+                        int pixel = argb[srcY * region.width + srcX];
+                        if (pixel >>> 24 != 0) {
+                            a += pixel >>> 24;
+                            r += (pixel >> 16) & 0xff;
+                            g += (pixel >> 8) & 0xff;
+                            b += pixel & 0xff;
+                            count++;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    downsampled[y * downsampledRegion.width + x] =
+                            (a / count) << 24 | (r / count) << 16 | (g / count) << 8 | b / count;
+                }
+            }
+        }
+        return downsampled;
+    }
+
+    private static Rectangle getGlobalPixelRegion(Product product, int level) {
+        if (product.getSceneGeoCoding() == null) {
+            return new Rectangle();
+        }
+        GeoPos[] boundary = ProductUtils.createGeoBoundary(product, Math.max(1, product.getSceneRasterHeight() / 50));
+        double lonMin = 180.0;
+        double lonMax = -180.0;
+        double latMin = 90.0;
+        double latMax = -90.0;
+        for (GeoPos geoPos : boundary) {
+            if (geoPos.isValid()) {
+                lonMin = Math.min(lonMin, geoPos.getLon());
+                lonMax = Math.max(lonMax, geoPos.getLon());
+                latMin = Math.min(latMin, geoPos.getLat());
+                latMax = Math.max(latMax, geoPos.getLat());
+            }
+        }
+        return getGlobalPixelRegion(lonMin, latMin, lonMax, latMax, level);
+    }
+
+    /**
+     * Reprojects the product to a region of the global raster, sub-sampled first if it is much finer.
+     */
+    private static Product reproject(Product product, Rectangle region, int level) {
+        double pixelSize = getPixelSize(level);
+        int productPixels = Math.max(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        int regionPixels = Math.max(region.width, region.height);
+        int subSampling = productPixels / (2 * regionPixels);
+        if (subSampling > 1) {
+            Map<String, Object> subsetParams = new HashMap<>();
+            subsetParams.put("subSamplingX", subSampling);
+            subsetParams.put("subSamplingY", subSampling);
+            product = GPF.createProduct("Subset", subsetParams, product);
+        }
+        Map<String, Object> reprojectionParams = new HashMap<>();
+        reprojectionParams.put("crs", "EPSG:4326");
+        reprojectionParams.put("referencePixelX", 0.0);
+        reprojectionParams.put("referencePixelY", 0.0);
+        reprojectionParams.put("easting", -180.0 + region.x * pixelSize);
+        reprojectionParams.put("northing", 90.0 - region.y * pixelSize);
+        reprojectionParams.put("pixelSizeX", pixelSize);
+        reprojectionParams.put("pixelSizeY", pixelSize);
+        reprojectionParams.put("width", region.width);
+        reprojectionParams.put("height", region.height);
+        reprojectionParams.put("noDataValue", Double.NaN);
+        return GPF.createProduct("Reproject", reprojectionParams, product);
+    }
+
+    private static int[] getArgb(RenderedImage image, int width, int height) {
+        BufferedImage argbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = argbImage.createGraphics();
+        // the quicklook of a sub-sampled product may be smaller than the region
+        graphics.drawRenderedImage(image, AffineTransform.getScaleInstance((double) width / image.getWidth(),
+                                                                            (double) height / image.getHeight()));
+        graphics.dispose();
+        return argbImage.getRGB(0, 0, width, height, null, 0, width);
+    }
+}
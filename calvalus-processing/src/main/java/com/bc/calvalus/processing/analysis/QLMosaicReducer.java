@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A reducer compositing the tile fragments of the {@link QLMosaicMapper} into the tiles
+ * {@code <bandName>_tiles/<z>/<x>/<y>.png} of the global quicklook mosaic.
+ * <p/>
+ * With the compositing {@link #LATEST}, the default, each pixel is taken from the latest product with data,
+ * with {@link #MEAN} it is the mean of all products with data.
+ */
+public class QLMosaicReducer extends Reducer<Text, QLTileWritable, NullWritable, NullWritable> {
+
+    static final String LATEST = "latest";
+    static final String MEAN = "mean";
+
+    private boolean mean;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        String compositing = context.getConfiguration().get(JobConfigNames.CALVALUS_QUICKLOOK_MOSAIC_COMPOSITING, LATEST);
+        if (!LATEST.equals(compositing) && !MEAN.equals(compositing)) {
+            throw new IllegalArgumentException("unknown mosaic compositing " + compositing);
+        }
+        mean = MEAN.equals(compositing);
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<QLTileWritable> fragments, Context context) throws IOException, InterruptedException {
+        TileCompositor compositor = new TileCompositor(mean);
+        for (QLTileWritable fragment : fragments) {
+            compositor.add(fragment);
+            context.progress();
+        }
+        Path path = new Path(FileOutputFormat.getWorkOutputPath(context), key.toString() + ".png");
+        try (OutputStream outputStream = new BufferedOutputStream(path.getFileSystem(context.getConfiguration()).create(path))) {
+            ImageIO.write(compositor.createImage(), "png", outputStream);
+        }
+    }
+
+    /**
+     * Composites the fragments of a tile.
+     */
+    static final class TileCompositor {
+
+        private static final int NUM_PIXELS = QLMosaicMapper.TILE_SIZE * QLMosaicMapper.TILE_SIZE;
+
+        private final boolean mean;
+        private final int[] argb;
+        private final long[] times;
+        private final int[] counts;
+        private final long[] sums;
+
+        TileCompositor(boolean mean) {
+            this.mean = mean;
+            if (mean) {
+                argb = null;
+                times = null;
+                counts = new int[NUM_PIXELS];
+                sums = new long[4 * NUM_PIXELS];
+            } else {
+                argb = new int[NUM_PIXELS];
+                times = new long[NUM_PIXELS];
+                counts = null;
+                sums = null;
+            }
+        }
+
+        void add(QLTileWritable fragment) {
+            int[] fragmentArgb = fragment.getArgb();
+            int width = fragment.getWidth();
+            for (int y = 0; y < fragment.getHeight(); y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = fragmentArgb[y * width + x];
+                    if (pixel >>> 24 == 0) {
+                        continue;
+                    }
+                    int i = (fragment.getY() + y) * QLMosaicMapper.TILE_SIZE + fragment.getX() + x;
+                    if (mean) {
+                        counts[i]++;
+                        sums[4 * i] += pixel >>> 24;
+                        sums[4 * i + 1] += (pixel >> 16) & 0xff;
+                        sums[4 * i + 2] += (pixel >> 8) & 0xff;
+                        sums[4 * i + 3] += pixel & 0xff;
+                    } else if (argb[i] >>> 24 == 0 || fragment.getTime() >= times[i]) {
+                        argb[i] = pixel;
+                        times[i] = fragment.getTime();
+                    }
+                }
+            }
+        }
+
+        BufferedImage createImage() {
+            int[] tileArgb = argb;
+            if (mean) {
+                tileArgb = new int[NUM_PIXELS];
+                for (int i = 0; i < NUM_PIXELS; i++) {
+                    int count = counts[i];
+                    if (count > 0) {
+                        tileArgb[i] = (int) (sums[4 * i] / count) << 24
+                                      | (int) (sums[4 * i + 1] / count) << 16
+                                      | (int) (sums[4 * i + 2] / count) << 8
+                                      | (int) (sums[4 * i + 3] / count);
+                    }
+                }
+            }
+            BufferedImage image = new BufferedImage(QLMosaicMapper.TILE_SIZE, QLMosaicMapper.TILE_SIZE,
+                                                    BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, QLMosaicMapper.TILE_SIZE, QLMosaicMapper.TILE_SIZE, tileArgb, 0, QLMosaicMapper.TILE_SIZE);
+            return image;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.apache.hadoop.io.CompressedWritable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A Hadoop writable for a fragment of a tile of the global quicklook mosaic,
+ * the ARGB pixels of a rectangle within the tile rendered from one product.
+ */
+public class QLTileWritable extends CompressedWritable {
+
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private long time;
+    private int[] argb;
+
+    public QLTileWritable() {
+    }
+
+    /**
+     * @param x      the pixel x offset of the fragment within the tile
+     * @param y      the pixel y offset of the fragment within the tile
+     * @param width  the width of the fragment
+     * @param height the height of the fragment
+     * @param time   the start time of the product, in milliseconds
+     * @param argb   the ARGB pixels of the fragment, line by line, transparent where the product has no data
+     */
+    public QLTileWritable(int x, int y, int width, int height, long time, int[] argb) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.time = time;
+        this.argb = argb;
+    }
+
+    public int getX() {
+        ensureInflated();
+        return x;
+    }
+
+    public int getY() {
+        ensureInflated();
+        return y;
+    }
+
+    public int getWidth() {
+        ensureInflated();
+        return width;
+    }
+
+    public int getHeight() {
+        ensureInflated();
+        return height;
+    }
+
+    public long getTime() {
+        ensureInflated();
+        return time;
+    }
+
+    public int[] getArgb() {
+        ensureInflated();
+        return argb;
+    }
+
+    @Override
+    public void writeCompressed(DataOutput out) throws IOException {
+        out.writeShort(x);
+        out.writeShort(y);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeLong(time);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(width * height * 4);
+        byteBuffer.asIntBuffer().put(argb, 0, width * height);
+        out.write(byteBuffer.array());
+    }
+
+    @Override
+    public void readFieldsCompressed(DataInput in) throws IOException {
+        x = in.readShort();
+        y = in.readShort();
+        width = in.readShort();
+        height = in.readShort();
+        time = in.readLong();
+        byte[] bytes = new byte[width * height * 4];
+        in.readFully(bytes);
+        argb = new int[width * height];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(argb);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QLTileWritable{x=%d, y=%d, width=%d, height=%d, time=%d}", x, y, width, height, time);
+    }
+}
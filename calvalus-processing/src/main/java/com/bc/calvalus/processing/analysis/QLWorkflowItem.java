@@ -22,13 +22,17 @@ import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
 import java.io.IOException;
 
 /**
- * A workflow item creating a Hadoop job for creating quick-look-images
+ * A workflow item creating a Hadoop job for creating quick-look-images.
+ * <p/>
+ * With {@link JobConfigNames#CALVALUS_QUICKLOOK_MOSAIC} the quick-looks of all products are composited
+ * into a global mosaic pyramid instead, see {@link QLMosaicMapper} and {@link QLMosaicReducer}.
  */
 public class QLWorkflowItem extends HadoopWorkflowItem {
 
@@ -50,6 +54,7 @@ public class QLWorkflowItem extends HadoopWorkflowItem {
                 {JobConfigNames.CALVALUS_OUTPUT_DIR, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_QUICKLOOK_PARAMETERS, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_REGION_GEOMETRY, null},
+                {JobConfigNames.CALVALUS_QUICKLOOK_MOSAIC, "false"},
         };
     }
 
@@ -62,9 +67,16 @@ public class QLWorkflowItem extends HadoopWorkflowItem {
         jobConfig.setIfUnset("calvalus.system.beam.reader.tileWidth", "*");
 
         job.setInputFormatClass(getInputFormatClass(jobConfig));
-        job.setMapperClass(QLMapper.class);
-
-        job.setNumReduceTasks(0);
+        if (jobConfig.getBoolean(JobConfigNames.CALVALUS_QUICKLOOK_MOSAIC, false)) {
+            job.setMapperClass(QLMosaicMapper.class);
+            job.setMapOutputKeyClass(Text.class);
+            job.setMapOutputValueClass(QLTileWritable.class);
+            job.setReducerClass(QLMosaicReducer.class);
+            job.setNumReduceTasks(jobConfig.getInt(JobConfigNames.CALVALUS_QUICKLOOK_MOSAIC_REDUCERS, 8));
+        } else {
+            job.setMapperClass(QLMapper.class);
+            job.setNumReduceTasks(0);
+        }
         job.setOutputFormatClass(SimpleOutputFormat.class);
 
         FileOutputFormat.setOutputPath(job, new Path(getOutputDir()));
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.RasterDataNode;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Renders all quicklooks of a product in one tiled pass.
+ * <p/>
+ * The quicklooks share the subsets of the product with the same sub-sampling and the bands of the
+ * same RGB expressions. Their images are divided into the same grid of tiles, so that a tile covers
+ * about the same area of the product in all quicklooks. The tiles are rendered in parallel, row by row,
+ * and all quicklooks of a tile one after the other, so that the source tiles read for the first quicklook
+ * are still in the tile cache for the others. The number of tiles queued for rendering is bounded.
+ * <p/>
+ * The images of the quicklooks are only allocated when they are rendered. Quicklooks whose images together
+ * exceed {@link #QUICKLOOK_MAX_PIXELS} are rendered in several passes, each written and released before
+ * the next one, so that at most the images of one pass are held in memory.
+ * <p/>
+ * Optionally, a pyramid of tiles of {@link #PYRAMID_TILE_SIZE} pixels is written for a quicklook in the
+ * XYZ layout {@code <imageFileName>_tiles/<z>/<x>/<y>.<imageType>} of the image space, with zoom level 0
+ * being a single tile. The pyramid is cut from the rendered image and does not read the product again.
+ */
+public class QuicklookEngine {
+
+    /**
+     * The number of threads rendering tiles, by default the number of processors, at most 4.
+     */
+    public static final String QUICKLOOK_THREADS = "calvalus.ql.threads";
+    /**
+     * The size of the tiles rendered in parallel, by default 512 pixels.
+     */
+    public static final String QUICKLOOK_TILE_SIZE = "calvalus.ql.tileSize";
+    /**
+     * The maximum number of pixels of the images rendered in one pass, by default 64M pixels.
+     */
+    public static final String QUICKLOOK_MAX_PIXELS = "calvalus.ql.maxPixels";
+
+    static final int PYRAMID_TILE_SIZE = 256;
+
+    private static final Logger LOGGER = CalvalusLogger.getLogger();
+
+    /**
+     * Creates the output streams of the quicklook images and pyramid tiles.
+     */
+    public interface Output {
+
+        OutputStream createOutputStream(String fileName) throws IOException, InterruptedException;
+    }
+
+    private final TaskAttemptContext context;
+    private final Product product;
+    private final Quicklooks.QLConfig[] configs;
+    private final Map<String, Product> subsets = new HashMap<>();
+    private final Set<RasterDataNode> rastersWithImageInfo = new HashSet<>();
+
+    public QuicklookEngine(TaskAttemptContext context, Product product, Quicklooks.QLConfig[] configs) {
+        this.context = context;
+        this.product = product;
+        this.configs = configs;
+    }
+
+    /**
+     * Renders the quicklooks and writes them.
+     *
+     * @param imageFileNames the file names of the quicklooks without extension, one for each config
+     * @param output         the output of the quicklooks
+     * @return the errors of the quicklooks that could not be created, empty if all have been created
+     */
+    public Map<Quicklooks.QLConfig, Exception> writeQuicklooks(String[] imageFileNames, Output output) throws IOException, InterruptedException {
+        Map<Quicklooks.QLConfig, Exception> errors = new LinkedHashMap<>();
+        QuicklookGenerator.Layers[] layers = createLayers(errors);
+        long[] numPixels = new long[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            if (layers[i] != null) {
+                numPixels[i] = (long) layers[i].getWidth() * layers[i].getHeight();
+            }
+        }
+        long maxPixels = context.getConfiguration().getLong(QUICKLOOK_MAX_PIXELS, 64L * 1024 * 1024);
+        for (List<Integer> pass : getPasses(numPixels, maxPixels)) {
+            BufferedImage[] images = createImages(layers, pass, errors);
+            for (int i : pass) {
+                if (images[i] == null) {
+                    continue;
+                }
+                String imageType = configs[i].getImageType();
+                try {
+                    writeImage(images[i], imageType, output.createOutputStream(imageFileNames[i] + "." + imageType));
+                    if (configs[i].isPyramidEnabled()) {
+                        writePyramid(images[i], imageType, imageFileNames[i], output);
+                    }
+                } catch (IOException e) {
+                    errors.put(configs[i], e);
+                }
+                // may be large, not needed anymore
+                images[i] = null;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Creates the layers of the quicklooks, without allocating their images.
+     *
+     * @param errors the errors of the quicklooks that could not be created
+     * @return the layers of the quicklooks, {@code null} for those that cannot be created
+     */
+    QuicklookGenerator.Layers[] createLayers(Map<Quicklooks.QLConfig, Exception> errors) {
+        QuicklookGenerator.Layers[] layers = new QuicklookGenerator.Layers[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            try {
+                layers[i] = new QuicklookGenerator(context, product, configs[i], this).createLayers();
+            } catch (Exception e) {
+                errors.put(configs[i], e);
+            }
+        }
+        return layers;
+    }
+
+    /**
+     * Renders the quicklooks of a pass. Only the images of the pass are allocated.
+     *
+     * @param layers the layers of all quicklooks
+     * @param pass   the indexes of the quicklooks to render
+     * @param errors the errors of the quicklooks that could not be created
+     * @return the images of the quicklooks, {@code null} for those that have not been created or are not in the pass
+     */
+    BufferedImage[] createImages(QuicklookGenerator.Layers[] layers, List<Integer> pass,
+                                 Map<Quicklooks.QLConfig, Exception> errors) throws InterruptedException {
+        BufferedImage[] images = new BufferedImage[configs.length];
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (int i : pass) {
+            if (layers[i] == null) {
+                continue;
+            }
+            try {
+                images[i] = layers[i].createImage();
+                maxWidth = Math.max(maxWidth, images[i].getWidth());
+                maxHeight = Math.max(maxHeight, images[i].getHeight());
+            } catch (Exception e) {
+                errors.put(configs[i], e);
+            }
+        }
+
+        int tileSize = context.getConfiguration().getInt(QUICKLOOK_TILE_SIZE, 512);
+        int numTileColumns = Math.max(1, (maxWidth + tileSize - 1) / tileSize);
+        int numTileRows = Math.max(1, (maxHeight + tileSize - 1) / tileSize);
+        int numThreads = Math.max(1, context.getConfiguration().getInt(QUICKLOOK_THREADS,
+                                                                       Math.min(4, Runtime.getRuntime().availableProcessors())));
+        LOGGER.info(String.format("rendering %d quicklooks in %d x %d tiles with %d threads",
+                                  pass.size(), numTileColumns, numTileRows, numThreads));
+
+        AtomicReferenceArray<Exception> renderErrors = new AtomicReferenceArray<>(configs.length);
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        Semaphore queuedTiles = new Semaphore(2 * numThreads);
+        try {
+            for (int tileY = 0; tileY < numTileRows; tileY++) {
+                for (int tileX = 0; tileX < numTileColumns; tileX++) {
+                    final int tx = tileX;
+                    final int ty = tileY;
+                    queuedTiles.acquire();
+                    executorService.execute(() -> {
+                        try {
+                            for (int i : pass) {
+                                if (images[i] == null || renderErrors.get(i) != null) {
+                                    continue;
+                                }
+                                Rectangle rectangle = getTileRectangle(images[i].getWidth(), images[i].getHeight(),
+                                                                       tx, ty, numTileColumns, numTileRows);
+                                if (rectangle.isEmpty()) {
+                                    continue;
+                                }
+                                try {
+                                    layers[i].render(images[i], rectangle);
+                                } catch (Exception e) {
+                                    renderErrors.compareAndSet(i, null, e);
+                                }
+                            }
+                        } finally {
+                            queuedTiles.release();
+                        }
+                    });
+                }
+            }
+        } finally {
+            executorService.shutdown();
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        for (int i : pass) {
+            if (renderErrors.get(i) != null) {
+                errors.put(configs[i], renderErrors.get(i));
+                images[i] = null;
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Divides the quicklooks into passes of consecutive quicklooks with at most the given number of pixels.
+     * A quicklook larger than the maximum is rendered in a pass of its own.
+     *
+     * @param numPixels the number of pixels of the quicklooks, 0 for those that cannot be created
+     * @param maxPixels the maximum number of pixels of a pass
+     * @return the indexes of the quicklooks of each pass
+     */
+    static List<List<Integer>> getPasses(long[] numPixels, long maxPixels) {
+        List<List<Integer>> passes = new ArrayList<>();
+        List<Integer> pass = new ArrayList<>();
+        long passPixels = 0;
+        for (int i = 0; i < numPixels.length; i++) {
+            if (numPixels[i] == 0) {
+                continue;
+            }
+            if (!pass.isEmpty() && passPixels + numPixels[i] > maxPixels) {
+                passes.add(pass);
+                pass = new ArrayList<>();
+                passPixels = 0;
+            }
+            pass.add(i);
+            passPixels += numPixels[i];
+        }
+        if (!pass.isEmpty()) {
+            passes.add(pass);
+        }
+        return passes;
+    }
+
+    Product getSubset(String key) {
+        return subsets.get(key);
+    }
+
+    void putSubset(String key, Product subset) {
+        subsets.put(key, subset);
+    }
+
+    /**
+     * @return {@code true} if the image info of the raster is not yet used by another quicklook of this pass
+     */
+    boolean claimImageInfo(RasterDataNode raster) {
+        return rastersWithImageInfo.add(raster);
+    }
+
+    /**
+     * @return the rectangle of a tile of a grid dividing the image into columns and rows of about equal size
+     */
+    static Rectangle getTileRectangle(int width, int height, int tileX, int tileY, int numTileColumns, int numTileRows) {
+        int x0 = (int) ((long) tileX * width / numTileColumns);
+        int x1 = (int) ((long) (tileX + 1) * width / numTileColumns);
+        int y0 = (int) ((long) tileY * height / numTileRows);
+        int y1 = (int) ((long) (tileY + 1) * height / numTileRows);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Writes the tiles of the image pyramid, from the full resolution down to a single tile.
+     */
+    static void writePyramid(BufferedImage image, String imageType, String imageFileName, Output output) throws IOException, InterruptedException {
+        int maxLevel = 0;
+        while ((long) PYRAMID_TILE_SIZE << maxLevel < Math.max(image.getWidth(), image.getHeight())) {
+            maxLevel++;
+        }
+        BufferedImage levelImage = image;
+        for (int level = maxLevel; level >= 0; level--) {
+            if (level < maxLevel) {
+                levelImage = downsample(levelImage);
+            }
+            int numTileColumns = (levelImage.getWidth() + PYRAMID_TILE_SIZE - 1) / PYRAMID_TILE_SIZE;
+            int numTileRows = (levelImage.getHeight() + PYRAMID_TILE_SIZE - 1) / PYRAMID_TILE_SIZE;
+            for (int tileY = 0; tileY < numTileRows; tileY++) {
+                for (int tileX = 0; tileX < numTileColumns; tileX++) {
+                    BufferedImage tile = new BufferedImage(PYRAMID_TILE_SIZE, PYRAMID_TILE_SIZE, image.getType());
+                    Graphics2D graphics = tile.createGraphics();
+                    graphics.drawImage(levelImage, -tileX * PYRAMID_TILE_SIZE, -tileY * PYRAMID_TILE_SIZE, null);
+                    graphics.dispose();
+                    String tileFileName = String.format("%s_tiles/%d/%d/%d.%s", imageFileName, level, tileX, tileY, imageType);
+                    writeImage(tile, imageType, output.createOutputStream(tileFileName));
+                }
+            }
+        }
+    }
+
+    private static BufferedImage downsample(BufferedImage image) {
+        BufferedImage downsampled = new BufferedImage(Math.max(1, (image.getWidth() + 1) / 2),
+                                                      Math.max(1, (image.getHeight() + 1) / 2),
+                                                      image.getType());
+        Graphics2D graphics = downsampled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, downsampled.getWidth(), downsampled.getHeight(), null);
+        graphics.dispose();
+        return downsampled;
+    }
+
+    private static void writeImage(BufferedImage image, String imageType, OutputStream outputStream) throws IOException {
+        try {
+            ImageIO.write(image, imageType, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
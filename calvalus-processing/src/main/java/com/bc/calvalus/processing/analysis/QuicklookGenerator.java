@@ -69,23 +69,45 @@ public class QuicklookGenerator {
     private final TaskAttemptContext context;
     private final Product sourceProduct;
     private final Quicklooks.QLConfig qlConfig;
+    private final QuicklookEngine engine;
 
     public QuicklookGenerator(TaskAttemptContext context, Product product, Quicklooks.QLConfig qlConfig) {
+        this(context, product, qlConfig, null);
+    }
+
+    /**
+     * @param engine the engine rendering this quicklook together with others, sharing subsets and bands
+     */
+    QuicklookGenerator(TaskAttemptContext context, Product product, Quicklooks.QLConfig qlConfig, QuicklookEngine engine) {
         this.context = context;
         this.sourceProduct = product;
         this.qlConfig = qlConfig;
+        this.engine = engine;
     }
 
     public RenderedImage createImage() throws IOException {
+        final Layers layers = createLayers();
+        if (layers == null) {
+            return null;
+        }
+        final BufferedImage image = layers.createImage();
+        layers.render(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        return image;
+    }
+
+    /**
+     * Creates the layers of the quicklook.
+     *
+     * @return the layers, or {@code null} if the product does not contain the band of the quicklook
+     */
+    Layers createLayers() throws IOException {
         Product product = sourceProduct;
         if (qlConfig.getSubSamplingX() > 0 || qlConfig.getSubSamplingY() > 0) {
-            Map<String, Object> subsetParams = new HashMap<>();
-            subsetParams.put("subSamplingX", qlConfig.getSubSamplingX());
-            subsetParams.put("subSamplingY", qlConfig.getSubSamplingY());
-            product = GPF.createProduct("Subset", subsetParams, product);
+            product = getSubset(product, qlConfig.getSubSamplingX(), qlConfig.getSubSamplingY());
         }
         ColoredBandImageMultiLevelSource multiLevelSource;
         Band masterBand;
+        ImageInfo legendImageInfo;
         if (qlConfig.getRGBAExpressions() != null && qlConfig.getRGBAExpressions().length > 0) {
             String[] rgbaExpressions = qlConfig.getRGBAExpressions();
             if (rgbaExpressions.length != 3 && rgbaExpressions.length != 4) {
@@ -100,21 +122,7 @@ public class QuicklookGenerator {
             }
             final Band[] rgbBands = new Band[3];
             for (int i = 0; i < rgbBands.length; i++) {
-                String expression = rgbaExpressions[i];
-                Band rgbBand = product.getBand(expression);
-                if (rgbBand == null) {
-                    rgbBand = new VirtualBand(RGBImageProfile.RGB_BAND_NAMES[i],
-                                              ProductData.TYPE_FLOAT32,
-                                              determineWidth(expression, product),
-                                              determineHeight(expression, product),
-                                              expression);
-//                    rgbBand.setOwner(product);
-//                    rgbBand.setModified(false);
-                    product.addBand(rgbBand);
-                    rgbBand.setNoDataValue(Float.NaN);
-                    rgbBand.setNoDataValueUsed(true);
-                }
-                rgbBands[i] = rgbBand;
+                rgbBands[i] = getRgbBand(product, i, rgbaExpressions[i]);
             }
             masterBand = rgbBands[0];
 // commented away in order to avoid parsing errors for expressions in RGB statement
@@ -132,6 +140,7 @@ public class QuicklookGenerator {
                     rgbChannelDef.setMaxDisplaySample(i, qlConfig.getRGBAMaxSamples()[i]);
                 }
             }
+            legendImageInfo = masterBand.getImageInfo();
         } else if (qlConfig.getBandName() != null) {
             masterBand = product.getBand(qlConfig.getBandName());
             String cpdURL = qlConfig.getCpdURL();
@@ -151,6 +160,10 @@ public class QuicklookGenerator {
 
             masterBand.getImageInfo(wrapPM(context));
             multiLevelSource = ColoredBandImageMultiLevelSource.create(masterBand, wrapPM(context));
+            if (engine != null && !engine.claimImageInfo(masterBand)) {
+                // the image info of the band is used by another quicklook rendered in the same pass
+                multiLevelSource.setImageInfo(multiLevelSource.getImageInfo().createDeepCopy());
+            }
 
             try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(cpdURL, context.getConfiguration())) {
                 ColorPaletteDef colorPaletteDef = loadColorPaletteDef(inputStream);
@@ -164,6 +177,7 @@ public class QuicklookGenerator {
                                                  stx.getMaximum(), false);
                 }
             }
+            legendImageInfo = multiLevelSource.getImageInfo();
         } else {
             throw new IllegalArgumentException("Neither RGB nor band information given");
         }
@@ -184,46 +198,146 @@ public class QuicklookGenerator {
         // TODO generalize
         Configuration configuration = context.getConfiguration();
         if ("FRESHMON".equalsIgnoreCase(configuration.get(JobConfigNames.CALVALUS_PROJECT_NAME))) {
-            addFreshmonOverlay(qlConfig, masterBand, imageLayer, canUseAlpha, layerChildren);
+            addFreshmonOverlay(qlConfig, masterBand, legendImageInfo, imageLayer, canUseAlpha, layerChildren);
         } else {
             if (qlConfig.getOverlayURL() != null) {
                 addOverlay(imageLayer, layerChildren, qlConfig.getOverlayURL());
             }
             if (qlConfig.isLegendEnabled()) {
-                addLegend(masterBand, imageLayer, canUseAlpha, layerChildren);
+                addLegend(masterBand, legendImageInfo, imageLayer, canUseAlpha, layerChildren);
             }
         }
+        return new Layers(context, collectionLayer, imageLayer, canUseAlpha, qlConfig.getBackgroundColor());
+    }
 
+    private Product getSubset(Product product, int subSamplingX, int subSamplingY) {
+        String key = subSamplingX + "x" + subSamplingY;
+        Product subset = engine != null ? engine.getSubset(key) : null;
+        if (subset == null) {
+            Map<String, Object> subsetParams = new HashMap<>();
+            subsetParams.put("subSamplingX", subSamplingX);
+            subsetParams.put("subSamplingY", subSamplingY);
+            subset = GPF.createProduct("Subset", subsetParams, product);
+            if (engine != null) {
+                engine.putSubset(key, subset);
+            }
+        }
+        return subset;
+    }
 
-        Rectangle2D modelBounds = collectionLayer.getModelBounds();
-        Rectangle2D imageBounds = imageLayer.getModelToImageTransform().createTransformedShape(modelBounds).getBounds2D();
-        int imageType = canUseAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
-        BufferedImage bufferedImage = new BufferedImage((int) imageBounds.getWidth(),
-                                                        (int) imageBounds.getHeight(), imageType);
+    /**
+     * Gets the band of an RGB channel. Bands created for an expression are reused by quicklooks
+     * with the same expression for the channel.
+     */
+    private static Band getRgbBand(Product product, int channel, String expression) {
+        Band rgbBand = product.getBand(expression);
+        if (rgbBand != null) {
+            return rgbBand;
+        }
+        String bandName = RGBImageProfile.RGB_BAND_NAMES[channel];
+        for (int i = 1; product.containsBand(bandName); i++) {
+            Band band = product.getBand(bandName);
+            if (band instanceof VirtualBand && expression.equals(((VirtualBand) band).getExpression())) {
+                return band;
+            }
+            bandName = RGBImageProfile.RGB_BAND_NAMES[channel] + "_" + i;
+        }
+        rgbBand = new VirtualBand(bandName,
+                                  ProductData.TYPE_FLOAT32,
+                                  determineWidth(expression, product),
+                                  determineHeight(expression, product),
+                                  expression);
+//        rgbBand.setOwner(product);
+//        rgbBand.setModified(false);
+        product.addBand(rgbBand);
+        rgbBand.setNoDataValue(Float.NaN);
+        rgbBand.setNoDataValueUsed(true);
+        return rgbBand;
+    }
 
-        final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
-        Viewport viewport = rendering.getViewport();
-        viewport.setModelYAxisDown(isModelYAxisDown(imageLayer));
-        viewport.zoom(modelBounds);
+    /**
+     * The layers of a quicklook, rendered into an image as a whole or tile by tile.
+     */
+    static final class Layers {
+
+        private final Progressable progressable;
+        private final CollectionLayer collectionLayer;
+        private final ImageLayer imageLayer;
+        private final boolean canUseAlpha;
+        private final Color backgroundColor;
+        private final Rectangle2D modelBounds;
+        private final Rectangle2D imageBounds;
+        private AffineTransform viewToModelTransform;
+
+        private Layers(Progressable progressable, CollectionLayer collectionLayer, ImageLayer imageLayer,
+                       boolean canUseAlpha, Color backgroundColor) {
+            this.progressable = progressable;
+            this.collectionLayer = collectionLayer;
+            this.imageLayer = imageLayer;
+            this.canUseAlpha = canUseAlpha;
+            this.backgroundColor = backgroundColor;
+            this.modelBounds = collectionLayer.getModelBounds();
+            this.imageBounds = imageLayer.getModelToImageTransform().createTransformedShape(modelBounds).getBounds2D();
+        }
 
-        final Graphics2D graphics = rendering.getGraphics();
-        graphics.setColor(qlConfig.getBackgroundColor());
-        graphics.fill(imageBounds);
+        int getWidth() {
+            return (int) imageBounds.getWidth();
+        }
 
-        collectionLayer.render(new Rendering() {
-            @Override
-            public Graphics2D getGraphics() {
-                context.progress();
-                return rendering.getGraphics();
-            }
+        int getHeight() {
+            return (int) imageBounds.getHeight();
+        }
 
-            @Override
-            public Viewport getViewport() {
-                context.progress();
-                return rendering.getViewport();
+        /**
+         * @return a new image of the size of the quicklook, filled with the background colour
+         */
+        BufferedImage createImage() {
+            int imageType = canUseAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            BufferedImage bufferedImage = new BufferedImage(getWidth(), getHeight(), imageType);
+            final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
+            Viewport viewport = rendering.getViewport();
+            viewport.setModelYAxisDown(isModelYAxisDown(imageLayer));
+            viewport.zoom(modelBounds);
+            viewToModelTransform = viewport.getViewToModelTransform();
+
+            final Graphics2D graphics = rendering.getGraphics();
+            graphics.setColor(backgroundColor);
+            graphics.fill(imageBounds);
+            graphics.dispose();
+            return bufferedImage;
+        }
+
+        /**
+         * Renders the layers into a rectangle of an image created by {@link #createImage()}.
+         * Disjoint rectangles of the image can be rendered concurrently.
+         */
+        void render(BufferedImage image, Rectangle rectangle) {
+            final BufferedImageRendering rendering;
+            if (rectangle.x == 0 && rectangle.y == 0
+                && rectangle.width == image.getWidth() && rectangle.height == image.getHeight()) {
+                rendering = new BufferedImageRendering(image);
+                rendering.getViewport().setModelYAxisDown(isModelYAxisDown(imageLayer));
+                rendering.getViewport().zoom(modelBounds);
+            } else {
+                rendering = new BufferedImageRendering(image.getSubimage(rectangle.x, rectangle.y,
+                                                                         rectangle.width, rectangle.height));
+                rendering.getViewport().setModelYAxisDown(isModelYAxisDown(imageLayer));
+                rendering.getViewport().zoom(viewToModelTransform.createTransformedShape(rectangle).getBounds2D());
             }
-        });
-        return rendering.getImage();
+            collectionLayer.render(new Rendering() {
+                @Override
+                public Graphics2D getGraphics() {
+                    progressable.progress();
+                    return rendering.getGraphics();
+                }
+
+                @Override
+                public Viewport getViewport() {
+                    progressable.progress();
+                    return rendering.getViewport();
+                }
+            });
+        }
     }
 
     private static int determineWidth(String expression, Product product) {
@@ -360,9 +474,9 @@ public class QuicklookGenerator {
         return shapefile;
     }
 
-    private void addFreshmonOverlay(Quicklooks.QLConfig qlConfig, Band masterBand, ImageLayer imageLayer,
+    private void addFreshmonOverlay(Quicklooks.QLConfig qlConfig, Band masterBand, ImageInfo imageInfo, ImageLayer imageLayer,
                                            boolean canUseAlpha, List<Layer> layerChildren) throws IOException {
-        BufferedImage legend = createImageLegend(masterBand, canUseAlpha, ImageLegend.VERTICAL);
+        BufferedImage legend = createImageLegend(masterBand, imageInfo, canUseAlpha, ImageLegend.VERTICAL);
         Configuration conf = context.getConfiguration();
         RenderedImage logo = ImageIO.read(HadoopProcessingService.openUrlAsStream(qlConfig.getOverlayURL(), conf));
         float scale = (float) legend.getWidth() / (float) logo.getWidth();
@@ -400,8 +514,8 @@ public class QuicklookGenerator {
         layerChildren.add(0, overlayLayer);
     }
 
-    private static void addLegend(Band masterBand, ImageLayer imageLayer, boolean useAlpha, List<Layer> layerChildren) {
-        BufferedImage legend = createImageLegend(masterBand, useAlpha, ImageLegend.VERTICAL);
+    private static void addLegend(Band masterBand, ImageInfo imageInfo, ImageLayer imageLayer, boolean useAlpha, List<Layer> layerChildren) {
+        BufferedImage legend = createImageLegend(masterBand, imageInfo, useAlpha, ImageLegend.VERTICAL);
 
         AffineTransform imageToModelTransform = imageLayer.getImageToModelTransform();
         imageToModelTransform.translate(masterBand.getRasterWidth() - legend.getWidth(),
@@ -410,8 +524,8 @@ public class QuicklookGenerator {
         layerChildren.add(0, overlayLayer);
     }
 
-    private static BufferedImage createImageLegend(Band masterBand, boolean useAlpha, int orientation) {
-        ImageLegend imageLegend = new ImageLegend(masterBand.getImageInfo(), masterBand);
+    private static BufferedImage createImageLegend(Band masterBand, ImageInfo imageInfo, boolean useAlpha, int orientation) {
+        ImageLegend imageLegend = new ImageLegend(imageInfo, masterBand);
         imageLegend.setHeaderText(masterBand.getName());
         imageLegend.setOrientation(orientation);
         imageLegend.setBackgroundTransparency(0.6f);
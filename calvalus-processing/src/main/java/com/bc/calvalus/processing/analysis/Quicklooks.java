@@ -75,6 +75,8 @@ public class Quicklooks {
         private boolean legendEnabled;
         @Parameter
         private String shapefileURL;
+        @Parameter(defaultValue = "false")
+        private boolean pyramidEnabled;
 
         public String getImageType() {
             return imageType;
@@ -128,6 +130,10 @@ public class Quicklooks {
             return shapefileURL;
         }
 
+        public boolean isPyramidEnabled() {
+            return pyramidEnabled;
+        }
+
         public void setBandName(String bandName) {
             this.bandName = bandName;
         }
@@ -155,5 +161,9 @@ public class Quicklooks {
         public void setOverlayURL(String overlayURL) {
             this.overlayURL = overlayURL;
         }
+
+        public void setPyramidEnabled(boolean pyramidEnabled) {
+            this.pyramidEnabled = pyramidEnabled;
+        }
     }
 }
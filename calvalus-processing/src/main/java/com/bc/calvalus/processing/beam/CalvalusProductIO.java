@@ -17,7 +17,9 @@
 package com.bc.calvalus.processing.beam;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.hadoop.FSImageInputStream;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.ceres.glevel.MultiLevelImage;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
@@ -52,13 +54,21 @@ import java.io.OutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -68,6 +78,7 @@ import java.util.zip.ZipInputStream;
 public class CalvalusProductIO {
 
     private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final ThreadLocal<List<File>> RECORDED_LOCAL_FILES = new ThreadLocal<>();
 
     /**
      * Reads a product from the distributed file system.
@@ -197,12 +208,14 @@ public class CalvalusProductIO {
         if (localFile.exists()) {
             LOG.info("copyFileToLocal: File already exist");
         } else {
+            recordLocalFile(localFile);
             if ("file".equals(path.toUri().getScheme())) {
                 LOG.info("copyFileToLocal: creating symlink");
                 FileUtil.symLink(path.toString(), localFile.getAbsolutePath());                
             } else {
                 FileSystem fs = path.getFileSystem(conf);
                 FileUtil.copy(fs, path, localFile, false, conf);
+                TaskMetrics.get().addBytesRead(TaskMetrics.PRODUCT_OPEN, localFile.length());
             }
         }
         return localFile;
@@ -213,14 +226,19 @@ public class CalvalusProductIO {
     }
 
     public static File[] uncompressArchiveToDir(Path path, File localDir, Configuration conf) throws IOException {
+        String archiveName = path.getName().toLowerCase();
+        boolean isZippedSlstrWithoutExtension = path.getName().matches("S3._SL_1_RBT.*_NT_00.");
+        int extractionThreads = conf.getInt(JobConfigNames.CALVALUS_INPUT_EXTRACTION_THREADS, 1);
+        if ((archiveName.endsWith(".zip") || isZippedSlstrWithoutExtension) && extractionThreads > 1) {
+            return recordLocalFiles(localDir, unzipParallel(path, localDir, conf, extractionThreads));
+        }
+
         long t1 = System.currentTimeMillis();
         FileSystem fs = path.getFileSystem(conf);
         InputStream inputStream = new BufferedInputStream(fs.open(path));
         List<File> extractedFiles = new ArrayList<>();
 
-        String archiveName = path.getName().toLowerCase();
         long localSize = 0;
-        boolean isZippedSlstrWithoutExtension = path.getName().matches("S3._SL_1_RBT.*_NT_00.");
         if (archiveName.endsWith(".zip") || isZippedSlstrWithoutExtension) {
             try (ZipInputStream zipIn = new ZipInputStream(inputStream)) {
                 ZipEntry entry;
@@ -243,6 +261,111 @@ public class CalvalusProductIO {
         }
         long t2 = System.currentTimeMillis();
         LOG.info(String.format("uncompressArchiveToDir: size %,d bytes  took %,d ms  from %s", localSize, t2 - t1, path));
+        TaskMetrics.get().addBytesWritten(TaskMetrics.PRODUCT_OPEN, localSize);
+        return recordLocalFiles(localDir, extractedFiles.toArray(new File[0]));
+    }
+
+    /**
+     * Starts recording the local copies and extracted files created by the current thread,
+     * e.g. while it opens a product, so that they can be deleted with the product.
+     */
+    public static void beginRecordingLocalFiles() {
+        RECORDED_LOCAL_FILES.set(new ArrayList<>());
+    }
+
+    /**
+     * Stops recording local files for the current thread.
+     *
+     * @return the local files and directories created since {@link #beginRecordingLocalFiles()}
+     */
+    public static List<File> endRecordingLocalFiles() {
+        List<File> localFiles = RECORDED_LOCAL_FILES.get();
+        RECORDED_LOCAL_FILES.remove();
+        return localFiles != null ? localFiles : new ArrayList<>();
+    }
+
+    /**
+     * Records a local copy created by the current thread, if recording is active.
+     *
+     * @param localFile a file or directory that did not exist before
+     */
+    public static void recordLocalFile(File localFile) {
+        List<File> localFiles = RECORDED_LOCAL_FILES.get();
+        if (localFiles != null) {
+            localFiles.add(localFile);
+        }
+    }
+
+    private static File[] recordLocalFiles(File localDir, File[] extractedFiles) {
+        // the top-level entries are sufficient for deletion
+        Set<File> topLevelFiles = new LinkedHashSet<>();
+        File absoluteDir = localDir.getAbsoluteFile();
+        for (File file : extractedFiles) {
+            File topLevelFile = file.getAbsoluteFile();
+            while (topLevelFile.getParentFile() != null && !absoluteDir.equals(topLevelFile.getParentFile())) {
+                topLevelFile = topLevelFile.getParentFile();
+            }
+            topLevelFiles.add(topLevelFile.getParentFile() != null ? topLevelFile : file);
+        }
+        for (File topLevelFile : topLevelFiles) {
+            recordLocalFile(topLevelFile);
+        }
+        return extractedFiles;
+    }
+
+    /**
+     * Unzips an archive with several threads. Unlike the streaming extraction this needs random access
+     * to the archive, so a remote archive is first copied into the target directory and removed afterwards.
+     */
+    static File[] unzipParallel(Path path, File localDir, Configuration conf, int numThreads) throws IOException {
+        long t1 = System.currentTimeMillis();
+        File localArchive;
+        boolean isTemporaryCopy;
+        if ("file".equals(path.toUri().getScheme())) {
+            localArchive = new File(path.toUri());
+            isTemporaryCopy = false;
+        } else {
+            localArchive = File.createTempFile(path.getName(), ".part", localDir);
+            isTemporaryCopy = true;
+            FileSystem fs = path.getFileSystem(conf);
+            try (InputStream in = fs.open(path); OutputStream out = new FileOutputStream(localArchive)) {
+                IOUtils.copyBytes(in, out, 64 * 1024);
+            }
+        }
+        long t2 = System.currentTimeMillis();
+
+        List<File> extractedFiles = new ArrayList<>();
+        long localSize = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try (ZipFile zipFile = new ZipFile(localArchive)) {
+            List<Future<File>> futures = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                futures.add(executor.submit(() -> {
+                    try (InputStream entryIn = zipFile.getInputStream(entry)) {
+                        return handleEntry(localDir, entry.getName(), entry.isDirectory(), entryIn);
+                    }
+                }));
+                localSize += entry.getSize();
+            }
+            for (Future<File> future : futures) {
+                extractedFiles.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("failed to unzip " + path, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (isTemporaryCopy) {
+                localArchive.delete();
+            }
+        }
+        long t3 = System.currentTimeMillis();
+        LOG.info(String.format("unzipParallel: size %,d bytes  copy took %,d ms  extraction with %d threads took %,d ms  from %s",
+                               localSize, t2 - t1, numThreads, t3 - t2, path));
+        TaskMetrics.get().addBytesWritten(TaskMetrics.PRODUCT_OPEN, localSize);
         return extractedFiles.toArray(new File[0]);
     }
 
@@ -252,8 +375,8 @@ public class CalvalusProductIO {
             file.mkdirs();
         } else {
             File parentDir = file.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
+            if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs() && !parentDir.isDirectory()) {
+                throw new IOException("failed to create directory " + parentDir);
             }
             try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
                 IOUtils.copyBytes(zipIn, out, 8192);
@@ -17,6 +17,7 @@
 package com.bc.calvalus.processing.beam;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
 import org.apache.hadoop.conf.Configuration;
 import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.SystemUtils;
@@ -37,6 +38,14 @@ public class GpfUtils {
     private static final long OneMiB = 1024L * 1024L;
     private static final Logger LOG = CalvalusLogger.getLogger();
 
+    static final String TILE_CACHE_SIZE_PROPERTY = "snap.jai.tileCacheSize";
+    static final String PARALLELISM_PROPERTY = "snap.parallelism";
+
+    private static String initializedBundles;
+    private static ClassLoader initializedClassLoader;
+    private static long appliedTileCacheSize;
+    private static int appliedParallelism;
+
     /**
      * Initializes SNAP and GPF based on the configuration.
      *
@@ -46,20 +55,70 @@ public class GpfUtils {
         initGpf(configuration, configuration.getClass());
     }
 
+    /**
+     * Initializes SNAP and GPF. The system properties of the configuration are always applied.
+     * The expensive part, loading of third party libraries and operator SPIs, is done only once per JVM
+     * as long as the bundles and the class loader stay the same, so that JVMs running several tasks
+     * (uber tasks, several processor adapters in one task) keep their warm SNAP runtime, including the
+     * JAI tile cache and auxiliary data already loaded by operators.
+     * If a later configuration requests another JAI tile cache size (in MiB) or tile scheduler parallelism
+     * by {@code calvalus.system.snap.jai.tileCacheSize} or {@code calvalus.system.snap.parallelism},
+     * the new values are applied to the running JAI instance.
+     */
     public static void initGpf(Configuration configuration, Class aClass) {
-        reportJvmMemory();
         initSystemProperties(configuration);
+        String bundles = getBundles(configuration);
+        synchronized (GpfUtils.class) {
+            if (bundles.equals(initializedBundles) && aClass.getClassLoader() == initializedClassLoader) {
+                LOG.info("SNAP and GPF already initialised for bundles " + bundles);
+                reapplyJaiSettings();
+            } else {
+                initGpfImpl(aClass);
+                initializedBundles = bundles;
+                initializedClassLoader = aClass.getClassLoader();
+                appliedTileCacheSize = JAI.getDefaultInstance().getTileCache().getMemoryCapacity() / OneMiB;
+                appliedParallelism = JAI.getDefaultInstance().getTileScheduler().getParallelism();
+            }
+            initPreferences();
+        }
+    }
+
+    private static String getBundles(Configuration configuration) {
+        return configuration.get(JobConfigNames.CALVALUS_SNAP_BUNDLE, "") + ","
+               + configuration.get(JobConfigNames.CALVALUS_CALVALUS_BUNDLE, "") + ","
+               + configuration.get(JobConfigNames.CALVALUS_BUNDLES, "");
+    }
+
+    private static void initGpfImpl(Class aClass) {
+        reportJvmMemory();
         SystemUtils.init3rdPartyLibs(aClass);
         JAI.enableDefaultTileCache();
         final long tileCacheSize = JAI.getDefaultInstance().getTileCache().getMemoryCapacity() / OneMiB;
         LOG.info(String.format("JAI tile cache size is %d MiB", tileCacheSize));
         GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+    }
 
+    private static void reapplyJaiSettings() {
+        long tileCacheSize = Long.getLong(TILE_CACHE_SIZE_PROPERTY, appliedTileCacheSize);
+        if (tileCacheSize != appliedTileCacheSize) {
+            LOG.info(String.format("Changing JAI tile cache size from %d MiB to %d MiB", appliedTileCacheSize, tileCacheSize));
+            JAI.getDefaultInstance().getTileCache().setMemoryCapacity(tileCacheSize * OneMiB);
+            appliedTileCacheSize = tileCacheSize;
+        }
+        int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, appliedParallelism);
+        if (parallelism != appliedParallelism) {
+            LOG.info(String.format("Changing JAI tile scheduler parallelism from %d to %d", appliedParallelism, parallelism));
+            JAI.getDefaultInstance().getTileScheduler().setParallelism(parallelism);
+            appliedParallelism = parallelism;
+        }
+    }
+
+    private static void initPreferences() {
         String tmpDir = System.getProperties().getProperty("java.io.tmpdir");
         Config.instance().preferences().put(SystemUtils.SNAP_CACHE_DIR_PROPERTY_NAME, tmpDir);
         Config.instance().preferences().put("plugin.manager.check.interval", "NEVER");
         Config.instance().preferences().put("snap.versionCheck.interval", "NEVER");
-     }
+    }
 
     private static void initSystemProperties(Configuration configuration) {
         for (Map.Entry<String, String> entry : configuration) {
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.beam;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.util.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * A cache of input files on the local disk of a node, shared by all task attempts running on the node.
+ * <p>
+ * Entries are keyed by the path and the modification time of the remote file. Each entry is a
+ * directory in the cache directory containing the downloaded file. The entry directory's modification
+ * time is updated on every access and the least recently used entries are evicted when the size limit
+ * would be exceeded. Modifications of the cache are serialised by a file lock in the cache directory.
+ * <p>
+ * The files of a node-wide cache are read-only and handed out to tasks as copies, so that processors
+ * may modify their inputs in place. If the processors of a job are known not to write to their inputs,
+ * {@link JobConfigNames#CALVALUS_INPUT_CACHE_LINK} hands them out as hard links to the read-only
+ * cached files instead. An eviction never removes a file from under a running task in both cases.
+ * A task-local cache, which only stages the input of one task, hands out its files as writable hard links.
+ */
+public class LocalInputCache {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final String LOCK_FILE_NAME = ".lock";
+    private static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024 * 1024;
+    private static final Object JVM_LOCK = new Object();
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private final boolean shared;
+    private final boolean linkFiles;
+    private final Configuration conf;
+
+    public LocalInputCache(File cacheDir, long maxBytes, Configuration conf) {
+        this(cacheDir, maxBytes, true, conf.getBoolean(JobConfigNames.CALVALUS_INPUT_CACHE_LINK, false), conf);
+    }
+
+    private LocalInputCache(File cacheDir, long maxBytes, boolean shared, boolean linkFiles, Configuration conf) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.shared = shared;
+        this.linkFiles = linkFiles;
+        this.conf = conf;
+    }
+
+    /**
+     * Creates the node-wide cache configured by {@link JobConfigNames#CALVALUS_INPUT_CACHE_DIR}.
+     *
+     * @return the cache, or {@code null} if no cache directory is configured
+     */
+    public static LocalInputCache create(Configuration conf) {
+        String cacheDirName = conf.get(JobConfigNames.CALVALUS_INPUT_CACHE_DIR);
+        if (cacheDirName == null || cacheDirName.isEmpty()) {
+            return null;
+        }
+        long maxBytes = conf.getLong(JobConfigNames.CALVALUS_INPUT_CACHE_SIZE, DEFAULT_MAX_BYTES);
+        return new LocalInputCache(new File(cacheDirName), maxBytes, conf);
+    }
+
+    /**
+     * Creates a cache that stages the inputs of a single task, without size limit.
+     */
+    public static LocalInputCache createTaskLocal(File cacheDir, Configuration conf) {
+        return new LocalInputCache(cacheDir, Long.MAX_VALUE, false, true, conf);
+    }
+
+    /**
+     * Makes sure the file is in the cache, downloading it if required.
+     *
+     * @param path the remote path
+     * @return the file in the cache, only valid until it is evicted
+     */
+    public File fetch(Path path) throws IOException {
+        return fetch(path, null);
+    }
+
+    /**
+     * Provides the remote file as local file, either from the cache or by downloading it into the cache.
+     *
+     * @param path      the remote path
+     * @param localFile the local file to be created as copy of or link to the cached file
+     * @return the local file
+     */
+    public File copyFileToLocal(Path path, File localFile) throws IOException {
+        fetch(path, localFile);
+        return localFile;
+    }
+
+    private File fetch(Path path, File localFile) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        FileStatus status = fs.getFileStatus(path);
+        File entryDir = new File(cacheDir, createKey(path, status.getModificationTime()));
+        File cachedFile = new File(entryDir, path.getName());
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            throw new IOException("Failed to create input cache directory: " + cacheDir.getAbsolutePath());
+        }
+
+        synchronized (JVM_LOCK) {
+            try (FileChannel channel = openLockFile(); FileLock ignored = channel.lock()) {
+                if (cachedFile.exists()) {
+                    LOG.info("input cache hit: " + path + " --> " + cachedFile);
+                    useEntry(entryDir, cachedFile, localFile);
+                    return cachedFile;
+                }
+            }
+        }
+
+        // download outside of the lock so that other tasks are not blocked
+        long t0 = System.currentTimeMillis();
+        File partFile = File.createTempFile(path.getName(), ".part", cacheDir);
+        try {
+            try (FSDataInputStream in = fs.open(path)) {
+                Files.copy(in, partFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.info(String.format("input cache miss: %s downloaded %,d bytes in %,d ms",
+                                   path, partFile.length(), System.currentTimeMillis() - t0));
+            synchronized (JVM_LOCK) {
+                try (FileChannel channel = openLockFile(); FileLock ignored = channel.lock()) {
+                    if (!cachedFile.exists()) {
+                        evict(partFile.length());
+                        if (!entryDir.isDirectory() && !entryDir.mkdirs()) {
+                            throw new IOException("Failed to create input cache entry: " + entryDir.getAbsolutePath());
+                        }
+                        if (shared) {
+                            partFile.setReadOnly();
+                        }
+                        Files.move(partFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    useEntry(entryDir, cachedFile, localFile);
+                }
+            }
+        } finally {
+            if (partFile.exists()) {
+                partFile.delete();
+            }
+        }
+        return cachedFile;
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        return FileChannel.open(new File(cacheDir, LOCK_FILE_NAME).toPath(),
+                                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void useEntry(File entryDir, File cachedFile, File localFile) throws IOException {
+        entryDir.setLastModified(System.currentTimeMillis());
+        if (localFile == null || localFile.exists()) {
+            return;
+        }
+        if (linkFiles) {
+            try {
+                Files.createLink(localFile.toPath(), cachedFile.toPath());
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.info("input cache: hard link not possible, copying " + cachedFile + " --> " + localFile);
+            }
+        }
+        Files.copy(cachedFile.toPath(), localFile.toPath());
+        // the copy inherits the permissions of the read-only cached file
+        localFile.setWritable(true);
+    }
+
+    /**
+     * Removes least recently used entries until the required number of bytes fits into the cache.
+     * Must be called while holding the cache lock.
+     */
+    private void evict(long requiredBytes) {
+        File[] entryDirs = cacheDir.listFiles(File::isDirectory);
+        if (entryDirs == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File entryDir : entryDirs) {
+            totalBytes += getEntrySize(entryDir);
+        }
+        Arrays.sort(entryDirs, Comparator.comparingLong(File::lastModified));
+        for (File entryDir : entryDirs) {
+            if (totalBytes + requiredBytes <= maxBytes) {
+                break;
+            }
+            totalBytes -= getEntrySize(entryDir);
+            LOG.info("input cache: evicting " + entryDir.getName());
+            FileUtils.deleteTree(entryDir);
+        }
+    }
+
+    private static long getEntrySize(File entryDir) {
+        long size = 0;
+        File[] files = entryDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    static String createKey(Path path, long modificationTime) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((path.toString() + '@' + modificationTime).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -147,6 +147,7 @@ public class Sentinel2CalvalusReaderPlugin implements ProductReaderPlugIn {
                     FileSystem fs = pathConfig.getPath().getFileSystem(configuration);
                     File dst = new File(pathConfig.getPath().getName());
                     LOG.info("copyFileToLocal: " + pathConfig.getPath().toString() + " --> " + dst);
+                    CalvalusProductIO.recordLocalFile(dst);
                     long t0 = System.currentTimeMillis();
                     FileUtil.copy(fs, pathConfig.getPath(), dst, false, configuration);
                     LOG.info("time for s3/swift input retrieval [ms]: " + (System.currentTimeMillis() - t0));
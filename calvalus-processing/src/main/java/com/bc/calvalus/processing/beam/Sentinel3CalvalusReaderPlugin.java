@@ -124,6 +124,7 @@ public class Sentinel3CalvalusReaderPlugin implements ProductReaderPlugIn {
                     FileSystem fs = pathConfig.getPath().getFileSystem(configuration);
                     File dst = new File(pathConfig.getPath().getName());
                     CalvalusLogger.getLogger().info("copyFileToLocal: " + pathConfig.getPath().toString() + " --> " + dst);
+                    CalvalusProductIO.recordLocalFile(dst);
                     FileUtil.copy(fs, pathConfig.getPath(), dst, false, configuration);
                     unzippedFiles = dst.listFiles();
                 }
@@ -5,6 +5,7 @@ import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorFactory;
 import com.bc.calvalus.processing.executable.PropertiesHandler;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.calvalus.processing.l2.ProductFormatter;
 import com.bc.calvalus.processing.xml.XmlConvertible;
 import com.bc.ceres.binding.BindingException;
@@ -25,6 +26,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.apache.velocity.VelocityContext;
 import org.esa.snap.core.datamodel.MetadataAttribute;
@@ -83,7 +85,11 @@ public class SnapGraphAdapter extends SubsetProcessorAdapter {
     private boolean shallSaveTarget;
 
     public SnapGraphAdapter(MapContext mapContext) {
-        super(mapContext);
+        this(mapContext, mapContext.getInputSplit());
+    }
+
+    public SnapGraphAdapter(MapContext mapContext, InputSplit inputSplit) {
+        super(mapContext, inputSplit);
 
         if (getConfiguration().get(JobConfigNames.CALVALUS_REGION_GEOMETRY) != null) {
             if (getConfiguration().get("calvalus.system.snap.dataio.reader.tileHeight") == null) {
@@ -284,7 +290,9 @@ public class SnapGraphAdapter extends SubsetProcessorAdapter {
                     sourceProduct = getInputProduct();
                 } else {
                     getConfiguration().set(JobConfigNames.CALVALUS_INPUT_FORMAT, inputFormat);
-                    sourceProduct = CalvalusProductIO.readProduct(sourcePath, getConfiguration(), inputFormat);
+                    try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.PRODUCT_OPEN)) {
+                        sourceProduct = CalvalusProductIO.readProduct(sourcePath, getConfiguration(), inputFormat);
+                    }
                 }
                 if (getConfiguration().getBoolean(JobConfigNames.CALVALUS_INPUT_SUBSETTING, true)) {
                     getLogger().info("input subsetting of split " + sourcePath);
@@ -292,7 +300,9 @@ public class SnapGraphAdapter extends SubsetProcessorAdapter {
                 }
             } else {
                 // other source product
-                sourceProduct = CalvalusProductIO.readProduct(sourcePath, getConfiguration(), inputFormat);
+                try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.PRODUCT_OPEN)) {
+                    sourceProduct = CalvalusProductIO.readProduct(sourcePath, getConfiguration(), inputFormat);
+                }
             }
             sourceProducts.setSourceProduct(sourceId, sourceProduct);
         }
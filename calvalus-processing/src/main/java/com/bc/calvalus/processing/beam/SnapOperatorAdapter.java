@@ -21,6 +21,7 @@ import com.bc.ceres.binding.BindingException;
 import com.bc.ceres.binding.dom.DomElement;
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.gpf.GPF;
@@ -44,7 +45,11 @@ public class SnapOperatorAdapter extends SubsetProcessorAdapter {
     private Product targetProduct;
 
     public SnapOperatorAdapter(MapContext mapContext) {
-        super(mapContext);
+        this(mapContext, mapContext.getInputSplit());
+    }
+
+    public SnapOperatorAdapter(MapContext mapContext, InputSplit inputSplit) {
+        super(mapContext, inputSplit);
 
         if (getConfiguration().get(JobConfigNames.CALVALUS_REGION_GEOMETRY) != null) {
             if (getConfiguration().get("calvalus.system.snap.dataio.reader.tileHeight") == null) {
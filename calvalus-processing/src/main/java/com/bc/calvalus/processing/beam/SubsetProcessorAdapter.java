@@ -25,6 +25,7 @@ import com.bc.ceres.core.ProgressMonitor;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.gpf.common.SubsetOp;
@@ -47,7 +48,11 @@ public class SubsetProcessorAdapter extends ProcessorAdapter {
     private Product subsetProduct;
 
     public SubsetProcessorAdapter(MapContext mapContext) {
-        super(mapContext);
+        this(mapContext, mapContext.getInputSplit());
+    }
+
+    public SubsetProcessorAdapter(MapContext mapContext, InputSplit inputSplit) {
+        super(mapContext, inputSplit);
     }
 
     @Override
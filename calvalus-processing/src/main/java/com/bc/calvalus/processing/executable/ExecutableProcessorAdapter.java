@@ -20,6 +20,7 @@ import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.beam.LandsatCalvalusReaderPlugin;
+import com.bc.calvalus.processing.beam.LocalInputCache;
 import com.bc.calvalus.processing.beam.PathConfiguration;
 import com.bc.calvalus.processing.beam.Sentinel2CalvalusReaderPlugin;
 import com.bc.calvalus.processing.beam.SnapGraphAdapter;
@@ -29,6 +30,7 @@ import com.bc.ceres.core.ProcessObserver;
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.velocity.VelocityContext;
@@ -48,6 +50,10 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 /**
@@ -60,6 +66,9 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
     private final File cwd;
     private final String parameterSuffix;
     private final boolean debugScriptGenerator;
+    private final LocalInputCache inputCache;
+    private ExecutorService prefetchExecutor;
+    private Future<File> inputPrefetch;
     private String[] outputFilesNames;
     private boolean skipProcessing = false;
 
@@ -68,10 +77,31 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
     }
 
     public ExecutableProcessorAdapter(MapContext mapContext, String parameterSuffix) {
-        super(mapContext);
+        this(mapContext, mapContext.getInputSplit(), parameterSuffix);
+    }
+
+    public ExecutableProcessorAdapter(MapContext mapContext, InputSplit inputSplit) {
+        this(mapContext, inputSplit, "");
+    }
+
+    public ExecutableProcessorAdapter(MapContext mapContext, InputSplit inputSplit, String parameterSuffix) {
+        super(mapContext, inputSplit);
         this.parameterSuffix = parameterSuffix;
         this.cwd = new File(".");
         this.debugScriptGenerator = mapContext.getConfiguration().getBoolean("calvalus.l2.debugScriptGenerator", false);
+        this.inputCache = createInputCache(mapContext.getConfiguration(), cwd);
+    }
+
+    private static LocalInputCache createInputCache(Configuration conf, File cwd) {
+        LocalInputCache nodeCache = LocalInputCache.create(conf);
+        if (nodeCache != null) {
+            return nodeCache;
+        }
+        if (conf.getBoolean(JobConfigNames.CALVALUS_INPUT_PREFETCH, false)) {
+            // task-local staging area for the prefetched input
+            return LocalInputCache.createTaskLocal(new File(cwd, ".input-prefetch"), conf);
+        }
+        return null;
     }
 
     @Override
@@ -100,6 +130,10 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
             processorParameters = accu.toString();
         }
 
+        if (getInputFile() == null && conf.getBoolean(JobConfigNames.CALVALUS_INPUT_PREFETCH, false)) {
+            startInputPrefetch(getInputPath());
+        }
+
         ScriptGenerator scriptGenerator = new ScriptGenerator(ScriptGenerator.Step.PREPARE, executable);
         VelocityContext velocityContext = scriptGenerator.getVelocityContext();
         velocityContext.put("system", System.getProperties());
@@ -134,6 +168,9 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
             if (inputFile != null) {
                 setInputFile(new File(inputFile));
             }
+            if (inputFile != null || skipProcessing) {
+                cancelInputPrefetch();
+            }
         }
     }
 
@@ -148,11 +185,11 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         Path inputPath = getInputPath();
         File inputFile = getInputFile();
         if (inputFile == null) {
-            inputFile = CalvalusProductIO.copyFileToLocal(inputPath, getConfiguration());
+            inputFile = copyInputFileToLocal(inputPath);
             setInputFile(inputFile);
         }
-        if (getMapContext().getInputSplit() instanceof FileSplit) {
-            FileSplit fileSplit = (FileSplit) getMapContext().getInputSplit();
+        if (getInputSplit() instanceof FileSplit) {
+            FileSplit fileSplit = (FileSplit) getInputSplit();
             getMapContext().getCounter("Direct File System Counters", "FILE_SPLIT_BYTES_READ").setValue(fileSplit.getLength());
         }
         Rectangle productRect = null;
@@ -170,6 +207,60 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         return outputFilesNames.length > 0;
     }
 
+    /**
+     * Starts downloading the input into the input cache while the prepare step is running.
+     * The file is copied or linked into the working directory only when processing starts,
+     * so that the prepare script does not see a partially written input.
+     */
+    private void startInputPrefetch(Path inputPath) {
+        if (inputCache == null || "file".equals(inputPath.toUri().getScheme())) {
+            return;
+        }
+        prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "input-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        getLogger().info("prefetching input " + inputPath);
+        inputPrefetch = prefetchExecutor.submit(() -> inputCache.fetch(inputPath));
+    }
+
+    private void cancelInputPrefetch() {
+        if (inputPrefetch != null) {
+            getLogger().info("input prefetch not required, cancelled");
+            inputPrefetch.cancel(true);
+            inputPrefetch = null;
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    private File copyInputFileToLocal(Path inputPath) throws IOException {
+        File localFile = new File(cwd, inputPath.getName());
+        if (inputCache == null || localFile.exists() || "file".equals(inputPath.toUri().getScheme())) {
+            return CalvalusProductIO.copyFileToLocal(inputPath, getConfiguration());
+        }
+        if (inputPrefetch != null) {
+            long t0 = System.currentTimeMillis();
+            try {
+                inputPrefetch.get();
+                getLogger().info("waited for input prefetch [ms]: " + (System.currentTimeMillis() - t0));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                getLogger().log(Level.WARNING, "input prefetch failed, retrying: " + e.getCause(), e.getCause());
+            }
+        }
+        return inputCache.copyFileToLocal(inputPath, localFile);
+    }
+
+    @Override
+    public void dispose() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+        super.dispose();
+    }
+
     public File getCurrentWorkingDir() {
         return cwd;
     }
@@ -11,6 +11,10 @@ import java.util.TreeMap;
 
 import static com.bc.calvalus.processing.fire.format.grid.GridFormatUtils.NO_DATA;
 
+/**
+ * Base class of the data sources. The row cache of {@link #getFloatPixelValue} and {@link #getIntPixelValue}
+ * is not synchronised, the pixels are read by a single thread, see {@link FireGridDataSource}.
+ */
 public abstract class AbstractFireGridDataSource implements FireGridDataSource {
 
     protected int doyFirstOfMonth = -1;
@@ -18,16 +18,24 @@ import org.esa.snap.core.datamodel.Product;
 import java.io.File;
 import java.io.IOException;
 import java.time.Year;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import static com.bc.calvalus.processing.JobConfigNames.CALVALUS_DEBUG_FIRE;
+import static com.bc.calvalus.processing.JobConfigNames.CALVALUS_FIRE_GRID_THREADS;
 
 public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, GridCells> {
 
     protected static final Logger LOG = CalvalusLogger.getLogger();
+    private static final long WORKER_STACK_SIZE = 256L * 1024 * 1024;
     protected final int targetRasterWidth;
     protected final int targetRasterHeight;
     private FireGridDataSource dataSource;
@@ -49,9 +57,17 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
 
     /**
      * Computes the set of grid cells for this mapper.
+     * <p>
+     * With {@link com.bc.calvalus.processing.JobConfigNames#CALVALUS_FIRE_GRID_THREADS} &gt; 1 the cells are
+     * computed concurrently, see {@link #computeCellsParallel}. Every cell is written by exactly one thread,
+     * so the result is the same as the sequential computation.
      */
     public final GridCells computeGridCells(int year, int month, Context context) throws IOException {
-        ProgressMonitor pm = getPM(context);
+        int numThreads = context != null ? context.getConfiguration().getInt(CALVALUS_FIRE_GRID_THREADS, 1) : 1;
+        return computeGridCells(year, month, numThreads, getPM(context));
+    }
+
+    final GridCells computeGridCells(int year, int month, int numThreads, ProgressMonitor pm) throws IOException {
         LOG.info("Computing grid cells...");
         if (dataSource == null) {
             throw new NullPointerException("dataSource == null");
@@ -62,161 +78,222 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
         dataSource.setDoyFirstOfMonth(doyFirstOfMonth);
         dataSource.setDoyLastOfMonth(doyLastOfMonth);
 
-        double[] areas = new double[targetRasterWidth * targetRasterHeight];
-        double[] ba = new double[targetRasterWidth * targetRasterHeight];
-        float[] coverage = new float[targetRasterWidth * targetRasterHeight];
-        float[] patchNumber = new float[targetRasterWidth * targetRasterHeight];
-        float[] errors = new float[targetRasterWidth * targetRasterHeight];
-        float[] burnableFraction = new float[targetRasterWidth * targetRasterHeight];
-
-        List<double[]> baInLc = new ArrayList<>();
-        for (int c = 0; c < getLcClassesCount(); c++) {
-            double[] baInLcBuffer = new double[targetRasterWidth * targetRasterHeight];
-            Arrays.fill(baInLcBuffer, 0.0);
-            baInLc.add(baInLcBuffer);
+        CellTargets targets = new CellTargets(targetRasterWidth * targetRasterHeight, getLcClassesCount());
+        if (numThreads > 1) {
+            computeCellsParallel(targets, doyFirstOfMonth, doyLastOfMonth, numThreads, pm);
+        } else {
+            computeCells(targets, doyFirstOfMonth, doyLastOfMonth, pm);
         }
 
-        float[][] lcFraction = new float[1 + getLcClassesCount()][];
-        for (int c = 0; c < 1 + getLcClassesCount(); ++c) {
-            lcFraction[c] = new float[5 * 5];
+        double[] ba = targets.ba;
+        float[] errors = targets.errors;
+        for (int i = 0; i < errors.length; i++) {
+            if (ba[i] < 0.00001) {
+                errors[i] = 0;
+            }
         }
-        int targetGridCellIndex = 0;
+
+        predict(ba, targets.areas, errors);
+        validate(errors, ba);
+        validate(ba, targets.baInLc);
+        validate(ba, targets.areas);
+
+        GridCells gridCells = new GridCells();
+        gridCells.lcClassesCount = getLcClassesCount();
+        gridCells.bandSize = targetRasterWidth * targetRasterHeight;
+        gridCells.setBa(ba);
+        gridCells.setPatchNumber(targets.patchNumber);
+        gridCells.setErrors(errors);
+        gridCells.setBaInLc(targets.baInLc);
+        gridCells.setCoverage(targets.coverage);
+        gridCells.setBurnableFraction(targets.burnableFraction);
+        LOG.info("...done.");
+        pm.done();
+        return gridCells;
+    }
+
+    private void computeCells(CellTargets targets, int doyFirstOfMonth, int doyLastOfMonth, ProgressMonitor pm) throws IOException {
+        CellScratch scratch = new CellScratch(getLcClassesCount());
         for (int y = 0; y < targetRasterHeight; y++) {
             for (int x = 0; x < targetRasterWidth; x++) {
-
                 SourceData data = dataSource.readPixels(x, y);
-
-                if (data == null) {
-                    targetGridCellIndex++;
-                    continue;
+                if (data != null) {
+                    float[][] lcFraction = readLcFraction(x, y, scratch.lcFraction);
+                    computeCell(x, y, data, lcFraction, targets, doyFirstOfMonth, doyLastOfMonth, scratch);
                 }
+                pm.worked(1);
+            }
+        }
+    }
 
-//                writeDebugProduct(context, data);
-
-                if (this instanceof AvhrrGridMapper) {
-                    double avhrrBurnedPercentage = Double.NaN;
-
-                    ((AvhrrFireGridDataSource) dataSource).readLcFraction(x, y, lcFraction);
-
-                    double area025 = 0.0;
-                    double burnableArea025 = 0.0;
-                    double burnable20PercentArea025 = 0.0;
-                    double observedArea025 = 0.0;
-                    double burnedArea025 = 0.0;
-                    double[] burnedLcArea025 = new double[19];
-                    Arrays.fill(burnedLcArea025, 0.0);
-                    for (int i = 0; i < data.burnedPixels.length; i++) {
-
-                        if (Double.isNaN(avhrrBurnedPercentage) && data.burnedPixels[i] > 0) {
-                            avhrrBurnedPercentage = data.burnedPixels[i];
-                        }
-
-                        double fractionOfBurnable = 1.0 - lcFraction[0][i];
-                        // sum up area
-                        area025 += data.areas[i];
-                        // sum up burnable area (and the rather doubtful burnable areas with fraction >= 0.2)
-                        burnableArea025 += data.areas[i] * fractionOfBurnable;
-                        if (data.statusPixels[i] != 2) {
-                            burnable20PercentArea025 += data.areas[i] * fractionOfBurnable;
-                        }
-                        // sum up observed burnable area
-                        if (data.statusPixels[i] == 1) {
-                            observedArea025 += data.areas[i] * fractionOfBurnable;
-                        }
-                        // sum up burned area
-                        if (data.burnedPixels[i] > 0.0) {
-                            burnedArea025 += data.areas[i] * data.burnedPixels[i];
-                            // sum up burned area per LC class
-                            for (int c = 1; c < 19; ++c) {
-                                burnedLcArea025[c] += data.areas[i] * data.burnedPixels[i] * lcFraction[c][i] / fractionOfBurnable;
-                            }
-                        }
-                    }
-
-                    areas[targetGridCellIndex] = area025;
-                    ba[targetGridCellIndex] = burnedArea025;
-                    for (int c = 1; c < 19; ++c) {
-                        baInLc.get(c - 1)[targetGridCellIndex] = burnedLcArea025[c];
+    /**
+     * Reads the cells in the calling thread, row by row, and lets the worker threads complete and compute them.
+     * Reading in order keeps the row caches of the data source valid, and the source products are never accessed
+     * concurrently. The number of cells read ahead is bounded by the number of threads, because the source data
+     * of a single cell may be large.
+     */
+    private void computeCellsParallel(CellTargets targets, int doyFirstOfMonth, int doyLastOfMonth, int numThreads, ProgressMonitor pm) throws IOException {
+        LOG.info(String.format("computing %d x %d cells with %d threads", targetRasterWidth, targetRasterHeight, numThreads));
+        // patch counting is recursive, so the workers get a larger stack than the default thread stack size
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(null, r, "grid-cells", WORKER_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Deque<Future<?>> pendingCells = new ArrayDeque<>();
+            ThreadLocal<CellScratch> scratch = ThreadLocal.withInitial(() -> new CellScratch(getLcClassesCount()));
+            for (int y = 0; y < targetRasterHeight; y++) {
+                for (int x = 0; x < targetRasterWidth; x++) {
+                    if (pendingCells.size() >= numThreads) {
+                        pendingCells.removeFirst().get();
+                        pm.worked(1);
                     }
-                    burnableFraction[targetGridCellIndex] = (float) (burnableArea025 / area025);
-                    // tough rather doubtful we map non-burnable to not observed as requested by UAH
-                    coverage[targetGridCellIndex] = burnable20PercentArea025 > 0.0 ? (float) (observedArea025 / burnable20PercentArea025) : 0.0f;
-                    patchNumber[targetGridCellIndex] = data.patchCount;
-
-                    if (burnedArea025 >= 0.00001) {
-                        errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, area025, avhrrBurnedPercentage);
-                    } else {
-                        errors[targetGridCellIndex] = 0;
+                    SourceData data = dataSource.readPixels(x, y);
+                    if (data == null) {
+                        pm.worked(1);
+                        continue;
                     }
+                    float[][] lcFraction = readLcFraction(x, y, CellScratch.createLcFraction(getLcClassesCount()));
+                    final int cellX = x;
+                    final int cellY = y;
+                    pendingCells.addLast(executor.submit(() -> {
+                        computeCell(cellX, cellY, data, lcFraction, targets, doyFirstOfMonth, doyLastOfMonth, scratch.get());
+                        return null;
+                    }));
+                }
+            }
+            while (!pendingCells.isEmpty()) {
+                pendingCells.removeFirst().get();
+                pm.worked(1);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                } else {
-
-                    double baValue = 0.0F;
-                    double coverageValue = 0.0F;
-                    double burnableFractionValue = 0.0;
-
-                    for (int i = 0; i < data.burnedPixels.length; i++) {
-                        float burnedPixel = data.burnedPixels[i];
-                        boolean isBurnable = data.burnable[i];
-                        if (isActuallyBurnedPixel(doyFirstOfMonth, doyLastOfMonth, burnedPixel, isBurnable)) {
-                            double burnedArea = scale(burnedPixel, data.areas[i]);
-                            baValue += burnedArea;
-                            addBaInLandCover(baInLc, targetGridCellIndex, burnedArea, data.lcClasses[i]);
-                        }
-
-                        burnableFractionValue += isBurnable ? data.areas[i] : 0.0;
-                        boolean hasBeenObserved = data.statusPixels[i] == 1;
-                        coverageValue += (hasBeenObserved && isBurnable) ? data.areas[i] : 0.0;
-                        areas[targetGridCellIndex] += data.areas[i];
-                        validate(areas[targetGridCellIndex], targetGridCellIndex);
-                    }
+    private float[][] readLcFraction(int x, int y, float[][] lcFraction) {
+        if (!(this instanceof AvhrrGridMapper)) {
+            return null;
+        }
+        ((AvhrrFireGridDataSource) dataSource).readLcFraction(x, y, lcFraction);
+        return lcFraction;
+    }
 
-                    ba[targetGridCellIndex] = baValue;
-                    patchNumber[targetGridCellIndex] = data.patchCount;
+    private void computeCell(int x, int y, SourceData data, float[][] lcFraction, CellTargets targets, int doyFirstOfMonth, int doyLastOfMonth, CellScratch scratch) {
+        dataSource.completeSourceData(data);
+        int targetGridCellIndex = y * targetRasterWidth + x;
+
+//        writeDebugProduct(context, data);
+
+        double[] areas = targets.areas;
+        double[] ba = targets.ba;
+        float[] coverage = targets.coverage;
+        float[] patchNumber = targets.patchNumber;
+        float[] errors = targets.errors;
+        float[] burnableFraction = targets.burnableFraction;
+        List<double[]> baInLc = targets.baInLc;
+
+        if (this instanceof AvhrrGridMapper) {
+            double avhrrBurnedPercentage = Double.NaN;
+
+            double area025 = 0.0;
+            double burnableArea025 = 0.0;
+            double burnable20PercentArea025 = 0.0;
+            double observedArea025 = 0.0;
+            double burnedArea025 = 0.0;
+            double[] burnedLcArea025 = scratch.burnedLcArea;
+            Arrays.fill(burnedLcArea025, 0.0);
+            for (int i = 0; i < data.burnedPixels.length; i++) {
+
+                if (Double.isNaN(avhrrBurnedPercentage) && data.burnedPixels[i] > 0) {
+                    avhrrBurnedPercentage = data.burnedPixels[i];
+                }
 
-                    if (isInBrokenLCZone(x, y)) {
-                        coverage[targetGridCellIndex] = 0;
-                        burnableFraction[targetGridCellIndex] = 0;
-                    } else {
-                        coverage[targetGridCellIndex] = getFraction(coverageValue, burnableFractionValue);
-                        burnableFraction[targetGridCellIndex] = getFraction(burnableFractionValue, areas[targetGridCellIndex]);
-                        validate(burnableFraction[targetGridCellIndex], baInLc, targetGridCellIndex, areas[targetGridCellIndex]);
+                double fractionOfBurnable = 1.0 - lcFraction[0][i];
+                // sum up area
+                area025 += data.areas[i];
+                // sum up burnable area (and the rather doubtful burnable areas with fraction >= 0.2)
+                burnableArea025 += data.areas[i] * fractionOfBurnable;
+                if (data.statusPixels[i] != 2) {
+                    burnable20PercentArea025 += data.areas[i] * fractionOfBurnable;
+                }
+                // sum up observed burnable area
+                if (data.statusPixels[i] == 1) {
+                    observedArea025 += data.areas[i] * fractionOfBurnable;
+                }
+                // sum up burned area
+                if (data.burnedPixels[i] > 0.0) {
+                    burnedArea025 += data.areas[i] * data.burnedPixels[i];
+                    // sum up burned area per LC class
+                    for (int c = 1; c < 19; ++c) {
+                        burnedLcArea025[c] += data.areas[i] * data.burnedPixels[i] * lcFraction[c][i] / fractionOfBurnable;
                     }
+                }
+            }
 
+            areas[targetGridCellIndex] = area025;
+            ba[targetGridCellIndex] = burnedArea025;
+            for (int c = 1; c < 19; ++c) {
+                baInLc.get(c - 1)[targetGridCellIndex] = burnedLcArea025[c];
+            }
+            burnableFraction[targetGridCellIndex] = (float) (burnableArea025 / area025);
+            // tough rather doubtful we map non-burnable to not observed as requested by UAH
+            coverage[targetGridCellIndex] = burnable20PercentArea025 > 0.0 ? (float) (observedArea025 / burnable20PercentArea025) : 0.0f;
+            patchNumber[targetGridCellIndex] = data.patchCount;
+
+            if (burnedArea025 >= 0.00001) {
+                errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, area025, avhrrBurnedPercentage);
+            } else {
+                errors[targetGridCellIndex] = 0;
+            }
 
-                    errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, areas[targetGridCellIndex], Float.NaN);
-
-                    for (int i = 0; i < errors.length; i++) {
-                        if (ba[i] < 0.00001) {
-                            errors[i] = 0;
-                        }
-                    }
+        } else {
 
+            double baValue = 0.0F;
+            double coverageValue = 0.0F;
+            double burnableFractionValue = 0.0;
+
+            for (int i = 0; i < data.burnedPixels.length; i++) {
+                float burnedPixel = data.burnedPixels[i];
+                boolean isBurnable = data.burnable[i];
+                if (isActuallyBurnedPixel(doyFirstOfMonth, doyLastOfMonth, burnedPixel, isBurnable)) {
+                    double burnedArea = scale(burnedPixel, data.areas[i]);
+                    baValue += burnedArea;
+                    addBaInLandCover(baInLc, targetGridCellIndex, burnedArea, data.lcClasses[i]);
                 }
 
-                targetGridCellIndex++;
-                pm.worked(1);
-
+                burnableFractionValue += isBurnable ? data.areas[i] : 0.0;
+                boolean hasBeenObserved = data.statusPixels[i] == 1;
+                coverageValue += (hasBeenObserved && isBurnable) ? data.areas[i] : 0.0;
+                areas[targetGridCellIndex] += data.areas[i];
+                validate(areas[targetGridCellIndex], targetGridCellIndex);
             }
-        }
 
-        predict(ba, areas, errors);
-        validate(errors, ba);
-        validate(ba, baInLc);
-        validate(ba, areas);
+            ba[targetGridCellIndex] = baValue;
+            patchNumber[targetGridCellIndex] = data.patchCount;
 
-        GridCells gridCells = new GridCells();
-        gridCells.lcClassesCount = getLcClassesCount();
-        gridCells.bandSize = targetRasterWidth * targetRasterHeight;
-        gridCells.setBa(ba);
-        gridCells.setPatchNumber(patchNumber);
-        gridCells.setErrors(errors);
-        gridCells.setBaInLc(baInLc);
-        gridCells.setCoverage(coverage);
-        gridCells.setBurnableFraction(burnableFraction);
-        LOG.info("...done.");
-        pm.done();
-        return gridCells;
+            if (isInBrokenLCZone(x, y)) {
+                coverage[targetGridCellIndex] = 0;
+                burnableFraction[targetGridCellIndex] = 0;
+            } else {
+                coverage[targetGridCellIndex] = getFraction(coverageValue, burnableFractionValue);
+                burnableFraction[targetGridCellIndex] = getFraction(burnableFractionValue, areas[targetGridCellIndex]);
+                validate(burnableFraction[targetGridCellIndex], baInLc, targetGridCellIndex, areas[targetGridCellIndex]);
+            }
+
+            // errors of cells without burned area are reset after all cells have been computed
+            errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, areas[targetGridCellIndex], Float.NaN);
+        }
     }
 
     protected boolean isInBrokenLCZone(int x, int y) {
@@ -307,6 +384,54 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
         this.dataSource = dataSource;
     }
 
+    /**
+     * The result arrays of the grid cells, each cell is written by a single thread.
+     */
+    private static class CellTargets {
+
+        final double[] areas;
+        final double[] ba;
+        final float[] coverage;
+        final float[] patchNumber;
+        final float[] errors;
+        final float[] burnableFraction;
+        final List<double[]> baInLc;
+
+        CellTargets(int size, int lcClassesCount) {
+            areas = new double[size];
+            ba = new double[size];
+            coverage = new float[size];
+            patchNumber = new float[size];
+            errors = new float[size];
+            burnableFraction = new float[size];
+            baInLc = new ArrayList<>();
+            for (int c = 0; c < lcClassesCount; c++) {
+                baInLc.add(new double[size]);
+            }
+        }
+    }
+
+    /**
+     * Buffers reused for all cells computed by one thread.
+     */
+    private static class CellScratch {
+
+        final float[][] lcFraction;
+        final double[] burnedLcArea = new double[19];
+
+        CellScratch(int lcClassesCount) {
+            lcFraction = createLcFraction(lcClassesCount);
+        }
+
+        static float[][] createLcFraction(int lcClassesCount) {
+            float[][] lcFraction = new float[1 + lcClassesCount][];
+            for (int c = 0; c < 1 + lcClassesCount; ++c) {
+                lcFraction[c] = new float[5 * 5];
+            }
+            return lcFraction;
+        }
+    }
+
     private static void writeDebugProduct(Context context, SourceData data) throws IOException {
         if (context.getConfiguration().getBoolean(CALVALUS_DEBUG_FIRE, false)) {
             return;
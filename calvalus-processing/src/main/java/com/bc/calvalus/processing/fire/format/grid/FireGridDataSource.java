@@ -2,6 +2,13 @@ package com.bc.calvalus.processing.fire.format.grid;
 
 import java.io.IOException;
 
+/**
+ * Source of the input pixels of target grid cells. {@link #readPixels} is called by one thread at a time,
+ * row by row, so implementations may cache source rows and need no locking for product access.
+ * Computations on the pixels of a cell that do not access the source products, like patch counting,
+ * belong into {@link #completeSourceData}, which may run concurrently for different cells,
+ * see {@link AbstractGridMapper#computeGridCells}.
+ */
 interface FireGridDataSource {
 
     /**
@@ -14,6 +21,15 @@ interface FireGridDataSource {
      */
     SourceData readPixels(int x, int y) throws IOException;
 
+    /**
+     * Completes the source data read by {@link #readPixels} with the values derived from its pixels.
+     * Must not access the source products.
+     *
+     * @param data The source data of a target pixel
+     */
+    default void completeSourceData(SourceData data) {
+    }
+
     void setDoyFirstOfMonth(int doyFirstOfMonth);
 
     void setDoyLastOfMonth(int doyLastOfMonth);
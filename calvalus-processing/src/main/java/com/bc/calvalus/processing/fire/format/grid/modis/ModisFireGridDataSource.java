@@ -175,10 +175,15 @@ public class ModisFireGridDataSource extends AbstractFireGridDataSource {
             }
         }
 
-        data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, 4800, 4800), GridFormatUtils.make2Dims(data.burnable, 4800, 4800));
         return data;
     }
 
+    @Override
+    public void completeSourceData(SourceData data) {
+        // patch counting is the expensive part and needs no product access, so it may run concurrently
+        data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, data.width, data.height), GridFormatUtils.make2Dims(data.burnable, data.width, data.height));
+    }
+
     private boolean isInBrokenLcZone(int x, int y) {
         int targetGridCellX = Integer.parseInt(targetCell.split(",")[0]) + x;
         int targetGridCellY = Integer.parseInt(targetCell.split(",")[1]) + y;
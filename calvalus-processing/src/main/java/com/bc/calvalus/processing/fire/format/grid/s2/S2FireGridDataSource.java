@@ -126,10 +126,15 @@ public class S2FireGridDataSource extends AbstractFireGridDataSource {
             }
         }
 
-        data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, totalWidth, totalHeight), GridFormatUtils.make2Dims(data.burnable, totalWidth, totalHeight));
         return data;
     }
 
+    @Override
+    public void completeSourceData(SourceData data) {
+        // patch counting is the expensive part and needs no product access, so it may run concurrently
+        data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, data.width, data.height), GridFormatUtils.make2Dims(data.burnable, data.width, data.height));
+    }
+
     private Product getLcSubset(Product sourceProduct, Product lcProduct) {
         ReprojectionOp reprojectionOp = new ReprojectionOp();
         reprojectionOp.setSourceProduct("collocationProduct", sourceProduct);
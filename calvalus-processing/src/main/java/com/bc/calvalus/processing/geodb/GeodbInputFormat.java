@@ -19,6 +19,7 @@ package com.bc.calvalus.processing.geodb;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.DateRange;
 import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.hadoop.BlockLocality;
 import com.bc.calvalus.processing.hadoop.NoRecordReader;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
 import com.bc.calvalus.processing.ma.MAConfig;
@@ -50,8 +51,10 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -78,6 +81,14 @@ public class GeodbInputFormat extends InputFormat {
     }
 
     public static List<InputSplit> createInputSplits(Configuration conf, Collection<String> paths, int requestSizeLimit) throws IOException {
+        return createInputSplits(conf, paths, requestSizeLimit, new HashMap<>());
+    }
+
+    /**
+     * @param hostRacks map to which the racks of the hosts holding the inputs are added
+     */
+    public static List<InputSplit> createInputSplits(Configuration conf, Collection<String> paths, int requestSizeLimit,
+                                                     Map<String, String> hostRacks) throws IOException {
         List<InputSplit> splits = new ArrayList<>(requestSizeLimit);
         for (String stringPath : paths) {
             final Path path = new Path(stringPath);
@@ -90,7 +101,8 @@ public class GeodbInputFormat extends InputFormat {
                         LOG.warning("cannot find hosts of input " + stringPath);
                     } else {
                         LOG.fine("adding input split for  " + path.toUri().getPath());
-                        splits.add(new ProductSplit(path, status.getLen(), locations[0].getHosts()));
+                        BlockLocality.addRacks(locations, hostRacks);
+                        splits.add(new ProductSplit(path, status.getLen(), BlockLocality.getPreferredHosts(locations)));
                     }
                 } else {
                     LOG.warning("cannot find input " + stringPath);
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.fs.BlockLocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the preferred hosts of a product split from the locations of all blocks of the product.
+ * <p/>
+ * The hosts are weighted by the number of bytes of the product they hold, so that the scheduler
+ * places the task where most of the product is stored, not only its first block.
+ */
+public class BlockLocality {
+
+    private BlockLocality() {
+    }
+
+    /**
+     * @param blocks the block locations of the product
+     * @return the hosts holding most bytes of the product, at most as many as the first block has replicas
+     */
+    public static String[] getPreferredHosts(BlockLocation[] blocks) throws IOException {
+        Map<String, Long> hostBytes = new LinkedHashMap<>();
+        for (BlockLocation block : blocks) {
+            for (String host : block.getHosts()) {
+                hostBytes.merge(host, block.getLength(), Long::sum);
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(hostBytes.entrySet());
+        // the sort is stable, hosts with equal bytes keep the order of their first appearance
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        int numHosts = Math.min(sorted.size(), Math.max(1, blocks[0].getHosts().length));
+        String[] hosts = new String[numHosts];
+        for (int i = 0; i < numHosts; i++) {
+            hosts[i] = sorted.get(i).getKey();
+        }
+        return hosts;
+    }
+
+    /**
+     * Records the racks of the hosts of the blocks, taken from the topology paths /rack/host:port.
+     *
+     * @param blocks    the block locations of the product
+     * @param hostRacks the map to add host to rack entries to
+     */
+    public static void addRacks(BlockLocation[] blocks, Map<String, String> hostRacks) throws IOException {
+        for (BlockLocation block : blocks) {
+            String[] hosts = block.getHosts();
+            String[] topologyPaths = block.getTopologyPaths();
+            if (topologyPaths.length != hosts.length) {
+                continue;
+            }
+            for (int i = 0; i < hosts.length; i++) {
+                int rackEnd = topologyPaths[i].lastIndexOf('/');
+                if (rackEnd > 0) {
+                    hostRacks.put(hosts[i], topologyPaths[i].substring(0, rackEnd));
+                }
+            }
+        }
+    }
+}
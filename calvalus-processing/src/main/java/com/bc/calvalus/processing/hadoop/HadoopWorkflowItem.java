@@ -30,18 +30,21 @@ import com.bc.calvalus.processing.ProcessorFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.TaskCompletionEvent;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobCounter;
 import org.apache.hadoop.mapreduce.JobID;
 import org.apache.hadoop.security.UserGroupInformation;
 
 import java.io.IOException;
 import java.security.PrivilegedExceptionAction;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -122,6 +125,8 @@ public abstract class HadoopWorkflowItem extends AbstractWorkflowItem {
                     if (failedTaskMessage != null) {
                         newJobStatus = new ProcessStatus(ProcessState.ERROR, newJobStatus.getProgress(), failedTaskMessage);
                     }
+                } else if (newJobStatus.getState().equals(ProcessState.COMPLETED)) {
+                    logLocalityReport();
                 }
                 setStatus(newJobStatus);
             }
@@ -183,6 +188,32 @@ public abstract class HadoopWorkflowItem extends AbstractWorkflowItem {
         return null;
     }
 
+    private void logLocalityReport() {
+        org.apache.hadoop.mapred.JobID downgradeJobId = org.apache.hadoop.mapred.JobID.downgrade(jobId);
+        try {
+            RunningJob runningJob = processingService.getJobClient(userName).getJob(downgradeJobId);
+            Counters counters = runningJob != null ? runningJob.getCounters() : null;
+            if (counters != null) {
+                CalvalusLogger.getLogger().info(formatLocalityReport(getJobName() + " " + jobId,
+                                                                     counters.getCounter(JobCounter.TOTAL_LAUNCHED_MAPS),
+                                                                     counters.getCounter(JobCounter.DATA_LOCAL_MAPS),
+                                                                     counters.getCounter(JobCounter.RACK_LOCAL_MAPS)));
+            }
+        } catch (IOException e) {
+            CalvalusLogger.getLogger().fine("no locality report for " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    static String formatLocalityReport(String jobName, long launchedMaps, long dataLocalMaps, long rackLocalMaps) {
+        if (launchedMaps <= 0) {
+            return String.format("locality of %s: no map tasks", jobName);
+        }
+        long offRackMaps = Math.max(0, launchedMaps - dataLocalMaps - rackLocalMaps);
+        return String.format(Locale.ENGLISH, "locality of %s: %d of %d map tasks data-local (%.1f%%), %d rack-local, %d off-rack",
+                             jobName, dataLocalMaps, launchedMaps, 100.0 * dataLocalMaps / launchedMaps,
+                             rackLocalMaps, offRackMaps);
+    }
+
     static String getErrorMessageFromDiagnostics(String[] taskDiagnostics) {
         // this is a stack trace and we only want the case
         // so take the first line
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+/**
+ * A split with several complete products that are processed one after the other by the same task.
+ * The progress of the current product is reported as part of the progress of the task.
+ */
+public class MultiProductSplit extends CombineFileSplit implements ProgressSplit {
+
+    private int productIndex; // not serialized
+    private float progress; // not serialized
+
+    /**
+     * For deserialize only!
+     */
+    public MultiProductSplit() {
+    }
+
+    /**
+     * @param files     the product files
+     * @param lengths   the lengths of the product files
+     * @param locations the hosts preferred for the split
+     */
+    public MultiProductSplit(Path[] files, long[] lengths, String[] locations) {
+        super(files, new long[files.length], lengths, locations);
+    }
+
+    /**
+     * Sets the index of the product that is processed now.
+     */
+    public void setProductIndex(int productIndex) {
+        this.productIndex = productIndex;
+        this.progress = (float) productIndex / getNumPaths();
+    }
+
+    @Override
+    public void setProgress(float progress) {
+        this.progress = (productIndex + progress) / getNumPaths();
+    }
+
+    @Override
+    public float getProgress() {
+        return progress;
+    }
+}
@@ -106,6 +106,8 @@ public class PatternBasedInputFormat extends InputFormat {
     }
     private static NamespaceContext ATOM_NAMESPACE_CONTEXT = new AtomNamespaceContext();
 
+    private final Map<String, String> hostRacks = new HashMap<>();
+
     /**
      * Maps each input file to a single (file) split.
      * <p/>
@@ -158,7 +160,7 @@ public class PatternBasedInputFormat extends InputFormat {
                 LOG.info(String.format("filtered using %d productIdentifiers: %d files remaining'.",
                                        productIdentifiers.size(), paths.size()));
             }
-            splits = GeodbInputFormat.createInputSplits(conf, paths, requestSizeLimit);
+            splits = GeodbInputFormat.createInputSplits(conf, paths, requestSizeLimit, hostRacks);
             LOG.info(String.format("%d splits created.", splits.size()));
             LOG.info("geo-inventory query done in [ms]: " + (System.currentTimeMillis() - t0));
 
@@ -366,9 +368,34 @@ public class PatternBasedInputFormat extends InputFormat {
                                       JobConfigNames.CALVALUS_INPUT_PRODUCT_IDENTIFIERS));
         }
         LOG.info("Total files to process : " + splits.size());
+        // 0 means no limit
+        int productsPerSplit = conf.getInt(JobConfigNames.CALVALUS_INPUT_PRODUCTS_PER_SPLIT, 0);
+        long splitSize = conf.getLong(JobConfigNames.CALVALUS_INPUT_SPLIT_SIZE, 0);
+        if (productsPerSplit > 1 || splitSize > 0) {
+            splits = splitCombiner(productsPerSplit, splitSize).combine(splits);
+            LOG.info(String.format("combined into %d splits of up to %s", splits.size(), splitLimits(productsPerSplit, splitSize)));
+        }
         return splits;
     }
 
+    private static String splitLimits(int productsPerSplit, long splitSize) {
+        if (productsPerSplit > 0 && splitSize > 0) {
+            return String.format("%d products or %,d bytes", productsPerSplit, splitSize);
+        } else if (productsPerSplit > 0) {
+            return String.format("%d products", productsPerSplit);
+        } else {
+            return String.format("%,d bytes", splitSize);
+        }
+    }
+
+    private ProductSplitCombiner splitCombiner(int productsPerSplit, long splitSize) {
+        ProductSplitCombiner splitCombiner = new ProductSplitCombiner(productsPerSplit, splitSize);
+        for (Map.Entry<String, String> hostRack : hostRacks.entrySet()) {
+            splitCombiner.setRack(hostRack.getKey(), hostRack.getValue());
+        }
+        return splitCombiner;
+    }
+
     private Map<String, String> parseSearchParameters(String catalogue) {
         Map<String,String> searchParameters = new HashMap<>();
         for (String param : catalogue.split("&")) {
@@ -547,21 +574,22 @@ public class PatternBasedInputFormat extends InputFormat {
         }
 
         if (blocks != null && blocks.length > 0) {
-            BlockLocation block = blocks[0];
+            String[] hosts = BlockLocality.getPreferredHosts(blocks);
+            BlockLocality.addRacks(blocks, hostRacks);
             // create a split for the input
             if (productInventory == null) {
                 // no inventory, process whole product
-                return new ProductSplit(file.getPath(), fileLength, block.getHosts());
+                return new ProductSplit(file.getPath(), fileLength, hosts);
             } else {
                 ProductInventoryEntry entry = productInventory.getEntry(file.getPath().getName());
                 if (entry != null && entry.getProcessLength() > 0) {
                     // when listed process the given subset
                     int start = entry.getProcessStartLine();
                     int length = entry.getProcessLength();
-                    return new ProductSplit(file.getPath(), fileLength, block.getHosts(), start, length);
+                    return new ProductSplit(file.getPath(), fileLength, hosts, start, length);
                 } else if (entry == null) {
                     // when not listed process whole product
-                    return new ProductSplit(file.getPath(), fileLength, block.getHosts());
+                    return new ProductSplit(file.getPath(), fileLength, hosts);
                 }
             }
         } else if (withDirs) {
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packs product splits of whole products into multi-product splits.
+ * <p/>
+ * Like Hadoop's CombineFileInputFormat the products are grouped in three passes:
+ * first into node-local groups by the hosts of their first block, then the remainder into rack-local groups,
+ * and finally the rest in input order. A group is complete when it has the maximum number of products or
+ * reaches the maximum number of bytes. Incomplete node and rack groups are left to the next pass.
+ * Splits of product subsets and other split types are passed unchanged, as are groups of one product.
+ */
+class ProductSplitCombiner {
+
+    private final int maxProducts;
+    private final long maxBytes;
+    private final Map<String, String> racks = new HashMap<>();
+
+    /**
+     * @param maxProducts the maximum number of products of a split
+     * @param maxBytes    the maximum number of bytes of a split, or 0 for no limit
+     */
+    ProductSplitCombiner(int maxProducts, long maxBytes) {
+        this.maxProducts = maxProducts > 0 ? maxProducts : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    }
+
+    void setRack(String host, String rack) {
+        racks.put(host, rack);
+    }
+
+    List<InputSplit> combine(List<InputSplit> splits) {
+        List<InputSplit> combinedSplits = new ArrayList<>();
+        Set<ProductSplit> unassigned = new LinkedHashSet<>();
+        Map<String, List<ProductSplit>> nodeGroups = new LinkedHashMap<>();
+        Map<String, List<ProductSplit>> rackGroups = new LinkedHashMap<>();
+        for (InputSplit split : splits) {
+            if (isCombinable(split)) {
+                ProductSplit productSplit = (ProductSplit) split;
+                unassigned.add(productSplit);
+                for (String host : getHosts(productSplit)) {
+                    nodeGroups.computeIfAbsent(host, k -> new ArrayList<>()).add(productSplit);
+                    String rack = racks.get(host);
+                    if (rack != null) {
+                        List<ProductSplit> rackGroup = rackGroups.computeIfAbsent(rack, k -> new ArrayList<>());
+                        if (rackGroup.isEmpty() || rackGroup.get(rackGroup.size() - 1) != productSplit) {
+                            rackGroup.add(productSplit);
+                        }
+                    }
+                }
+            } else {
+                combinedSplits.add(split);
+            }
+        }
+        for (Map.Entry<String, List<ProductSplit>> nodeGroup : nodeGroups.entrySet()) {
+            pack(nodeGroup.getValue(), unassigned, false, combinedSplits);
+        }
+        for (List<ProductSplit> rackGroup : rackGroups.values()) {
+            pack(rackGroup, unassigned, false, combinedSplits);
+        }
+        pack(new ArrayList<>(unassigned), unassigned, true, combinedSplits);
+        return combinedSplits;
+    }
+
+    private void pack(List<ProductSplit> candidates, Set<ProductSplit> unassigned, boolean withIncomplete,
+                      List<InputSplit> combinedSplits) {
+        List<ProductSplit> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (ProductSplit candidate : candidates) {
+            if (!unassigned.contains(candidate)) {
+                continue;
+            }
+            group.add(candidate);
+            groupBytes += Math.max(0, candidate.getLength());
+            if (group.size() >= maxProducts || groupBytes >= maxBytes) {
+                combinedSplits.add(createSplit(group));
+                unassigned.removeAll(group);
+                group.clear();
+                groupBytes = 0;
+            }
+        }
+        if (withIncomplete && !group.isEmpty()) {
+            combinedSplits.add(createSplit(group));
+            unassigned.removeAll(group);
+        }
+    }
+
+    private static InputSplit createSplit(List<ProductSplit> group) {
+        if (group.size() == 1) {
+            return group.get(0);
+        }
+        Path[] paths = new Path[group.size()];
+        long[] lengths = new long[group.size()];
+        Map<String, Integer> hostCounts = new LinkedHashMap<>();
+        for (int i = 0; i < group.size(); i++) {
+            ProductSplit productSplit = group.get(i);
+            paths[i] = productSplit.getPath();
+            lengths[i] = productSplit.getLength();
+            for (String host : getHosts(productSplit)) {
+                hostCounts.merge(host, 1, Integer::sum);
+            }
+        }
+        return new MultiProductSplit(paths, lengths, getMostFrequent(hostCounts.entrySet(), 3));
+    }
+
+    private static String[] getMostFrequent(Collection<Map.Entry<String, Integer>> hostCounts, int maxHosts) {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(hostCounts);
+        sorted.sort((a, b) -> b.getValue() - a.getValue());
+        String[] hosts = new String[Math.min(maxHosts, sorted.size())];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = sorted.get(i).getKey();
+        }
+        return hosts;
+    }
+
+    private static boolean isCombinable(InputSplit split) {
+        return split.getClass() == ProductSplit.class && ((ProductSplit) split).getProcessLength() <= 0;
+    }
+
+    private static String[] getHosts(ProductSplit productSplit) {
+        try {
+            String[] hosts = productSplit.getLocations();
+            return hosts != null ? hosts : new String[0];
+        } catch (IOException e) {
+            return new String[0];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.media.jai.util.SunTileCache;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects timings and byte counts of the stages of a processing task.
+ * <p>
+ * There is one instance per JVM, obtained by {@link #get()}, so that static helpers like
+ * {@code CalvalusProductIO} can contribute. At the start of a task the mapper calls {@link #begin},
+ * at the end {@link #publish}, which adds the metrics as counters of the group {@link #COUNTER_GROUP_NAME}
+ * and optionally writes them as JSON file {@code _metrics/<task-attempt-id>.json} into the output directory.
+ * Tile cache hits and misses are only counted with {@link JobConfigNames#CALVALUS_DEBUG_TILECACHE}
+ * because the diagnostics of the JAI tile cache slow down every cache access.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (TaskMetrics.Timer timer = TaskMetrics.get().start(TaskMetrics.PROCESSING)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class TaskMetrics {
+
+    public static final String COUNTER_GROUP_NAME = "Calvalus Metrics";
+
+    public static final String PRODUCT_OPEN = "productOpen";
+    public static final String PROCESSING = "processing";
+    public static final String FORMATTING = "formatting";
+    public static final String ARCHIVING = "archiving";
+    public static final String QUICKLOOKS = "quicklooks";
+    public static final String BINNING = "binning";
+    public static final String EXTRACTION = "extraction";
+
+    public static final String TILE_CACHE_HITS = "tileCacheHits";
+    public static final String TILE_CACHE_MISSES = "tileCacheMisses";
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final TaskMetrics INSTANCE = new TaskMetrics();
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Long> values = new LinkedHashMap<>();
+    private boolean tileCacheDiagnostics;
+    private long tileCacheHits;
+    private long tileCacheMisses;
+
+    public static TaskMetrics get() {
+        return INSTANCE;
+    }
+
+    TaskMetrics() {
+    }
+
+    /**
+     * Resets the metrics at the start of a task.
+     */
+    public synchronized void begin(Configuration conf) {
+        stages.clear();
+        values.clear();
+        tileCacheDiagnostics = false;
+        TileCache tileCache = JAI.getDefaultInstance().getTileCache();
+        if (conf.getBoolean(JobConfigNames.CALVALUS_DEBUG_TILECACHE, false) && tileCache instanceof SunTileCache) {
+            SunTileCache sunTileCache = (SunTileCache) tileCache;
+            sunTileCache.enableDiagnostics();
+            tileCacheHits = sunTileCache.getCacheHitCount();
+            tileCacheMisses = sunTileCache.getCacheMissCount();
+            tileCacheDiagnostics = true;
+        }
+    }
+
+    /**
+     * Starts timing a stage. The time is added to the stage when the timer is closed.
+     */
+    public Timer start(String stage) {
+        return new Timer(stage);
+    }
+
+    public synchronized void addTime(String stage, long millis) {
+        Stage s = getStage(stage);
+        s.millis += millis;
+        s.count++;
+    }
+
+    public synchronized void addBytesRead(String stage, long bytes) {
+        getStage(stage).bytesRead += bytes;
+    }
+
+    public synchronized void addBytesWritten(String stage, long bytes) {
+        getStage(stage).bytesWritten += bytes;
+    }
+
+    /**
+     * Adds to a metric that is not associated with a stage, e.g. the number of spatial bins or a spill size.
+     */
+    public synchronized void increment(String name, long amount) {
+        Long value = values.get(name);
+        values.put(name, value != null ? value + amount : amount);
+    }
+
+    /**
+     * @return the metrics as nested map, stage name to metric name to value, plus the plain values
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            Stage stage = entry.getValue();
+            Map<String, Long> stageMap = new LinkedHashMap<>();
+            stageMap.put("timeMillis", stage.millis);
+            stageMap.put("count", stage.count);
+            stageMap.put("bytesRead", stage.bytesRead);
+            stageMap.put("bytesWritten", stage.bytesWritten);
+            map.put(entry.getKey(), stageMap);
+        }
+        map.putAll(values);
+        TileCache tileCache = JAI.getDefaultInstance().getTileCache();
+        if (tileCacheDiagnostics && tileCache instanceof SunTileCache) {
+            map.put(TILE_CACHE_HITS, ((SunTileCache) tileCache).getCacheHitCount() - tileCacheHits);
+            map.put(TILE_CACHE_MISSES, ((SunTileCache) tileCache).getCacheMissCount() - tileCacheMisses);
+        }
+        return map;
+    }
+
+    /**
+     * Publishes the metrics of the task as Hadoop counters and, if configured, as JSON file.
+     */
+    public void publish(TaskInputOutputContext<?, ?, ?, ?> context) {
+        Map<String, Object> metrics = toMap();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Long> stageMap = (Map<String, Long>) entry.getValue();
+                for (Map.Entry<String, Long> stageEntry : stageMap.entrySet()) {
+                    if (stageEntry.getValue() != 0) {
+                        context.getCounter(COUNTER_GROUP_NAME, entry.getKey() + " " + stageEntry.getKey()).increment(stageEntry.getValue());
+                    }
+                }
+            } else {
+                context.getCounter(COUNTER_GROUP_NAME, entry.getKey()).increment((Long) entry.getValue());
+            }
+        }
+        if (context.getConfiguration().getBoolean(JobConfigNames.CALVALUS_METRICS_FILE, false)) {
+            writeJson(context, metrics);
+        }
+        synchronized (this) {
+            stages.clear();
+            values.clear();
+        }
+    }
+
+    private static void writeJson(TaskInputOutputContext<?, ?, ?, ?> context, Map<String, Object> metrics) {
+        try {
+            Map<String, Object> document = new LinkedHashMap<>();
+            document.put("taskAttemptId", context.getTaskAttemptID().toString());
+            document.put("jobName", context.getJobName());
+            document.put("metrics", metrics);
+            Path metricsPath = new Path(new Path(FileOutputFormat.getWorkOutputPath(context), "_metrics"),
+                                        context.getTaskAttemptID() + ".json");
+            try (FSDataOutputStream out = metricsPath.getFileSystem(context.getConfiguration()).create(metricsPath)) {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out, document);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "failed to write task metrics: " + e.getMessage(), e);
+        }
+    }
+
+    private Stage getStage(String stage) {
+        Stage s = stages.get(stage);
+        if (s == null) {
+            s = new Stage();
+            stages.put(stage, s);
+        }
+        return s;
+    }
+
+    private static class Stage {
+        long millis;
+        long count;
+        long bytesRead;
+        long bytesWritten;
+    }
+
+    public class Timer implements AutoCloseable {
+
+        private final String stage;
+        private final long t0;
+
+        private Timer(String stage) {
+            this.stage = stage;
+            this.t0 = System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+            addTime(stage, System.currentTimeMillis() - t0);
+        }
+    }
+}
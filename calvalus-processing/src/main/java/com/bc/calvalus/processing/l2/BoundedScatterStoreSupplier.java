@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStoreSupplier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides the stores for the deflated entries of a {@code ParallelScatterZipCreator}.
+ * <p>
+ * All entries are kept until the archive is written, so the stores together hold a full compressed
+ * copy of the archive. They keep it in memory as long as all stores together stay below a limit.
+ * An entry that does not fit any more is moved to a temporary file in the spill directory.
+ */
+class BoundedScatterStoreSupplier implements ScatterGatherBackingStoreSupplier {
+
+    private final long maxMemory;
+    private final File spillDir;
+    private long usedMemory;
+    private int numSpilled;
+
+    BoundedScatterStoreSupplier(long maxMemory, File spillDir) {
+        this.maxMemory = maxMemory;
+        this.spillDir = spillDir;
+    }
+
+    @Override
+    public ScatterGatherBackingStore get() {
+        return new BoundedStore();
+    }
+
+    synchronized int getNumSpilled() {
+        return numSpilled;
+    }
+
+    private synchronized boolean reserve(long numBytes) {
+        if (usedMemory + numBytes > maxMemory) {
+            return false;
+        }
+        usedMemory += numBytes;
+        return true;
+    }
+
+    private synchronized void release(long numBytes) {
+        usedMemory -= numBytes;
+    }
+
+    private synchronized File createSpillFile() throws IOException {
+        numSpilled++;
+        return File.createTempFile("zip-entry-", ".tmp", spillDir);
+    }
+
+    private class BoundedStore implements ScatterGatherBackingStore {
+
+        private MemoryStore memory = new MemoryStore();
+        private FileBasedScatterGatherBackingStore fileStore;
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length) throws IOException {
+            if (memory != null) {
+                if (reserve(length)) {
+                    memory.write(data, offset, length);
+                    return;
+                }
+                fileStore = new FileBasedScatterGatherBackingStore(createSpillFile());
+                memory.writeTo(fileStore);
+                release(memory.size());
+                memory = null;
+            }
+            fileStore.writeOut(data, offset, length);
+        }
+
+        @Override
+        public void closeForWriting() throws IOException {
+            if (fileStore != null) {
+                fileStore.closeForWriting();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (memory != null) {
+                return memory.getInputStream();
+            }
+            return fileStore.getInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (memory != null) {
+                release(memory.size());
+                memory = null;
+            }
+            if (fileStore != null) {
+                // deletes the spill file
+                fileStore.close();
+                fileStore = null;
+            }
+        }
+    }
+
+    private static class MemoryStore extends ByteArrayOutputStream {
+
+        InputStream getInputStream() {
+            // no copy of the buffer
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        void writeTo(ScatterGatherBackingStore store) throws IOException {
+            store.writeOut(buf, 0, count);
+        }
+    }
+}
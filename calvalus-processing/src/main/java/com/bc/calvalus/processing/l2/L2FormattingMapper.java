@@ -166,7 +166,9 @@ public class L2FormattingMapper extends Mapper<NullWritable, NullWritable, NullW
         LOG.info("Creating quicklooks.");
 
         List<Quicklooks.QLConfig> qlConfigList = getValidQlConfigs(jobConfig);
-        for (Quicklooks.QLConfig qlConfig : qlConfigList) {
+        String[] imageFileNames = new String[qlConfigList.size()];
+        for (int i = 0; i < imageFileNames.length; i++) {
+            Quicklooks.QLConfig qlConfig = qlConfigList.get(i);
             String imageFileName;
 //            if (context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REGEX) != null
 //                    && context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REPLACEMENT) != null) {
@@ -177,12 +179,17 @@ public class L2FormattingMapper extends Mapper<NullWritable, NullWritable, NullW
             if (qlConfigList.size() > 1) {
                 imageFileName = imageFileName + "_" + qlConfig.getBandName();
             }
-            try {
-                QLMapper.createQuicklook(targetProduct, imageFileName, context, qlConfig);
-            } catch (Exception e) {
-                String msg = String.format("Could not create quicklook image '%s'.", qlConfig.getBandName());
-                LOG.log(Level.WARNING, msg, e);
+            imageFileNames[i] = imageFileName;
+        }
+        try {
+            Map<Quicklooks.QLConfig, Exception> errors = QLMapper.writeQuicklooks(targetProduct, imageFileNames, context,
+                                                                                  qlConfigList.toArray(new Quicklooks.QLConfig[0]));
+            for (Map.Entry<Quicklooks.QLConfig, Exception> error : errors.entrySet()) {
+                String msg = String.format("Could not create quicklook image '%s'.", error.getKey().getBandName());
+                LOG.log(Level.WARNING, msg, error.getValue());
             }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not create quicklook images.", e);
         }
         LOG.info("Finished creating quicklooks.");
     }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A GZIP output stream that deflates fixed-size blocks of its input concurrently.
+ * <p>
+ * The result is a single, standard GZIP member (like pigz produces it): every block is
+ * deflated independently with the last 32 KB of the preceding block as preset dictionary
+ * and terminated by a sync flush, so the concatenated blocks form one valid deflate stream.
+ * The CRC is computed sequentially in the writing thread.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks;
+    private final CRC32 crc;
+
+    private byte[] block;
+    private int blockLength;
+    private byte[] dictionary;
+    private long totalLength;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, int numThreads) throws IOException {
+        this(out, numThreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int numThreads, int blockSize) throws IOException {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads < 1");
+        }
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("blockSize < " + DICTIONARY_SIZE);
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = 2 * numThreads;
+        this.executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "gzip-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingBlocks = new ArrayDeque<>();
+        this.crc = new CRC32();
+        this.block = new byte[blockSize];
+        writeHeader();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] presetDictionary = dictionary;
+        crc.update(data, 0, length);
+        totalLength += length;
+        if (length >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+        }
+        pendingBlocks.add(executor.submit(() -> deflate(data, length, presetDictionary, last)));
+        block = new byte[blockSize];
+        blockLength = 0;
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static byte[] deflate(byte[] data, int length, byte[] presetDictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (presetDictionary != null) {
+                deflater.setDictionary(presetDictionary);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        // magic, CM=deflate, no flags, no mtime, no extra flags, OS=unknown
+        out.write(new byte[]{(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+    }
+
+    private void writeTrailer() throws IOException {
+        writeIntLE((int) crc.getValue());
+        writeIntLE((int) totalLength);
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -20,8 +20,8 @@ import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorAdapter;
-import com.bc.calvalus.processing.ProcessorFactory;
-import com.bc.calvalus.processing.analysis.QuicklookGenerator;
+import com.bc.calvalus.processing.ProcessorAdapterQueue;
+import com.bc.calvalus.processing.analysis.QLMapper;
 import com.bc.calvalus.processing.analysis.Quicklooks;
 import com.bc.calvalus.processing.beam.SimpleOutputFormat;
 import com.bc.calvalus.processing.beam.SnapGraphAdapter;
@@ -29,6 +29,7 @@ import com.bc.calvalus.processing.hadoop.HDFSSimpleFileSystem;
 import com.bc.calvalus.processing.hadoop.NoRecordReader;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.metadata.MetadataResourceEngine;
@@ -40,7 +41,6 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.WKTWriter;
 import com.vividsolutions.jts.io.gml2.GMLWriter;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
@@ -70,14 +70,10 @@ import org.opengis.referencing.crs.CRSAuthorityFactory;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.util.InternationalString;
 
-import javax.imageio.ImageIO;
 import javax.measure.unit.Unit;
 import java.awt.Rectangle;
-import java.awt.image.RenderedImage;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -177,11 +173,27 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
     public void run(Context context) throws IOException, InterruptedException {
 
         translateParameters(context);
+        TaskMetrics.get().begin(context.getConfiguration());
+        try (ProcessorAdapterQueue adapterQueue = new ProcessorAdapterQueue(context)) {
+            while (adapterQueue.hasNext()) {
+                ProcessorAdapter processorAdapter = adapterQueue.next();
+                try {
+                    processProduct(context, processorAdapter);
+                } catch (IOException e) {
+                    adapterQueue.productFailed(processorAdapter, e);
+                }
+            }
+        } finally {
+            TaskMetrics.get().publish(context);
+        }
+    }
+
+    private void processProduct(Context context, ProcessorAdapter processorAdapter) throws IOException {
+
         final Configuration jobConfig = context.getConfiguration();
         final String outputFormat = jobConfig.get(JobConfigNames.OUTPUT_FORMAT);
         final String outputCompression = jobConfig.get(JobConfigNames.OUTPUT_COMPRESSION);
 
-        final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
         String inputName = processorAdapter.getInputPath().getName();
         String productName = null;
         if (processorAdapter.getInputParameters() != null) {
@@ -221,8 +233,12 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
             // process and write native product
 
             t0 = System.currentTimeMillis();
-            if (!processorAdapter.processSourceProduct(ProcessorAdapter.MODE.EXECUTE,
-                                                       SubProgressMonitor.create(pm, progressForProcessing))) {
+            boolean processed;
+            try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.PROCESSING)) {
+                processed = processorAdapter.processSourceProduct(ProcessorAdapter.MODE.EXECUTE,
+                                                                  SubProgressMonitor.create(pm, progressForProcessing));
+            }
+            if (!processed) {
                 LOG.warning("product has not been processed.");
                 context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product not processed").increment(1);
                 return;
@@ -261,7 +277,9 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
 
             if (jobConfig.get(JobConfigNames.QL_PARAMETERS) != null) {
                 context.setStatus("Quicklooks");
-                writeQuicklooks(context, jobConfig, productName, targetProduct);
+                try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.QUICKLOOKS)) {
+                    writeQuicklooks(context, jobConfig, productName, targetProduct);
+                }
             }
             pm.worked(5);
             LOG.info("processing done in [ms]: " + (System.currentTimeMillis() - t0));
@@ -274,7 +292,6 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
             pm.worked(10);
 
         } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Processing exception: " + e.toString(), e);
             throw new IOException("Processing exception: " + e.toString(), e);
         } finally {
             context.setStatus("");
@@ -298,6 +315,7 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
         translateParameter(conf, JobConfigNames.PROCESSOR_NAME, JobConfigNames.CALVALUS_L2_OPERATOR);
         translateParameter(conf, JobConfigNames.FORCE_REPROCESS, JobConfigNames.CALVALUS_PROCESS_ALL);
         translateParameter(conf, JobConfigNames.SNAP_TILECACHE, "calvalus.system.snap.jai.tileCacheSize");
+        translateParameter(conf, JobConfigNames.OUTPUT_COMPRESSION_THREADS, JobConfigNames.CALVALUS_OUTPUT_COMPRESSION_THREADS);
     }
 
     private static void translateParameter(Configuration conf, String in, String out) {
@@ -516,41 +534,27 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
     protected void writeQuicklooks(Mapper.Context context, Configuration jobConfig, String productName, Product targetProduct) {
         LOG.info("Creating quicklooks.");
         List<Quicklooks.QLConfig> qlConfigList = getValidQlConfigs(jobConfig);
-        for (Quicklooks.QLConfig qlConfig : qlConfigList) {
+        String[] imageFileNames = new String[qlConfigList.size()];
+        for (int i = 0; i < imageFileNames.length; i++) {
             String imageFileName;
             imageFileName = productName;
             if (qlConfigList.size() > 1) {
-                imageFileName = imageFileName + "_" + qlConfig.getBandName();
-            }
-            try {
-                createQuicklook(targetProduct, imageFileName, context, qlConfig);
-                LOG.info("quicklook for " + qlConfig.getBandName() + " created");
-            } catch (Exception e) {
-                String msg = String.format("Could not create quicklook image '%s'.", qlConfig.getBandName());
-                LOG.log(Level.WARNING, msg, e);
+                imageFileName = imageFileName + "_" + qlConfigList.get(i).getBandName();
             }
+            imageFileNames[i] = imageFileName;
         }
-        LOG.info("Finished creating quicklooks.");
-    }
-
-    protected void createQuicklook(Product product, String imageFileName, Mapper.Context context,
-                                       Quicklooks.QLConfig config) throws IOException, InterruptedException {
-        RenderedImage quicklookImage = new QuicklookGenerator(context, product, config).createImage();
-        if (quicklookImage != null) {
-            OutputStream outputStream = createOutputStream(context, imageFileName + "." + config.getImageType());
-            OutputStream pmOutputStream = new BytesCountingOutputStream(outputStream, context);
-            try {
-                ImageIO.write(quicklookImage, config.getImageType(), pmOutputStream);
-            } finally {
-                outputStream.close();
+        try {
+            // all quicklooks in one pass over the product
+            Map<Quicklooks.QLConfig, Exception> errors = QLMapper.writeQuicklooks(targetProduct, imageFileNames, context,
+                                                                                  qlConfigList.toArray(new Quicklooks.QLConfig[0]));
+            for (Map.Entry<Quicklooks.QLConfig, Exception> error : errors.entrySet()) {
+                String msg = String.format("Could not create quicklook image '%s'.", error.getKey().getBandName());
+                LOG.log(Level.WARNING, msg, error.getValue());
             }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not create quicklook images.", e);
         }
-    }
-
-    private static OutputStream createOutputStream(Mapper.Context context, String fileName) throws IOException, InterruptedException {
-        Path path = new Path(FileOutputFormat.getWorkOutputPath(context), fileName);
-        final FSDataOutputStream fsDataOutputStream = path.getFileSystem(context.getConfiguration()).create(path);
-        return new BufferedOutputStream(fsDataOutputStream);
+        LOG.info("Finished creating quicklooks.");
     }
 
     protected Map<String, Object> createSpatialSubsetParameter(Configuration jobConfig) {
@@ -631,75 +635,20 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
 
         //ProductIO.writeProduct(targetProduct, productFile, outputFormat, false, pm);
         GPF.writeProduct(targetProduct, productFile, outputFormat, false, pm);
+        long formattedBytes = productFormatter.getTemporaryDirSize();
+        TaskMetrics.get().addTime(TaskMetrics.FORMATTING, System.currentTimeMillis() - t0);
+        TaskMetrics.get().addBytesWritten(TaskMetrics.FORMATTING, formattedBytes);
         LOG.info("formatting done in [ms]: " + (System.currentTimeMillis() - t0));
 
         t0 = System.currentTimeMillis();
         context.setStatus("Copying");
         productFormatter.compressToHDFS(context, productFile);
         context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
+        TaskMetrics.get().addTime(TaskMetrics.ARCHIVING, System.currentTimeMillis() - t0);
+        TaskMetrics.get().addBytesRead(TaskMetrics.ARCHIVING, formattedBytes);
         LOG.info("Formatted product " + productFile.getName() + " archived in " + FileOutputFormat.getWorkOutputPath(context));
         LOG.info("archiving done in [ms]: " + (System.currentTimeMillis() - t0));
         return targetProduct;
     }
-
-
-    private static class BytesCountingOutputStream extends OutputStream {
-
-        private static final String FILE_SYSTEM_COUNTERS = "FileSystemCounters";
-        private static final String FILE_BYTES_WRITTEN = "FILE_BYTES_WRITTEN";
-
-        private final OutputStream wrappedStream;
-        private final Mapper.Context context;
-        private int countedBytes;
-
-        public BytesCountingOutputStream(OutputStream outputStream, Mapper.Context context) {
-            wrappedStream = outputStream;
-            this.context = context;
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            wrappedStream.write(b);
-            maybeIncrementHadoopCounter(1);
-        }
-
-        @Override
-        public void write(byte[] b) throws IOException {
-            wrappedStream.write(b);
-            maybeIncrementHadoopCounter(b.length);
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            wrappedStream.write(b, off, len);
-            maybeIncrementHadoopCounter(len - off);
-        }
-
-        @Override
-        public void close() throws IOException {
-            wrappedStream.close();
-            incrementHadoopCounter();
-        }
-
-        @Override
-        public void flush() throws IOException {
-            wrappedStream.flush();
-            incrementHadoopCounter();
-        }
-
-
-        private void maybeIncrementHadoopCounter(int byteCount) {
-            countedBytes += byteCount;
-            if (countedBytes / (1024 * 10) >= 1) {
-                incrementHadoopCounter();
-            }
-        }
-
-        private void incrementHadoopCounter() {
-            context.getCounter(FILE_SYSTEM_COUNTERS, FILE_BYTES_WRITTEN).increment(countedBytes);
-            context.progress();
-            countedBytes = 0;
-        }
-    }
 }
 
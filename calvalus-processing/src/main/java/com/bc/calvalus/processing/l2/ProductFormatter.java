@@ -17,7 +17,11 @@
 package com.bc.calvalus.processing.l2;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.ceres.core.runtime.internal.DirScanner;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
@@ -32,10 +36,14 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -46,6 +54,7 @@ import java.util.zip.ZipOutputStream;
  */
 public class ProductFormatter {
 
+    private static final long DEFAULT_COMPRESSION_MEMORY = 256L * 1024 * 1024;
     private static final Logger LOG = CalvalusLogger.getLogger();
 
     private final String outputFormat;
@@ -154,6 +163,20 @@ public class ProductFormatter {
         return new File(tmpDir, getProductFilename());
     }
 
+    /**
+     * @return the number of bytes written into the temporary product directory
+     */
+    public long getTemporaryDirSize() {
+        long size = 0;
+        if (tmpDir != null) {
+            DirScanner dirScanner = new DirScanner(tmpDir, true, true);
+            for (String entryPath : dirScanner.scan()) {
+                size += new File(tmpDir, entryPath).length();
+            }
+        }
+        return size;
+    }
+
     public void cleanupTempDir() {
         if (tmpDir != null) {
             FileUtils.deleteTree(tmpDir);
@@ -162,15 +185,30 @@ public class ProductFormatter {
 
     public void compressToHDFS(TaskInputOutputContext<?, ?, ?, ?> context, File productFile) throws IOException {
 
+        // more than one thread switches to block-parallel gzip or zip with parallel entry compression
+        int compressionThreads = context.getConfiguration().getInt(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION_THREADS, 1);
         if ("zip".equals(outputCompression)) {
-            LOG.info("Creating ZIP archive on HDFS.");
             OutputStream outputStream = createOutputStream(context, outputFilename);
-            zip(tmpDir, outputStream, context);
+            if (compressionThreads > 1) {
+                LOG.info("Creating ZIP archive on HDFS using " + compressionThreads + " threads.");
+                long compressionMemory = context.getConfiguration().getLong(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION_MEMORY,
+                                                                            DEFAULT_COMPRESSION_MEMORY);
+                zipParallel(tmpDir, outputStream, compressionThreads, compressionMemory, tmpDir.getParentFile(), context);
+            } else {
+                LOG.info("Creating ZIP archive on HDFS.");
+                zip(tmpDir, outputStream, context);
+            }
         } else if ("gz".equals(outputCompression)) {
-            LOG.info("Creating GZ file on HDFS.");
             InputStream inputStream = new BufferedInputStream(new FileInputStream(productFile));
             OutputStream outputStream = createOutputStream(context, outputFilename);
-            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+            OutputStream gzipOutputStream;
+            if (compressionThreads > 1) {
+                LOG.info("Creating GZ file on HDFS using " + compressionThreads + " threads.");
+                gzipOutputStream = new ParallelGzipOutputStream(outputStream, compressionThreads);
+            } else {
+                LOG.info("Creating GZ file on HDFS.");
+                gzipOutputStream = new GZIPOutputStream(outputStream);
+            }
             copyAndClose(inputStream, gzipOutputStream, context);
         } else if ("dir".equals(outputCompression)) {
             // currently used only for NetCDF4-BEAM products with IsinPlanetaryGrid
@@ -248,6 +286,46 @@ public class ProductFormatter {
         }
     }
 
+    /**
+     * Zips the content of the source directory like {@link #zip}, but deflates the entries
+     * concurrently before they are written sequentially to the output stream.
+     * The deflated entries are kept until all are complete, in memory up to the given number of bytes
+     * for all entries together, the entries that exceed it in temporary files in the spill directory.
+     * So the parallel path needs up to the compressed size of the archive as additional memory or local disk.
+     */
+    public static void zipParallel(File sourceDir, OutputStream outputStream, int numThreads, long maxMemory,
+                                   File spillDir, Progressable progressable) throws IOException {
+        if (!sourceDir.exists()) {
+            throw new FileNotFoundException(sourceDir.getPath());
+        }
+
+        DirScanner dirScanner = new DirScanner(sourceDir, true, true);
+        String[] entryNames = dirScanner.scan();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ParallelScatterZipCreator zipCreator =
+                new ParallelScatterZipCreator(executor, new BoundedScatterStoreSupplier(maxMemory, spillDir));
+        for (String entryName : entryNames) {
+            ZipArchiveEntry zipEntry = new ZipArchiveEntry(entryName.replace('\\', '/'));
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            File sourceFile = new File(sourceDir, entryName);
+            zipCreator.addArchiveEntry(zipEntry, () -> {
+                try {
+                    return new ProgressInputStream(new FileInputStream(sourceFile), progressable);
+                } catch (FileNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(new BufferedOutputStream(outputStream));
+        try {
+            zipCreator.writeTo(zipOutputStream);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Failed to compress " + sourceDir.getName(), e);
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
     // copied from Staging
     public static void copy(InputStream inputStream, OutputStream outputStream, Progressable progressable) throws
                                                                                                            IOException {
@@ -276,4 +354,23 @@ public class ProductFormatter {
         return fileSystem.create(workPath);
     }
 
+    /**
+     * Reports progress while being read, used for entries compressed in background threads.
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+
+        private final Progressable progressable;
+
+        ProgressInputStream(InputStream in, Progressable progressable) {
+            super(in);
+            this.progressable = progressable;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            progressable.progress();
+            return super.read(b, off, len);
+        }
+    }
+
 }
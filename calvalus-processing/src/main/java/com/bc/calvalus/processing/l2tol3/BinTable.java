@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2tol3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A read-only table of the feature values of L3 bins, sorted by bin index.
+ * <p/>
+ * The file format is columnar: a header with the magic number, the number of features and
+ * the number of bins, followed by the column of bin indexes (long) and one column per feature (float),
+ * all big-endian. A file is memory-mapped, so that a task does not need heap space for the table
+ * and only the pages of the bins looked up are read. Bins are looked up by binary search.
+ */
+public class BinTable {
+
+    static final int MAGIC = 0x43424e54; // "CBNT"
+    static final int HEADER_SIZE = 16;
+
+    private final int numBins;
+    private final LongBuffer binIndexes;
+    private final FloatBuffer[] featureColumns;
+
+    private BinTable(LongBuffer binIndexes, FloatBuffer[] featureColumns) {
+        this.numBins = binIndexes.limit();
+        this.binIndexes = binIndexes;
+        this.featureColumns = featureColumns;
+    }
+
+    /**
+     * Memory-maps a bin table file.
+     */
+    public static BinTable open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+                throw new IOException("not a bin table: " + file);
+            }
+            int numFeatures = raf.readInt();
+            long numBins = raf.readLong();
+            if (numBins * 8 > Integer.MAX_VALUE) {
+                throw new IOException("too many bins for a bin table: " + numBins);
+            }
+            if (raf.length() != HEADER_SIZE + numBins * (8 + 4 * numFeatures)) {
+                throw new IOException("truncated bin table: " + file);
+            }
+            // the mappings stay valid after the channel is closed
+            LongBuffer binIndexes = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, numBins * 8).asLongBuffer();
+            FloatBuffer[] featureColumns = new FloatBuffer[numFeatures];
+            long position = HEADER_SIZE + numBins * 8;
+            for (int f = 0; f < numFeatures; f++) {
+                featureColumns[f] = channel.map(FileChannel.MapMode.READ_ONLY, position, numBins * 4).asFloatBuffer();
+                position += numBins * 4;
+            }
+            return new BinTable(binIndexes, featureColumns);
+        }
+    }
+
+    /**
+     * Creates an in-memory bin table.
+     *
+     * @param featureValues the feature values of the bins, by bin index
+     */
+    public static BinTable create(Map<Long, float[]> featureValues, int numFeatures) {
+        long[] binIndexes = new long[featureValues.size()];
+        int i = 0;
+        for (Long binIndex : featureValues.keySet()) {
+            binIndexes[i++] = binIndex;
+        }
+        Arrays.sort(binIndexes);
+        FloatBuffer[] featureColumns = new FloatBuffer[numFeatures];
+        for (int f = 0; f < numFeatures; f++) {
+            float[] column = new float[binIndexes.length];
+            for (int row = 0; row < binIndexes.length; row++) {
+                column[row] = featureValues.get(binIndexes[row])[f];
+            }
+            featureColumns[f] = FloatBuffer.wrap(column);
+        }
+        return new BinTable(LongBuffer.wrap(binIndexes), featureColumns);
+    }
+
+    public int getNumBins() {
+        return numBins;
+    }
+
+    public int getNumFeatures() {
+        return featureColumns.length;
+    }
+
+    /**
+     * @return the row of the bin, or -1 if the table does not contain the bin
+     */
+    public int findRow(long binIndex) {
+        int low = 0;
+        int high = numBins - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midIndex = binIndexes.get(mid);
+            if (midIndex < binIndex) {
+                low = mid + 1;
+            } else if (midIndex > binIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public long getBinIndex(int row) {
+        return binIndexes.get(row);
+    }
+
+    public float getFeatureValue(int row, int feature) {
+        return featureColumns[feature].get(row);
+    }
+
+    /**
+     * Writes a bin table from bins given in ascending order of their bin index.
+     * The columns are collected in temporary files and concatenated by {@link #finish}.
+     */
+    public static class Writer implements Closeable {
+
+        private final int numFeatures;
+        private final File[] columnFiles;
+        private final DataOutputStream[] columns;
+        private long numBins;
+        private long lastBinIndex = Long.MIN_VALUE;
+
+        public Writer(int numFeatures) throws IOException {
+            this.numFeatures = numFeatures;
+            this.columnFiles = new File[numFeatures + 1];
+            this.columns = new DataOutputStream[numFeatures + 1];
+            try {
+                for (int c = 0; c < columns.length; c++) {
+                    columnFiles[c] = File.createTempFile("bintable-column-" + c + "-", ".tmp");
+                    columns[c] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnFiles[c]), 64 * 1024));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public void write(long binIndex, float[] featureValues) throws IOException {
+            if (numBins > 0 && binIndex <= lastBinIndex) {
+                throw new IOException("bins not in ascending order: " + binIndex + " after " + lastBinIndex);
+            }
+            if (featureValues.length < numFeatures) {
+                throw new IOException("bin " + binIndex + " has " + featureValues.length + " features, expected " + numFeatures);
+            }
+            columns[0].writeLong(binIndex);
+            for (int f = 0; f < numFeatures; f++) {
+                columns[f + 1].writeFloat(featureValues[f]);
+            }
+            lastBinIndex = binIndex;
+            numBins++;
+        }
+
+        /**
+         * Writes the table to the output stream. The stream is not closed.
+         */
+        public void finish(OutputStream outputStream) throws IOException {
+            DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(numFeatures);
+            out.writeLong(numBins);
+            byte[] buffer = new byte[64 * 1024];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c].close();
+                try (InputStream in = new BufferedInputStream(new FileInputStream(columnFiles[c]))) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+            out.flush();
+        }
+
+        /**
+         * Deletes the temporary files.
+         */
+        @Override
+        public void close() {
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c] != null) {
+                    try {
+                        columns[c].close();
+                    } catch (IOException ignore) {
+                    }
+                }
+                if (columnFiles[c] != null) {
+                    columnFiles[c].delete();
+                }
+            }
+        }
+    }
+}
@@ -46,6 +46,7 @@ import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -81,7 +82,7 @@ public class L2toL3Mapper extends Mapper<NullWritable, NullWritable, LongWritabl
         final SpatialBinEmitter spatialBinEmitter = new SpatialBinEmitter(context);
 
         RatioCalculator ratioCalculator = null;
-        String l3MeanString = conf.get("calvalus.l2tol3.l3path");
+        String l3MeanString = conf.get(L2toL3WorkflowItem.L3_MEAN_PATH);
         if (l3MeanString != null) {
 
             Path l3MeanPath = new Path(l3MeanString);
@@ -91,9 +92,16 @@ public class L2toL3Mapper extends Mapper<NullWritable, NullWritable, LongWritabl
             metadata = ProcessingMetadata.read(inputDirectory, conf);
             ProcessingMetadata.metadata2Config(metadata, conf, JobConfigNames.LEVEL3_METADATA_KEYS);
             String[] l3MeanFeatureNames = conf.getStrings(JobConfigNames.CALVALUS_L3_FEATURE_NAMES);
-            Map<Long, float[]> l3MeanValues = readL3MeanValues(l3MeanPath, conf);
-
-            ratioCalculator = new RatioCalculator(binningContext.getVariableContext(), l3MeanFeatureNames, l3MeanValues);
+            String l3MeanTableName = conf.get(L2toL3WorkflowItem.L3_MEAN_TABLE);
+            if (l3MeanTableName != null && new File(l3MeanTableName).exists()) {
+                // memory-mapped from the distributed cache, shared via the page cache by the tasks of a node
+                BinTable l3MeanValues = BinTable.open(new File(l3MeanTableName));
+                LOG.info("using L3 bin table with " + l3MeanValues.getNumBins() + " bins");
+                ratioCalculator = new RatioCalculator(binningContext.getVariableContext(), l3MeanFeatureNames, l3MeanValues);
+            } else {
+                Map<Long, float[]> l3MeanValues = readL3MeanValues(l3MeanPath, conf);
+                ratioCalculator = new RatioCalculator(binningContext.getVariableContext(), l3MeanFeatureNames, l3MeanValues);
+            }
         }
 
         L2toL3SpatialBinner spatialBinner = null;
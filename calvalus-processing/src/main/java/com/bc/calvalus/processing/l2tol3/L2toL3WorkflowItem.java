@@ -16,24 +16,36 @@
 
 package com.bc.calvalus.processing.l2tol3;
 
+import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.SimpleOutputFormat;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import com.bc.calvalus.processing.l3.L3SpatialBin;
+import com.bc.calvalus.processing.l3.L3TemporalBin;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 
 /**
  * A workflow item creating a Hadoop job for n input products processed to a single L3 product.
  */
 public class L2toL3WorkflowItem extends HadoopWorkflowItem {
 
+    static final String L3_MEAN_PATH = "calvalus.l2tol3.l3path";
+    static final String L3_MEAN_TABLE = "calvalus.l2tol3.l3table";
+    private static final String L3_MEAN_TABLE_LINK_NAME = "l3mean.bintable";
+
     public L2toL3WorkflowItem(HadoopProcessingService processingService, String username, String jobName, Configuration jobConfig) {
         super(processingService, username, jobName, jobConfig);
     }
@@ -78,6 +90,8 @@ public class L2toL3WorkflowItem extends HadoopWorkflowItem {
         jobConfig.setIfUnset("calvalus.system.beam.reader.tileHeight", "64");
         jobConfig.setIfUnset("calvalus.system.beam.reader.tileWidth", "*");
 
+        addL3MeanTable(jobConfig);
+
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(L2toL3Mapper.class);
         job.setMapOutputKeyClass(LongWritable.class);
@@ -90,4 +104,66 @@ public class L2toL3WorkflowItem extends HadoopWorkflowItem {
         FileOutputFormat.setOutputPath(job, new Path(getOutputDir()));
     }
 
+    /**
+     * Provides the L3 mean values as a bin table in the distributed cache, so that the mappers
+     * memory-map it instead of reading the L3 into a map each. The table is written once
+     * next to the L3 product. Its name contains the modification time of the L3 product,
+     * so that an L3 product rewritten at the same path, e.g. by a resubmitted production,
+     * gets a new table instead of the stale one.
+     */
+    private void addL3MeanTable(Configuration jobConfig) throws IOException {
+        String l3MeanString = jobConfig.get(L3_MEAN_PATH);
+        if (l3MeanString == null) {
+            return;
+        }
+        Path l3MeanPath = new Path(l3MeanString);
+        FileSystem fileSystem = getProcessingService().getFileSystem(getUserName(), jobConfig, l3MeanPath);
+        long l3ModificationTime = fileSystem.getFileStatus(l3MeanPath).getModificationTime();
+        Path tablePath = getBinTablePath(l3MeanPath, l3ModificationTime);
+        if (!fileSystem.exists(tablePath)) {
+            writeBinTable(l3MeanPath, tablePath, fileSystem, jobConfig);
+        }
+        URI tableUri = fileSystem.makeQualified(tablePath).toUri();
+        try {
+            DistributedCache.addCacheFile(new URI(tableUri.getScheme(), tableUri.getAuthority(), tableUri.getPath(),
+                                                  null, L3_MEAN_TABLE_LINK_NAME), jobConfig);
+        } catch (URISyntaxException e) {
+            throw new IOException("could not add fragment to URI for path: " + tablePath, e);
+        }
+        jobConfig.set(L3_MEAN_TABLE, L3_MEAN_TABLE_LINK_NAME);
+    }
+
+    static Path getBinTablePath(Path l3Path, long l3ModificationTime) {
+        return new Path(l3Path.getParent(), l3Path.getName() + "-" + l3ModificationTime + ".bintable");
+    }
+
+    static void writeBinTable(Path l3Path, Path tablePath, FileSystem fileSystem, Configuration conf) throws IOException {
+        CalvalusLogger.getLogger().info("writing bin table " + tablePath + " of " + l3Path);
+        Path tmpPath = new Path(tablePath.getParent(), "_" + tablePath.getName());
+        LongWritable index = new LongWritable();
+        L3TemporalBin l3TemporalBin = new L3TemporalBin();
+        BinTable.Writer tableWriter = null;
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(l3Path))) {
+            while (reader.next(index, l3TemporalBin)) {
+                float[] featureValues = l3TemporalBin.getFeatureValues();
+                if (tableWriter == null) {
+                    tableWriter = new BinTable.Writer(featureValues.length);
+                }
+                tableWriter.write(index.get(), featureValues);
+            }
+            if (tableWriter == null) {
+                tableWriter = new BinTable.Writer(0);
+            }
+            try (FSDataOutputStream out = fileSystem.create(tmpPath, true)) {
+                tableWriter.finish(out);
+            }
+        } finally {
+            if (tableWriter != null) {
+                tableWriter.close();
+            }
+        }
+        if (!fileSystem.rename(tmpPath, tablePath)) {
+            throw new IOException("failed to rename " + tmpPath + " to " + tablePath);
+        }
+    }
 }
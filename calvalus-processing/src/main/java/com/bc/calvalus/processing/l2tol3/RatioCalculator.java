@@ -31,9 +31,13 @@ import java.util.Map;
 public class RatioCalculator {
 
     private final int[] associatedMeanL3Index;
-    private final Map<Long, float[]> l3MeanValues;
+    private final BinTable l3MeanValues;
 
     public RatioCalculator(VariableContext variableContext, String[] l3MeanFeatureNames, Map<Long, float[]> l3MeanValues) {
+        this(variableContext, l3MeanFeatureNames, BinTable.create(l3MeanValues, l3MeanFeatureNames.length));
+    }
+
+    public RatioCalculator(VariableContext variableContext, String[] l3MeanFeatureNames, BinTable l3MeanValues) {
         this.l3MeanValues = l3MeanValues;
         int variableCount = variableContext.getVariableCount();
         boolean[] isRatioVariable = getRatioVariables(variableContext, l3MeanFeatureNames);
@@ -53,13 +57,13 @@ public class RatioCalculator {
     }
 
     public Observation calculateRatio(long l3BinIndex, Observation l2Observation) {
-        float[] meanL3FeatureValues = l3MeanValues.get(l3BinIndex);
+        int l3Row = l3MeanValues.findRow(l3BinIndex);
         int numObservations = l2Observation.size();
         float[] newObservationValues = new float[numObservations];
         for (int i = 0; i < numObservations; i++) {
             float l2Value = l2Observation.get(i);
             if (associatedMeanL3Index[i] != -1) {
-                float meanValue = meanL3FeatureValues[associatedMeanL3Index[i]];
+                float meanValue = l3Row != -1 ? l3MeanValues.getFeatureValue(l3Row, associatedMeanL3Index[i]) : Float.NaN;
                 newObservationValues[i] = l2Value / meanValue;
             } else {
                 newObservationValues[i] = l2Value;
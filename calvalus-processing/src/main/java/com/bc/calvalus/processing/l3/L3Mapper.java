@@ -19,9 +19,10 @@ package com.bc.calvalus.processing.l3;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorAdapter;
-import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.ProcessorAdapterQueue;
 import com.bc.calvalus.processing.hadoop.MetadataSerializer;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
@@ -40,6 +41,7 @@ import org.esa.snap.binning.operator.SpatialProductBinner;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
 
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -62,6 +64,7 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
     @Override
     public void run(Context context) throws IOException, InterruptedException {
         Configuration conf = context.getConfiguration();
+        TaskMetrics.get().begin(conf);
         Geometry regionGeometry = GeometryUtils.createGeometry(conf.get(JobConfigNames.CALVALUS_REGION_GEOMETRY));
         final boolean generateEmptyAggregate = conf.getBoolean("calvalus.generateEmptyAggregate", false);
         BinningConfig binningConfig = HadoopBinManager.getBinningConfig(conf);
@@ -71,18 +74,65 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, dataPeriod, regionGeometry);
         final SpatialBinEmitter spatialBinEmitter = new SpatialBinEmitter(context);
         final SpatialBinner spatialBinner = new SpatialBinner(binningContext, spatialBinEmitter);
-        final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
+        final L3MultiPeriod multiPeriod = L3MultiPeriod.parse(conf.get(JobConfigNames.CALVALUS_L3_PERIODS));
+        try (ProcessorAdapterQueue adapterQueue = new ProcessorAdapterQueue(context)) {
+            while (adapterQueue.hasNext()) {
+                processProduct(context, adapterQueue.next(), spatialBinner, spatialBinEmitter, multiPeriod, generateEmptyAggregate);
+            }
+        }
+        TaskMetrics.get().increment("spatialBins", spatialBinEmitter.numBinsTotal);
+        TaskMetrics.get().publish(context);
+    }
+
+    private void processProduct(Context context,
+                                ProcessorAdapter processorAdapter,
+                                SpatialBinner spatialBinner,
+                                SpatialBinEmitter spatialBinEmitter,
+                                L3MultiPeriod multiPeriod,
+                                boolean generateEmptyAggregate) throws IOException, InterruptedException {
+        final long numObsBefore = spatialBinEmitter.numObsTotal;
+        final long numBinsBefore = spatialBinEmitter.numBinsTotal;
+        final int numExceptionsBefore = spatialBinner.getExceptions().length;
         LOG.info("processing input " + processorAdapter.getInputPath() + " ...");
+        spatialBinEmitter.periodIndexes = null;
+        if (multiPeriod != null) {
+            String datePart = ProcessorAdapter.getDatePart(processorAdapter.getInputPath());
+            spatialBinEmitter.periodIndexes = datePart != null ? multiPeriod.getPeriodIndexes(datePart) : null;
+            if (spatialBinEmitter.periodIndexes != null && spatialBinEmitter.periodIndexes.length == 0) {
+                context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product outside periods").increment(1);
+                LOG.info("input not in any period: " + processorAdapter.getInputPath());
+                processorAdapter.dispose();
+                return;
+            }
+        }
         ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         final int progressForProcessing = processorAdapter.supportsPullProcessing() ? 5 : 90;
         final int progressForBinning = processorAdapter.supportsPullProcessing() ? 90 : 20;
         pm.beginTask("Level 3", progressForProcessing + progressForBinning);
         try {
-            Product product = processorAdapter.getProcessedProduct(SubProgressMonitor.create(pm, progressForProcessing));
+            Product product;
+            try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.PROCESSING)) {
+                product = processorAdapter.getProcessedProduct(SubProgressMonitor.create(pm, progressForProcessing));
+            }
+            if (product != null && multiPeriod != null && spatialBinEmitter.periodIndexes == null) {
+                // no date in the input path, use the time of the product
+                if (product.getStartTime() != null) {
+                    ProductData.UTC endTime = product.getEndTime() != null ? product.getEndTime() : product.getStartTime();
+                    spatialBinEmitter.periodIndexes = multiPeriod.getPeriodIndexes(product.getStartTime().getAsDate(),
+                                                                                   endTime.getAsDate());
+                } else {
+                    spatialBinEmitter.periodIndexes = new int[0];
+                }
+                if (spatialBinEmitter.periodIndexes.length == 0) {
+                    context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product outside periods").increment(1);
+                    LOG.info("product time not in any period: " + processorAdapter.getInputPath());
+                    product = null;
+                }
+            }
             if (product != null) {
                 HashMap<Product, List<Band>> addedBands = new HashMap<>();
                 long numObs;
-                try {
+                try (TaskMetrics.Timer ignored = TaskMetrics.get().start(TaskMetrics.BINNING)) {
                     numObs = SpatialProductBinner.processProduct(product,
                             spatialBinner,
                             addedBands,
@@ -107,10 +157,16 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
                 }
                 if (numObs > 0 || generateEmptyAggregate) {
                     final String metaXml = extractProcessingGraphXml(product);
-                    context.write(new LongWritable(L3SpatialBin.METADATA_MAGIC_NUMBER), new L3SpatialBin(metaXml));
+                    if (spatialBinEmitter.periodIndexes != null) {
+                        for (int periodIndex : spatialBinEmitter.periodIndexes) {
+                            context.write(new LongWritable(L3MultiPeriod.createMetadataKey(periodIndex)), new L3SpatialBin(metaXml));
+                        }
+                    } else {
+                        context.write(new LongWritable(L3SpatialBin.METADATA_MAGIC_NUMBER), new L3SpatialBin(metaXml));
+                    }
                 }
 
-            } else {
+            } else if (spatialBinEmitter.periodIndexes == null || spatialBinEmitter.periodIndexes.length > 0) {
                 context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product not used").increment(1);
                 LOG.info("Product not used");
             }
@@ -120,14 +176,14 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         }
 
         final Exception[] exceptions = spatialBinner.getExceptions();
-        for (Exception exception : exceptions) {
+        for (int i = numExceptionsBefore; i < exceptions.length; i++) {
             String m = MessageFormat.format("Failed to process input slice of {0}", processorAdapter.getInputPath());
-            LOG.log(Level.SEVERE, m, exception);
+            LOG.log(Level.SEVERE, m, exceptions[i]);
         }
         LOG.info(MessageFormat.format("Finishes processing of {0}  ({1} observations seen, {2} bins produced)",
                                       processorAdapter.getInputPath(),
-                                      spatialBinEmitter.numObsTotal,
-                                      spatialBinEmitter.numBinsTotal));
+                                      spatialBinEmitter.numObsTotal - numObsBefore,
+                                      spatialBinEmitter.numBinsTotal - numBinsBefore));
     }
 
     static String extractProcessingGraphXml(Product product) {
@@ -141,6 +197,8 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         private Context context;
         int numObsTotal = 0;
         int numBinsTotal = 0;
+        // periods of a multi-period job the input belongs to, null for a single period job
+        int[] periodIndexes;
 
         public SpatialBinEmitter(Context context) {
             this.context = context;
@@ -149,7 +207,13 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         @Override
         public void consumeSpatialBins(BinningContext binningContext, List<SpatialBin> spatialBins) throws Exception {
             for (SpatialBin spatialBin : spatialBins) {
-                context.write(new LongWritable(spatialBin.getIndex()), (L3SpatialBin) spatialBin);
+                if (periodIndexes != null) {
+                    for (int periodIndex : periodIndexes) {
+                        context.write(new LongWritable(L3MultiPeriod.createKey(periodIndex, spatialBin.getIndex())), (L3SpatialBin) spatialBin);
+                    }
+                } else {
+                    context.write(new LongWritable(spatialBin.getIndex()), (L3SpatialBin) spatialBin);
+                }
                 numObsTotal += spatialBin.getNumObs();
                 numBinsTotal++;
             }
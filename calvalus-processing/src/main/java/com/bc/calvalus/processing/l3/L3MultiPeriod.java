@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.commons.DateRange;
+import com.bc.calvalus.commons.DateUtils;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The periods of a multi-period L3 job, which bins the inputs of several periods in one job.
+ * <p>
+ * The periods are given by {@link com.bc.calvalus.processing.JobConfigNames#CALVALUS_L3_PERIODS}
+ * as comma-separated list of date ranges. The mapper emits every spatial bin once for each period
+ * its input belongs to, with the period index in the upper bits of the key. Metadata records of
+ * period p are emitted with key {@code METADATA_MAGIC_NUMBER - p}. The reducer writes the temporal
+ * bins of period p into the sub-directory {@link #getPeriodDirName(int)} of the output directory.
+ */
+public final class L3MultiPeriod {
+
+    static final int BIN_INDEX_BITS = 40;
+    static final long BIN_INDEX_MASK = (1L << BIN_INDEX_BITS) - 1;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final DateRange[] periods;
+
+    public L3MultiPeriod(List<DateRange> periods) {
+        if (periods.size() > (1 << (63 - BIN_INDEX_BITS))) {
+            throw new IllegalArgumentException("too many periods: " + periods.size());
+        }
+        this.periods = periods.toArray(new DateRange[periods.size()]);
+    }
+
+    /**
+     * @param periodsString the value of {@code calvalus.l3.periods}, may be null
+     * @return the periods, or null if none are given
+     */
+    public static L3MultiPeriod parse(String periodsString) {
+        if (periodsString == null || periodsString.trim().isEmpty()) {
+            return null;
+        }
+        List<DateRange> periods = new ArrayList<>();
+        for (String periodString : periodsString.split(",")) {
+            try {
+                periods.add(DateRange.parseDateRange(periodString.trim()));
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("invalid period " + periodString, e);
+            }
+        }
+        return new L3MultiPeriod(periods);
+    }
+
+    public static String format(List<DateRange> periods) {
+        StringBuilder sb = new StringBuilder();
+        for (DateRange period : periods) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(period.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the name of the sub-directory of the job output directory with the bins of the period
+     */
+    public static String getPeriodDirName(int periodIndex) {
+        return "L3-" + (periodIndex + 1);
+    }
+
+    public int getNumPeriods() {
+        return periods.length;
+    }
+
+    public DateRange getPeriod(int periodIndex) {
+        return periods[periodIndex];
+    }
+
+    /**
+     * @return the indexes of the periods containing the day, the day being given as "yyyy/MM/dd"
+     */
+    public int[] getPeriodIndexes(String datePath) {
+        try {
+            DateFormat dateFormat = DateUtils.createDateFormat("yyyy/MM/dd");
+            Date day = dateFormat.parse(datePath);
+            return getPeriodIndexes(day, day);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the indexes of the periods overlapping the time interval, stop dates of periods being inclusive
+     */
+    public int[] getPeriodIndexes(Date start, Date stop) {
+        int[] indexes = new int[periods.length];
+        int count = 0;
+        for (int i = 0; i < periods.length; i++) {
+            long periodStart = periods[i].getStartDate().getTime();
+            long periodEnd = periods[i].getStopDate().getTime() + DAY_MILLIS;
+            if (start.getTime() < periodEnd && stop.getTime() >= periodStart) {
+                indexes[count++] = i;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(indexes, 0, result, 0, count);
+        return result;
+    }
+
+    static long createKey(int periodIndex, long binIndex) {
+        return ((long) periodIndex << BIN_INDEX_BITS) | binIndex;
+    }
+
+    static long createMetadataKey(int periodIndex) {
+        return L3SpatialBin.METADATA_MAGIC_NUMBER - periodIndex;
+    }
+
+    static int getPeriodIndex(long key) {
+        if (key < 0) {
+            return (int) (L3SpatialBin.METADATA_MAGIC_NUMBER - key);
+        }
+        return (int) (key >>> BIN_INDEX_BITS);
+    }
+
+    static long getBinIndex(long key) {
+        if (key < 0) {
+            return L3SpatialBin.METADATA_MAGIC_NUMBER;
+        }
+        return key & BIN_INDEX_MASK;
+    }
+
+    /**
+     * Merges overlapping and adjacent periods into the date ranges to be used for input selection,
+     * so that inputs shared by several periods are read only once.
+     */
+    public static List<DateRange> mergePeriods(List<DateRange> periods) {
+        List<DateRange> sorted = new ArrayList<>(periods);
+        sorted.sort((a, b) -> a.getStartDate().compareTo(b.getStartDate()));
+        List<DateRange> merged = new ArrayList<>();
+        Date start = null;
+        Date stop = null;
+        for (DateRange period : sorted) {
+            if (start != null && period.getStartDate().getTime() <= stop.getTime() + DAY_MILLIS) {
+                if (period.getStopDate().after(stop)) {
+                    stop = period.getStopDate();
+                }
+            } else {
+                if (start != null) {
+                    merged.add(new DateRange(start, stop));
+                }
+                start = period.getStartDate();
+                stop = period.getStopDate();
+            }
+        }
+        if (start != null) {
+            merged.add(new DateRange(start, stop));
+        }
+        return merged;
+    }
+}
@@ -30,6 +30,7 @@ import org.esa.snap.binning.operator.BinningConfig;
 /**
  * Partitions the bins by their bin index.
  * Reduces will receive spatial bins of contiguous latitude ranges.
+ * In a multi-period job all periods of a bin go to the same reducer.
  *
  * @author Marco Zuehlke
  * @author Norman Fomferra
@@ -40,10 +41,11 @@ public class L3Partitioner extends Partitioner<LongWritable, L3SpatialBin> imple
     private PlanetaryGrid planetaryGrid;
     private int minRowIndex;
     private int numRowsCovered;
+    private boolean multiPeriod;
 
     @Override
     public int getPartition(LongWritable binIndex, L3SpatialBin spatialBin, int numPartitions) {
-        long idx = binIndex.get();
+        long idx = multiPeriod ? L3MultiPeriod.getBinIndex(binIndex.get()) : binIndex.get();
         int partition;
         // for metadata contributions
         if (idx < 0) {
@@ -63,6 +65,7 @@ public class L3Partitioner extends Partitioner<LongWritable, L3SpatialBin> imple
     @Override
     public void setConf(Configuration conf) {
         this.conf = conf;
+        this.multiPeriod = conf.get(JobConfigNames.CALVALUS_L3_PERIODS) != null;
         BinningConfig binningConfig = HadoopBinManager.getBinningConfig(conf);
         this.planetaryGrid = binningConfig.createPlanetaryGrid();
         String regionGeometry = conf.get(JobConfigNames.CALVALUS_REGION_GEOMETRY);
@@ -17,6 +17,7 @@
 package com.bc.calvalus.processing.l3;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.DateRange;
 import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.hadoop.MetadataSerializer;
@@ -40,6 +41,7 @@ import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.security.Credentials;
 import org.esa.snap.binning.BinningContext;
 import org.esa.snap.binning.TemporalBin;
@@ -57,6 +59,7 @@ import org.esa.snap.core.datamodel.ProductData;
 import java.io.IOException;
 import java.net.URI;
 import java.text.DateFormat;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TimeZone;
@@ -83,11 +86,17 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
     private BinningConfig binningConfig;
     private MetadataElement processingGraphMetadata;
     private MetadataSerializer metadataSerializer;
+    private L3MultiPeriod multiPeriod;
+    private Map<Integer, MetadataElement> periodMetadata;
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
         setup(context);
         try {
+            if (multiPeriod != null) {
+                reduceMultiPeriod(context);
+                return;
+            }
             int numReducers = conf.getInt(JobContext.NUM_REDUCES, 8);
             final boolean generateEmptyAggregate = conf.getBoolean("calvalus.generateEmptyAggregate", false);
             String format = conf.get(JobConfigNames.CALVALUS_OUTPUT_FORMAT, null);
@@ -157,6 +166,42 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
         temporalBinner = new TemporalBinner(binningContext);
         cellChain = new CellProcessorChain(binningContext);
         conf.setStrings(JobConfigNames.CALVALUS_L3_FEATURE_NAMES, binningContext.getBinManager().getResultFeatureNames());
+        multiPeriod = L3MultiPeriod.parse(conf.get(JobConfigNames.CALVALUS_L3_PERIODS));
+        periodMetadata = new HashMap<>();
+    }
+
+    /**
+     * Reduces the bins of all periods of a multi-period job, writing each period into its own sub-directory.
+     */
+    private void reduceMultiPeriod(Context context) throws IOException, InterruptedException {
+        MultipleOutputs<LongWritable, L3TemporalBin> multipleOutputs = new MultipleOutputs<>(context);
+        try {
+            LongWritable binIndex = new LongWritable();
+            while (context.nextKey()) {
+                long key = context.getCurrentKey().get();
+                int periodIndex = L3MultiPeriod.getPeriodIndex(key);
+                if (key < 0) {
+                    periodMetadata.put(periodIndex, aggregateMetadata(context.getValues(), createPeriodConf(periodIndex)));
+                } else {
+                    binIndex.set(L3MultiPeriod.getBinIndex(key));
+                    TemporalBin temporalBin = aggregate(binIndex, context.getValues());
+                    if (temporalBin != null) {
+                        multipleOutputs.write(binIndex, (L3TemporalBin) temporalBin,
+                                              L3MultiPeriod.getPeriodDirName(periodIndex) + "/part");
+                    }
+                }
+            }
+        } finally {
+            multipleOutputs.close();
+        }
+    }
+
+    private Configuration createPeriodConf(int periodIndex) {
+        DateRange period = multiPeriod.getPeriod(periodIndex);
+        Configuration periodConf = new Configuration(conf);
+        periodConf.set(JobConfigNames.CALVALUS_MIN_DATE, DateRange.DATE_FORMAT.format(period.getStartDate()));
+        periodConf.set(JobConfigNames.CALVALUS_MAX_DATE, DateRange.DATE_FORMAT.format(period.getStopDate()));
+        return periodConf;
     }
 
     private static BinningConfig getL3Config(Configuration conf) {
@@ -200,6 +245,10 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
     }
 
     private MetadataElement aggregateMetadata(Iterable<L3SpatialBin> spatialBins) {
+        return aggregateMetadata(spatialBins, conf);
+    }
+
+    private MetadataElement aggregateMetadata(Iterable<L3SpatialBin> spatialBins, Configuration conf) {
         String metadataAggregatorName = binningConfig.getMetadataAggregatorName();
         final MetadataAggregator metadataAggregator = MetadataAggregatorFactory.create(metadataAggregatorName);
         for (L3SpatialBin metadataBin : spatialBins) {
@@ -215,7 +264,16 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
     protected void cleanup(Context context) throws IOException, InterruptedException {
         // only write this file in the first reducer
         final int partition = context.getTaskAttemptID().getTaskID().getId();
-        if (partition == 0) {
+        if (partition == 0 && multiPeriod != null) {
+            final Path workOutputPath = FileOutputFormat.getWorkOutputPath(context);
+            for (int periodIndex = 0; periodIndex < multiPeriod.getNumPeriods(); periodIndex++) {
+                Configuration periodConf = createPeriodConf(periodIndex);
+                final Map<String, String> metadata = ProcessingMetadata.config2metadata(periodConf, JobConfigNames.LEVEL3_METADATA_KEYS);
+                metadata.put(JobConfigNames.PROCESSING_HISTORY, metadataSerializer.toXml(periodMetadata.get(periodIndex)));
+                Path periodPath = new Path(workOutputPath, L3MultiPeriod.getPeriodDirName(periodIndex));
+                ProcessingMetadata.write(periodPath, conf, metadata);
+            }
+        } else if (partition == 0) {
             final Map<String, String> metadata = ProcessingMetadata.config2metadata(conf, JobConfigNames.LEVEL3_METADATA_KEYS);
             final String aggregatedMetadataXml = metadataSerializer.toXml(processingGraphMetadata);
             metadata.put(JobConfigNames.PROCESSING_HISTORY, aggregatedMetadataXml);
@@ -23,12 +23,15 @@ import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 
 import java.io.IOException;
 
 /**
  * A workflow item creating a Hadoop job for n input products processed to a single L3 product.
+ * With {@link JobConfigNames#CALVALUS_L3_PERIODS} the job produces one L3 product per period,
+ * see {@link L3MultiPeriod}.
  */
 public class L3WorkflowItem extends HadoopWorkflowItem {
 
@@ -62,7 +65,8 @@ public class L3WorkflowItem extends HadoopWorkflowItem {
                 {JobConfigNames.CALVALUS_L3_PARAMETERS, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_REGION_GEOMETRY, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_MIN_DATE, NO_DEFAULT},
-                {JobConfigNames.CALVALUS_MAX_DATE, NO_DEFAULT}
+                {JobConfigNames.CALVALUS_MAX_DATE, NO_DEFAULT},
+                {JobConfigNames.CALVALUS_L3_PERIODS, null}
         };
     }
 
@@ -87,7 +91,12 @@ public class L3WorkflowItem extends HadoopWorkflowItem {
         job.setReducerClass(L3Reducer.class);
         job.setOutputKeyClass(LongWritable.class);
         job.setOutputValueClass(L3TemporalBin.class);
-        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        if (jobConfig.get(JobConfigNames.CALVALUS_L3_PERIODS) != null) {
+            // the reducers write into the period sub-directories only
+            LazyOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+        } else {
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        }
 
         JobUtils.clearAndSetOutputDir(getOutputDir(), job, this);
     }
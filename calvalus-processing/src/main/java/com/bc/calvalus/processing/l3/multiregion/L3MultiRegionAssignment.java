@@ -0,0 +1,181 @@
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.esa.snap.binning.PlanetaryGrid;
+import org.esa.snap.binning.support.PlateCarreeGrid;
+import org.esa.snap.binning.support.SEAGrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ *  Assigns bins to the rectangular regions of a multi-region formatting.
+ *
+ *  A bin belongs to a region if its center lies strictly inside the region's
+ *  envelope, which is what {@code Polygon.contains(Point)} yields for a rectangle.
+ *
+ *  For grids whose bin centers are ordered by longitude within a row (SEA grid,
+ *  plate carree grid) each row is translated once into column segments with the
+ *  list of regions covering them, so that a bin is assigned by a binary search on
+ *  its column. For other grids the region envelopes are looked up in an STR tree.
+ */
+class L3MultiRegionAssignment {
+
+    private static final int[] NO_REGIONS = new int[0];
+
+    private final PlanetaryGrid planetaryGrid;
+    private final Envelope[] envelopes;
+    private final boolean useRowTables;
+    private final RowTable[] rowTables;
+    private final STRtree regionTree;
+
+    L3MultiRegionAssignment(PlanetaryGrid planetaryGrid, Envelope[] envelopes) {
+        this.planetaryGrid = planetaryGrid;
+        this.envelopes = envelopes;
+        this.useRowTables = planetaryGrid instanceof SEAGrid || planetaryGrid instanceof PlateCarreeGrid;
+        if (useRowTables) {
+            rowTables = new RowTable[planetaryGrid.getNumRows()];
+            regionTree = null;
+        } else {
+            rowTables = null;
+            regionTree = new STRtree();
+            for (int regionId = 0; regionId < envelopes.length; regionId++) {
+                regionTree.insert(envelopes[regionId], regionId);
+            }
+            regionTree.build();
+        }
+    }
+
+    /**
+     * @return the ascending IDs of the regions containing the center of the bin
+     */
+    int[] getRegionIds(long binIndex) {
+        if (useRowTables) {
+            int row = planetaryGrid.getRowIndex(binIndex);
+            RowTable rowTable = rowTables[row];
+            if (rowTable == null) {
+                rowTable = createRowTable(row);
+                rowTables[row] = rowTable;
+            }
+            return rowTable.getRegionIds((int) (binIndex - planetaryGrid.getFirstBinIndex(row)));
+        } else {
+            double[] centerLatLon = planetaryGrid.getCenterLatLon(binIndex);
+            double lat = centerLatLon[0];
+            double lon = centerLatLon[1];
+            @SuppressWarnings("unchecked")
+            List<Integer> candidates = regionTree.query(new Envelope(lon, lon, lat, lat));
+            if (candidates.isEmpty()) {
+                return NO_REGIONS;
+            }
+            int[] regionIds = new int[candidates.size()];
+            int count = 0;
+            for (int regionId : candidates) {
+                if (containsStrictly(envelopes[regionId], lon, lat)) {
+                    regionIds[count++] = regionId;
+                }
+            }
+            regionIds = Arrays.copyOf(regionIds, count);
+            Arrays.sort(regionIds);
+            return regionIds;
+        }
+    }
+
+    static boolean containsStrictly(Envelope envelope, double lon, double lat) {
+        return lon > envelope.getMinX() && lon < envelope.getMaxX() && lat > envelope.getMinY() && lat < envelope.getMaxY();
+    }
+
+    private RowTable createRowTable(int row) {
+        double lat = planetaryGrid.getCenterLat(row);
+        long firstBinIndex = planetaryGrid.getFirstBinIndex(row);
+        int numCols = planetaryGrid.getNumCols(row);
+        List<int[]> intervals = new ArrayList<>();
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        for (int regionId = 0; regionId < envelopes.length; regionId++) {
+            Envelope envelope = envelopes[regionId];
+            if (lat > envelope.getMinY() && lat < envelope.getMaxY()) {
+                int colStart = firstColGreater(firstBinIndex, numCols, envelope.getMinX());
+                int colEnd = firstColGreaterOrEqual(firstBinIndex, numCols, envelope.getMaxX());
+                if (colStart < colEnd) {
+                    intervals.add(new int[]{colStart, colEnd, regionId});
+                    boundaries.add(colStart);
+                    boundaries.add(colEnd);
+                }
+            }
+        }
+        boundaries.remove(numCols);
+        int[] segmentStarts = new int[boundaries.size()];
+        int[][] segmentRegions = new int[boundaries.size()][];
+        int segment = 0;
+        for (int start : boundaries) {
+            int[] regionIds = new int[intervals.size()];
+            int count = 0;
+            for (int[] interval : intervals) {
+                if (interval[0] <= start && start < interval[1]) {
+                    regionIds[count++] = interval[2];
+                }
+            }
+            segmentStarts[segment] = start;
+            segmentRegions[segment] = count > 0 ? Arrays.copyOf(regionIds, count) : NO_REGIONS;
+            segment++;
+        }
+        return new RowTable(segmentStarts, segmentRegions);
+    }
+
+    private int firstColGreater(long firstBinIndex, int numCols, double lon) {
+        int low = 0;
+        int high = numCols;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getCenterLon(firstBinIndex + mid) > lon) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private int firstColGreaterOrEqual(long firstBinIndex, int numCols, double lon) {
+        int low = 0;
+        int high = numCols;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getCenterLon(firstBinIndex + mid) >= lon) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private double getCenterLon(long binIndex) {
+        return planetaryGrid.getCenterLatLon(binIndex)[1];
+    }
+
+    /**
+     * Column segments of a row; segment i covers the columns from starts[i] up to starts[i+1].
+     */
+    private static class RowTable {
+
+        private final int[] starts;
+        private final int[][] regionIds;
+
+        RowTable(int[] starts, int[][] regionIds) {
+            this.starts = starts;
+            this.regionIds = regionIds;
+        }
+
+        int[] getRegionIds(int col) {
+            int index = Arrays.binarySearch(starts, col);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return regionIds[index];
+        }
+    }
+}
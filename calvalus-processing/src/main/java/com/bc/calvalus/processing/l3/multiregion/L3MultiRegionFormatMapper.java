@@ -3,11 +3,8 @@ package com.bc.calvalus.processing.l3.multiregion;
 import com.bc.calvalus.processing.l3.HadoopBinManager;
 import com.bc.calvalus.processing.l3.L3TemporalBin;
 import com.bc.calvalus.processing.utils.GeometryUtils;
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.Point;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
@@ -22,39 +19,37 @@ import java.io.IOException;
  *  multiple regions of a Binning product at once.
  *
  *  For each region that contains the center lat/lon of the
- *  bin cell the bin emitted.
+ *  bin cell the bin emitted. The regions of a bin are looked up
+ *  in an {@link L3MultiRegionAssignment}.
  */
 public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBin, L3MultiRegionBinIndex, L3MultiRegionTemporalBin> implements Configurable {
     private Configuration conf;
-    private Geometry[] geometries;
     private PlanetaryGrid planetaryGrid;
-    private GeometryFactory geometryFactory;
+    private L3MultiRegionAssignment assignment;
+    private final L3MultiRegionBinIndex mBinIndex = new L3MultiRegionBinIndex();
     private L3MultiRegionTemporalBin mBin;
 
     @Override
     protected void map(LongWritable binIndex, L3TemporalBin temporalBin, Context context) throws IOException, InterruptedException {
         long binIndexLong = binIndex.get();
-        double[] centerLatLon = planetaryGrid.getCenterLatLon(binIndexLong);
-        Point point = geometryFactory.createPoint(new Coordinate(centerLatLon[1], centerLatLon[0]));
-
-        boolean binContentCopied = false;
-        for (int regionId = 0; regionId < geometries.length; regionId++) {
-            if (geometries[regionId].contains(point)) {
-                L3MultiRegionBinIndex mBinIndex = new L3MultiRegionBinIndex(regionId, binIndexLong);
-                if (!binContentCopied) {
-                    float[] srcValues = temporalBin.getFeatureValues();
-                    if (mBin == null) {
-                        mBin = new L3MultiRegionTemporalBin(binIndexLong, srcValues.length);
-                    } else {
-                        mBin.setIndex(binIndexLong);
-                    }
-                    mBin.setNumObs(temporalBin.getNumObs());
-                    mBin.setNumPasses(temporalBin.getNumPasses());
-                    System.arraycopy(srcValues, 0, mBin.getFeatureValues(), 0, srcValues.length);
-                    binContentCopied = true;
-                }
-                context.write(mBinIndex, mBin);
-            }
+        int[] regionIds = assignment.getRegionIds(binIndexLong);
+        if (regionIds.length == 0) {
+            return;
+        }
+        float[] srcValues = temporalBin.getFeatureValues();
+        if (mBin == null) {
+            mBin = new L3MultiRegionTemporalBin(binIndexLong, srcValues.length);
+        } else {
+            mBin.setIndex(binIndexLong);
+        }
+        mBin.setNumObs(temporalBin.getNumObs());
+        mBin.setNumPasses(temporalBin.getNumPasses());
+        System.arraycopy(srcValues, 0, mBin.getFeatureValues(), 0, srcValues.length);
+        // key and value are serialized by write, so both can be reused
+        mBinIndex.setBinIndex(binIndexLong);
+        for (int regionId : regionIds) {
+            mBinIndex.setRegionIndex(regionId);
+            context.write(mBinIndex, mBin);
         }
     }
 
@@ -64,11 +59,10 @@ public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBi
 
         BinningConfig binningConfig = HadoopBinManager.getBinningConfig(conf);
         planetaryGrid = binningConfig.createPlanetaryGrid();
-        geometryFactory = new GeometryFactory();
 
         L3MultiRegionFormatConfig l3MultiRegionFormatConfig = L3MultiRegionFormatConfig.get(conf);
         L3MultiRegionFormatConfig.Region[] regions = l3MultiRegionFormatConfig.getRegions();
-        geometries = new Geometry[regions.length];
+        Envelope[] envelopes = new Envelope[regions.length];
         for (int i = 0; i < regions.length; i++) {
             // create buffer around given geometry to include also bins that
             // only partially fall into the given geometry
@@ -79,9 +73,9 @@ public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBi
             double longitudeExtend2 = getLongitudeExtend(envelope.getMaxY());
             double longitudeExtend = Math.max(longitudeExtend1, longitudeExtend2);
             envelope.expandBy(longitudeExtend, 0.0);
-            Geometry extendedGeometry = geometryFactory.toGeometry(envelope);
-            geometries[i] = extendedGeometry;
+            envelopes[i] = envelope;
         }
+        assignment = new L3MultiRegionAssignment(planetaryGrid, envelopes);
     }
 
     private double getLongitudeExtend(double latitude) {
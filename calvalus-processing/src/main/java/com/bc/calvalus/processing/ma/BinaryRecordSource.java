@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.esa.snap.core.datamodel.GeoPos;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A record source reading pre-parsed records from a binary, columnar file.
+ * <p/>
+ * The file is written once from another record source, e.g. a CSV file, see {@link #write(RecordSource, OutputStream)}.
+ * Reading it needs no text parsing: the columns are views on the file content, memory-mapped for local files,
+ * and the records are created from them on iteration.
+ * <p/>
+ * The format is big-endian: a header with the magic number, the location and time flags, the column description,
+ * the attribute names and types and the number of records, followed by the columns, each padded to 8 bytes:
+ * the record IDs (int), the latitudes and longitudes (double, NaN for no location), the times
+ * (long milliseconds, {@link Long#MIN_VALUE} for no time) and one column per attribute. Number attributes are
+ * a bit set of the null values and the values (double), text attributes a dictionary of the distinct values
+ * and the indexes into it (int, -1 for null).
+ */
+public class BinaryRecordSource implements RecordSource {
+
+    public static final String EXTENSION = ".records";
+
+    static final int MAGIC = 0x43524353; // "CRCS"
+
+    private static final byte TYPE_NULL = 'N';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_STRING = 'S';
+    private static final int FLAG_LOCATION = 1;
+    private static final int FLAG_TIME = 2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Header header;
+    private final String description;
+    private final int numRecords;
+    private final IntBuffer ids;
+    private final DoubleBuffer lats;
+    private final DoubleBuffer lons;
+    private final LongBuffer times;
+    private final Column[] columns;
+
+    private BinaryRecordSource(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("not a binary record file");
+        }
+        int flags = buffer.getInt();
+        boolean hasLocation = (flags & FLAG_LOCATION) != 0;
+        boolean hasTime = (flags & FLAG_TIME) != 0;
+        description = getString(buffer);
+        int numAttributes = buffer.getInt();
+        String[] attributeNames = new String[numAttributes];
+        byte[] types = new byte[numAttributes];
+        for (int a = 0; a < numAttributes; a++) {
+            attributeNames[a] = getString(buffer);
+            types[a] = buffer.get();
+        }
+        numRecords = buffer.getInt();
+        align(buffer);
+        header = new DefaultHeader(hasLocation, hasTime, attributeNames);
+
+        ids = slice(buffer, numRecords * 4).asIntBuffer();
+        lats = hasLocation ? slice(buffer, numRecords * 8).asDoubleBuffer() : null;
+        lons = hasLocation ? slice(buffer, numRecords * 8).asDoubleBuffer() : null;
+        times = hasTime ? slice(buffer, numRecords * 8).asLongBuffer() : null;
+        columns = new Column[numAttributes];
+        for (int a = 0; a < numAttributes; a++) {
+            if (types[a] == TYPE_DOUBLE) {
+                byte[] nullBits = new byte[(numRecords + 7) / 8];
+                buffer.get(nullBits);
+                align(buffer);
+                columns[a] = new DoubleColumn(BitSet.valueOf(nullBits), slice(buffer, numRecords * 8).asDoubleBuffer());
+            } else if (types[a] == TYPE_STRING) {
+                String[] dictionary = new String[buffer.getInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = getString(buffer);
+                }
+                align(buffer);
+                columns[a] = new StringColumn(dictionary, slice(buffer, numRecords * 4).asIntBuffer());
+            } else if (types[a] == TYPE_NULL) {
+                columns[a] = row -> null;
+            } else {
+                throw new IOException("unknown type '" + (char) types[a] + "' of attribute " + attributeNames[a]);
+            }
+        }
+    }
+
+    /**
+     * Memory-maps a binary record file.
+     */
+    public static BinaryRecordSource open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return new BinaryRecordSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + file, e);
+        }
+    }
+
+    /**
+     * Reads a binary record file into memory. The stream is not closed.
+     */
+    public static BinaryRecordSource read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = inputStream.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return new BinaryRecordSource(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    @Override
+    public Header getHeader() {
+        return header;
+    }
+
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    @Override
+    public Iterable<Record> getRecords() {
+        return () -> new Iterator<Record>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < numRecords;
+            }
+
+            @Override
+            public Record next() {
+                if (row >= numRecords) {
+                    throw new NoSuchElementException();
+                }
+                return getRecord(row++);
+            }
+        };
+    }
+
+    @Override
+    public String getTimeAndLocationColumnDescription() {
+        return description;
+    }
+
+    private Record getRecord(int row) {
+        GeoPos location = null;
+        if (lats != null) {
+            double lat = lats.get(row);
+            double lon = lons.get(row);
+            if (!Double.isNaN(lat) || !Double.isNaN(lon)) {
+                location = new GeoPos(lat, lon);
+            }
+        }
+        Date time = null;
+        if (times != null) {
+            long millis = times.get(row);
+            if (millis != NO_TIME) {
+                time = new Date(millis);
+            }
+        }
+        Object[] values = new Object[columns.length];
+        for (int a = 0; a < columns.length; a++) {
+            values[a] = columns[a].get(row);
+        }
+        return new DefaultRecord(ids.get(row), location, time, values);
+    }
+
+    /**
+     * Writes the records of a record source as a binary record file.
+     * The attribute values must be numbers stored as {@link Double}, text, or {@code null}.
+     * The stream is not closed.
+     *
+     * @throws IllegalArgumentException if an attribute has values of other or mixed types
+     */
+    public static int write(RecordSource recordSource, OutputStream outputStream) throws Exception {
+        Header header = recordSource.getHeader();
+        String[] attributeNames = header.getAttributeNames();
+        ColumnWriter[] columnWriters = new ColumnWriter[attributeNames.length];
+        for (int a = 0; a < attributeNames.length; a++) {
+            columnWriters[a] = new ColumnWriter(attributeNames[a]);
+        }
+        int[] ids = new int[1024];
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        long[] times = new long[1024];
+        int numRecords = 0;
+        for (Record record : recordSource.getRecords()) {
+            if (numRecords == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * numRecords);
+                lats = Arrays.copyOf(lats, 2 * numRecords);
+                lons = Arrays.copyOf(lons, 2 * numRecords);
+                times = Arrays.copyOf(times, 2 * numRecords);
+            }
+            ids[numRecords] = record.getId();
+            GeoPos location = record.getLocation();
+            lats[numRecords] = location != null ? location.getLat() : Double.NaN;
+            lons[numRecords] = location != null ? location.getLon() : Double.NaN;
+            Date time = record.getTime();
+            times[numRecords] = time != null ? time.getTime() : NO_TIME;
+            Object[] values = record.getAttributeValues();
+            if (values.length != columnWriters.length) {
+                throw new IllegalArgumentException("record " + record.getId() + " has " + values.length
+                                                   + " attribute values instead of " + columnWriters.length);
+            }
+            for (int a = 0; a < columnWriters.length; a++) {
+                columnWriters[a].add(values[a], numRecords);
+            }
+            numRecords++;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt((header.hasLocation() ? FLAG_LOCATION : 0) | (header.hasTime() ? FLAG_TIME : 0));
+        writeString(out, recordSource.getTimeAndLocationColumnDescription());
+        out.writeInt(attributeNames.length);
+        for (ColumnWriter columnWriter : columnWriters) {
+            writeString(out, columnWriter.name);
+            out.writeByte(columnWriter.type);
+        }
+        out.writeInt(numRecords);
+        pad(out);
+        for (int i = 0; i < numRecords; i++) {
+            out.writeInt(ids[i]);
+        }
+        pad(out);
+        if (header.hasLocation()) {
+            for (int i = 0; i < numRecords; i++) {
+                out.writeDouble(lats[i]);
+            }
+            for (int i = 0; i < numRecords; i++) {
+                out.writeDouble(lons[i]);
+            }
+        }
+        if (header.hasTime()) {
+            for (int i = 0; i < numRecords; i++) {
+                out.writeLong(times[i]);
+            }
+        }
+        for (ColumnWriter columnWriter : columnWriters) {
+            columnWriter.write(out, numRecords);
+        }
+        out.flush();
+        return numRecords;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + length);
+        buffer.position(buffer.position() + length);
+        align(buffer);
+        return slice.slice();
+    }
+
+    private static void align(ByteBuffer buffer) {
+        buffer.position((buffer.position() + 7) & ~7);
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private interface Column {
+        Object get(int row);
+    }
+
+    private static class DoubleColumn implements Column {
+
+        private final BitSet nulls;
+        private final DoubleBuffer values;
+
+        private DoubleColumn(BitSet nulls, DoubleBuffer values) {
+            this.nulls = nulls;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return nulls.get(row) ? null : values.get(row);
+        }
+    }
+
+    private static class StringColumn implements Column {
+
+        private final String[] dictionary;
+        private final IntBuffer indexes;
+
+        private StringColumn(String[] dictionary, IntBuffer indexes) {
+            this.dictionary = dictionary;
+            this.indexes = indexes;
+        }
+
+        @Override
+        public Object get(int row) {
+            int index = indexes.get(row);
+            return index >= 0 ? dictionary[index] : null;
+        }
+    }
+
+    /**
+     * Collects the values of an attribute. The type is taken from the first non-null value.
+     */
+    private static class ColumnWriter {
+
+        private final String name;
+        private final BitSet nulls = new BitSet();
+        private byte type = TYPE_NULL;
+        private double[] doubles;
+        private int[] indexes;
+        private Map<String, Integer> dictionary;
+
+        private ColumnWriter(String name) {
+            this.name = name;
+        }
+
+        private void add(Object value, int row) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (type == TYPE_NULL) {
+                if (value instanceof Double) {
+                    type = TYPE_DOUBLE;
+                    doubles = new double[Math.max(1024, 2 * row)];
+                } else if (value instanceof String) {
+                    type = TYPE_STRING;
+                    indexes = new int[Math.max(1024, 2 * row)];
+                    dictionary = new HashMap<>();
+                } else {
+                    throw new IllegalArgumentException("unsupported type " + value.getClass().getSimpleName()
+                                                       + " of attribute " + name);
+                }
+            }
+            if (type == TYPE_DOUBLE) {
+                if (row == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, 2 * row);
+                }
+                if (value != null) {
+                    if (!(value instanceof Double)) {
+                        throw new IllegalArgumentException("mixed types of attribute " + name);
+                    }
+                    doubles[row] = (Double) value;
+                }
+            } else if (type == TYPE_STRING) {
+                if (row == indexes.length) {
+                    indexes = Arrays.copyOf(indexes, 2 * row);
+                }
+                if (value != null) {
+                    if (!(value instanceof String)) {
+                        throw new IllegalArgumentException("mixed types of attribute " + name);
+                    }
+                    Integer index = dictionary.get(value);
+                    if (index == null) {
+                        index = dictionary.size();
+                        dictionary.put((String) value, index);
+                    }
+                    indexes[row] = index;
+                }
+            }
+        }
+
+        private void write(DataOutputStream out, int numRecords) throws IOException {
+            if (type == TYPE_DOUBLE) {
+                out.write(Arrays.copyOf(nulls.toByteArray(), (numRecords + 7) / 8));
+                pad(out);
+                for (int i = 0; i < numRecords; i++) {
+                    out.writeDouble(doubles[i]);
+                }
+            } else if (type == TYPE_STRING) {
+                List<String> values = new ArrayList<>(dictionary.keySet());
+                values.sort((v1, v2) -> Integer.compare(dictionary.get(v1), dictionary.get(v2)));
+                out.writeInt(values.size());
+                for (String value : values) {
+                    writeString(out, value);
+                }
+                pad(out);
+                for (int i = 0; i < numRecords; i++) {
+                    out.writeInt(nulls.get(i) ? -1 : indexes[i]);
+                }
+                pad(out);
+            }
+        }
+    }
+}
@@ -222,6 +222,10 @@ public class MAConfig implements XmlConvertible {
     }
 
     public RecordSource createRecordSource(Configuration conf) throws Exception {
+        RecordSource cachedRecordSource = ReferenceRecordCache.getRecordSource(this, conf);
+        if (cachedRecordSource != null) {
+            return cachedRecordSource;
+        }
         String className = getRecordSourceSpiClassName();
         RecordSourceSpi service;
         if (className != null) {
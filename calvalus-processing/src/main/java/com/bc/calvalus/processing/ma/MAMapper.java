@@ -19,8 +19,9 @@ package com.bc.calvalus.processing.ma;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorAdapter;
-import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.ProcessorAdapterQueue;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.calvalus.processing.hadoop.TaskMetrics;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
@@ -38,6 +39,7 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -56,20 +58,44 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
     private static final Logger LOG = CalvalusLogger.getLogger();
     private static final int MiB = 1024 * 1024;
 
+    private final Text recordKey = new Text();
+    private SchemaRecordWritable schemaRecord;
+
     @Override
     public void run(Context context) throws IOException, InterruptedException {
 
         context.progress();
-
-        final FileSplit split = (FileSplit) context.getInputSplit();
-        final Path inputPath = split.getPath();
-
-        final long mapperStartTime = now();
+        if (context.getMapOutputValueClass() == SchemaRecordWritable.class) {
+            schemaRecord = new SchemaRecordWritable();
+        }
 
         final Configuration conf = context.getConfiguration();
         final MAConfig maConfig = MAConfig.get(conf);
         final Geometry regionGeometry = GeometryUtils.createGeometry(conf.get(JobConfigNames.CALVALUS_REGION_GEOMETRY));
 
+        TaskMetrics.get().begin(conf);
+        try (ProcessorAdapterQueue adapterQueue = new ProcessorAdapterQueue(context)) {
+            while (adapterQueue.hasNext()) {
+                ProcessorAdapter processorAdapter = adapterQueue.next();
+                try {
+                    processProduct(context, conf, maConfig, regionGeometry, processorAdapter);
+                } catch (IOException | RuntimeException e) {
+                    adapterQueue.productFailed(processorAdapter, e);
+                }
+            }
+        } finally {
+            TaskMetrics.get().publish(context);
+        }
+    }
+
+    private void processProduct(Context context, Configuration conf, MAConfig maConfig, Geometry regionGeometry,
+                                ProcessorAdapter processorAdapter) throws IOException, InterruptedException {
+
+        final FileSplit split = (FileSplit) processorAdapter.getInputSplit();
+        final Path inputPath = split.getPath();
+
+        final long mapperStartTime = now();
+
         // write initial log entry for runtime measurements
         LOG.info(String.format("%s starts processing of split %s (%s MiB)",
                                context.getTaskAttemptID(), split, (MiB / 2 + split.getLength()) / MiB));
@@ -78,7 +104,6 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         long t0;
 
         t0 = now();
-        ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
         boolean pullProcessing = processorAdapter.supportsPullProcessing();
         final int progressForProcessing = pullProcessing ? 20 : 80;
         final int progressForSaving = maConfig.getSaveProcessedProducts() ? (pullProcessing ? 80 : 20) : 0;
@@ -141,6 +166,7 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
                 context.progress();
                 productOpenTime = (now() - t0);
                 LOG.info(String.format("opened processed product %s, took %s sec", processedProduct.getName(), productOpenTime / 1E3));
+                TaskMetrics.get().addTime(TaskMetrics.PROCESSING, productOpenTime);
 
                 t0 = now();
                 extractionPM.beginTask("Extraction", pixelPosRecords.size() * 2);
@@ -190,9 +216,18 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
                 Iterable<Record> overlappingFilteredRecords = overlappingFilter.transform(expressionFilteredRecords);
 
                 int numMatchUps = 0;
+                byte[] recordKeyTemplate = createRecordKeyTemplate(processedProduct.getName());
+                SchemaRecordWritable.Schema schema = new SchemaRecordWritable.Schema(header.getAttributeNames().length,
+                                                                                     header.getAnnotationNames().length);
                 for (Record selectedRecord : overlappingFilteredRecords) {
-                    context.write(new Text(String.format("%06d_%s", selectedRecord.getId(), processedProduct.getName())),
-                                  new RecordWritable(selectedRecord.getAttributeValues(), selectedRecord.getAnnotationValues()));
+                    setRecordKey(recordKey, recordKeyTemplate, selectedRecord.getId());
+                    if (schemaRecord != null) {
+                        // serialised by write, the writable can be reused
+                        schemaRecord.setValues(schema, selectedRecord.getAttributeValues(), selectedRecord.getAnnotationValues());
+                        context.write(recordKey, schemaRecord);
+                    } else {
+                        context.write(recordKey, new RecordWritable(selectedRecord.getAttributeValues(), selectedRecord.getAnnotationValues()));
+                    }
                     context.progress();
                     extractionPM.worked(1);
                     numMatchUps++;
@@ -200,10 +235,18 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
                 long recordWriteTime = (now() - t0);
                 LOG.info(String.format("found %s match-ups, took %s sec", numMatchUps, recordWriteTime / 1E3));
+                TaskMetrics.get().addTime(TaskMetrics.EXTRACTION, recordReadTime + recordWriteTime);
+                TaskMetrics.get().increment("matchUps", numMatchUps);
                 if (numMatchUps > 0) {
                     // write header for each product, it may change in the time series (e.g. for Landsat at 01.05.2017)
-                    context.write(new Text(String.format("#_%s", processedProduct.getName())),
-                                  new RecordWritable(header.getAttributeNames(), header.getAnnotationNames()));
+                    Text headerKey = new Text(String.format("#_%s", processedProduct.getName()));
+                    if (schemaRecord != null) {
+                        // after the records, with the value types of their columns
+                        schemaRecord.setHeader(schema, header.getAttributeNames(), header.getAnnotationNames());
+                        context.write(headerKey, schemaRecord);
+                    } else {
+                        context.write(headerKey, new RecordWritable(header.getAttributeNames(), header.getAnnotationNames()));
+                    }
                     context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Products with match-ups").increment(1);
                     context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Number of match-ups").increment(numMatchUps);
                 } else {
@@ -249,6 +292,30 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         LOG.info("Attribute names:\n" + Arrays.toString(attributeNames));
     }
 
+    static byte[] createRecordKeyTemplate(String productName) {
+        return ("000000_" + productName).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sets the key "%06d_&lt;productName&gt;" of a record without formatting a string for each record.
+     *
+     * @param key         the key to be set
+     * @param keyTemplate the key template of the product, see {@link #createRecordKeyTemplate(String)}
+     * @param recordId    the record ID
+     */
+    static void setRecordKey(Text key, byte[] keyTemplate, int recordId) {
+        if (recordId < 0 || recordId > 999999) {
+            String productName = new String(keyTemplate, 7, keyTemplate.length - 7, StandardCharsets.UTF_8);
+            key.set(String.format("%06d_%s", recordId, productName));
+            return;
+        }
+        for (int i = 5; i >= 0; i--) {
+            keyTemplate[i] = (byte) ('0' + recordId % 10);
+            recordId /= 10;
+        }
+        key.set(keyTemplate);
+    }
+
     private static long now() {
         return System.currentTimeMillis();
     }
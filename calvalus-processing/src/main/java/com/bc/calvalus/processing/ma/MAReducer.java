@@ -40,6 +40,9 @@ import java.util.logging.Logger;
  * It is expected that each true 'record' key will only have one unique value.
  * Only 'header' keys ("#") will have multiple values containing (in most cases) all the same the attribute names.
  * This is why the reducer only writes the first value and checks whether the other headers are equal.
+ * <p/>
+ * If the mapper emits {@link SchemaRecordWritable}s, the header of each product gives the schema
+ * of the records of the product. The headers are reduced first, because their keys start with "#".
  *
  * @author Norman Fomferra
  */
@@ -83,6 +86,7 @@ public class MAReducer extends Reducer<Text, RecordWritable, Text, RecordWritabl
         String defaultHeader = null;
         Map<String, RecordProcessor[]> headerMap = new HashMap<>();
         Map<String, RecordProcessor[]> filenameMap = new HashMap<>();
+        Map<String, SchemaRecordWritable.Schema> schemaMap = new HashMap<>();
 
         while (context.nextKey()) {
             final Text key = context.getCurrentKey();
@@ -90,7 +94,18 @@ public class MAReducer extends Reducer<Text, RecordWritable, Text, RecordWritabl
             if (iterator.hasNext()) {
 
                 final RecordWritable record = iterator.next();
-                context.write(key, record);  // where is this written to?
+                if (record instanceof SchemaRecordWritable) {
+                    SchemaRecordWritable schemaRecord = (SchemaRecordWritable) record;
+                    if (schemaRecord.isHeader()) {
+                        schemaMap.put(key.toString().substring(2), schemaRecord.getSchema());
+                    } else {
+                        schemaRecord.setSchema(schemaMap.get(key.toString().substring(key.toString().indexOf('_') + 1)));
+                    }
+                    // the output format expects the class of the job's output values
+                    context.write(key, new RecordWritable(record.getAttributeValues(), record.getAnnotationValues()));
+                } else {
+                    context.write(key, record);  // where is this written to?
+                }
 
                 if (key.toString().startsWith("#_")) {
                     String thisHeader = Arrays.toString(record.getAttributeValues());
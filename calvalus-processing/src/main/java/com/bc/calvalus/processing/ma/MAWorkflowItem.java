@@ -84,10 +84,16 @@ public class MAWorkflowItem extends HadoopWorkflowItem {
         // disabled
         jobConfig.setInt("mapred.job.reuse.jvm.num.tasks", 1);
 
+        ReferenceRecordCache.configure(getProcessingService(), getUserName(), jobConfig);
+
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(MAMapper.class);
         job.setMapOutputKeyClass(Text.class);
-        job.setMapOutputValueClass(RecordWritable.class);
+        if (jobConfig.getBoolean(SchemaRecordWritable.SCHEMA_RECORDS_ENABLED, true)) {
+            job.setMapOutputValueClass(SchemaRecordWritable.class);
+        } else {
+            job.setMapOutputValueClass(RecordWritable.class);
+        }
         job.setReducerClass(MAReducer.class);
         job.setNumReduceTasks(1);
         job.setOutputKeyClass(Text.class);
@@ -129,7 +129,7 @@ public class RecordWritable implements Writable {
         return values;
     }
 
-    private void writeValue(DataOutput out, Object value) throws IOException {
+    static void writeValue(DataOutput out, Object value) throws IOException {
         final Type type = Type.getType(value);
         out.writeChar(type.getId());
         if (type == Type.INTEGER) {
@@ -169,7 +169,7 @@ public class RecordWritable implements Writable {
         }
     }
 
-    private Object readValue(DataInput in) throws IOException {
+    static Object readValue(DataInput in) throws IOException {
         final Object value;
         final char typeId = in.readChar();
         final Type type = Type.getType(typeId);
@@ -219,7 +219,7 @@ public class RecordWritable implements Writable {
      */
     @Override
     public String toString() {
-        return CsvRecordWriter.toString(attributeValues) + "\t" + CsvRecordWriter.toString(annotationValues);
+        return CsvRecordWriter.toString(getAttributeValues()) + "\t" + CsvRecordWriter.toString(getAnnotationValues());
     }
 
 }
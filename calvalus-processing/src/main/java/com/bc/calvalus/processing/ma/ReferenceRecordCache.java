@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides the reference records of a match-up or vicarious calibration job as a {@link BinaryRecordSource}
+ * in the distributed cache, so that the tasks do not parse the CSV or placemark file each.
+ * <p/>
+ * The binary file is written once per record source, record source type and modification time into the user's
+ * record cache directory when the job is submitted, and reused by later jobs with the same record source.
+ * The modification time of a cache file is updated when it is reused. Cache files not used for
+ * {@link #RECORD_CACHE_MAX_AGE_DAYS} days are deleted, so that files of previous versions of a record source
+ * remain available to jobs that still use them.
+ * If the record source cannot be converted, e.g. because it is no file or has attributes of other types
+ * than numbers and text, the tasks read the record source itself.
+ */
+public class ReferenceRecordCache {
+
+    /**
+     * Set to {@code false} to read the record source itself in the tasks.
+     */
+    public static final String RECORD_CACHE_ENABLED = "calvalus.ma.recordCache";
+    /**
+     * The number of days after its last use that a cache file is deleted, by default 30.
+     */
+    public static final String RECORD_CACHE_MAX_AGE_DAYS = "calvalus.ma.recordCache.maxAgeDays";
+    static final String RECORD_CACHE_SOURCE_URL = "calvalus.ma.recordCache.sourceUrl";
+    static final String RECORD_CACHE_PATH = "calvalus.ma.recordCache.path";
+    static final String RECORD_CACHE_LINK_NAME = "reference" + BinaryRecordSource.EXTENSION;
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+
+    private ReferenceRecordCache() {
+    }
+
+    /**
+     * Writes the binary record file of the record source of the match-up parameters, if not yet done,
+     * and adds it to the distributed cache of the job.
+     */
+    public static void configure(HadoopProcessingService processingService, String userName, Configuration jobConfig) throws IOException {
+        String maXml = jobConfig.get(JobConfigNames.CALVALUS_MA_PARAMETERS);
+        if (maXml == null || !jobConfig.getBoolean(RECORD_CACHE_ENABLED, true)) {
+            return;
+        }
+        String sourceUrl = null;
+        try {
+            MAConfig maConfig = MAConfig.get(jobConfig);
+            sourceUrl = maConfig.getRecordSourceUrl();
+            if (sourceUrl == null) {
+                return;
+            }
+            Path sourcePath = new Path(sourceUrl);
+            FileSystem sourceFileSystem = processingService.getFileSystem(userName, jobConfig, sourcePath);
+            FileStatus sourceStatus = sourceFileSystem.getFileStatus(sourcePath);
+            Path cacheDir = new Path(String.format("/calvalus/home/%s/.recordcache", userName));
+            // the record source type determines the records read from the same file
+            String sourceKey = sourceFileSystem.makeQualified(sourcePath).toString() + "|" + maConfig.getRecordSourceSpiClassName();
+            String prefix = sourcePath.getName() + "-" + Integer.toHexString(sourceKey.hashCode()) + "-";
+            Path cachePath = new Path(cacheDir, prefix + sourceStatus.getModificationTime() + BinaryRecordSource.EXTENSION);
+            FileSystem cacheFileSystem = processingService.getFileSystem(userName, jobConfig, cachePath);
+            long now = System.currentTimeMillis();
+            if (cacheFileSystem.exists(cachePath)) {
+                cacheFileSystem.setTimes(cachePath, now, -1);
+            } else {
+                writeCacheFile(maConfig, jobConfig, cacheFileSystem, cachePath);
+            }
+            long maxAgeMillis = TimeUnit.DAYS.toMillis(jobConfig.getInt(RECORD_CACHE_MAX_AGE_DAYS, 30));
+            deleteExpiredCacheFiles(cacheFileSystem, cacheDir, now - maxAgeMillis);
+            URI cacheUri = cacheFileSystem.makeQualified(cachePath).toUri();
+            DistributedCache.addCacheFile(new URI(cacheUri.getScheme(), cacheUri.getAuthority(), cacheUri.getPath(),
+                                                  null, RECORD_CACHE_LINK_NAME), jobConfig);
+            jobConfig.set(RECORD_CACHE_PATH, cacheUri.toString());
+            jobConfig.set(RECORD_CACHE_SOURCE_URL, sourceUrl);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "no binary record cache for " + sourceUrl + ", tasks read it themselves: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the binary record source for the record source of the match-up parameters,
+     * or {@code null} if the job has none
+     */
+    static RecordSource getRecordSource(MAConfig maConfig, Configuration conf) throws Exception {
+        String sourceUrl = conf.get(RECORD_CACHE_SOURCE_URL);
+        if (sourceUrl == null || !sourceUrl.equals(maConfig.getRecordSourceUrl())) {
+            return null;
+        }
+        File localFile = new File(RECORD_CACHE_LINK_NAME);
+        if (localFile.exists()) {
+            // memory-mapped from the distributed cache, shared via the page cache by the tasks of a node
+            return BinaryRecordSource.open(localFile);
+        }
+        String cachePath = conf.get(RECORD_CACHE_PATH);
+        if (cachePath == null) {
+            return null;
+        }
+        // e.g. the input format at job submission
+        try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(cachePath, conf)) {
+            return BinaryRecordSource.read(inputStream);
+        }
+    }
+
+    private static void writeCacheFile(MAConfig maConfig, Configuration jobConfig,
+                                       FileSystem fileSystem, Path cachePath) throws Exception {
+        Path tmpPath = new Path(cachePath.getParent(), "_" + cachePath.getName());
+        int numRecords;
+        try (FSDataOutputStream out = fileSystem.create(tmpPath, true)) {
+            numRecords = BinaryRecordSource.write(maConfig.createRecordSource(jobConfig), out);
+        } catch (Exception e) {
+            fileSystem.delete(tmpPath, false);
+            throw e;
+        }
+        if (!fileSystem.rename(tmpPath, cachePath) && !fileSystem.exists(cachePath)) {
+            throw new IOException("failed to rename " + tmpPath + " to " + cachePath);
+        }
+        LOG.info("wrote " + numRecords + " reference records of " + maConfig.getRecordSourceUrl() + " to " + cachePath);
+    }
+
+    /**
+     * Deletes the cache files, including left-over temporary files, last modified before the given time.
+     * Failures are logged, they do not affect the job.
+     */
+    static void deleteExpiredCacheFiles(FileSystem fileSystem, Path cacheDir, long minModificationTime) {
+        try {
+            FileStatus[] cacheFiles = fileSystem.globStatus(new Path(cacheDir, "*" + BinaryRecordSource.EXTENSION));
+            if (cacheFiles == null) {
+                return;
+            }
+            for (FileStatus cacheFile : cacheFiles) {
+                if (cacheFile.getModificationTime() < minModificationTime) {
+                    LOG.info("deleting unused record cache file " + cacheFile.getPath());
+                    fileSystem.delete(cacheFile.getPath(), false);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "failed to clean up record cache " + cacheDir + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A Hadoop writable for the match-up records emitted by the {@link MAMapper} that writes the value types
+ * only once per product.
+ * <p/>
+ * The header record of a product carries the attribute and annotation names and a {@link Schema} with the
+ * type of each column. A data record writes its values untagged in the type of their column, preceded by
+ * two bit sets marking the {@code null} values and the values of another type than their column,
+ * which are written tagged like by {@link RecordWritable}. The counts of {@link AggregatedNumber}s are written
+ * as variable-length integers, their minimum and maximum as floats if they are floats, which they are
+ * if aggregated from the float values of a macro pixel.
+ * <p/>
+ * The MAReducer gets the header records first, because their keys start with "#", and passes the
+ * schema of the product to its data records with {@link #setSchema(Schema)}. The data records keep their
+ * encoded values and decode them on first access.
+ * <p/>
+ * In the mapper, a single instance is reused for all data records of a product. The types of the schema
+ * are taken from the first non-null value of each column, hence the header has to be written after the
+ * data records of the product.
+ */
+public class SchemaRecordWritable extends RecordWritable {
+
+    /**
+     * Set to {@code false} to emit the match-up records as {@link RecordWritable}s.
+     */
+    public static final String SCHEMA_RECORDS_ENABLED = "calvalus.ma.schemaRecords";
+
+    private static final byte HEADER_RECORD = 'H';
+    private static final byte DATA_RECORD = 'D';
+
+    private boolean header;
+    private Schema schema;
+    private Object[] attributeValues;
+    private Object[] annotationValues;
+
+    private final DataOutputBuffer encoded = new DataOutputBuffer();
+    private final DataInputBuffer decoder = new DataInputBuffer();
+    private byte[] values = new byte[0];
+    private int valuesLength;
+    private boolean decoded = true;
+
+    public SchemaRecordWritable() {
+    }
+
+    /**
+     * Sets the attribute and annotation names of the header record of a product.
+     */
+    public void setHeader(Schema schema, Object[] attributeNames, Object[] annotationNames) {
+        this.header = true;
+        this.schema = schema;
+        this.attributeValues = attributeNames;
+        this.annotationValues = annotationNames;
+        this.decoded = true;
+    }
+
+    /**
+     * Sets the values of a data record of a product.
+     */
+    public void setValues(Schema schema, Object[] attributeValues, Object[] annotationValues) {
+        this.header = false;
+        this.schema = schema;
+        this.attributeValues = attributeValues;
+        this.annotationValues = annotationValues;
+        this.decoded = true;
+    }
+
+    public boolean isHeader() {
+        return header;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Sets the schema of a data record that has been read, as given by the header record of its product.
+     */
+    public void setSchema(Schema schema) {
+        if (!header && schema != this.schema) {
+            this.schema = schema;
+            this.decoded = false;
+        }
+    }
+
+    @Override
+    public Object[] getAttributeValues() {
+        decode();
+        return attributeValues;
+    }
+
+    @Override
+    public Object[] getAnnotationValues() {
+        decode();
+        return annotationValues;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (header) {
+            out.writeByte(HEADER_RECORD);
+            writeNames(out, attributeValues);
+            writeNames(out, annotationValues);
+            writeTypes(out, schema.attributeTypes);
+            writeTypes(out, schema.annotationTypes);
+        } else if (!decoded) {
+            // a record that has been read and not been decoded yet
+            out.writeByte(DATA_RECORD);
+            out.writeInt(valuesLength);
+            out.write(values, 0, valuesLength);
+        } else {
+            encoded.reset();
+            writeValues(encoded, schema.attributeTypes, attributeValues);
+            writeValues(encoded, schema.annotationTypes, annotationValues);
+            out.writeByte(DATA_RECORD);
+            out.writeInt(encoded.getLength());
+            out.write(encoded.getData(), 0, encoded.getLength());
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        final byte recordType = in.readByte();
+        if (recordType == HEADER_RECORD) {
+            header = true;
+            attributeValues = readNames(in);
+            annotationValues = readNames(in);
+            // a new schema, the one of the previous header is still used by the data records of its product
+            schema = new Schema(readTypes(in, attributeValues.length), readTypes(in, annotationValues.length));
+            decoded = true;
+        } else if (recordType == DATA_RECORD) {
+            if (header) {
+                // the names of the header may be referred to, they are not reused for values
+                attributeValues = null;
+                annotationValues = null;
+            }
+            header = false;
+            valuesLength = in.readInt();
+            if (values.length < valuesLength) {
+                values = new byte[valuesLength];
+            }
+            in.readFully(values, 0, valuesLength);
+            schema = null;
+            decoded = false;
+        } else {
+            throw new IllegalStateException("Read illegal record type: '" + (char) recordType + "'");
+        }
+    }
+
+    private void decode() {
+        if (decoded) {
+            return;
+        }
+        if (schema == null) {
+            throw new IllegalStateException("schema of data record not set");
+        }
+        try {
+            decoder.reset(values, 0, valuesLength);
+            attributeValues = readValues(decoder, schema.attributeTypes, attributeValues);
+            annotationValues = readValues(decoder, schema.annotationTypes, annotationValues);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to decode record: " + e.getMessage(), e);
+        }
+        decoded = true;
+    }
+
+    private static void writeNames(DataOutput out, Object[] names) throws IOException {
+        out.writeInt(names.length);
+        for (Object name : names) {
+            out.writeUTF(String.valueOf(name));
+        }
+    }
+
+    private static Object[] readNames(DataInput in) throws IOException {
+        final Object[] names = new Object[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    private static void writeTypes(DataOutput out, Type[] types) throws IOException {
+        for (Type type : types) {
+            out.writeByte(type.getId());
+        }
+    }
+
+    private static Type[] readTypes(DataInput in, int typeCount) throws IOException {
+        final Type[] types = new Type[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            final char typeId = (char) in.readByte();
+            types[i] = Type.getType(typeId);
+            if (types[i] == null) {
+                throw new IllegalStateException("Read illegal type ID: '" + typeId + "'");
+            }
+        }
+        return types;
+    }
+
+    private static void writeValues(DataOutput out, Type[] types, Object[] values) throws IOException {
+        if (values.length != types.length) {
+            throw new IllegalStateException("record has " + values.length + " values, schema " + types.length);
+        }
+        final byte[] nullBits = new byte[(values.length + 7) / 8];
+        final byte[] taggedBits = new byte[(values.length + 7) / 8];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                nullBits[i >> 3] |= 1 << (i & 7);
+            } else {
+                final Type type = Type.getType(values[i]);
+                if (types[i] == Type.NULL && type != null) {
+                    types[i] = type;
+                }
+                if (types[i] != type) {
+                    taggedBits[i >> 3] |= 1 << (i & 7);
+                }
+            }
+        }
+        out.write(nullBits);
+        out.write(taggedBits);
+        for (int i = 0; i < values.length; i++) {
+            if ((nullBits[i >> 3] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+            if ((taggedBits[i >> 3] & (1 << (i & 7))) != 0) {
+                writeValue(out, values[i]);
+            } else {
+                writeTypedValue(out, types[i], values[i]);
+            }
+        }
+    }
+
+    private static Object[] readValues(DataInput in, Type[] types, Object[] values) throws IOException {
+        if (values == null || values.length != types.length) {
+            values = new Object[types.length];
+        }
+        final byte[] nullBits = new byte[(values.length + 7) / 8];
+        final byte[] taggedBits = new byte[(values.length + 7) / 8];
+        in.readFully(nullBits);
+        in.readFully(taggedBits);
+        for (int i = 0; i < values.length; i++) {
+            if ((nullBits[i >> 3] & (1 << (i & 7))) != 0) {
+                values[i] = null;
+            } else if ((taggedBits[i >> 3] & (1 << (i & 7))) != 0) {
+                values[i] = readValue(in);
+            } else {
+                values[i] = readTypedValue(in, types[i]);
+            }
+        }
+        return values;
+    }
+
+    private static void writeTypedValue(DataOutput out, Type type, Object value) throws IOException {
+        if (type == Type.INTEGER) {
+            out.writeInt((Integer) value);
+        } else if (type == Type.LONG) {
+            out.writeLong((Long) value);
+        } else if (type == Type.FLOAT) {
+            out.writeFloat((Float) value);
+        } else if (type == Type.DOUBLE) {
+            out.writeDouble((Double) value);
+        } else if (type == Type.DATE) {
+            out.writeLong(((Date) value).getTime());
+        } else if (type == Type.STRING) {
+            out.writeUTF((String) value);
+        } else if (type == Type.AGGREGATED_NUMBER) {
+            final AggregatedNumber aggregatedNumber = (AggregatedNumber) value;
+            WritableUtils.writeVInt(out, aggregatedNumber.n);
+            WritableUtils.writeVInt(out, aggregatedNumber.nT);
+            WritableUtils.writeVInt(out, aggregatedNumber.nF);
+            if (isFloat(aggregatedNumber.min) && isFloat(aggregatedNumber.max)) {
+                out.writeBoolean(true);
+                out.writeFloat((float) aggregatedNumber.min);
+                out.writeFloat((float) aggregatedNumber.max);
+            } else {
+                out.writeBoolean(false);
+                out.writeDouble(aggregatedNumber.min);
+                out.writeDouble(aggregatedNumber.max);
+            }
+            out.writeDouble(aggregatedNumber.mean);
+            out.writeDouble(aggregatedNumber.sigma);
+            final float[] data = aggregatedNumber.data;
+            WritableUtils.writeVInt(out, data != null ? data.length : -1);
+            if (data != null) {
+                for (float aData : data) {
+                    out.writeFloat(aData);
+                }
+            }
+        } else {
+            throw new IllegalStateException("Unhandled value type: " + type);
+        }
+    }
+
+    private static Object readTypedValue(DataInput in, Type type) throws IOException {
+        if (type == Type.INTEGER) {
+            return in.readInt();
+        } else if (type == Type.LONG) {
+            return in.readLong();
+        } else if (type == Type.FLOAT) {
+            return in.readFloat();
+        } else if (type == Type.DOUBLE) {
+            return in.readDouble();
+        } else if (type == Type.DATE) {
+            return new Date(in.readLong());
+        } else if (type == Type.STRING) {
+            return in.readUTF();
+        } else if (type == Type.AGGREGATED_NUMBER) {
+            final int n = WritableUtils.readVInt(in);
+            final int nT = WritableUtils.readVInt(in);
+            final int nF = WritableUtils.readVInt(in);
+            final boolean floatRange = in.readBoolean();
+            final double min = floatRange ? in.readFloat() : in.readDouble();
+            final double max = floatRange ? in.readFloat() : in.readDouble();
+            final double mean = in.readDouble();
+            final double sigma = in.readDouble();
+            final int length = WritableUtils.readVInt(in);
+            final float[] data = length >= 0 ? new float[length] : null;
+            if (data != null) {
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = in.readFloat();
+                }
+            }
+            return new AggregatedNumber(n, nT, nF, min, max, mean, sigma, data);
+        } else {
+            throw new IllegalStateException("Unhandled value type: " + type);
+        }
+    }
+
+    private static boolean isFloat(double value) {
+        return (double) (float) value == value || Double.isNaN(value);
+    }
+
+    /**
+     * The value types of the attribute and annotation columns of the records of a product.
+     * Columns without a non-null value have the type {@link Type#NULL}.
+     */
+    public static final class Schema {
+
+        private final Type[] attributeTypes;
+        private final Type[] annotationTypes;
+
+        public Schema(int attributeCount, int annotationCount) {
+            this(newTypes(attributeCount), newTypes(annotationCount));
+        }
+
+        Schema(Type[] attributeTypes, Type[] annotationTypes) {
+            this.attributeTypes = attributeTypes;
+            this.annotationTypes = annotationTypes;
+        }
+
+        public Type[] getAttributeTypes() {
+            return attributeTypes.clone();
+        }
+
+        public Type[] getAnnotationTypes() {
+            return annotationTypes.clone();
+        }
+
+        private static Type[] newTypes(int count) {
+            final Type[] types = new Type[count];
+            Arrays.fill(types, Type.NULL);
+            return types;
+        }
+    }
+}
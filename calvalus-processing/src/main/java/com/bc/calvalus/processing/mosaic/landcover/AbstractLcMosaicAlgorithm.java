@@ -52,6 +52,13 @@ abstract public class AbstractLcMosaicAlgorithm implements MosaicAlgorithm, Conf
 
     public static final String CALVALUS_LC_SDR8_MEAN = "calvalus.lc.sdr8mean";
 
+    // -Dcalvalus.lc.debugPixels=true traces the probe pixels, otherwise the JIT folds the constant and drops the probes
+    static final boolean DEBUG_PIXELS = Boolean.getBoolean("calvalus.lc.debugPixels");
+
+    private static final byte SDR_KEEP = 0;
+    private static final byte SDR_ADD = 1;
+    private static final byte SDR_CLEAR_AND_ADD = 2;
+
     protected final int STATUS_BAND_INDEX = 0;
     protected final int SDR_L2_OFFSET = 1;
     protected final int SDR_AGGREGATED_OFFSET = getCounterNames().length + 1;
@@ -79,6 +86,13 @@ abstract public class AbstractLcMosaicAlgorithm implements MosaicAlgorithm, Conf
     protected TileDataWritable sdrCloudData;
     protected float[][] sdrCloudDataSamples;
 
+    // per-pixel scratch buffers of the kernel, allocated once per tile size
+    private int[] pixelStatus;
+    private byte[] sdrActions;
+    private float[] weightSums;
+    private float[] tc4;
+    private float[] tc1;
+
 
     @Override
     public void setVariableContext(VariableContext variableContext) {
@@ -100,6 +114,11 @@ abstract public class AbstractLcMosaicAlgorithm implements MosaicAlgorithm, Conf
         for (int band = 0; band < variableCount; band++) {
             Arrays.fill(aggregatedSamples[band], 0.0f);
         }
+        if (pixelStatus == null || pixelStatus.length != numElems) {
+            pixelStatus = new int[numElems];
+            sdrActions = new byte[numElems];
+            weightSums = new float[numElems];
+        }
         if (reader == null && jobConf.get(CALVALUS_LC_SDR8_MEAN) != null) {
             openSdr8MeanReader(getPartition(tileIndex));
         }
@@ -143,237 +162,267 @@ abstract public class AbstractLcMosaicAlgorithm implements MosaicAlgorithm, Conf
         return i == iy * tileSize + ix;
     }
 
+    static boolean isDebugPixel(int i, int tileSize) {
+        return maybeIsPixelPos(9280, 4656, i, tileSize) || maybeIsPixelPos(4400, 9251, i, tileSize);
+    }
+
+    /**
+     * Aggregates the samples of one week into the tile.
+     * <p/>
+     * The kernel works in passes over whole bands instead of all bands per pixel: the status of all pixels
+     * is determined first, including the temporal cloud filter on precomputed tasseled cap bands, then the
+     * status of each pixel is aggregated, which only records what to do with its SDRs, and finally the SDRs
+     * are accumulated band by band. The loops over bands are free of dependencies between pixels,
+     * so the JIT can unroll and vectorise them. Best pixel aggregation selects the SDRs per pixel.
+     */
     @Override
     public void processTemporal(float[][] samples) {
         int numElems = tileSize * tileSize;
+        computeStatus(samples, numElems);
+        float[] sdr1Samples = samples[varIndexes[SDR_L2_OFFSET]];
         for (int i = 0; i < numElems; i++) {
-            int status = (int) samples[varIndexes[0]][i];
-            int oldStatus = (int) aggregatedSamples[STATUS_BAND_INDEX][i];
+            sdrActions[i] = SDR_KEEP;
+            aggregateStatus(samples, i, pixelStatus[i], Float.isNaN(sdr1Samples[i]));
+        }
+        if (!bestPixelAggregation) {
+            addSdrBands(samples, numElems);
+        }
+    }
 
+    private void computeStatus(float[][] samples, int numElems) {
+        float[] statusSamples = samples[varIndexes[STATUS_BAND_INDEX]];
+        float[] sdr1Samples = samples[varIndexes[SDR_L2_OFFSET]];
+        for (int i = 0; i < numElems; i++) {
+            int status = (int) statusSamples[i];
             //check for invalid pixels
-            float sdr_1 = samples[varIndexes[SDR_L2_OFFSET]][i];
-            if ((status == STATUS_LAND || status == STATUS_SNOW) && Float.isNaN(sdr_1)) {
+            if ((status == STATUS_LAND || status == STATUS_SNOW) && Float.isNaN(sdr1Samples[i])) {
                 status = STATUS_INVALID;
             }
-
             // TODO: temporarily removed, as it maps haze to cloud too early
             // status = StatusRemapper.remapStatus(statusRemapper, status);
+            pixelStatus[i] = status;
+        }
+        if (sdrCloudDataSamples != null) {
+            if (isTemporalTc4Based) {
+                applyTemporalTcFilter(samples, numElems);
+            } else {
+                applyTemporalSdrFilter(samples, numElems);
+            }
+        }
+    }
 
-            if (sdrCloudDataSamples != null) {
-                if (maybeIsPixelPos(9280, 4656, i, tileSize)
-                        || maybeIsPixelPos(4400, 9251, i, tileSize)) {
-                    System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " apply temporal cloud filter");
-                }
-                // temporal test
-                if (isTemporalTc4Based) {
-                    if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE) {
-                        float tc4CloudThreshold = sdrCloudDataSamples[0][i];
-                        if (!Float.isNaN(tc4CloudThreshold)) {
-                            float B2_ac = samples[varIndexes[SDR_L2_OFFSET+1]][i];
-                            float B3_ac = samples[varIndexes[SDR_L2_OFFSET+2]][i];
-                            float B4_ac = samples[varIndexes[SDR_L2_OFFSET+3]][i];
-                            float B8A_ac = samples[varIndexes[SDR_L2_OFFSET+8]][i];
-                            float B11_ac = samples[varIndexes[SDR_L2_OFFSET+9]][i];
-                            float B12_ac = samples[varIndexes[SDR_L2_OFFSET+10]][i];
-                            float tc4 = (float) (-0.8239*B2_ac + 0.0849*B3_ac + 0.4396*B4_ac - 0.058*B8A_ac + 0.2013*B11_ac - 0.2773*B12_ac);
-                            if (tc4 < tc4CloudThreshold) {
-                                status = STATUS_TEMPORAL_CLOUD;
-                            } else if (status == STATUS_BRIGHT || status == STATUS_HAZE) {
-                                // we observe that the feature is stable over time, we assume it is clear
-                                status = STATUS_LAND;
-                            }
-//                            if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(2078, 2856, i, tileSize)) {
-//                                System.err.println("ix=" + (i%tileSize) + " iy=" + (i/tileSize) + " tc4=" + tc4 + " tc4CloudThreshold=" + tc4CloudThreshold + " status=" + status);
-//                            }
-//                        } else {
-//                            if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(2078, 2856, i, tileSize)) {
-//                                System.err.println("ix=" + (i%tileSize) + " iy=" + (i/tileSize) + " tc4CloudThreshold=" + tc4CloudThreshold + " status=" + status);
-//                            }
-                        }
-                    }
-
-                    //TC1 = 0.3029*B2_ac + 0.2786*B3_ac + 0.4733*B4_ac + 0.5599*B8A_ac + 0.508*B11_ac + 0.1872*B12_ac
-                    //TC1_tresh = 0.9*(TC1_mean - TC1_stddev)
-                    //Shadow: TC1 < TC1_tresh
-                    if (status == STATUS_LAND || status == STATUS_DARK) {
-                        float tc1CloudThreshold = sdrCloudDataSamples[1][i];
-                        if (!Float.isNaN(tc1CloudThreshold)) {
-                            float B2_ac = samples[varIndexes[SDR_L2_OFFSET + 1]][i];
-                            float B3_ac = samples[varIndexes[SDR_L2_OFFSET + 2]][i];
-                            float B4_ac = samples[varIndexes[SDR_L2_OFFSET + 3]][i];
-                            float B8A_ac = samples[varIndexes[SDR_L2_OFFSET + 8]][i];
-                            float B11_ac = samples[varIndexes[SDR_L2_OFFSET + 9]][i];
-                            float B12_ac = samples[varIndexes[SDR_L2_OFFSET + 10]][i];
-                            float tc1 = (float) (0.3029 * B2_ac + 0.2786 * B3_ac + 0.4733 * B4_ac + 0.5599 * B8A_ac + 0.508 * B11_ac + 0.1872 * B12_ac);
-                            if (tc1 < tc1CloudThreshold) {
-                                status = STATUS_CLOUD_SHADOW;
-//                            } else {
-//                                // we observe that the feature is stable over time, we assume it is clear
-//                                status = STATUS_LAND;
-                            }
-//                            if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(2078, 2856, i, tileSize)) {
-//                                System.err.println("ix=" + (i%tileSize) + " iy=" + (i/tileSize) + " tc1=" + tc1 + " tc1CloudThreshold=" + tc1CloudThreshold + " status=" + status);
-//                            }
-//                        } else {
-//                            // we do not have temporal information, we are lost
-//                            status = STATUS_LAND
-                        }
-                    }
-
-                } else if ((status == STATUS_LAND /* || status == STATUS_HAZE || status == STATUS_BRIGHT */)) {
-                    float sdr8 = samples[varIndexes[temporalCloudBandIndex]][i];
-                    float sdr8CloudThreshold = sdrCloudDataSamples[0][i];
-                    float sdr8CloudShadowThreshold = sdrCloudDataSamples[1][i];
-                    if (maybeIsPixelPos(9280, 4656, i, tileSize)
-                            || maybeIsPixelPos(4400, 9251, i, tileSize)) {
-                        System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " status LAND sdrMean=" + sdr8 + " sdr8CloudThreshold=" + sdr8CloudThreshold);
-                    }
-                    status = temporalCloudCheck(sdr8, sdr8CloudThreshold);
-                    // added for ARGI processing
-                    if (status == STATUS_LAND) {
-                        status = temporalCloudShadowCheck2(sdr8, sdr8CloudShadowThreshold);
+    private void applyTemporalTcFilter(float[][] samples, int numElems) {
+        if (tc4 == null || tc4.length != numElems) {
+            tc4 = new float[numElems];
+            tc1 = new float[numElems];
+        }
+        float[] b2 = samples[varIndexes[SDR_L2_OFFSET + 1]];
+        float[] b3 = samples[varIndexes[SDR_L2_OFFSET + 2]];
+        float[] b4 = samples[varIndexes[SDR_L2_OFFSET + 3]];
+        float[] b8a = samples[varIndexes[SDR_L2_OFFSET + 8]];
+        float[] b11 = samples[varIndexes[SDR_L2_OFFSET + 9]];
+        float[] b12 = samples[varIndexes[SDR_L2_OFFSET + 10]];
+        // computed for all pixels, branch-free
+        for (int i = 0; i < numElems; i++) {
+            tc4[i] = (float) (-0.8239 * b2[i] + 0.0849 * b3[i] + 0.4396 * b4[i] - 0.058 * b8a[i] + 0.2013 * b11[i] - 0.2773 * b12[i]);
+        }
+        //TC1 = 0.3029*B2_ac + 0.2786*B3_ac + 0.4733*B4_ac + 0.5599*B8A_ac + 0.508*B11_ac + 0.1872*B12_ac
+        //TC1_tresh = 0.9*(TC1_mean - TC1_stddev)
+        //Shadow: TC1 < TC1_tresh
+        for (int i = 0; i < numElems; i++) {
+            tc1[i] = (float) (0.3029 * b2[i] + 0.2786 * b3[i] + 0.4733 * b4[i] + 0.5599 * b8a[i] + 0.508 * b11[i] + 0.1872 * b12[i]);
+        }
+        float[] tc4CloudThresholds = sdrCloudDataSamples[0];
+        float[] tc1CloudThresholds = sdrCloudDataSamples[1];
+        for (int i = 0; i < numElems; i++) {
+            int status = pixelStatus[i];
+            if (DEBUG_PIXELS && isDebugPixel(i, tileSize)) {
+                System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " apply temporal cloud filter");
+            }
+            if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE) {
+                float tc4CloudThreshold = tc4CloudThresholds[i];
+                if (!Float.isNaN(tc4CloudThreshold)) {
+                    if (tc4[i] < tc4CloudThreshold) {
+                        status = STATUS_TEMPORAL_CLOUD;
+                    } else if (status == STATUS_BRIGHT || status == STATUS_HAZE) {
+                        // we observe that the feature is stable over time, we assume it is clear
+                        status = STATUS_LAND;
                     }
-// excluded for AGRI processing, to be re-included for MERIS etc.
-//                } else if (status == STATUS_CLOUD_SHADOW) {
-//                    float sdr8 = samples[varIndexes[temporalCloudBandIndex]][i];
-//                    float sdr8CloudShadowThreshold = sdrCloudDataSamples[1][i];
-//                    if (maybeIsPixelPos(9280, 4656, i, tileSize)
-//                            || maybeIsPixelPos(4400, 9251, i, tileSize)) {
-//                        System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " status SHADOW sdrMean=" + sdr8 + " sdr8CloudShadowThreshold=" + sdr8CloudShadowThreshold);
-//                    }
-//                    status = temporalCloudShadowCheck(sdr8, sdr8CloudShadowThreshold);
                 }
             }
+            if (status == STATUS_LAND || status == STATUS_DARK) {
+                float tc1CloudThreshold = tc1CloudThresholds[i];
+                if (!Float.isNaN(tc1CloudThreshold) && tc1[i] < tc1CloudThreshold) {
+                    status = STATUS_CLOUD_SHADOW;
+                }
+            }
+            pixelStatus[i] = status;
+        }
+    }
 
-            if (status == STATUS_LAND) {
-                int landCount = (int) aggregatedSamples[STATUS_LAND][i];
-                // If we haven't seen LAND so far,
-                // but we had SNOW, WATER or CLOUD_SHADOW => clear SDRs
-                if (landCount == 0) {
-                    int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
-                    int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
-                    int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
-                    if (snowCount > 0 || waterCount > 0 || shadowCount > 0) {
-                        clearSDR(i, sensorConfig.getBandNames().length,0.0f);
-                    }
-                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_LAND;
+    private void applyTemporalSdrFilter(float[][] samples, int numElems) {
+        float[] sdr8Samples = samples[varIndexes[temporalCloudBandIndex]];
+        float[] sdr8CloudThresholds = sdrCloudDataSamples[0];
+        float[] sdr8CloudShadowThresholds = sdrCloudDataSamples[1];
+        for (int i = 0; i < numElems; i++) {
+            if (DEBUG_PIXELS && isDebugPixel(i, tileSize)) {
+                System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " apply temporal cloud filter");
+            }
+            if (pixelStatus[i] == STATUS_LAND /* || status == STATUS_HAZE || status == STATUS_BRIGHT */) {
+                float sdr8 = sdr8Samples[i];
+                float sdr8CloudThreshold = sdr8CloudThresholds[i];
+                if (DEBUG_PIXELS && isDebugPixel(i, tileSize)) {
+                    System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " status LAND sdrMean=" + sdr8 + " sdr8CloudThreshold=" + sdr8CloudThreshold);
                 }
-                // Since we have seen LAND now, accumulate LAND SDRs
-                if (! bestPixelAggregation) {
-                    addSdrs(samples, i);
-                } else {
-                    selectSdrs(samples, i, landCount);
+                int status = temporalCloudCheck(sdr8, sdr8CloudThreshold);
+                // added for ARGI processing
+                if (status == STATUS_LAND) {
+                    status = temporalCloudShadowCheck2(sdr8, sdr8CloudShadowThresholds[i]);
                 }
-                // Count LAND
-                aggregatedSamples[STATUS_LAND][i] = landCount + 1;
-            } else if (status == STATUS_SNOW) {
+                pixelStatus[i] = status;
+            }
+            // excluded for AGRI processing, to be re-included for MERIS etc.:
+            // STATUS_CLOUD_SHADOW -> temporalCloudShadowCheck(sdr8, sdr8CloudShadowThreshold)
+        }
+    }
+
+    private void aggregateStatus(float[][] samples, int i, int status, boolean sdr1IsNaN) {
+        int oldStatus = (int) aggregatedSamples[STATUS_BAND_INDEX][i];
+        if (status == STATUS_LAND) {
+            int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+            // If we haven't seen LAND so far,
+            // but we had SNOW, WATER or CLOUD_SHADOW => clear SDRs
+            boolean clear = false;
+            if (landCount == 0) {
+                int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+                int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                clear = snowCount > 0 || waterCount > 0 || shadowCount > 0;
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_LAND;
+            }
+            // Since we have seen LAND now, accumulate LAND SDRs
+            aggregateSdrs(samples, i, clear, landCount);
+            // Count LAND
+            aggregatedSamples[STATUS_LAND][i] = landCount + 1;
+        } else if (status == STATUS_SNOW) {
+            int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+            // If we haven't seen LAND so far, accumulate SNOW SDRs
+            if (landCount == 0) {
+                // if there have been WATER or CLOUD_SHADOW  before => clear SDR
+                int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                aggregateSdrs(samples, i, waterCount > 0 || shadowCount > 0, (int) aggregatedSamples[STATUS_SNOW][i]);
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_SNOW;
+            }
+            // Count SNOW
+            aggregatedSamples[STATUS_SNOW][i]++;
+        } else if (status == STATUS_WATER) {
+            if (sdr1IsNaN) {
+                // deep water
+                deepWaterCounter[i]++;
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
+            } else {
+                // shallow water
+                // only aggregate if, no LAND or SNOW before
                 int landCount = (int) aggregatedSamples[STATUS_LAND][i];
-                // If we haven't seen LAND so far, accumulate SNOW SDRs
-                if (landCount == 0) {
-                    // if there have been WATER or CLOUD_SHADOW  before => clear SDR
-                    int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+                if (landCount == 0 && snowCount == 0) {
+                    // if there was a CLOUD_SHADOW before => clear SDR
                     int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
-                    if (waterCount > 0 || shadowCount > 0) {
-                        clearSDR(i, sensorConfig.getBandNames().length, 0.0f);
-                    }
-                    if (! bestPixelAggregation) {
-                        addSdrs(samples, i);
-                    } else {
-                        selectSdrs(samples, i, (int) aggregatedSamples[STATUS_SNOW][i]);
-                    }
-                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_SNOW;
-                }
-                // Count SNOW
-                aggregatedSamples[STATUS_SNOW][i]++;
-            } else if (status == STATUS_WATER) {
-                if (Float.isNaN(sdr_1)) {
-                    // deep water
-                    deepWaterCounter[i]++;
+                    aggregateSdrs(samples, i, shadowCount > 0, (int) aggregatedSamples[STATUS_WATER][i]);
                     aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
-                } else {
-                    // shallow water
-                    // only aggregate if, no LAND or SNOW before
-                    int landCount = (int) aggregatedSamples[STATUS_LAND][i];
-                    int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
-                    if (landCount == 0 && snowCount == 0) {
-                        // if there was a CLOUD_SHADOW before => clear SDR
-                        int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
-                        if (shadowCount > 0) {
-                            clearSDR(i, sensorConfig.getBandNames().length, 0.0f);
-                        }
-                        if (! bestPixelAggregation) {
-                            addSdrs(samples, i);
-                        } else {
-                            selectSdrs(samples, i, (int) aggregatedSamples[STATUS_WATER][i]);
-                        }
-                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
-                    }
-                    aggregatedSamples[STATUS_WATER][i]++;
-                }
-            } else if (status == STATUS_CLOUD_SHADOW) {
-                // Count CLOUD_SHADOW
-                int landCount = (int) aggregatedSamples[STATUS_LAND][i];
-                int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
-                int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
-                if (landCount == 0 && snowCount == 0 && waterCount == 0) {
-                    // only aggregate SDR, if no LAND, WATER or SNOW have been aggregated before
-                    if (status != oldStatus) {
-                        clearSDR(i, sensorConfig.getBandNames().length, 0.0f);
-                        aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
-                    }
-                    if (! bestPixelAggregation) {
-                        addSdrs(samples, i);
-                    } else {
-                        selectSdrs(samples, i, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
-                    }
-                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD_SHADOW;
-                }
-                aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;
-            } else if (status == STATUS_CLOUD) {
-                // Count CLOUD
-                aggregatedSamples[STATUS_CLOUD][i]++;
-                if (oldStatus != STATUS_LAND &&
-                        oldStatus != STATUS_SNOW &&
-                        oldStatus != STATUS_WATER &&
-                        oldStatus != STATUS_CLOUD_SHADOW &&
-                        oldStatus != STATUS_BRIGHT &&
-                        oldStatus != STATUS_DARK &&
-                        oldStatus != STATUS_HAZE &&
-                        oldStatus != STATUS_TEMPORAL_CLOUD) {
-                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD;
                 }
-            } else if (status == STATUS_TEMPORAL_CLOUD) {
-                // Count CLOUD
-                aggregatedSamples[STATUS_CLOUD][i]++;
-                if (oldStatus != STATUS_LAND &&
-                        oldStatus != STATUS_SNOW &&
-                        oldStatus != STATUS_WATER &&
-                        oldStatus != STATUS_CLOUD_SHADOW &&
-                        oldStatus != STATUS_BRIGHT &&
-                        oldStatus != STATUS_DARK &&
-                        oldStatus != STATUS_HAZE) {
-                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_TEMPORAL_CLOUD;
+                aggregatedSamples[STATUS_WATER][i]++;
+            }
+        } else if (status == STATUS_CLOUD_SHADOW) {
+            // Count CLOUD_SHADOW
+            int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+            int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+            int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+            if (landCount == 0 && snowCount == 0 && waterCount == 0) {
+                // only aggregate SDR, if no LAND, WATER or SNOW have been aggregated before
+                boolean clear = status != oldStatus;
+                if (clear) {
+                    aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
                 }
-            } else if (status == STATUS_BRIGHT || status == STATUS_DARK || status == STATUS_HAZE) {
-                if (oldStatus != STATUS_LAND &&
-                        oldStatus != STATUS_SNOW &&
-                        oldStatus != STATUS_WATER &&
-                        oldStatus != STATUS_CLOUD_SHADOW &&
-                        (status == STATUS_BRIGHT ||
-                                (status == STATUS_DARK && oldStatus != STATUS_BRIGHT) ||
-                                (status == STATUS_HAZE && oldStatus != STATUS_BRIGHT && oldStatus != STATUS_DARK))) {
-                    if (status != oldStatus) {
-                        clearSDR(i, sensorConfig.getBandNames().length, 0.0f);
-                        aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
-                        aggregatedSamples[STATUS_BAND_INDEX][i] = status;
-                    }
-                    if (!bestPixelAggregation) {
-                        addSdrs(samples, i);
-                    } else {
-                        selectSdrs(samples, i, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
-                    }
-                    aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;  // TODO: cloud shadow count abused for bright, dark, or haze
+                aggregateSdrs(samples, i, clear, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD_SHADOW;
+            }
+            aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;
+        } else if (status == STATUS_CLOUD) {
+            // Count CLOUD
+            aggregatedSamples[STATUS_CLOUD][i]++;
+            if (oldStatus != STATUS_LAND &&
+                    oldStatus != STATUS_SNOW &&
+                    oldStatus != STATUS_WATER &&
+                    oldStatus != STATUS_CLOUD_SHADOW &&
+                    oldStatus != STATUS_BRIGHT &&
+                    oldStatus != STATUS_DARK &&
+                    oldStatus != STATUS_HAZE &&
+                    oldStatus != STATUS_TEMPORAL_CLOUD) {
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD;
+            }
+        } else if (status == STATUS_TEMPORAL_CLOUD) {
+            // Count CLOUD
+            aggregatedSamples[STATUS_CLOUD][i]++;
+            if (oldStatus != STATUS_LAND &&
+                    oldStatus != STATUS_SNOW &&
+                    oldStatus != STATUS_WATER &&
+                    oldStatus != STATUS_CLOUD_SHADOW &&
+                    oldStatus != STATUS_BRIGHT &&
+                    oldStatus != STATUS_DARK &&
+                    oldStatus != STATUS_HAZE) {
+                aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_TEMPORAL_CLOUD;
+            }
+        } else if (status == STATUS_BRIGHT || status == STATUS_DARK || status == STATUS_HAZE) {
+            if (oldStatus != STATUS_LAND &&
+                    oldStatus != STATUS_SNOW &&
+                    oldStatus != STATUS_WATER &&
+                    oldStatus != STATUS_CLOUD_SHADOW &&
+                    (status == STATUS_BRIGHT ||
+                            (status == STATUS_DARK && oldStatus != STATUS_BRIGHT) ||
+                            (status == STATUS_HAZE && oldStatus != STATUS_BRIGHT && oldStatus != STATUS_DARK))) {
+                boolean clear = status != oldStatus;
+                if (clear) {
+                    aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
+                    aggregatedSamples[STATUS_BAND_INDEX][i] = status;
                 }
+                aggregateSdrs(samples, i, clear, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
+                aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;  // TODO: cloud shadow count abused for bright, dark, or haze
+            }
+        }
+    }
+
+    /**
+     * Records that the SDRs of the pixel are to be accumulated by {@link #addSdrBands(float[][], int)},
+     * or selects them at once for best pixel aggregation.
+     */
+    private void aggregateSdrs(float[][] samples, int i, boolean clear, int count) {
+        if (bestPixelAggregation) {
+            if (clear) {
+                clearSDR(i, sensorConfig.getBandNames().length, 0.0f);
+            }
+            selectSdrs(samples, i, count);
+        } else {
+            sdrActions[i] = clear ? SDR_CLEAR_AND_ADD : SDR_ADD;
+        }
+    }
+
+    /**
+     * Accumulates the SDRs of all pixels band by band as recorded in sdrActions.
+     */
+    private void addSdrBands(float[][] samples, int numElems) {
+        final int numBands = sensorConfig.getBandNames().length;
+        final boolean uncertaintiesAreSquares = sensorConfig.isUncertaintiesAreSquares();
+        for (int j = SDR_AGGREGATED_OFFSET; j < aggregatedSamples.length; ++j) {
+            final float[] aggregated = aggregatedSamples[j];
+            final float[] measurements = samples[varIndexes[j - SDR_AGGREGATED_OFFSET + SDR_L2_OFFSET]];
+            final boolean square = j >= SDR_AGGREGATED_OFFSET + numBands + 1 && !uncertaintiesAreSquares;  // uncertainty
+            for (int i = 0; i < numElems; i++) {
+                final byte action = sdrActions[i];
+                final float measurement = square ? measurements[i] * measurements[i] : measurements[i];
+                final float base = action == SDR_CLEAR_AND_ADD ? 0.0f : aggregated[i];
+                aggregated[i] = action == SDR_KEEP ? aggregated[i] : base + measurement;
             }
         }
     }
@@ -419,16 +468,24 @@ abstract public class AbstractLcMosaicAlgorithm implements MosaicAlgorithm, Conf
             } else if (status == STATUS_BRIGHT || status == STATUS_DARK || status == STATUS_HAZE) {
                 wSum = aggregatedSamples[STATUS_CLOUD_SHADOW][i];
             }
-            if (wSum != 0f) {
-                for (int j = SDR_AGGREGATED_OFFSET; j < SDR_AGGREGATED_OFFSET + sensorConfig.getBandNames().length + 1; j++) {  // sdr + ndvi
-                    aggregatedSamples[j][i] /= wSum;
-                }
-                for (int j = SDR_AGGREGATED_OFFSET + sensorConfig.getBandNames().length + 1; j < aggregatedSamples.length; j++) {  // sdr_error
-                    aggregatedSamples[j][i] = ((float) Math.sqrt(aggregatedSamples[j][i])) / wSum;
-                }
-            } else {
-                clearSDR(i, sensorConfig.getBandNames().length, Float.NaN);
+            weightSums[i] = wSum;
+        }
+        final int numBands = sensorConfig.getBandNames().length;
+        for (int j = SDR_AGGREGATED_OFFSET; j < SDR_AGGREGATED_OFFSET + numBands + 1; j++) {  // sdr + ndvi
+            final float[] aggregated = aggregatedSamples[j];
+            for (int i = 0; i < numElems; i++) {
+                final float wSum = weightSums[i];
+                aggregated[i] = wSum != 0f ? aggregated[i] / wSum : Float.NaN;
+            }
+        }
+        for (int j = SDR_AGGREGATED_OFFSET + numBands + 1; j < aggregatedSamples.length; j++) {  // sdr_error
+            final float[] aggregated = aggregatedSamples[j];
+            for (int i = 0; i < numElems; i++) {
+                final float wSum = weightSums[i];
+                aggregated[i] = wSum != 0f ? ((float) Math.sqrt(aggregated[i])) / wSum : Float.NaN;
             }
+        }
+        for (int i = 0; i < numElems; i++) {
             if (deepWaterCounter[i] > 0) {
                 aggregatedSamples[STATUS_WATER][i] = (int) aggregatedSamples[STATUS_WATER][i] + deepWaterCounter[i];
                 aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
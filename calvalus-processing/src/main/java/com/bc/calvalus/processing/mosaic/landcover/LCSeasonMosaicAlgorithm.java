@@ -60,7 +60,14 @@ public class LCSeasonMosaicAlgorithm implements MosaicAlgorithm, Configurable {
     private static final int NUM_SDR_BANDS = 15;
     private static final int NUM_BANDS = 1 + 5 + 15 + 1 + 15;
 
+    private static final byte SDR_KEEP = 0;
+    private static final byte SDR_ADD = 1;
+    private static final byte SDR_CLEAR_AND_ADD = 2;
+
     private float[][] aggregatedSamples = null;
+    // per pixel scratch of processTemporal and getTemporalResult, reused across tiles
+    private byte[] sdrActions;
+    private float[] weights;
     private int tileSize;
     private Configuration jobConf;
 
@@ -72,50 +79,66 @@ public class LCSeasonMosaicAlgorithm implements MosaicAlgorithm, Configurable {
         for (int band = 0; band < NUM_BANDS; band++) {
             Arrays.fill(aggregatedSamples[band], 0.0f);
         }
+        if (sdrActions == null || sdrActions.length != numElems) {
+            sdrActions = new byte[numElems];
+            weights = new float[numElems];
+        }
     }
 
+    /**
+     * Decides per pixel whether the SDRs of the sample are added, and whether the aggregated SDRs are cleared
+     * before, and then accumulates SDRs and counters band by band in loops the JIT can vectorise.
+     */
     @Override
     public void processTemporal(float[][] samples) {
         int numElems = tileSize * tileSize;
+        final float[] sampleStatusBand = samples[STATUS];
+        final float[] aggregatedStatusBand = aggregatedSamples[STATUS];
         for (int i = 0; i < numElems; i++) {
-            int sampleStatus = (int) samples[STATUS][i];
-            int previousStatus = (int) aggregatedSamples[STATUS][i];
+            int sampleStatus = (int) sampleStatusBand[i];
+            int previousStatus = (int) aggregatedStatusBand[i];
+            byte action = SDR_KEEP;
 
             if (sampleStatus == STATUS_LAND) {
                 // If we haven't seen LAND so far, but we had SNOW or WATER, delete SDRs measurements
                 if (previousStatus != STATUS_LAND) {
-                    clearSDR(i, 0.0f);
-                    aggregatedSamples[STATUS][i] = STATUS_LAND;
+                    aggregatedStatusBand[i] = STATUS_LAND;
+                    action = SDR_CLEAR_AND_ADD;
+                } else {
+                    action = SDR_ADD;
                 }
                 // Since we have seen LAND now, accumulate LAND SDRs
-                final int sampleLandCount = (int) samples[STATUS_LAND][i];
-                addSdrs(samples, sampleLandCount, i);
+                weights[i] = (int) samples[STATUS_LAND][i];
             } else if (sampleStatus == STATUS_SNOW) {
                 // If we haven't seen LAND so far, accumulate SNOW SDRs
                 if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW) {
-                    clearSDR(i, 0.0f);
-                    aggregatedSamples[STATUS][i] = STATUS_SNOW;
-                }
-                if (previousStatus != STATUS_LAND) {
-                    final int sampleSnowCount = (int) samples[STATUS_SNOW][i];
-                    addSdrs(samples, sampleSnowCount, i);
+                    aggregatedStatusBand[i] = STATUS_SNOW;
+                    action = SDR_CLEAR_AND_ADD;
+                } else if (previousStatus != STATUS_LAND) {
+                    action = SDR_ADD;
                 }
+                weights[i] = (int) samples[STATUS_SNOW][i];
             } else if (sampleStatus == STATUS_WATER ) {
                 if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW && previousStatus != STATUS_WATER) {
-                    clearSDR(i, 0.0f);
-                    aggregatedSamples[STATUS][i] = STATUS_WATER;
-                }
-                if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW) {
-                    final int sampleWaterCount = (int) samples[STATUS_WATER][i];
-                    addSdrs(samples, sampleWaterCount, i);
+                    aggregatedStatusBand[i] = STATUS_WATER;
+                    action = SDR_CLEAR_AND_ADD;
+                } else if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW) {
+                    action = SDR_ADD;
                 }
+                weights[i] = (int) samples[STATUS_WATER][i];
             } else if (sampleStatus == STATUS_CLOUD || sampleStatus == STATUS_CLOUD_SHADOW) {
                 if (previousStatus == STATUS_INVALID) {
-                    aggregatedSamples[STATUS][i] = STATUS_CLOUD;
+                    aggregatedStatusBand[i] = STATUS_CLOUD;
                 }
             }
-            for (int j = 0; j < COUNTER_NAMES.length; j++) {
-                aggregatedSamples[j + 1][i] += samples[j + 1][i];
+            sdrActions[i] = action;
+        }
+        addSdrs(samples, numElems);
+        for (int j = 0; j < COUNTER_NAMES.length; j++) {
+            final float[] sampleCounts = samples[j + 1];
+            final float[] aggregatedCounts = aggregatedSamples[j + 1];
+            for (int i = 0; i < numElems; i++) {
+                aggregatedCounts[i] += sampleCounts[i];
             }
         }
     }
@@ -123,19 +146,20 @@ public class LCSeasonMosaicAlgorithm implements MosaicAlgorithm, Configurable {
     @Override
     public float[][] getTemporalResult() {
         int numElems = tileSize * tileSize;
+        final float[] aggregatedStatusBand = aggregatedSamples[STATUS];
         for (int i = 0; i < numElems; i++) {
-            int status = (int) aggregatedSamples[STATUS][i];
-
+            int status = (int) aggregatedStatusBand[i];
             float wSum = 0f;
             if ((status == STATUS_LAND || status == STATUS_SNOW || status == STATUS_WATER)) {
                 wSum = aggregatedSamples[status][i];
             }
-            if (wSum != 0f) {
-                for (int j = 0; j < NUM_SDR_BANDS + NUM_SDR_BANDS + 1; j++) {  // sdr + ndvi + sdr_error
-                    aggregatedSamples[SDR_OFFSET + j][i] /= wSum;
-                }
-            } else {
-                clearSDR(i, Float.NaN);
+            weights[i] = wSum;
+        }
+        for (int j = 0; j < NUM_SDR_BANDS + NUM_SDR_BANDS + 1; j++) {  // sdr + ndvi + sdr_error
+            final float[] aggregatedBand = aggregatedSamples[SDR_OFFSET + j];
+            for (int i = 0; i < numElems; i++) {
+                final float wSum = weights[i];
+                aggregatedBand[i] = wSum != 0f ? aggregatedBand[i] / wSum : Float.NaN;
             }
         }
         return aggregatedSamples;
@@ -177,22 +201,32 @@ public class LCSeasonMosaicAlgorithm implements MosaicAlgorithm, Configurable {
         return jobConf;
     }
 
-    private void clearSDR(int i, float value) {
-        for (int j = 0; j < NUM_SDR_BANDS + NUM_SDR_BANDS + 1; j++) {
-            aggregatedSamples[SDR_OFFSET + j][i] = value;
-        }
-    }
-
-    private void addSdrs(float[][] samples, int weightCount, int i) {
+    private void addSdrs(float[][] samples, int numElems) {
         int sdrOffset = SDR_OFFSET;
         for (int j = 0; j < NUM_SDR_BANDS + 1; j++) { // sdr + ndvi
-            float sdrMeasurement =  samples[sdrOffset + j][i] * weightCount;
-            aggregatedSamples[sdrOffset + j][i] += sdrMeasurement;
+            final float[] sampleBand = samples[sdrOffset + j];
+            final float[] aggregatedBand = aggregatedSamples[sdrOffset + j];
+            for (int i = 0; i < numElems; i++) {
+                final byte action = sdrActions[i];
+                if (action != SDR_KEEP) {
+                    float sdrMeasurement = sampleBand[i] * weights[i];
+                    float base = action == SDR_CLEAR_AND_ADD ? 0.0f : aggregatedBand[i];
+                    aggregatedBand[i] = base + sdrMeasurement;
+                }
+            }
         }
         sdrOffset += NUM_SDR_BANDS + 1;
         for (int j = 0; j < NUM_SDR_BANDS; j++) { // sdr_error
-            float sdrErrorMeasurement =  samples[sdrOffset + j][i] * weightCount;
-            aggregatedSamples[sdrOffset + j][i] += (sdrErrorMeasurement * sdrErrorMeasurement);
+            final float[] sampleBand = samples[sdrOffset + j];
+            final float[] aggregatedBand = aggregatedSamples[sdrOffset + j];
+            for (int i = 0; i < numElems; i++) {
+                final byte action = sdrActions[i];
+                if (action != SDR_KEEP) {
+                    float sdrErrorMeasurement = sampleBand[i] * weights[i];
+                    float base = action == SDR_CLEAR_AND_ADD ? 0.0f : aggregatedBand[i];
+                    aggregatedBand[i] = base + (sdrErrorMeasurement * sdrErrorMeasurement);
+                }
+            }
         }
     }
 
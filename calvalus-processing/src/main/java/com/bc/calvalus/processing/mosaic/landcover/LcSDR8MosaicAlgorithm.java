@@ -91,67 +91,76 @@ public class LcSDR8MosaicAlgorithm implements MosaicAlgorithm, Configurable {
      * Else, if there are some bright observations count their contributions.
      * Else, if there are some haze observations count their contributions.
      * Use AGG_INDEX_MAXNDVI for the status memo.
+     * The band arrays are resolved once per call instead of per pixel.
      * @param samples
      */
     @Override
     public void processTemporal(float[][] samples) {
-        int numElems = tileSize * tileSize;
+        final int numElems = tileSize * tileSize;
+        final float[] statusSamples = samples[varIndexes[SAMPLE_INDEX_STATUS]];
+        final float[] mjdSamples = samples[varIndexes[SAMPLE_INDEX_MJD]];
+        final float[] sdrSamples = samples[varIndexes[SAMPLE_INDEX_SDR8]];
+        // NDVI without TC4, TC1 with TC4
+        final float[] ndviOrTc1Samples = samples[varIndexes[withTc4 ? SAMPLE_INDEX_TC1 : SAMPLE_INDEX_NDVI]];
+        final float[] aggStatus = aggregatedSamples[AGG_INDEX_STATUS];
+        final float[] aggMjd = aggregatedSamples[AGG_INDEX_MJD];
+        final float[] aggCount = aggregatedSamples[AGG_INDEX_COUNT];
+        final float[] aggSdrSum = aggregatedSamples[AGG_INDEX_SDR_SUM];
+        final float[] aggSdrSqSum = aggregatedSamples[AGG_INDEX_SDR_SQSUM];
+        final float[] aggMaxNdvi = aggregatedSamples[AGG_INDEX_MAXNDVI];
+        final float[] aggSdr4MaxNdvi = aggregatedSamples[AGG_INDEX_SDR4MAXNDVI];
+        final float[] aggTc1Status = aggregatedSamples[AGG_INDEX_TC1_STATUS];
+        final float[] aggTc1Mjd = aggregatedSamples[AGG_INDEX_TC1_MJD];
+        final float[] aggTc1Count = aggregatedSamples[AGG_INDEX_TC1_COUNT];
+        final float[] aggTc1Sum = aggregatedSamples[AGG_INDEX_TC1_SUM];
+        final float[] aggTc1SqSum = aggregatedSamples[AGG_INDEX_TC1_SQSUM];
         for (int i = 0; i < numElems; i++) {
-            int status = (int) samples[varIndexes[SAMPLE_INDEX_STATUS]][i];
-            float mjd = samples[varIndexes[SAMPLE_INDEX_MJD]][i];
+            int status = (int) statusSamples[i];
             //int status = StatusRemapper.remapStatus(statusRemapper, status1);
-//            if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(2078, 2856, i, tileSize)) {
-//                System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " status=" + status + " status=" + status + " tc4=" + samples[varIndexes[SAMPLE_INDEX_SDR8]][i] + " tc1=" + samples[varIndexes[SAMPLE_INDEX_TC1]][i]);
-//            }
-//            if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE) {
-            if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE || status == STATUS_DARK || status == STATUS_WATER) {
-                int oldStatus = (int) aggregatedSamples[AGG_INDEX_STATUS][i];
-                if (oldStatus == 0.0f) {
-                    aggregatedSamples[AGG_INDEX_STATUS][i] = status;
-                    aggregatedSamples[AGG_INDEX_MJD][i] = mjd;
+            if (status != STATUS_LAND && status != STATUS_BRIGHT && status != STATUS_HAZE && status != STATUS_DARK && status != STATUS_WATER) {
+                continue;
+            }
+            float mjd = mjdSamples[i];
+            if (aggStatus[i] == 0.0f) {
+                aggStatus[i] = status;
+                aggMjd[i] = mjd;
+            }
+            // accumulate LAND SDRs
+            float sdr = sdrSamples[i];
+            if (!Float.isNaN(sdr)) {
+                aggCount[i]++;
+                aggSdrSum[i] += sdr;
+                aggSdrSqSum[i] += sdr * sdr;
+                if (aggCount[i] > 1 && isNotSameOrbit(mjd, aggMjd[i])) {
+                    aggMjd[i] = Float.NaN;
                 }
-                // accumulate LAND SDRs
-                float sdr = samples[varIndexes[SAMPLE_INDEX_SDR8]][i];
-                if (!Float.isNaN(sdr)) {
-                    aggregatedSamples[AGG_INDEX_COUNT][i]++;
-                    aggregatedSamples[AGG_INDEX_SDR_SUM][i] += sdr;
-                    aggregatedSamples[AGG_INDEX_SDR_SQSUM][i] += sdr * sdr;
-                    if (aggregatedSamples[AGG_INDEX_COUNT][i] > 1 && isNotSameOrbit(mjd, aggregatedSamples[AGG_INDEX_MJD][i])) {
-                        aggregatedSamples[AGG_INDEX_MJD][i] = Float.NaN;
-                    }
-                    if (! withTc4) {
-                        float ndvi = samples[varIndexes[SAMPLE_INDEX_NDVI]][i];
-                        if (aggregatedSamples[AGG_INDEX_COUNT][i] == 1) {
-                            // first pixel
-                            aggregatedSamples[AGG_INDEX_MAXNDVI][i] = ndvi;
-                            aggregatedSamples[AGG_INDEX_SDR4MAXNDVI][i] = sdr;
-                        } else if (ndvi > aggregatedSamples[AGG_INDEX_MAXNDVI][i]) {
-                            aggregatedSamples[AGG_INDEX_MAXNDVI][i] = ndvi;
-                            aggregatedSamples[AGG_INDEX_SDR4MAXNDVI][i] = sdr;
-                        }
+                if (! withTc4) {
+                    float ndvi = ndviOrTc1Samples[i];
+                    if (aggCount[i] == 1) {
+                        // first pixel
+                        aggMaxNdvi[i] = ndvi;
+                        aggSdr4MaxNdvi[i] = sdr;
+                    } else if (ndvi > aggMaxNdvi[i]) {
+                        aggMaxNdvi[i] = ndvi;
+                        aggSdr4MaxNdvi[i] = sdr;
                     }
                 }
             }
 
-//            if (withTc4 && (status == STATUS_LAND || status == STATUS_DARK || status == STATUS_WATER)) {
-            if (withTc4 && (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE || status == STATUS_DARK || status == STATUS_WATER)) {
-                int oldStatus = (int) aggregatedSamples[AGG_INDEX_TC1_STATUS][i];
-                if (oldStatus == 0.0f) {
-                    aggregatedSamples[AGG_INDEX_TC1_STATUS][i] = status;
-                    aggregatedSamples[AGG_INDEX_TC1_MJD][i] = mjd;
+            if (withTc4) {
+                if (aggTc1Status[i] == 0.0f) {
+                    aggTc1Status[i] = status;
+                    aggTc1Mjd[i] = mjd;
                 }
                 // accumulate LAND SDRs
-                float sdr = samples[varIndexes[SAMPLE_INDEX_TC1]][i];
-                if (!Float.isNaN(sdr)) {
-                    aggregatedSamples[AGG_INDEX_TC1_COUNT][i]++;
-                    aggregatedSamples[AGG_INDEX_TC1_SUM][i] += sdr;
-                    aggregatedSamples[AGG_INDEX_TC1_SQSUM][i] += sdr * sdr;
-                    if (aggregatedSamples[AGG_INDEX_TC1_COUNT][i] > 1 && isNotSameOrbit(mjd, aggregatedSamples[AGG_INDEX_TC1_MJD][i])) {
-                        aggregatedSamples[AGG_INDEX_TC1_MJD][i] = Float.NaN;
+                float tc1 = ndviOrTc1Samples[i];
+                if (!Float.isNaN(tc1)) {
+                    aggTc1Count[i]++;
+                    aggTc1Sum[i] += tc1;
+                    aggTc1SqSum[i] += tc1 * tc1;
+                    if (aggTc1Count[i] > 1 && isNotSameOrbit(mjd, aggTc1Mjd[i])) {
+                        aggTc1Mjd[i] = Float.NaN;
                     }
-//                    if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(2078, 2856, i, tileSize)) {
-//                        System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " adding tc1=" + sdr + " mjd=" + mjd + " aggMjd=" + aggregatedSamples[AGG_INDEX_TC1_MJD][i]);
-//                    }
                 }
             }
         }
@@ -201,8 +210,7 @@ public class LcSDR8MosaicAlgorithm implements MosaicAlgorithm, Configurable {
                     result[0][i] = (float) sdrCloudDetector;
                 }
                 //}
-                if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(9280, 4656, i, tileSize)
-                        || AbstractLcMosaicAlgorithm.maybeIsPixelPos(4400, 9251, i, tileSize)) {
+                if (AbstractLcMosaicAlgorithm.DEBUG_PIXELS && AbstractLcMosaicAlgorithm.isDebugPixel(i, tileSize)) {
                     System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " sdrMean=" + sdrMean + " sdrSigma=" + sdrSigma + " sdrNdviMax=" + sdr4MaxNdvi + " sdrCloud=" + result[0][i] + " sdrShadow=" + result[1][i]);
                 }
                 // if "ndvi" instead of sdr_B3 (spot only)
@@ -211,8 +219,7 @@ public class LcSDR8MosaicAlgorithm implements MosaicAlgorithm, Configurable {
                 //    result[0][i] = sdrCloudDetector;
                 //}
             } else {
-                if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(9280, 4656, i, tileSize)
-                        || AbstractLcMosaicAlgorithm.maybeIsPixelPos(4400, 9251, i, tileSize)) {
+                if (AbstractLcMosaicAlgorithm.DEBUG_PIXELS && AbstractLcMosaicAlgorithm.isDebugPixel(i, tileSize)) {
                     System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " count=" + count);
                 }
             }
@@ -225,8 +232,7 @@ public class LcSDR8MosaicAlgorithm implements MosaicAlgorithm, Configurable {
                 //double sdrCloudShadowDetector = sdrMean - sdrSigma * 1.35;
                 double sdrCloudShadowDetector = (sdrMean - sdrSigma) * 0.9;
                 result[1][i] = (float) sdrCloudShadowDetector;
-                if (AbstractLcMosaicAlgorithm.maybeIsPixelPos(9280, 4656, i, tileSize)
-                        || AbstractLcMosaicAlgorithm.maybeIsPixelPos(4400, 9251, i, tileSize)) {
+                if (AbstractLcMosaicAlgorithm.DEBUG_PIXELS && AbstractLcMosaicAlgorithm.isDebugPixel(i, tileSize)) {
                     System.err.println("ix=" + (i % tileSize) + " iy=" + (i / tileSize) + " tc1Mean=" + sdrMean + " tc1Sigma=" + sdrSigma + " tc1CloudShadow=" + result[1][i]);
                 }
             }
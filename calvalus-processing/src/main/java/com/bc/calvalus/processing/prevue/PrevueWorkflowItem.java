@@ -20,6 +20,7 @@ import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.SimpleOutputFormat;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
+import com.bc.calvalus.processing.ma.ReferenceRecordCache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
@@ -70,6 +71,8 @@ public class PrevueWorkflowItem extends HadoopWorkflowItem {
         jobConfig.setIfUnset("calvalus.system.beam.pixelGeoCoding.useTiling", "true");
         jobConfig.setIfUnset("calvalus.system.beam.envisat.usePixelGeoCoding", "true");
 
+        ReferenceRecordCache.configure(getProcessingService(), getUserName(), jobConfig);
+
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(PrevueMapper.class);
         job.setNumReduceTasks(0);
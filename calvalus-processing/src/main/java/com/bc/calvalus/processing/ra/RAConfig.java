@@ -34,6 +34,8 @@ import java.io.IOException;
  */
 public class RAConfig implements XmlConvertible {
 
+    public static final String PERCENTILE_MODE_EXACT = "exact";
+    public static final String PERCENTILE_MODE_APPROXIMATE = "approximate";
 
     public static class Region {
         @Parameter
@@ -130,6 +132,14 @@ public class RAConfig implements XmlConvertible {
     @Parameter(defaultValue = "")
     private int[] percentiles;
 
+    // "exact" keeps all values, "approximate" uses a quantile sketch of bounded size
+    @Parameter(defaultValue = PERCENTILE_MODE_EXACT, valueSet = {PERCENTILE_MODE_EXACT, PERCENTILE_MODE_APPROXIMATE})
+    private String percentileMode = PERCENTILE_MODE_EXACT;
+
+    // rank error of approximate percentiles
+    @Parameter(defaultValue = "0.01")
+    private double percentileAccuracy = 0.01;
+
     // TODO bandNames have to be given, switch to all if not given ?
     @Parameter(itemAlias = "band")
     private BandConfig[] bands;
@@ -225,6 +235,22 @@ public class RAConfig implements XmlConvertible {
         }
     }
 
+    public String getPercentileMode() {
+        return percentileMode;
+    }
+
+    public void setPercentileMode(String percentileMode) {
+        this.percentileMode = percentileMode;
+    }
+
+    public double getPercentileAccuracy() {
+        return percentileAccuracy;
+    }
+
+    public void setPercentileAccuracy(double percentileAccuracy) {
+        this.percentileAccuracy = percentileAccuracy;
+    }
+
     public BandConfig[] getBandConfigs() {
         return bands;
     }
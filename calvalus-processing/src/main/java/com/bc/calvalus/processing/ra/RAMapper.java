@@ -19,7 +19,7 @@ package com.bc.calvalus.processing.ra;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorAdapter;
-import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.ProcessorAdapterQueue;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.ra.stat.Extractor;
 import com.bc.calvalus.processing.ra.stat.RADateRanges;
@@ -60,11 +60,25 @@ public class RAMapper extends Mapper<NullWritable, NullWritable, RAKey, RAValue>
             throw new IOException("inconsistent region definition, cannot access region names");
         }
 
+        try (ProcessorAdapterQueue adapterQueue = new ProcessorAdapterQueue(context)) {
+            while (adapterQueue.hasNext()) {
+                ProcessorAdapter processorAdapter = adapterQueue.next();
+                try {
+                    processProduct(context, jobConfig, raConfig, processorAdapter);
+                } catch (IOException | RuntimeException e) {
+                    adapterQueue.productFailed(processorAdapter, e);
+                }
+            }
+        }
+    }
+
+    private void processProduct(Context context, Configuration jobConfig, RAConfig raConfig,
+                                ProcessorAdapter processorAdapter) throws IOException, InterruptedException {
+        LOG.info("processing input " + processorAdapter.getInputPath() + " ...");
         ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         int numRegions = raConfig.getInternalRegionNames().length;
         pm.beginTask("Region Analysis", numRegions * 2);
         try {
-            ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
             Product product = processorAdapter.getProcessedProduct(SubProgressMonitor.create(pm, numRegions));
             if (product != null) {
                 if (product.getSceneTimeCoding() == null && product.getStartTime() == null && product.getEndTime() == null) {
@@ -116,6 +130,7 @@ public class RAMapper extends Mapper<NullWritable, NullWritable, RAKey, RAValue>
             }
         } finally {
             pm.done();
+            processorAdapter.dispose();
         }
     }
 
@@ -1,45 +1,125 @@
 package com.bc.calvalus.processing.ra.stat;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * accumulates 'valid' float values
+ *
+ * The values are kept in chunks of fixed size, so accumulating is linear in the number of values,
+ * and the values are copied only once into a single array when they are requested.
+ * They can also be accessed and reordered in place by their index.
  */
 class Accumulator {
 
-    private float[] values;
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final int chunkShift;
+    private final List<float[]> chunks;
+    private float[] currentChunk;
+    private int currentSize;
+    private long size;
 
     public Accumulator() {
-        values = new float[0];
+        this(CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of values per chunk, a power of 2
+     */
+    Accumulator(int chunkSize) {
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("chunk size must be a power of 2: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        chunks = new ArrayList<>();
+        clear();
     }
 
     public void accumulateNoNaN(float... samples) {
-        float[] buffer = new float[samples.length];
-        int i = 0;
         for (float sample : samples) {
             if (!Float.isNaN(sample)) {
-                buffer[i++] = sample;
+                add(sample);
             }
         }
-        if (i > 0) {
-            values = concat(values, buffer, i);
-        }
     }
 
     public void accumulate(float... samples) {
-        values = concat(values, samples, samples.length);
+        int offset = 0;
+        while (offset < samples.length) {
+            if (currentSize == chunkSize) {
+                nextChunk();
+            }
+            int length = Math.min(samples.length - offset, chunkSize - currentSize);
+            System.arraycopy(samples, offset, currentChunk, currentSize, length);
+            currentSize += length;
+            size += length;
+            offset += length;
+        }
     }
 
     void clear() {
-        values = new float[0];
+        chunks.clear();
+        currentChunk = null;
+        currentSize = chunkSize;
+        size = 0;
+    }
+
+    public long size() {
+        return size;
     }
 
+    /**
+     * @return a new array with all accumulated values in the order of accumulation
+     */
     public float[] getValues() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too many values accumulated: " + size);
+        }
+        float[] values = new float[(int) size];
+        int offset = 0;
+        for (float[] chunk : chunks) {
+            int length = chunk == currentChunk ? currentSize : chunk.length;
+            System.arraycopy(chunk, 0, values, offset, length);
+            offset += length;
+        }
         return values;
     }
 
-    private static float[] concat(float[] a1, float[] a2, int a2Length) {
-        float[] b = new float[a1.length + a2Length];
-        System.arraycopy(a1, 0, b, 0, a1.length);
-        System.arraycopy(a2, 0, b, a1.length, a2Length);
-        return b;
+    /**
+     * @param index the index of a value in the order of accumulation
+     * @return the value
+     */
+    float get(long index) {
+        return chunks.get((int) (index >>> chunkShift))[(int) index & (chunkSize - 1)];
+    }
+
+    /**
+     * Exchanges two values.
+     */
+    void swap(long i, long j) {
+        float[] chunkI = chunks.get((int) (i >>> chunkShift));
+        float[] chunkJ = chunks.get((int) (j >>> chunkShift));
+        int offsetI = (int) i & (chunkSize - 1);
+        int offsetJ = (int) j & (chunkSize - 1);
+        float t = chunkI[offsetI];
+        chunkI[offsetI] = chunkJ[offsetJ];
+        chunkJ[offsetJ] = t;
+    }
+
+    private void add(float sample) {
+        if (currentSize == chunkSize) {
+            nextChunk();
+        }
+        currentChunk[currentSize++] = sample;
+        size++;
+    }
+
+    private void nextChunk() {
+        currentChunk = new float[chunkSize];
+        chunks.add(currentChunk);
+        currentSize = 0;
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import java.util.Arrays;
+
+/**
+ * Computes exact percentiles, as defined by {@link Statistics#computePercentile(int, float[])}.
+ * <p/>
+ * The values are accumulated in chunks. Instead of sorting all values only the ranks needed
+ * for the percentiles are selected with a multi-quickselect, which takes linear time
+ * in the number of values for a fixed number of percentiles. The selection reorders the values
+ * inside their chunks, addressed by their index, so they are never copied into a single array.
+ */
+class ExactPercentiles implements PercentileEngine {
+
+    private final Accumulator accu;
+
+    ExactPercentiles() {
+        this(Accumulator.CHUNK_SIZE);
+    }
+
+    ExactPercentiles(int chunkSize) {
+        accu = new Accumulator(chunkSize);
+    }
+
+    @Override
+    public void accumulate(float... samples) {
+        accu.accumulateNoNaN(samples);
+    }
+
+    @Override
+    public double[] computePercentiles(int[] percentiles) {
+        select(accu, getRanks(percentiles, accu.size()));
+        double[] result = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = computePercentile(percentiles[i], accu);
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        accu.clear();
+    }
+
+    /**
+     * Same as {@link Statistics#computePercentile(int, float[])}, for values selected at the ranks of the percentile.
+     */
+    private static double computePercentile(int p, Accumulator values) {
+        long numValues = values.size();
+        if (numValues == 0) {
+            return Double.NaN;
+        }
+        double n = (p / 100.0) * (numValues + 1);
+        long k = (long) Math.floor(n);
+        double d = n - k;
+        if (k == 0) {
+            return values.get(0);
+        } else if (k >= numValues) {
+            return values.get(numValues - 1);
+        } else {
+            float lower = values.get(k - 1);
+            return lower + d * (values.get(k) - lower);
+        }
+    }
+
+    /**
+     * @return the sorted distinct ranks read by {@link Statistics#computePercentile(int, float[])}
+     */
+    static long[] getRanks(int[] percentiles, long numValues) {
+        if (numValues == 0) {
+            return new long[0];
+        }
+        long[] ranks = new long[2 * percentiles.length];
+        int numRanks = 0;
+        for (int p : percentiles) {
+            long k = (long) Math.floor((p / 100.0) * (numValues + 1));
+            if (k == 0) {
+                ranks[numRanks++] = 0;
+            } else if (k >= numValues) {
+                ranks[numRanks++] = numValues - 1;
+            } else {
+                ranks[numRanks++] = k - 1;
+                ranks[numRanks++] = k;
+            }
+        }
+        return Arrays.stream(ranks, 0, numRanks).sorted().distinct().toArray();
+    }
+
+    /**
+     * Partially sorts the values so that each of the given ranks holds the value it would hold
+     * if the values were sorted.
+     *
+     * @param values the values, reordered in place
+     * @param ranks  sorted distinct ranks
+     */
+    static void select(Accumulator values, long[] ranks) {
+        select(values, 0, values.size() - 1, ranks, 0, ranks.length);
+    }
+
+    private static void select(Accumulator a, long lo, long hi, long[] ranks, int ranksFrom, int ranksTo) {
+        while (ranksFrom < ranksTo && lo < hi) {
+            // three-way partitioning keeps runs of equal values, frequent in regions, out of further passes
+            float pivot = medianOf3(a.get(lo), a.get((lo + hi) >>> 1), a.get(hi));
+            long lt = lo;
+            long gt = hi;
+            long i = lo;
+            while (i <= gt) {
+                float v = a.get(i);
+                if (v < pivot) {
+                    a.swap(lt++, i++);
+                } else if (v > pivot) {
+                    a.swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            // now a[lo..lt-1] < pivot, a[lt..gt] == pivot, a[gt+1..hi] > pivot
+            int leftTo = lowerBound(ranks, ranksFrom, ranksTo, lt);
+            int rightFrom = lowerBound(ranks, leftTo, ranksTo, gt + 1);
+            // recursion into the smaller part limits the stack depth
+            if (lt - lo < hi - gt) {
+                select(a, lo, lt - 1, ranks, ranksFrom, leftTo);
+                lo = gt + 1;
+                ranksFrom = rightFrom;
+            } else {
+                select(a, gt + 1, hi, ranks, rightFrom, ranksTo);
+                hi = lt - 1;
+                ranksTo = leftTo;
+            }
+        }
+    }
+
+    private static int lowerBound(long[] ranks, int from, int to, long rank) {
+        while (from < to && ranks[from] < rank) {
+            from++;
+        }
+        return from;
+    }
+
+    private static float medianOf3(float a, float b, float c) {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        } else {
+            return a < c ? a : (b < c ? c : b);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of float samples with long counts, replacing {@link Histogram64} in the region analysis.
+ * <p/>
+ * The counts of all bands are kept in one flat array, per band the count of samples below the
+ * histogram, the bins, and the count of samples above the histogram. Samples equal to the high value
+ * are counted in the last bin, NaN samples are ignored. Samples are counted in bulk from arrays.
+ * <p/>
+ * A concurrent histogram can be updated by several threads. Each thread counts a bulk of samples
+ * into a local array and adds the non-zero counts to one of several stripes of atomic counts,
+ * selected by the thread, so that threads rarely update the same counts.
+ * <p/>
+ * Histograms with the same bins can be merged, and are writable, so that they can be used
+ * as partial aggregates.
+ */
+class LongHistogram implements Writable {
+
+    private int numBands;
+    private int[] numBins;
+    private double[] lowValue;
+    private double[] highValue;
+    private int[] offsets;
+    private long[] counts;
+    private AtomicLongArray[] stripes;
+
+    /**
+     * Creates an empty histogram to be read by {@link #readFields(DataInput)}.
+     */
+    LongHistogram() {
+        this(new int[]{1}, new double[]{0.0}, new double[]{1.0}, 0);
+    }
+
+    LongHistogram(int numBins, double lowValue, double highValue) {
+        this(new int[]{numBins}, new double[]{lowValue}, new double[]{highValue}, 0);
+    }
+
+    /**
+     * @param numStripes the number of stripes of counts updated concurrently, 0 for a histogram
+     *                   updated by a single thread
+     */
+    LongHistogram(int[] numBins, double[] lowValue, double[] highValue, int numStripes) {
+        if (numBins.length == 0 || lowValue.length != numBins.length || highValue.length != numBins.length) {
+            throw new IllegalArgumentException("numBins, lowValue and highValue must be given for each band");
+        }
+        for (int band = 0; band < numBins.length; band++) {
+            if (numBins[band] <= 0) {
+                throw new IllegalArgumentException("numBins must be positive");
+            }
+            if (!(lowValue[band] < highValue[band])) {
+                throw new IllegalArgumentException("lowValue must be less than highValue");
+            }
+        }
+        init(numBins.clone(), lowValue.clone(), highValue.clone(), numStripes);
+    }
+
+    private void init(int[] numBins, double[] lowValue, double[] highValue, int numStripes) {
+        this.numBands = numBins.length;
+        this.numBins = numBins;
+        this.lowValue = lowValue;
+        this.highValue = highValue;
+        this.offsets = new int[numBands + 1];
+        for (int band = 0; band < numBands; band++) {
+            offsets[band + 1] = offsets[band] + numBins[band] + 2;
+        }
+        if (numStripes > 0) {
+            this.counts = null;
+            this.stripes = new AtomicLongArray[numStripes];
+            for (int i = 0; i < numStripes; i++) {
+                stripes[i] = new AtomicLongArray(offsets[numBands]);
+            }
+        } else {
+            this.counts = new long[offsets[numBands]];
+            this.stripes = null;
+        }
+    }
+
+    int getNumBands() {
+        return numBands;
+    }
+
+    int getNumBins(int band) {
+        return numBins[band];
+    }
+
+    double getLowValue(int band) {
+        return lowValue[band];
+    }
+
+    double getHighValue(int band) {
+        return highValue[band];
+    }
+
+    boolean isConcurrent() {
+        return stripes != null;
+    }
+
+    /**
+     * Counts the samples {@code samples[offset]} to {@code samples[offset + length - 1]} of a band.
+     */
+    void countSamples(int band, float[] samples, int offset, int length) {
+        if (stripes == null) {
+            countSamples(band, samples, offset, length, counts, offsets[band]);
+        } else {
+            int bandLength = numBins[band] + 2;
+            long[] localCounts = new long[bandLength];
+            countSamples(band, samples, offset, length, localCounts, 0);
+            AtomicLongArray stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+            int bandOffset = offsets[band];
+            for (int i = 0; i < bandLength; i++) {
+                if (localCounts[i] != 0) {
+                    stripe.addAndGet(bandOffset + i, localCounts[i]);
+                }
+            }
+        }
+    }
+
+    private void countSamples(int band, float[] samples, int offset, int length, long[] counts, int bandOffset) {
+        final double low = lowValue[band];
+        final double high = highValue[band];
+        final int n = numBins[band];
+        final double binWidth = (high - low) / n;
+        final int belowIndex = bandOffset;
+        final int aboveIndex = bandOffset + n + 1;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            final float value = samples[i];
+            if (value < low) {
+                counts[belowIndex]++;
+            } else if (value > high) {
+                counts[aboveIndex]++;
+            } else if (value == value) {
+                // not NaN
+                int bin = (int) ((value - low) / binWidth);
+                counts[bandOffset + 1 + (bin < n ? bin : n - 1)]++;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the counts of the bins of a band
+     */
+    long[] getBins(int band) {
+        long[] bins = new long[numBins[band]];
+        for (int bin = 0; bin < bins.length; bin++) {
+            bins[bin] = getCount(offsets[band] + 1 + bin);
+        }
+        return bins;
+    }
+
+    long getBelowCount(int band) {
+        return getCount(offsets[band]);
+    }
+
+    long getAboveCount(int band) {
+        return getCount(offsets[band] + numBins[band] + 1);
+    }
+
+    /**
+     * @return the number of samples counted in the bins of a band
+     */
+    long getTotal(int band) {
+        long total = 0;
+        for (int i = offsets[band] + 1; i <= offsets[band] + numBins[band]; i++) {
+            total += getCount(i);
+        }
+        return total;
+    }
+
+    void clear() {
+        if (stripes == null) {
+            Arrays.fill(counts, 0L);
+        } else {
+            for (AtomicLongArray stripe : stripes) {
+                for (int i = 0; i < stripe.length(); i++) {
+                    stripe.set(i, 0L);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram with the same bands and bins.
+     */
+    void merge(LongHistogram other) {
+        if (!Arrays.equals(numBins, other.numBins)
+            || !Arrays.equals(lowValue, other.lowValue)
+            || !Arrays.equals(highValue, other.highValue)) {
+            throw new IllegalArgumentException("cannot merge histograms with different bins");
+        }
+        for (int i = 0; i < offsets[numBands]; i++) {
+            long count = other.getCount(i);
+            if (count != 0) {
+                addCount(i, count);
+            }
+        }
+    }
+
+    /**
+     * Writes the bins and counts. The counts of a concurrent histogram are written as sums
+     * and read into a histogram updated by a single thread.
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, numBands);
+        for (int band = 0; band < numBands; band++) {
+            WritableUtils.writeVInt(out, numBins[band]);
+            out.writeDouble(lowValue[band]);
+            out.writeDouble(highValue[band]);
+        }
+        for (int i = 0; i < offsets[numBands]; i++) {
+            WritableUtils.writeVLong(out, getCount(i));
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int numBands = WritableUtils.readVInt(in);
+        int[] numBins = new int[numBands];
+        double[] lowValue = new double[numBands];
+        double[] highValue = new double[numBands];
+        for (int band = 0; band < numBands; band++) {
+            numBins[band] = WritableUtils.readVInt(in);
+            lowValue[band] = in.readDouble();
+            highValue[band] = in.readDouble();
+        }
+        init(numBins, lowValue, highValue, 0);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = WritableUtils.readVLong(in);
+        }
+    }
+
+    private long getCount(int index) {
+        if (stripes == null) {
+            return counts[index];
+        }
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            count += stripe.get(index);
+        }
+        return count;
+    }
+
+    private void addCount(int index, long count) {
+        if (stripes == null) {
+            counts[index] += count;
+        } else {
+            stripes[(int) (Thread.currentThread().getId() % stripes.length)].addAndGet(index, count);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+/**
+ * Accumulates the valid values of a band in a region and period and computes percentiles of them.
+ */
+interface PercentileEngine {
+
+    /**
+     * Accumulates the samples, NaN values are ignored.
+     */
+    void accumulate(float... samples);
+
+    /**
+     * @param percentiles the percentages in percent ranging from 0 to 100
+     * @return the percentiles of the accumulated values, NaN if there are none
+     */
+    double[] computePercentiles(int[] percentiles);
+
+    void clear();
+}
@@ -79,7 +79,7 @@ public class PixelArchiver {
         }
     }
     public void writeTempNetcdf() throws IOException {
-        if (this.time == -1 || bandAccus[0].getValues().length == 0) {
+        if (this.time == -1 || bandAccus[0].size() == 0) {
             return;
         }
         String timeString = DATE_FORMAT.format(new Date(time));
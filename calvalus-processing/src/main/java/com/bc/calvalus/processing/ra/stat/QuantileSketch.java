@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Computes approximate percentiles with a KLL quantile sketch
+ * (Karnin, Lang, Liberty: Optimal Quantile Approximation in Streams, 2016).
+ * <p/>
+ * The sketch keeps a hierarchy of compactors. Level h holds values with the weight 2^h.
+ * A full level is sorted and every other value is promoted to the next level,
+ * so the memory is bounded by about 3k values independent of the number of values accumulated.
+ * The rank error of a percentile is about the given accuracy, i.e. for an accuracy of 0.01
+ * the reported 50th percentile lies between the exact 49th and 51st percentiles.
+ * Sketches with the same accuracy can be merged.
+ */
+class QuantileSketch implements PercentileEngine {
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+    private static final int MIN_K = 8;
+
+    private final int k;
+    // fixed seed to get reproducible results from identical input
+    private final Random random = new Random(4711);
+    private float[][] levels;
+    private int[] levelSizes;
+    private int numLevels;
+    private long count;
+    private float min;
+    private float max;
+
+    /**
+     * @param accuracy the normalised rank error, e.g. 0.01
+     */
+    QuantileSketch(double accuracy) {
+        this(getK(accuracy));
+    }
+
+    QuantileSketch(int k) {
+        this.k = Math.max(MIN_K, k);
+        clear();
+    }
+
+    /**
+     * Inverts the empirical rank error of KLL sketches, eps = 2.296 / k^0.9723 .
+     */
+    static int getK(double accuracy) {
+        if (!(accuracy > 0.0 && accuracy < 1.0)) {
+            throw new IllegalArgumentException("percentile accuracy must be in (0,1): " + accuracy);
+        }
+        return (int) Math.ceil(Math.pow(2.296 / accuracy, 1.0 / 0.9723));
+    }
+
+    int getK() {
+        return k;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void accumulate(float... samples) {
+        for (float sample : samples) {
+            if (!Float.isNaN(sample)) {
+                update(sample);
+            }
+        }
+    }
+
+    void update(float value) {
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+        append(0, value);
+        if (levelSizes[0] >= getCapacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds the values of the other sketch to this one.
+     */
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+        while (numLevels < other.numLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < other.numLevels; h++) {
+            for (int i = 0; i < other.levelSizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        compress();
+    }
+
+    @Override
+    public double[] computePercentiles(int[] percentiles) {
+        double[] result = new double[percentiles.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        int size = 0;
+        for (int h = 0; h < numLevels; h++) {
+            size += levelSizes[h];
+        }
+        float[] values = new float[size];
+        long[] weights = new long[size];
+        int n = 0;
+        for (int h = 0; h < numLevels; h++) {
+            float[] level = Arrays.copyOf(levels[h], levelSizes[h]);
+            Arrays.sort(level);
+            n = mergeSorted(values, weights, n, level, 1L << h);
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = getQuantile(percentiles[i] / 100.0, values, weights, n);
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        levels = new float[1][];
+        levelSizes = new int[1];
+        levels[0] = new float[k];
+        numLevels = 1;
+        count = 0;
+    }
+
+    private double getQuantile(double fraction, float[] values, long[] weights, int n) {
+        if (fraction <= 0.0) {
+            return min;
+        }
+        if (fraction >= 1.0) {
+            return max;
+        }
+        long targetRank = Math.max(1, (long) Math.ceil(fraction * count));
+        long rank = 0;
+        for (int i = 0; i < n; i++) {
+            rank += weights[i];
+            if (rank >= targetRank) {
+                return values[i];
+            }
+        }
+        return max;
+    }
+
+    private void compress() {
+        for (int h = 0; h < numLevels; h++) {
+            if (levelSizes[h] >= getCapacity(h)) {
+                if (h + 1 == numLevels) {
+                    addLevel();
+                }
+                compact(h);
+            }
+        }
+    }
+
+    private void compact(int h) {
+        float[] level = levels[h];
+        int size = levelSizes[h];
+        Arrays.sort(level, 0, size);
+        // with an odd number of values the smallest one stays on its level
+        int from = size % 2;
+        for (int i = from + (random.nextBoolean() ? 1 : 0); i < size; i += 2) {
+            append(h + 1, level[i]);
+        }
+        levelSizes[h] = from;
+    }
+
+    private int getCapacity(int h) {
+        int depth = numLevels - 1 - h;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, numLevels + 1);
+        levelSizes = Arrays.copyOf(levelSizes, numLevels + 1);
+        levels[numLevels] = new float[MIN_CAPACITY];
+        numLevels++;
+    }
+
+    private void append(int h, float value) {
+        if (levelSizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], 2 * levels[h].length);
+        }
+        levels[h][levelSizes[h]++] = value;
+    }
+
+    private static int mergeSorted(float[] values, long[] weights, int n, float[] level, long weight) {
+        float[] mergedValues = new float[n + level.length];
+        long[] mergedWeights = new long[n + level.length];
+        int i = 0;
+        int j = 0;
+        int m = 0;
+        while (i < n || j < level.length) {
+            if (j == level.length || (i < n && values[i] <= level[j])) {
+                mergedValues[m] = values[i];
+                mergedWeights[m++] = weights[i++];
+            } else {
+                mergedValues[m] = level[j++];
+                mergedWeights[m++] = weight;
+            }
+        }
+        System.arraycopy(mergedValues, 0, values, 0, m);
+        System.arraycopy(mergedWeights, 0, weights, 0, m);
+        return m;
+    }
+}
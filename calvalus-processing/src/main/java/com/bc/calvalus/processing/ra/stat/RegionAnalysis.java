@@ -41,7 +41,8 @@ public class RegionAnalysis {
         stats = new Statistics[bandConfigs.length];
         for (int i = 0; i < bandConfigs.length; i++) {
             RAConfig.BandConfig bConfig = bandConfigs[i];
-            stats[i] = new Statistics(bConfig.getNumBins(), bConfig.getMin(), bConfig.getMax(), raConfig.getPercentiles(), binValuesAsRatio);
+            stats[i] = new Statistics(bConfig.getNumBins(), bConfig.getMin(), bConfig.getMax(), raConfig.getPercentiles(), binValuesAsRatio,
+                                      raConfig.getPercentileMode(), raConfig.getPercentileAccuracy());
         }
         withProductNames = raConfig.withProductNames();
         statisticsWriter = new StatisticsWriter(raConfig, stats, writerFactor);
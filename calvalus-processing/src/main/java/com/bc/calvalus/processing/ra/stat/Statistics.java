@@ -1,8 +1,9 @@
 package com.bc.calvalus.processing.ra.stat;
 
 //import javax.media.jai.Histogram;
+import com.bc.calvalus.processing.ra.RAConfig;
+
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,12 +29,10 @@ class Statistics {
     private long geomNumValid;
     private double geomLogSum;
 
-    private final Histogram64 histogram;
-    private long belowHistogram;
-    private long aboveHistogram;
+    private final LongHistogram histogram;
 
     private final int[] percentiles;
-    private final Accumulator accu;
+    private final PercentileEngine percentileEngine;
     private final boolean binValuesAsRatio;
 
     Statistics() {
@@ -51,17 +50,32 @@ class Statistics {
                double highValue,
                int[] percentiles,
                boolean binValuesAsRatio) {
+        this(numBins, lowValue, highValue, percentiles, binValuesAsRatio, RAConfig.PERCENTILE_MODE_EXACT, 0.0);
+    }
+
+    /**
+     * @param percentileMode     "exact" for percentiles of all values, "approximate" for percentiles
+     *                           from a quantile sketch of bounded size
+     * @param percentileAccuracy the rank error of approximate percentiles, e.g. 0.01
+     */
+    Statistics(int numBins,
+               double lowValue,
+               double highValue,
+               int[] percentiles,
+               boolean binValuesAsRatio,
+               String percentileMode,
+               double percentileAccuracy) {
         if (numBins > 0) {
-            histogram = new Histogram64(numBins, lowValue, highValue, 1);
+            histogram = new LongHistogram(numBins, lowValue, highValue);
         } else {
             histogram = null;
         }
         if (percentiles != null && percentiles.length > 0) {
             this.percentiles = percentiles;
-            this.accu = new Accumulator();
+            this.percentileEngine = createPercentileEngine(percentileMode, percentileAccuracy);
         } else {
             this.percentiles = null;
-            this.accu = null;
+            this.percentileEngine = null;
         }
         this.binValuesAsRatio = binValuesAsRatio;
         reset();
@@ -83,28 +97,10 @@ class Statistics {
             }
         }
         if (histogram != null) {
-            final long[] bins = histogram.getBins(0);
-            final double lowValue = histogram.getLowValue(0);
-            final double highValue = histogram.getHighValue(0);
-            final double binWidth = (highValue - lowValue) / bins.length;
-            for (float value : samples) {
-                if (!Float.isNaN(value)) {
-                    if (value < lowValue) {
-                        belowHistogram++;
-                    } else if (value > highValue) {
-                        aboveHistogram++;
-                    } else {
-                        int i = (int) ((value - lowValue) / binWidth);
-                        if (i == bins.length) {
-                            i--;
-                        }
-                        bins[i]++;
-                    }
-                }
-            }
+            histogram.countSamples(0, samples, 0, samples.length);
         }
-        if (accu != null) {
-            accu.accumulateNoNaN(samples);
+        if (percentileEngine != null) {
+            percentileEngine.accumulate(samples);
         }
     }
 
@@ -117,12 +113,10 @@ class Statistics {
         geomNumValid = 0;
         geomLogSum = 0;
         if (histogram != null) {
-            histogram.clearHistogram();
-            belowHistogram = 0;
-            aboveHistogram = 0;
+            histogram.clear();
         }
-        if (accu != null) {
-            accu.clear();
+        if (percentileEngine != null) {
+            percentileEngine.clear();
         }
     }
 
@@ -180,11 +174,9 @@ class Statistics {
             stats.add(Double.toString(Double.NaN));
             stats.add(Double.toString(Double.NaN));
         }
-        if (accu != null) {
-            float[] values = accu.getValues();
-            Arrays.sort(values);
-            for (int percentile : percentiles) {
-                stats.add(Double.toString(computePercentile(percentile, values)));
+        if (percentileEngine != null) {
+            for (double percentileValue : percentileEngine.computePercentiles(percentiles)) {
+                stats.add(Double.toString(percentileValue));
             }
         }
         return stats;
@@ -194,11 +186,11 @@ class Statistics {
         List<String> stats = new ArrayList<>();
         if (histogram != null) {
             if (! binValuesAsRatio) {
-                stats.add(Long.toString(belowHistogram));
-                stats.add(Long.toString(aboveHistogram));
+                stats.add(Long.toString(histogram.getBelowCount(0)));
+                stats.add(Long.toString(histogram.getAboveCount(0)));
             } else {
-                stats.add(Double.toString(((double)belowHistogram) / numValid));
-                stats.add(Double.toString(((double)aboveHistogram) / numValid));
+                stats.add(Double.toString(((double) histogram.getBelowCount(0)) / numValid));
+                stats.add(Double.toString(((double) histogram.getAboveCount(0)) / numValid));
             }
             stats.add(Integer.toString(histogram.getNumBins(0)));
             stats.add(Double.toString(histogram.getLowValue(0)));
@@ -216,6 +208,15 @@ class Statistics {
         return stats;
     }
 
+    private static PercentileEngine createPercentileEngine(String percentileMode, double percentileAccuracy) {
+        if (percentileMode == null || RAConfig.PERCENTILE_MODE_EXACT.equals(percentileMode)) {
+            return new ExactPercentiles();
+        } else if (RAConfig.PERCENTILE_MODE_APPROXIMATE.equals(percentileMode)) {
+            return new QuantileSketch(percentileAccuracy);
+        }
+        throw new IllegalArgumentException("unknown percentile mode: " + percentileMode);
+    }
+
     /**
      * Computes the p-th percentile of an array of measurements following
      * the "Engineering Statistics Handbook: Percentile". NIST.
@@ -223,7 +224,7 @@ class Statistics {
      * Retrieved 2011-03-16.
      *
      * @param p            The percentage in percent ranging from 0 to 100.
-     * @param measurements Sorted array of measurements.
+     * @param measurements Sorted array of measurements, or an array where the ranks used are selected.
      * @return The  p-th percentile.
      */
     static double computePercentile(int p, float[] measurements) {
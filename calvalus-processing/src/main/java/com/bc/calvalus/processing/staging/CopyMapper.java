@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.staging;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A mapper that copies the file of its split into the output directory,
+ * used to stage the outputs of a production on the cluster.
+ * Products in directory format are copied recursively. The copies are written without
+ * checksum files, the staging directory is downloaded by users as it is.
+ */
+public class CopyMapper extends Mapper<NullWritable, NullWritable, NullWritable, NullWritable> {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final String COUNTER_GROUP_NAME = "Staging";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        Path inputPath = ((FileSplit) context.getInputSplit()).getPath();
+        Path outputPath = new Path(FileOutputFormat.getWorkOutputPath(context), inputPath.getName());
+        LOG.info("staging " + inputPath + " --> " + outputPath);
+
+        long t0 = System.currentTimeMillis();
+        for (int attemptNo = 1; ; attemptNo++) {
+            try {
+                FileSystem inputFileSystem = inputPath.getFileSystem(context.getConfiguration());
+                FileSystem outputFileSystem = getRawFileSystem(outputPath.getFileSystem(context.getConfiguration()));
+                long bytes = copy(inputFileSystem, inputPath, outputFileSystem, outputPath, context);
+                context.getCounter(COUNTER_GROUP_NAME, "Files copied").increment(1);
+                context.getCounter(COUNTER_GROUP_NAME, "Bytes copied").increment(bytes);
+                LOG.info(String.format("staged %,d bytes in %,d ms", bytes, System.currentTimeMillis() - t0));
+                return;
+            } catch (IOException e) {
+                if (attemptNo >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.log(Level.WARNING, String.format("Attempt(%d) Problem while staging: %s: %s", attemptNo, inputPath, e.getMessage()), e);
+            }
+        }
+    }
+
+    /**
+     * Copies a file or, recursively, a directory.
+     *
+     * @return the number of bytes copied
+     */
+    static long copy(FileSystem inputFileSystem, Path inputPath, FileSystem outputFileSystem, Path outputPath,
+                     Progressable progressable) throws IOException {
+        FileStatus inputStatus = inputFileSystem.getFileStatus(inputPath);
+        if (inputStatus.isDirectory()) {
+            if (!outputFileSystem.mkdirs(outputPath)) {
+                throw new IOException("failed to create directory " + outputPath);
+            }
+            long bytes = 0;
+            for (FileStatus child : inputFileSystem.listStatus(inputPath)) {
+                bytes += copy(inputFileSystem, child.getPath(), outputFileSystem,
+                              new Path(outputPath, child.getPath().getName()), progressable);
+            }
+            return bytes;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytes = 0;
+        try (FSDataInputStream in = inputFileSystem.open(inputPath);
+             FSDataOutputStream out = outputFileSystem.create(outputPath, true)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                bytes += n;
+                progressable.progress();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the file system without checksum files, e.g. the raw local file system of a local file system
+     */
+    static FileSystem getRawFileSystem(FileSystem fileSystem) {
+        if (fileSystem instanceof ChecksumFileSystem) {
+            return ((ChecksumFileSystem) fileSystem).getRawFileSystem();
+        }
+        return fileSystem;
+    }
+}
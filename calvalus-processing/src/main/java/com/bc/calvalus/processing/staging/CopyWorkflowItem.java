@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.staging;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.beam.SimpleOutputFormat;
+import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
+import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
+import com.bc.calvalus.processing.hadoop.PatternBasedInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+
+/**
+ * A workflow item creating a map-only Hadoop job that copies each input file
+ * to the output directory, one task per file.
+ */
+public class CopyWorkflowItem extends HadoopWorkflowItem {
+
+    public CopyWorkflowItem(HadoopProcessingService processingService, String username, String jobName,
+                            Configuration jobConfig) {
+        super(processingService, username, jobName, jobConfig);
+    }
+
+    @Override
+    public String getOutputDir() {
+        return getJobConfig().get(JobConfigNames.CALVALUS_OUTPUT_DIR);
+    }
+
+    @Override
+    protected String[][] getJobConfigDefaults() {
+        return new String[][]{
+                {JobConfigNames.CALVALUS_INPUT_PATH_PATTERNS, NO_DEFAULT},
+                {JobConfigNames.CALVALUS_OUTPUT_DIR, NO_DEFAULT},
+                {"mapreduce.map.speculative", "false"}
+        };
+    }
+
+    @Override
+    protected void configureJob(Job job) throws IOException {
+        job.setInputFormatClass(PatternBasedInputFormat.class);
+        job.setMapperClass(CopyMapper.class);
+        job.setNumReduceTasks(0);
+        job.setOutputFormatClass(SimpleOutputFormat.class);
+
+        FileOutputFormat.setOutputPath(job, new Path(getOutputDir()));
+    }
+}
@@ -22,6 +22,7 @@ import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import com.bc.calvalus.processing.ma.MAReducer;
 import com.bc.calvalus.processing.ma.RecordWritable;
+import com.bc.calvalus.processing.ma.ReferenceRecordCache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
@@ -87,6 +88,8 @@ public class VCWorkflowItem extends HadoopWorkflowItem {
         jobConfig.setIfUnset("calvalus.system.beam.envisat.usePixelGeoCoding", "true");
         jobConfig.setIfUnset("calvalus.system.beam.pixelGeoCoding.fractionAccuracy", "true");
 
+        ReferenceRecordCache.configure(getProcessingService(), getUserName(), jobConfig);
+
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(VCMapper.class);
         job.setMapOutputKeyClass(Text.class);
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ProcessorAdapterQueueTest {
+
+    @Test
+    public void testGetProductSplitsOfSingleProductSplit() throws Exception {
+        FileSplit fileSplit = new FileSplit(new Path("/calvalus/eodata/S3A_OL_1_EFR_1.zip"), 0, 100, new String[]{"node1"});
+        List<InputSplit> productSplits = ProcessorAdapterQueue.getProductSplits(fileSplit);
+        assertEquals(1, productSplits.size());
+        assertSame(fileSplit, productSplits.get(0));
+    }
+
+    @Test
+    public void testGetProductSplitsOfMultiProductSplit() throws Exception {
+        Path[] paths = {new Path("/calvalus/eodata/S3A_OL_1_EFR_1.zip"), new Path("/calvalus/eodata/S3A_OL_1_EFR_2.zip")};
+        CombineFileSplit combineFileSplit = new CombineFileSplit(paths, new long[]{0, 0}, new long[]{100, 200},
+                                                                 new String[]{"node1", "node2"});
+        List<InputSplit> productSplits = ProcessorAdapterQueue.getProductSplits(combineFileSplit);
+        assertEquals(2, productSplits.size());
+        FileSplit second = (FileSplit) productSplits.get(1);
+        assertEquals(paths[1], second.getPath());
+        assertEquals(0, second.getStart());
+        assertEquals(200, second.getLength());
+        assertArrayEquals(new String[]{"node1", "node2"}, second.getLocations());
+    }
+
+    @Test
+    public void testTaskFailsOnlyIfAllProductsFailed() throws Exception {
+        Configuration conf = new Configuration();
+        Counter failedCounter = new GenericCounter();
+        try (ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(conf, failedCounter), productSplits(2))) {
+            queue.productFailed(mock(ProcessorAdapter.class), new IOException("first"));
+            assertEquals(1, failedCounter.getValue());
+            try {
+                queue.productFailed(mock(ProcessorAdapter.class), new IllegalStateException("second"));
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(2, failedCounter.getValue());
+        }
+    }
+
+    @Test
+    public void testTaskFailsOnProductErrorIfConfigured() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setBoolean(JobConfigNames.CALVALUS_INPUT_FAIL_ON_PRODUCT_ERROR, true);
+        Counter failedCounter = new GenericCounter();
+        IOException failure = new IOException("first");
+        try (ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(conf, failedCounter), productSplits(2))) {
+            queue.productFailed(mock(ProcessorAdapter.class), failure);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(1, failedCounter.getValue());
+    }
+
+    @Test
+    public void testProductsArePrefetchedInOrder() throws Exception {
+        List<InputSplit> productSplits = productSplits(3);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch[] processing = {new CountDownLatch(1), new CountDownLatch(1), new CountDownLatch(1)};
+        Map<InputSplit, ProcessorAdapter> adapters = new HashMap<>();
+        ProcessorAdapterQueue.AdapterFactory adapterFactory = (mapContext, productSplit) -> {
+            int index = productSplits.indexOf(productSplit);
+            events.add("create " + index);
+            ProcessorAdapter adapter = mockAdapter(productSplit);
+            when(adapter.getInputProduct()).thenAnswer(invocation -> {
+                // the product is opened while the previous one is processed
+                assertTrue(processing[index - 1].await(10, TimeUnit.SECONDS));
+                events.add("open " + index + " in " + Thread.currentThread().getName());
+                return null;
+            });
+            adapters.put(productSplit, adapter);
+            return adapter;
+        };
+
+        try (ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(new Configuration(), new GenericCounter()),
+                                                                     productSplits, adapterFactory)) {
+            for (int i = 0; i < productSplits.size(); i++) {
+                assertTrue(queue.hasNext());
+                ProcessorAdapter adapter = queue.next();
+                assertSame(adapters.get(productSplits.get(i)), adapter);
+                if (i > 0) {
+                    // the product has been opened in advance before the adapter is returned
+                    assertTrue(events.toString(), events.contains("open " + i + " in product-prefetch"));
+                }
+                events.add("process " + i);
+                processing[i].countDown();
+            }
+            assertFalse(queue.hasNext());
+        }
+        assertEquals(Arrays.asList("create 0",
+                                   "create 1", "process 0", "open 1 in product-prefetch",
+                                   "create 2", "process 1", "open 2 in product-prefetch",
+                                   "process 2"),
+                     events);
+    }
+
+    @Test
+    public void testFailedPrefetchIsHandledWhenProductIsProcessed() throws Exception {
+        List<InputSplit> productSplits = productSplits(2);
+        ProcessorAdapter first = mockAdapter(productSplits.get(0));
+        ProcessorAdapter second = mockAdapter(productSplits.get(1));
+        when(second.getInputProduct()).thenThrow(new IOException("corrupt"));
+
+        try (ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(new Configuration(), new GenericCounter()),
+                                                                     productSplits, adapterFactory(first, second))) {
+            assertSame(first, queue.next());
+            assertSame(second, queue.next());
+            // the partly opened product is closed, it is opened again and fails when it is processed
+            verify(second).closeInputProduct();
+            try {
+                second.getInputProduct();
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertEquals("corrupt", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorOfPrefetchThreadIsPropagated() throws Exception {
+        List<InputSplit> productSplits = productSplits(2);
+        ProcessorAdapter first = mockAdapter(productSplits.get(0));
+        ProcessorAdapter second = mockAdapter(productSplits.get(1));
+        NoClassDefFoundError error = new NoClassDefFoundError("org/esa/snap/SomeReader");
+        when(second.getInputProduct()).thenThrow(error);
+
+        ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(new Configuration(), new GenericCounter()),
+                                                                productSplits, adapterFactory(first, second));
+        try {
+            assertSame(first, queue.next());
+            try {
+                queue.next();
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertSame(error, e.getCause());
+            }
+        } finally {
+            queue.close();
+        }
+        verify(second).dispose();
+    }
+
+    @Test
+    public void testCloseDisposesUnusedPrefetchedAdapter() throws Exception {
+        List<InputSplit> productSplits = productSplits(2);
+        ProcessorAdapter first = mockAdapter(productSplits.get(0));
+        ProcessorAdapter second = mockAdapter(productSplits.get(1));
+
+        ProcessorAdapterQueue queue = new ProcessorAdapterQueue(mockMapContext(new Configuration(), new GenericCounter()),
+                                                                productSplits, adapterFactory(first, second));
+        assertSame(first, queue.next());
+        queue.close();
+
+        verify(second, timeout(1000)).getInputProduct();
+        verify(second).dispose();
+        // the returned adapter is disposed by the caller
+        verify(first, never()).dispose();
+    }
+
+    private static ProcessorAdapter mockAdapter(InputSplit productSplit) {
+        ProcessorAdapter adapter = mock(ProcessorAdapter.class);
+        when(adapter.supportsPullProcessing()).thenReturn(true);
+        when(adapter.getInputSplit()).thenReturn(productSplit);
+        return adapter;
+    }
+
+    private static ProcessorAdapterQueue.AdapterFactory adapterFactory(ProcessorAdapter... adapters) {
+        Iterator<ProcessorAdapter> iterator = Arrays.asList(adapters).iterator();
+        return (mapContext, productSplit) -> {
+            ProcessorAdapter adapter = iterator.next();
+            assertSame(adapter.getInputSplit(), productSplit);
+            return adapter;
+        };
+    }
+
+    private static MapContext mockMapContext(Configuration conf, Counter failedCounter) {
+        MapContext mapContext = mock(MapContext.class);
+        when(mapContext.getConfiguration()).thenReturn(conf);
+        when(mapContext.getCounter("Products", "Product failed")).thenReturn(failedCounter);
+        return mapContext;
+    }
+
+    private static List<InputSplit> productSplits(int numProducts) {
+        InputSplit[] splits = new InputSplit[numProducts];
+        for (int i = 0; i < numProducts; i++) {
+            splits[i] = new FileSplit(new Path("/calvalus/eodata/S3A_OL_1_EFR_" + i + ".zip"), 0, 100, new String[]{"node1"});
+        }
+        return Arrays.asList(splits);
+    }
+}
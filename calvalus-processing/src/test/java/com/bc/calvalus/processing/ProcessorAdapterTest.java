@@ -18,11 +18,17 @@ package com.bc.calvalus.processing;
 
 import com.bc.calvalus.processing.beam.SnapOperatorAdapter;
 import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.util.io.FileUtils;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.file.Files;
 
 import static org.junit.Assert.*;
 
+@RunWith(UnixTestRunner.class)
 public class ProcessorAdapterTest {
 
     @Test
@@ -38,6 +44,48 @@ public class ProcessorAdapterTest {
         assertNull(ProcessorAdapter.getDatePart(new Path("MER.N1")));
     }
 
+    @Test
+    public void testPatchesAreMergedOncePerLinkAndTarget() throws Exception {
+        File tmpDir = Files.createTempDirectory("patches").toFile();
+        try {
+            File wd = new File(tmpDir, "wd");
+            File patch1 = createPatch(new File(tmpDir, "patch1"), "a.jar");
+            File patch2 = createPatch(new File(tmpDir, "patch2"), "b.jar");
+            Files.createDirectories(wd.toPath());
+            Files.createSymbolicLink(new File(wd, "snap-patch").toPath(), patch1.toPath());
+
+            ProcessorAdapter.shallowCopyPatches(wd.getAbsolutePath());
+            File mergedFile = new File(wd, "snap/modules/a.jar");
+            assertTrue(Files.isSymbolicLink(mergedFile.toPath()));
+
+            // memoized, the same patch is not merged again
+            assertTrue(mergedFile.delete());
+            ProcessorAdapter.shallowCopyPatches(wd.getAbsolutePath());
+            assertFalse(mergedFile.exists());
+
+            // a patch linked later, e.g. by the next task in the same JVM, is merged
+            Files.createSymbolicLink(new File(wd, "other-patch").toPath(), patch2.toPath());
+            ProcessorAdapter.shallowCopyPatches(wd.getAbsolutePath());
+            assertTrue(Files.isSymbolicLink(new File(wd, "other/modules/b.jar").toPath()));
+            assertFalse(mergedFile.exists());
+
+            // so is another version of a patch already merged
+            assertTrue(new File(wd, "snap-patch").delete());
+            Files.createSymbolicLink(new File(wd, "snap-patch").toPath(), patch2.toPath());
+            ProcessorAdapter.shallowCopyPatches(wd.getAbsolutePath());
+            assertTrue(Files.isSymbolicLink(new File(wd, "snap/modules/b.jar").toPath()));
+        } finally {
+            FileUtils.deleteTree(tmpDir);
+        }
+    }
+
+    private static File createPatch(File patchDir, String fileName) throws Exception {
+        File modulesDir = new File(patchDir, "modules");
+        Files.createDirectories(modulesDir.toPath());
+        assertTrue(new File(modulesDir, fileName).createNewFile());
+        return patchDir;
+    }
+
     @Ignore
     @Test
     public void testShallowCopyPatches() throws Exception {
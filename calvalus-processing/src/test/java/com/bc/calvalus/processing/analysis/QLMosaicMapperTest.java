@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class QLMosaicMapperTest {
+
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+
+    @Test
+    public void testGlobalPixelRegion() throws Exception {
+        // level 0 is 512 x 256 pixels of 0.703125 degrees
+        assertEquals(new Rectangle(0, 0, 512, 256), QLMosaicMapper.getGlobalPixelRegion(-180, -90, 180, 90, 0));
+        assertEquals(new Rectangle(256, 113, 15, 15), QLMosaicMapper.getGlobalPixelRegion(0.0, 0.0, 10.0, 10.0, 0));
+        assertEquals(new Rectangle(1024, 455, 57, 57), QLMosaicMapper.getGlobalPixelRegion(0.0, 0.0, 10.0, 10.0, 2));
+        // across the anti-meridian
+        assertEquals(new Rectangle(0, 113, 512, 15), QLMosaicMapper.getGlobalPixelRegion(-179.0, 0.0, 179.0, 10.0, 0));
+    }
+
+    @Test
+    public void testDownsampleIsAlignedToGlobalRaster() throws Exception {
+        Rectangle region = new Rectangle(3, 1, 3, 2);
+        int[] argb = {
+                RED, RED, 0,
+                BLUE, RED, BLUE,
+        };
+        Rectangle downsampledRegion = QLMosaicMapper.getDownsampledRegion(region);
+        assertEquals(new Rectangle(1, 0, 2, 2), downsampledRegion);
+        int[] downsampled = QLMosaicMapper.downsample(argb, region, downsampledRegion);
+        // global pixel 3 is the odd pixel of a pair, only pixels with data are averaged
+        assertArrayEquals(new int[]{
+                RED, RED,
+                BLUE, 0xff7f007f,
+        }, downsampled);
+    }
+
+    @Test
+    public void testCollectFragments() throws Exception {
+        // 4 x 2 pixels at level 1 across the border of the tiles 1 and 2
+        Rectangle region = new Rectangle(510, 100, 4, 2);
+        int[] argb = {
+                0, 0, RED, RED,
+                0, 0, RED, RED,
+        };
+        Map<String, QLTileWritable> fragments = new TreeMap<>();
+        QLMosaicMapper.collectFragments("chl", argb, region, 1, 42L, fragments::put);
+
+        assertArrayEquals(new String[]{"chl_tiles/0/1/0", "chl_tiles/1/2/0"}, fragments.keySet().toArray());
+        QLTileWritable fragment = fragments.get("chl_tiles/1/2/0");
+        assertEquals(0, fragment.getX());
+        assertEquals(100, fragment.getY());
+        assertEquals(2, fragment.getWidth());
+        assertEquals(2, fragment.getHeight());
+        assertEquals(42L, fragment.getTime());
+        assertArrayEquals(new int[]{RED, RED, RED, RED}, fragment.getArgb());
+        // the left pixel at level 0 has no data, hence no fragment of the tile 0
+        fragment = fragments.get("chl_tiles/0/1/0");
+        assertEquals(0, fragment.getX());
+        assertEquals(50, fragment.getY());
+        assertArrayEquals(new int[]{RED}, fragment.getArgb());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class QLMosaicReducerTest {
+
+    private static final int RED = 0xffff0000;
+    private static final int BLUE = 0xff0000ff;
+
+    @Test
+    public void testLatest() throws Exception {
+        QLMosaicReducer.TileCompositor compositor = new QLMosaicReducer.TileCompositor(false);
+        compositor.add(new QLTileWritable(0, 0, 2, 1, 200L, new int[]{RED, 0}));
+        compositor.add(new QLTileWritable(0, 0, 2, 1, 100L, new int[]{BLUE, BLUE}));
+        compositor.add(new QLTileWritable(255, 255, 1, 1, 100L, new int[]{BLUE}));
+        BufferedImage image = compositor.createImage();
+
+        assertEquals(QLMosaicMapper.TILE_SIZE, image.getWidth());
+        assertEquals(RED, image.getRGB(0, 0));
+        assertEquals(BLUE, image.getRGB(1, 0));
+        assertEquals(0, image.getRGB(2, 0));
+        assertEquals(BLUE, image.getRGB(255, 255));
+    }
+
+    @Test
+    public void testMean() throws Exception {
+        QLMosaicReducer.TileCompositor compositor = new QLMosaicReducer.TileCompositor(true);
+        compositor.add(new QLTileWritable(10, 20, 1, 2, 200L, new int[]{RED, 0}));
+        compositor.add(new QLTileWritable(10, 20, 1, 2, 100L, new int[]{BLUE, BLUE}));
+        BufferedImage image = compositor.createImage();
+
+        assertEquals(0xff7f007f, image.getRGB(10, 20));
+        assertEquals(BLUE, image.getRGB(10, 21));
+        assertEquals(0, image.getRGB(11, 20));
+    }
+
+    @Test
+    public void testTileWritable() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new QLTileWritable(3, 4, 2, 1, 1313740506645L, new int[]{RED, 0}).write(new DataOutputStream(out));
+        QLTileWritable fragment = new QLTileWritable();
+        fragment.readFields(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(3, fragment.getX());
+        assertEquals(4, fragment.getY());
+        assertEquals(2, fragment.getWidth());
+        assertEquals(1, fragment.getHeight());
+        assertEquals(1313740506645L, fragment.getTime());
+        assertArrayEquals(new int[]{RED, 0}, fragment.getArgb());
+    }
+}
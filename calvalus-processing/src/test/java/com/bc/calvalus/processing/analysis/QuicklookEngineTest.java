@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.esa.snap.core.datamodel.Product;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class QuicklookEngineTest {
+
+    @Test
+    public void testTileRectanglesCoverImage() throws Exception {
+        assertEquals(new Rectangle(0, 0, 333, 250), QuicklookEngine.getTileRectangle(1000, 500, 0, 0, 3, 2));
+        assertEquals(new Rectangle(333, 250, 333, 250), QuicklookEngine.getTileRectangle(1000, 500, 1, 1, 3, 2));
+        assertEquals(new Rectangle(666, 250, 334, 250), QuicklookEngine.getTileRectangle(1000, 500, 2, 1, 3, 2));
+        // a smaller quicklook of the same product, e.g. sub-sampled, covers the same area with smaller tiles
+        assertEquals(new Rectangle(166, 125, 167, 125), QuicklookEngine.getTileRectangle(500, 250, 1, 1, 3, 2));
+    }
+
+    @Test
+    public void testPassesAreLimitedInPixels() throws Exception {
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 3), Collections.singletonList(4)),
+                     QuicklookEngine.getPasses(new long[]{100, 200, 0, 300, 50}, 600));
+        // a quicklook larger than the maximum gets a pass of its own
+        assertEquals(Arrays.asList(Collections.singletonList(0), Collections.singletonList(1), Collections.singletonList(2)),
+                     QuicklookEngine.getPasses(new long[]{100, 1000, 100}, 150));
+        assertEquals(Collections.emptyList(), QuicklookEngine.getPasses(new long[]{0, 0}, 150));
+    }
+
+    @Test
+    public void testTiledRenderingEqualsImageRenderedAsAWhole() throws Exception {
+        Quicklooks.QLConfig[] configs = Quicklooks.fromXml(
+                "<quicklooks><configs>" +
+                "<config><RGBAExpressions>a,b,c</RGBAExpressions>" +
+                "<RGBAMinSamples>0,0,0</RGBAMinSamples><RGBAMaxSamples>256,192,448</RGBAMaxSamples>" +
+                "<imageType>png</imageType></config>" +
+                "<config><RGBAExpressions>c,a,b</RGBAExpressions>" +
+                "<RGBAMinSamples>0,0,0</RGBAMinSamples><RGBAMaxSamples>448,256,192</RGBAMaxSamples>" +
+                "<imageType>png</imageType></config>" +
+                "</configs></quicklooks>").getConfigs();
+        Configuration configuration = new Configuration();
+        configuration.setInt(QuicklookEngine.QUICKLOOK_TILE_SIZE, 50);
+        configuration.setInt(QuicklookEngine.QUICKLOOK_THREADS, 4);
+        // one quicklook per pass
+        configuration.setLong(QuicklookEngine.QUICKLOOK_MAX_PIXELS, 256 * 192);
+        TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(configuration);
+
+        Map<String, byte[]> files = new TreeMap<>();
+        Map<Quicklooks.QLConfig, Exception> errors = new QuicklookEngine(context, createProduct(), configs)
+                .writeQuicklooks(new String[]{"ql_abc", "ql_cab"}, fileName -> collect(files, fileName));
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertArrayEquals(new String[]{"ql_abc.png", "ql_cab.png"}, files.keySet().toArray(new String[0]));
+
+        List<String> fileNames = Arrays.asList("ql_abc.png", "ql_cab.png");
+        for (int i = 0; i < configs.length; i++) {
+            RenderedImage expected = new QuicklookGenerator(context, createProduct(), configs[i]).createImage();
+            BufferedImage actual = ImageIO.read(new ByteArrayInputStream(files.get(fileNames.get(i))));
+            assertEquals(256, actual.getWidth());
+            assertEquals(192, actual.getHeight());
+            BufferedImage expectedImage = (BufferedImage) expected;
+            for (int y = 0; y < actual.getHeight(); y++) {
+                for (int x = 0; x < actual.getWidth(); x++) {
+                    assertEquals(fileNames.get(i) + " at " + x + "," + y, expectedImage.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPyramid() throws Exception {
+        BufferedImage image = new BufferedImage(600, 300, BufferedImage.TYPE_4BYTE_ABGR);
+        fill(image, Color.RED);
+        Map<String, byte[]> files = new TreeMap<>();
+        QuicklookEngine.writePyramid(image, "png", "product_chl", fileName -> collect(files, fileName));
+
+        assertArrayEquals(new String[]{
+                "product_chl_tiles/0/0/0.png",
+                "product_chl_tiles/1/0/0.png",
+                "product_chl_tiles/1/1/0.png",
+                "product_chl_tiles/2/0/0.png",
+                "product_chl_tiles/2/0/1.png",
+                "product_chl_tiles/2/1/0.png",
+                "product_chl_tiles/2/1/1.png",
+                "product_chl_tiles/2/2/0.png",
+                "product_chl_tiles/2/2/1.png",
+        }, files.keySet().toArray(new String[0]));
+
+        BufferedImage tile = ImageIO.read(new ByteArrayInputStream(files.get("product_chl_tiles/0/0/0.png")));
+        assertEquals(QuicklookEngine.PYRAMID_TILE_SIZE, tile.getWidth());
+        assertEquals(QuicklookEngine.PYRAMID_TILE_SIZE, tile.getHeight());
+        // 600 x 300 pixels are 150 x 75 pixels at level 0
+        assertEquals(Color.RED.getRGB(), tile.getRGB(100, 50));
+        assertEquals(0, tile.getRGB(200, 50) >>> 24);
+        assertEquals(0, tile.getRGB(100, 100) >>> 24);
+    }
+
+    @Test
+    public void testPyramidOfSmallImage() throws Exception {
+        BufferedImage image = new BufferedImage(100, 80, BufferedImage.TYPE_3BYTE_BGR);
+        Map<String, byte[]> files = new TreeMap<>();
+        QuicklookEngine.writePyramid(image, "jpeg", "product_rgb", fileName -> collect(files, fileName));
+        assertArrayEquals(new String[]{"product_rgb_tiles/0/0/0.jpeg"}, files.keySet().toArray(new String[0]));
+    }
+
+    private static Product createProduct() {
+        Product product = new Product("test", "test", 256, 192);
+        product.addBand("a", "X");
+        product.addBand("b", "Y");
+        product.addBand("c", "X + Y");
+        return product;
+    }
+
+    private static void fill(BufferedImage image, Color color) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+    }
+
+    private static OutputStream collect(Map<String, byte[]> files, String fileName) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                files.put(fileName, toByteArray());
+            }
+        };
+    }
+}
@@ -1,10 +1,22 @@
 package com.bc.calvalus.processing.beam;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.io.FileUtils;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author thomas
@@ -20,4 +32,67 @@ public class CalvalusProductIOTest {
         assertEquals(expected, actual);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUnzipParallel() throws Exception {
+        File testDir = Files.createTempDirectory("unzip-test").toFile();
+        try {
+            File archive = new File(testDir, "S2A_MSIL1C_test.zip");
+            try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(archive))) {
+                zipOut.putNextEntry(new ZipEntry("S2A.SAFE/"));
+                zipOut.closeEntry();
+                for (int i = 0; i < 5; i++) {
+                    zipOut.putNextEntry(new ZipEntry("S2A.SAFE/GRANULE/B0" + i + ".jp2"));
+                    zipOut.write(new byte[1000 * (i + 1)]);
+                    zipOut.closeEntry();
+                }
+            }
+            File localDir = new File(testDir, "extracted");
+            assertTrue(localDir.mkdir());
+
+            Configuration conf = new Configuration();
+            conf.setInt("calvalus.input.extractionThreads", 3);
+            File[] files = CalvalusProductIO.uncompressArchiveToDir(new Path(archive.toURI()), localDir, conf);
+
+            assertEquals(6, files.length);
+            assertTrue(files[0].isDirectory());
+            for (int i = 0; i < 5; i++) {
+                assertEquals("B0" + i + ".jp2", files[i + 1].getName());
+                assertEquals(1000 * (i + 1), files[i + 1].length());
+            }
+            assertArrayEquals(new String[]{"S2A.SAFE"}, localDir.list());
+        } finally {
+            FileUtils.deleteTree(testDir);
+        }
+    }
+
+    @Test
+    public void testRecordingLocalFiles() throws Exception {
+        File testDir = Files.createTempDirectory("unzip-test").toFile();
+        try {
+            File archive = new File(testDir, "S3A_OL_1_EFR_test.zip");
+            try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(archive))) {
+                for (int i = 0; i < 3; i++) {
+                    zipOut.putNextEntry(new ZipEntry("S3A.SEN3/Oa0" + i + "_radiance.nc"));
+                    zipOut.write(new byte[100]);
+                    zipOut.closeEntry();
+                }
+                zipOut.putNextEntry(new ZipEntry("readme.txt"));
+                zipOut.closeEntry();
+            }
+            File localDir = new File(testDir, "extracted");
+            assertTrue(localDir.mkdir());
+
+            CalvalusProductIO.beginRecordingLocalFiles();
+            CalvalusProductIO.uncompressArchiveToDir(new Path(archive.toURI()), localDir, new Configuration());
+            List<File> localFiles = CalvalusProductIO.endRecordingLocalFiles();
+
+            assertEquals(2, localFiles.size());
+            assertEquals(new File(localDir, "S3A.SEN3").getAbsoluteFile(), localFiles.get(0));
+            assertEquals(new File(localDir, "readme.txt").getAbsoluteFile(), localFiles.get(1));
+            assertTrue(CalvalusProductIO.endRecordingLocalFiles().isEmpty());
+        } finally {
+            FileUtils.deleteTree(testDir);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.beam;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.media.jai.JAI;
+
+import static org.junit.Assert.assertEquals;
+
+public class GpfUtilsTest {
+
+    private static final long OneMiB = 1024L * 1024L;
+
+    private long tileCacheCapacity;
+    private int parallelism;
+
+    @Before
+    public void setUp() throws Exception {
+        // the first initialisation in this JVM, later ones are memoized
+        GpfUtils.initGpf(new Configuration(false), GpfUtilsTest.class);
+        tileCacheCapacity = JAI.getDefaultInstance().getTileCache().getMemoryCapacity();
+        parallelism = JAI.getDefaultInstance().getTileScheduler().getParallelism();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(GpfUtils.TILE_CACHE_SIZE_PROPERTY);
+        System.clearProperty(GpfUtils.PARALLELISM_PROPERTY);
+        GpfUtils.initGpf(configuration(tileCacheCapacity / OneMiB, parallelism), GpfUtilsTest.class);
+        System.clearProperty(GpfUtils.TILE_CACHE_SIZE_PROPERTY);
+        System.clearProperty(GpfUtils.PARALLELISM_PROPERTY);
+    }
+
+    @Test
+    public void testChangedJaiSettingsAreReapplied() throws Exception {
+        GpfUtils.initGpf(configuration(64, 3), GpfUtilsTest.class);
+        assertEquals(64 * OneMiB, JAI.getDefaultInstance().getTileCache().getMemoryCapacity());
+        assertEquals(3, JAI.getDefaultInstance().getTileScheduler().getParallelism());
+
+        GpfUtils.initGpf(configuration(128, 2), GpfUtilsTest.class);
+        assertEquals(128 * OneMiB, JAI.getDefaultInstance().getTileCache().getMemoryCapacity());
+        assertEquals(2, JAI.getDefaultInstance().getTileScheduler().getParallelism());
+    }
+
+    @Test
+    public void testInitialisationIsMemoized() throws Exception {
+        GpfUtils.initGpf(configuration(64, 3), GpfUtilsTest.class);
+        // would be reset by a repeated initialisation of SNAP
+        JAI.getDefaultInstance().getTileCache().setMemoryCapacity(32 * OneMiB);
+        JAI.getDefaultInstance().getTileScheduler().setParallelism(1);
+
+        GpfUtils.initGpf(configuration(64, 3), GpfUtilsTest.class);
+        assertEquals(32 * OneMiB, JAI.getDefaultInstance().getTileCache().getMemoryCapacity());
+        assertEquals(1, JAI.getDefaultInstance().getTileScheduler().getParallelism());
+    }
+
+    private static Configuration configuration(long tileCacheSize, int parallelism) {
+        Configuration configuration = new Configuration(false);
+        configuration.set("calvalus.system." + GpfUtils.TILE_CACHE_SIZE_PROPERTY, Long.toString(tileCacheSize));
+        configuration.set("calvalus.system." + GpfUtils.PARALLELISM_PROPERTY, Integer.toString(parallelism));
+        return configuration;
+    }
+}
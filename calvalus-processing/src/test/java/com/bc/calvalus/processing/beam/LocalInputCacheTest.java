@@ -0,0 +1,129 @@
+package com.bc.calvalus.processing.beam;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.UnixTestRunner;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(UnixTestRunner.class)
+public class LocalInputCacheTest {
+
+    private File testDir;
+    private File remoteDir;
+    private File cacheDir;
+    private File workDir;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("input-cache-test").toFile();
+        remoteDir = new File(testDir, "remote");
+        cacheDir = new File(testDir, "cache");
+        workDir = new File(testDir, "work");
+        assertTrue(remoteDir.mkdirs());
+        assertTrue(workDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(testDir);
+    }
+
+    @Test
+    public void testCopyFileToLocal() throws Exception {
+        LocalInputCache cache = new LocalInputCache(cacheDir, 1000, new Configuration());
+        Path remotePath = createRemoteFile("a.nc", 100);
+
+        File localFile = cache.copyFileToLocal(remotePath, new File(workDir, "a.nc"));
+        assertTrue(localFile.exists());
+        assertEquals(100, localFile.length());
+
+        File cachedFile = cache.fetch(remotePath);
+        assertTrue(cachedFile.exists());
+        assertEquals(cacheDir, cachedFile.getParentFile().getParentFile());
+    }
+
+    @Test
+    public void testCachedFileIsReadOnlyAndHandedOutAsCopy() throws Exception {
+        LocalInputCache cache = new LocalInputCache(cacheDir, 1000, new Configuration());
+        Path remotePath = createRemoteFile("a.nc", 100);
+
+        File localFile = cache.copyFileToLocal(remotePath, new File(workDir, "a.nc"));
+        File cachedFile = cache.fetch(remotePath);
+        assertFalse(isWritable(cachedFile));
+        assertTrue(isWritable(localFile));
+        assertFalse(Files.isSameFile(localFile.toPath(), cachedFile.toPath()));
+
+        // a processor modifying its input in place does not modify the cache
+        Files.write(localFile.toPath(), new byte[10]);
+        assertEquals(100, cachedFile.length());
+    }
+
+    @Test
+    public void testCachedFileIsHandedOutAsLinkIfConfigured() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setBoolean(JobConfigNames.CALVALUS_INPUT_CACHE_LINK, true);
+        LocalInputCache cache = new LocalInputCache(cacheDir, 1000, conf);
+        Path remotePath = createRemoteFile("a.nc", 100);
+
+        File localFile = cache.copyFileToLocal(remotePath, new File(workDir, "a.nc"));
+        File cachedFile = cache.fetch(remotePath);
+        assertTrue(Files.isSameFile(localFile.toPath(), cachedFile.toPath()));
+        assertFalse(isWritable(cachedFile));
+    }
+
+    @Test
+    public void testTaskLocalCacheHandsOutWritableLinks() throws Exception {
+        LocalInputCache cache = LocalInputCache.createTaskLocal(cacheDir, new Configuration());
+        Path remotePath = createRemoteFile("a.nc", 100);
+
+        File localFile = cache.copyFileToLocal(remotePath, new File(workDir, "a.nc"));
+        assertTrue(Files.isSameFile(localFile.toPath(), cache.fetch(remotePath).toPath()));
+        assertTrue(isWritable(localFile));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        LocalInputCache cache = new LocalInputCache(cacheDir, 250, new Configuration());
+        File first = cache.fetch(createRemoteFile("first.nc", 100));
+        first.getParentFile().setLastModified(System.currentTimeMillis() - 60000);
+        File second = cache.fetch(createRemoteFile("second.nc", 100));
+        File third = cache.fetch(createRemoteFile("third.nc", 100));
+
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+        assertTrue(third.exists());
+    }
+
+    @Test
+    public void testKeyDependsOnModificationTime() throws Exception {
+        Path path = new Path("hdfs://calvalus/calvalus/eodata/x.zip");
+        assertEquals(LocalInputCache.createKey(path, 1L), LocalInputCache.createKey(path, 1L));
+        assertNotEquals(LocalInputCache.createKey(path, 1L), LocalInputCache.createKey(path, 2L));
+    }
+
+    private static boolean isWritable(File file) throws IOException {
+        // File.canWrite() is always true for root
+        return Files.getPosixFilePermissions(file.toPath()).contains(PosixFilePermission.OWNER_WRITE);
+    }
+
+    private Path createRemoteFile(String name, int length) throws IOException {
+        File file = new File(remoteDir, name);
+        Files.write(file.toPath(), new byte[length]);
+        return new Path(file.toURI());
+    }
+}
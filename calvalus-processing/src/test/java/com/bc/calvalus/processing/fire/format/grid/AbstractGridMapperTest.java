@@ -0,0 +1,137 @@
+package com.bc.calvalus.processing.fire.format.grid;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractGridMapperTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    @Test
+    public void testParallelComputationEqualsSequentialComputation() throws Exception {
+        TestDataSource sequentialSource = new TestDataSource();
+        GridCells sequential = computeGridCells(sequentialSource, 1);
+        TestDataSource parallelSource = new TestDataSource();
+        GridCells parallel = computeGridCells(parallelSource, 4);
+
+        assertFalse(parallelSource.concurrentRead.get());
+        assertEquals(WIDTH * HEIGHT, parallelSource.numReads);
+        assertTrue(sumOf(sequential.ba) > 0.0);
+
+        assertArrayEquals(sequential.ba, parallel.ba, 0.0);
+        assertArrayEquals(sequential.patchNumber, parallel.patchNumber, 0.0F);
+        assertArrayEquals(sequential.errors, parallel.errors, 0.0F);
+        assertArrayEquals(sequential.coverage, parallel.coverage, 0.0F);
+        assertArrayEquals(sequential.burnableFraction, parallel.burnableFraction, 0.0F);
+        assertEquals(sequential.baInLc.size(), parallel.baInLc.size());
+        for (int c = 0; c < sequential.baInLc.size(); c++) {
+            assertArrayEquals(sequential.baInLc.get(c), parallel.baInLc.get(c), 0.0);
+        }
+    }
+
+    private static GridCells computeGridCells(TestDataSource dataSource, int numThreads) throws Exception {
+        TestGridMapper mapper = new TestGridMapper();
+        mapper.setDataSource(dataSource);
+        return mapper.computeGridCells(2019, 3, numThreads, new NullProgressMonitor());
+    }
+
+    private static double sumOf(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static class TestGridMapper extends AbstractGridMapper {
+
+        TestGridMapper() {
+            super(WIDTH, HEIGHT);
+        }
+
+        @Override
+        protected int getLcClassesCount() {
+            return 3;
+        }
+
+        @Override
+        protected void addBaInLandCover(List<double[]> baInLc, int targetGridCellIndex, double burnedArea, int sourceLc) {
+            baInLc.get(sourceLc)[targetGridCellIndex] += burnedArea;
+        }
+
+        @Override
+        protected float getErrorPerPixel(double[] probabilityOfBurn, double gridCellArea, double burnedPercentage) {
+            double sum = 0.0;
+            for (double probability : probabilityOfBurn) {
+                sum += probability;
+            }
+            return (float) (sum * gridCellArea / probabilityOfBurn.length);
+        }
+
+        @Override
+        protected void predict(double[] ba, double[] areas, float[] originalErrors) {
+        }
+
+        @Override
+        protected void validate(float burnableFraction, List<double[]> baInLc, int targetGridCellIndex, double area) {
+        }
+    }
+
+    /**
+     * Random cells, some without data, which must be read by one thread at a time in row order.
+     */
+    private static class TestDataSource extends AbstractFireGridDataSource {
+
+        final AtomicBoolean reading = new AtomicBoolean();
+        final AtomicBoolean concurrentRead = new AtomicBoolean();
+        int numReads;
+
+        TestDataSource() {
+            super(-1, -1);
+        }
+
+        @Override
+        public SourceData readPixels(int x, int y) {
+            if (!reading.compareAndSet(false, true)) {
+                concurrentRead.set(true);
+            }
+            try {
+                assertEquals(numReads++, y * WIDTH + x);
+                if ((y * WIDTH + x) % 7 == 3) {
+                    return null;
+                }
+                Random random = new Random(y * WIDTH + x);
+                SourceData data = new SourceData(4, 4);
+                data.reset();
+                float[] doys = {GridFormatUtils.NO_DATA, 65, 75, 100};
+                for (int i = 0; i < 16; i++) {
+                    data.burnedPixels[i] = doys[random.nextInt(doys.length)];
+                    data.burnable[i] = random.nextInt(4) > 0;
+                    data.lcClasses[i] = random.nextInt(3);
+                    data.statusPixels[i] = random.nextInt(2);
+                    data.areas[i] = 1.0 + random.nextDouble();
+                    data.probabilityOfBurn[i] = random.nextDouble();
+                }
+                return data;
+            } finally {
+                reading.set(false);
+            }
+        }
+
+        @Override
+        public void completeSourceData(SourceData data) {
+            data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, data.width, data.height),
+                                              GridFormatUtils.make2Dims(data.burnable, data.width, data.height));
+        }
+    }
+}
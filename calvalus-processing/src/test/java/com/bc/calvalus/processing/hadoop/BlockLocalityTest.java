@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BlockLocalityTest {
+
+    @Test
+    public void testPreferredHostsAreWeightedByBytes() throws Exception {
+        BlockLocation[] blocks = {
+                block(0, 128, "node1", "node2"),
+                block(128, 128, "node3", "node2"),
+                block(256, 64, "node3", "node4")
+        };
+        assertArrayEquals(new String[]{"node2", "node3"}, BlockLocality.getPreferredHosts(blocks));
+    }
+
+    @Test
+    public void testPreferredHostsOfSingleBlock() throws Exception {
+        BlockLocation[] blocks = {block(0, 100, "node1", "node2", "node3")};
+        assertArrayEquals(new String[]{"node1", "node2", "node3"}, BlockLocality.getPreferredHosts(blocks));
+    }
+
+    @Test
+    public void testAddRacks() throws Exception {
+        BlockLocation[] blocks = {block(0, 128, "node1", "node2")};
+        Map<String, String> hostRacks = new HashMap<>();
+        BlockLocality.addRacks(blocks, hostRacks);
+        assertEquals("/rack-node1", hostRacks.get("node1"));
+        assertEquals("/rack-node2", hostRacks.get("node2"));
+    }
+
+    @Test
+    public void testFormatLocalityReport() throws Exception {
+        assertEquals("locality of L2 job: 9 of 10 map tasks data-local (90.0%), 1 rack-local, 0 off-rack",
+                     HadoopWorkflowItem.formatLocalityReport("L2 job", 10, 9, 1));
+        assertEquals("locality of L2 job: no map tasks",
+                     HadoopWorkflowItem.formatLocalityReport("L2 job", 0, 0, 0));
+    }
+
+    private static BlockLocation block(long offset, long length, String... hosts) {
+        String[] names = new String[hosts.length];
+        String[] topologyPaths = new String[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            names[i] = hosts[i] + ":50010";
+            topologyPaths[i] = "/rack-" + hosts[i] + "/" + names[i];
+        }
+        return new BlockLocation(names, hosts, topologyPaths, offset, length);
+    }
+}
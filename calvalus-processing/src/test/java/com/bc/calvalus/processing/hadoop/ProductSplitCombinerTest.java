@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProductSplitCombinerTest {
+
+    @Test
+    public void testNodeLocalGroups() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            splits.add(productSplit("a" + i, 10, "node1"));
+            splits.add(productSplit("b" + i, 10, "node2"));
+        }
+        List<InputSplit> combined = new ProductSplitCombiner(4, 0).combine(splits);
+        assertEquals(2, combined.size());
+        MultiProductSplit first = (MultiProductSplit) combined.get(0);
+        assertEquals(4, first.getNumPaths());
+        assertEquals("a0", first.getPath(0).getName());
+        assertEquals("a3", first.getPath(3).getName());
+        assertArrayEquals(new String[]{"node1"}, first.getLocations());
+        MultiProductSplit second = (MultiProductSplit) combined.get(1);
+        assertEquals("b0", second.getPath(0).getName());
+        assertArrayEquals(new String[]{"node2"}, second.getLocations());
+    }
+
+    @Test
+    public void testRackLocalAndRemainingGroups() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        splits.add(productSplit("a", 10, "node1"));
+        splits.add(productSplit("b", 10, "node2"));
+        splits.add(productSplit("c", 10, "node3"));
+        ProductSplitCombiner combiner = new ProductSplitCombiner(2, 0);
+        combiner.setRack("node1", "/rack1");
+        combiner.setRack("node2", "/rack1");
+        combiner.setRack("node3", "/rack2");
+        List<InputSplit> combined = combiner.combine(splits);
+        assertEquals(2, combined.size());
+        MultiProductSplit rackLocal = (MultiProductSplit) combined.get(0);
+        assertEquals("a", rackLocal.getPath(0).getName());
+        assertEquals("b", rackLocal.getPath(1).getName());
+        assertSame(splits.get(2), combined.get(1));
+    }
+
+    @Test
+    public void testByteLimit() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        splits.add(productSplit("a", 60, "node1"));
+        splits.add(productSplit("b", 50, "node1"));
+        splits.add(productSplit("c", 10, "node1"));
+        splits.add(productSplit("d", 10, "node1"));
+        List<InputSplit> combined = new ProductSplitCombiner(10, 100).combine(splits);
+        assertEquals(2, combined.size());
+        assertEquals(2, ((MultiProductSplit) combined.get(0)).getNumPaths());
+        assertEquals(2, ((MultiProductSplit) combined.get(1)).getNumPaths());
+        assertEquals(110, combined.get(0).getLength());
+    }
+
+    @Test
+    public void testByteLimitWithoutProductLimit() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        splits.add(productSplit("a", 40, "node1"));
+        splits.add(productSplit("b", 40, "node1"));
+        splits.add(productSplit("c", 40, "node1"));
+        splits.add(productSplit("d", 10, "node1"));
+        List<InputSplit> combined = new ProductSplitCombiner(0, 100).combine(splits);
+        assertEquals(2, combined.size());
+        assertEquals(3, ((MultiProductSplit) combined.get(0)).getNumPaths());
+        assertEquals(120, combined.get(0).getLength());
+        assertSame(splits.get(3), combined.get(1));
+    }
+
+    @Test
+    public void testSubsetSplitsAreNotCombined() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        ProductSplit subset = new ProductSplit(new Path("/data/s"), 10, new String[]{"node1"}, 100, 200);
+        splits.add(subset);
+        splits.add(productSplit("a", 10, "node1"));
+        splits.add(productSplit("b", 10, "node1"));
+        List<InputSplit> combined = new ProductSplitCombiner(10, 0).combine(splits);
+        assertEquals(2, combined.size());
+        assertSame(subset, combined.get(0));
+        assertEquals(2, ((MultiProductSplit) combined.get(1)).getNumPaths());
+    }
+
+    @Test
+    public void testMultiProductSplitProgress() throws Exception {
+        MultiProductSplit split = new MultiProductSplit(new Path[]{new Path("/data/a"), new Path("/data/b")},
+                                                        new long[]{10, 10}, new String[]{"node1"});
+        split.setProductIndex(1);
+        assertEquals(0.5f, split.getProgress(), 1e-6f);
+        split.setProgress(0.5f);
+        assertEquals(0.75f, split.getProgress(), 1e-6f);
+    }
+
+    private static ProductSplit productSplit(String name, long length, String host) {
+        return new ProductSplit(new Path("/data/" + name), length, new String[]{host});
+    }
+}
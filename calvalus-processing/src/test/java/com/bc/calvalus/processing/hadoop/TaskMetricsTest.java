@@ -0,0 +1,47 @@
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskMetricsTest {
+
+    @Test
+    public void testStagesAndValues() throws Exception {
+        TaskMetrics metrics = new TaskMetrics();
+        metrics.begin(new Configuration());
+        metrics.addTime(TaskMetrics.PRODUCT_OPEN, 100);
+        metrics.addTime(TaskMetrics.PRODUCT_OPEN, 50);
+        metrics.addBytesRead(TaskMetrics.PRODUCT_OPEN, 4096);
+        metrics.addBytesWritten(TaskMetrics.FORMATTING, 1024);
+        metrics.increment("spatialBins", 7);
+        metrics.increment("spatialBins", 3);
+
+        Map<String, Object> map = metrics.toMap();
+        Map<?, ?> productOpen = (Map<?, ?>) map.get(TaskMetrics.PRODUCT_OPEN);
+        assertEquals(150L, productOpen.get("timeMillis"));
+        assertEquals(2L, productOpen.get("count"));
+        assertEquals(4096L, productOpen.get("bytesRead"));
+        Map<?, ?> formatting = (Map<?, ?>) map.get(TaskMetrics.FORMATTING);
+        assertEquals(1024L, formatting.get("bytesWritten"));
+        assertEquals(10L, map.get("spatialBins"));
+        assertFalse(map.containsKey(TaskMetrics.TILE_CACHE_HITS));
+    }
+
+    @Test
+    public void testTimer() throws Exception {
+        TaskMetrics metrics = new TaskMetrics();
+        metrics.begin(new Configuration());
+        try (TaskMetrics.Timer ignored = metrics.start(TaskMetrics.BINNING)) {
+            Thread.sleep(5);
+        }
+        Map<?, ?> binning = (Map<?, ?>) metrics.toMap().get(TaskMetrics.BINNING);
+        assertEquals(1L, binning.get("count"));
+        assertTrue((Long) binning.get("timeMillis") >= 5);
+    }
+}
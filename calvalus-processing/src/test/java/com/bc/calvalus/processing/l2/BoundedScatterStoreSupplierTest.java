@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class BoundedScatterStoreSupplierTest {
+
+    private File spillDir;
+
+    @Before
+    public void setUp() throws Exception {
+        spillDir = Files.createTempDirectory("scatter").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(spillDir);
+    }
+
+    @Test
+    public void testEntriesAreKeptInMemoryWithinLimit() throws Exception {
+        BoundedScatterStoreSupplier supplier = new BoundedScatterStoreSupplier(64 * 1024 * 1024, spillDir);
+        assertZipRoundTrip(supplier);
+        assertEquals(0, supplier.getNumSpilled());
+    }
+
+    @Test
+    public void testEntriesExceedingLimitAreSpilledAndDeleted() throws Exception {
+        BoundedScatterStoreSupplier supplier = new BoundedScatterStoreSupplier(100 * 1024, spillDir);
+        assertZipRoundTrip(supplier);
+        assertTrue(supplier.getNumSpilled() > 0);
+        assertEquals(0, spillDir.list().length);
+    }
+
+    private static void assertZipRoundTrip(BoundedScatterStoreSupplier supplier) throws Exception {
+        Map<String, byte[]> contents = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 8; i++) {
+            // random bytes do not deflate, so that each entry keeps its size
+            byte[] content = new byte[40 * 1024 + i];
+            random.nextBytes(content);
+            contents.put("dir/entry" + i, content);
+        }
+
+        ParallelScatterZipCreator zipCreator = new ParallelScatterZipCreator(Executors.newFixedThreadPool(3), supplier);
+        for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+            ZipArchiveEntry zipEntry = new ZipArchiveEntry(content.getKey());
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            zipCreator.addArchiveEntry(zipEntry, () -> new ByteArrayInputStream(content.getValue()));
+        }
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(zip)) {
+            zipCreator.writeTo(zipOutputStream);
+        }
+
+        int numEntries = 0;
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = zipInputStream.read(buffer)) > 0) {
+                    content.write(buffer, 0, n);
+                }
+                assertArrayEquals(entry.getName(), contents.get(entry.getName()), content.toByteArray());
+                numEntries++;
+            }
+        }
+        assertEquals(contents.size(), numEntries);
+    }
+}
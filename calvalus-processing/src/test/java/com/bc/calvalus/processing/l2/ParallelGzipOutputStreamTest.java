@@ -0,0 +1,81 @@
+package com.bc.calvalus.processing.l2;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] compressed = compress(new byte[0], 2, 64 * 1024);
+        assertArrayEquals(new byte[0], decompress(compressed));
+    }
+
+    @Test
+    public void testRoundTripManyBlocks() throws IOException {
+        byte[] data = createData(1000 * 1000);
+        byte[] compressed = compress(data, 4, 64 * 1024);
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    public void testRoundTripSingleThreadPartialBlock() throws IOException {
+        byte[] data = createData(100 * 1000);
+        byte[] compressed = compress(data, 1, 64 * 1024);
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    public void testSingleByteWrites() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(bos, 2, 32 * 1024)) {
+            for (int i = 0; i < 100000; i++) {
+                gzip.write(i % 7);
+            }
+        }
+        byte[] decompressed = decompress(bos.toByteArray());
+        assertEquals(100000, decompressed.length);
+        for (int i = 0; i < decompressed.length; i++) {
+            assertEquals(i % 7, decompressed[i]);
+        }
+    }
+
+    private static byte[] createData(int length) {
+        // compressible but not trivial
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(16) + (i / 1000) % 64);
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int numThreads, int blockSize) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(bos, numThreads, blockSize)) {
+            gzip.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bos.write(buffer, 0, n);
+            }
+        }
+        return bos.toByteArray();
+    }
+}
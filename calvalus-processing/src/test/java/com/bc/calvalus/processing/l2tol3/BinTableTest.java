@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2tol3;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BinTableTest {
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        File file = File.createTempFile("bintable", ".bin");
+        try {
+            try (BinTable.Writer writer = new BinTable.Writer(2); OutputStream out = new FileOutputStream(file)) {
+                writer.write(3, new float[]{0.3f, 3f});
+                writer.write(7, new float[]{0.7f, 7f});
+                writer.write(42, new float[]{4.2f, 42f});
+                writer.finish(out);
+            }
+            BinTable table = BinTable.open(file);
+            assertEquals(3, table.getNumBins());
+            assertEquals(2, table.getNumFeatures());
+            assertEquals(0, table.findRow(3));
+            assertEquals(2, table.findRow(42));
+            assertEquals(-1, table.findRow(5));
+            assertEquals(-1, table.findRow(100));
+            assertEquals(7, table.getBinIndex(1));
+            assertEquals(0.7f, table.getFeatureValue(1, 0), 1e-6f);
+            assertEquals(42f, table.getFeatureValue(2, 1), 1e-6f);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCreateFromMap() throws Exception {
+        Map<Long, float[]> values = new HashMap<>();
+        values.put(42L, new float[]{4.2f});
+        values.put(3L, new float[]{0.3f});
+        BinTable table = BinTable.create(values, 1);
+        assertEquals(2, table.getNumBins());
+        assertEquals(0.3f, table.getFeatureValue(table.findRow(3), 0), 1e-6f);
+        assertEquals(4.2f, table.getFeatureValue(table.findRow(42), 0), 1e-6f);
+        assertEquals(-1, table.findRow(7));
+    }
+
+    @Test
+    public void testUnsortedBinsAreRejected() throws Exception {
+        try (BinTable.Writer writer = new BinTable.Writer(1)) {
+            writer.write(7, new float[]{1f});
+            try {
+                writer.write(3, new float[]{1f});
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testNotATable() throws Exception {
+        File file = File.createTempFile("bintable", ".bin");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[32]);
+            }
+            BinTable.open(file);
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            file.delete();
+        }
+    }
+}
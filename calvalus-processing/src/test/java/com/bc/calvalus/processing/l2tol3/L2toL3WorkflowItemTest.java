@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2tol3;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class L2toL3WorkflowItemTest {
+
+    @Test
+    public void testBinTablePathDependsOnL3ModificationTime() throws Exception {
+        Path l3Path = new Path("hdfs://calvalus/calvalus/home/user/l3/part-r-00000");
+        Path tablePath = L2toL3WorkflowItem.getBinTablePath(l3Path, 1000L);
+        assertEquals(l3Path.getParent(), tablePath.getParent());
+        assertEquals("part-r-00000-1000.bintable", tablePath.getName());
+        assertEquals(tablePath, L2toL3WorkflowItem.getBinTablePath(l3Path, 1000L));
+        assertNotEquals(tablePath, L2toL3WorkflowItem.getBinTablePath(l3Path, 2000L));
+    }
+}
@@ -82,6 +82,21 @@ public class RatioCalculatorTest {
         assertEquals(40f / 10f, observation.get(3), 1e-5); // radiance_3 / radiance_3_mean
     }
 
+    @Test
+    public void testCalculateRatio_missingL3Bin() throws Exception {
+        VariableContextImpl l2VariableContext = new VariableContextImpl();
+        l2VariableContext.defineVariable("xaxis");
+        l2VariableContext.defineVariable("radiance_1");
+
+        Map<Long, float[]> l3MeanValueMap = new HashMap<>();
+        l3MeanValueMap.put(42L, new float[]{5f});
+        RatioCalculator ratioCalculator = new RatioCalculator(l2VariableContext, new String[]{"radiance_1_mean"}, l3MeanValueMap);
+
+        Observation observation = ratioCalculator.calculateRatio(43L, new ObservationImpl(0, 0, 0, 10f, 20f));
+        assertEquals(10f, observation.get(0), 1e-5); // xaxis
+        assertTrue(Float.isNaN(observation.get(1)));
+    }
+
     @Test
     public void testIsRatioVariable() throws Exception {
         VariableContextImpl l2VariableContext = new VariableContextImpl();
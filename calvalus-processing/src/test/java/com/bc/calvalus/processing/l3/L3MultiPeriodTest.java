@@ -0,0 +1,65 @@
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.commons.DateRange;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class L3MultiPeriodTest {
+
+    @Test
+    public void testKeys() {
+        long key = L3MultiPeriod.createKey(17, 5935033L);
+        assertEquals(17, L3MultiPeriod.getPeriodIndex(key));
+        assertEquals(5935033L, L3MultiPeriod.getBinIndex(key));
+        assertEquals(L3SpatialBin.METADATA_MAGIC_NUMBER, L3MultiPeriod.createMetadataKey(0));
+        assertEquals(3, L3MultiPeriod.getPeriodIndex(L3MultiPeriod.createMetadataKey(3)));
+        // periods are sorted in sequence, all metadata keys first
+        assertEquals(true, L3MultiPeriod.createKey(0, 1000L) < L3MultiPeriod.createKey(1, 0L));
+        assertEquals(true, L3MultiPeriod.createMetadataKey(5) < L3MultiPeriod.createKey(0, 0L));
+    }
+
+    @Test
+    public void testParseAndFormat() throws Exception {
+        List<DateRange> periods = Arrays.asList(range("2010-06-01", "2010-06-08"), range("2010-06-05", "2010-06-12"));
+        String periodsString = L3MultiPeriod.format(periods);
+        assertEquals("[2010-06-01:2010-06-08],[2010-06-05:2010-06-12]", periodsString);
+        L3MultiPeriod multiPeriod = L3MultiPeriod.parse(periodsString);
+        assertEquals(2, multiPeriod.getNumPeriods());
+        assertEquals(periods.get(1).toString(), multiPeriod.getPeriod(1).toString());
+        assertNull(L3MultiPeriod.parse(null));
+    }
+
+    @Test
+    public void testGetPeriodIndexes() throws Exception {
+        L3MultiPeriod multiPeriod = new L3MultiPeriod(Arrays.asList(range("2010-06-01", "2010-06-08"),
+                                                                    range("2010-06-05", "2010-06-12"),
+                                                                    range("2010-06-09", "2010-06-16")));
+        assertArrayEquals(new int[]{0}, multiPeriod.getPeriodIndexes("2010/06/01"));
+        assertArrayEquals(new int[]{0, 1}, multiPeriod.getPeriodIndexes("2010/06/08"));
+        assertArrayEquals(new int[]{1, 2}, multiPeriod.getPeriodIndexes("2010/06/12"));
+        assertArrayEquals(new int[0], multiPeriod.getPeriodIndexes("2010/06/17"));
+        assertNull(multiPeriod.getPeriodIndexes("eodata/MER_RR__1P"));
+        assertArrayEquals(new int[]{0, 1, 2}, multiPeriod.getPeriodIndexes(DateRange.DATE_FORMAT.parse("2010-06-08"),
+                                                                           DateRange.DATE_FORMAT.parse("2010-06-09")));
+    }
+
+    @Test
+    public void testMergePeriods() throws Exception {
+        List<DateRange> merged = L3MultiPeriod.mergePeriods(Arrays.asList(range("2010-06-01", "2010-06-08"),
+                                                                          range("2010-06-05", "2010-06-12"),
+                                                                          range("2010-06-13", "2010-06-20"),
+                                                                          range("2010-07-01", "2010-07-08")));
+        assertEquals("[[2010-06-01:2010-06-20], [2010-07-01:2010-07-08]]", merged.toString());
+    }
+
+    private static DateRange range(String start, String stop) throws ParseException {
+        return new DateRange(DateRange.DATE_FORMAT.parse(start), DateRange.DATE_FORMAT.parse(stop));
+    }
+}
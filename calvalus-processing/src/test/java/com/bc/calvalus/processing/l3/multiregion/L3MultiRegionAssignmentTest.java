@@ -0,0 +1,59 @@
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.esa.snap.binning.PlanetaryGrid;
+import org.esa.snap.binning.support.ReducedGaussianGrid;
+import org.esa.snap.binning.support.SEAGrid;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class L3MultiRegionAssignmentTest {
+
+    private static final Envelope[] ENVELOPES = {
+            new Envelope(-10.0, 20.0, 30.0, 60.0),
+            new Envelope(0.0, 5.0, 40.0, 45.0),
+            new Envelope(-180.0, 180.0, -90.0, 90.0),
+            new Envelope(170.0, 180.0, -20.0, -10.0),
+            new Envelope(15.0, 15.0, 0.0, 10.0),
+    };
+
+    @Test
+    public void testSeaGridMatchesGeometryContains() {
+        assertSameAsGeometryContains(new SEAGrid(180));
+    }
+
+    @Test
+    public void testOtherGridMatchesGeometryContains() {
+        assertSameAsGeometryContains(new ReducedGaussianGrid(64));
+    }
+
+    private static void assertSameAsGeometryContains(PlanetaryGrid grid) {
+        GeometryFactory geometryFactory = new GeometryFactory();
+        Geometry[] geometries = new Geometry[ENVELOPES.length];
+        for (int i = 0; i < ENVELOPES.length; i++) {
+            geometries[i] = geometryFactory.toGeometry(ENVELOPES[i]);
+        }
+        L3MultiRegionAssignment assignment = new L3MultiRegionAssignment(grid, ENVELOPES);
+        for (long binIndex = 0; binIndex < grid.getNumBins(); binIndex++) {
+            double[] centerLatLon = grid.getCenterLatLon(binIndex);
+            List<Integer> expected = new ArrayList<>();
+            for (int regionId = 0; regionId < geometries.length; regionId++) {
+                if (geometries[regionId].contains(geometryFactory.createPoint(new Coordinate(centerLatLon[1], centerLatLon[0])))) {
+                    expected.add(regionId);
+                }
+            }
+            int[] expectedIds = new int[expected.size()];
+            for (int i = 0; i < expectedIds.length; i++) {
+                expectedIds[i] = expected.get(i);
+            }
+            assertArrayEquals("bin " + binIndex, expectedIds, assignment.getRegionIds(binIndex));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import com.bc.calvalus.commons.DateUtils;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BinaryRecordSourceTest {
+
+    private static final String CSV = ""
+                                      + "# Test CSV\n"
+                                      + "ID\tLAT\tLONG\tTIME\tSITE\tCHL\tFLAG\tCOMMENT\n"
+                                      + "16\t53.1\t13.6\t2003-04-03 10:00:00\tA\t0.5\t1\t\n"
+                                      + "17\t53.3\t13.4\t2003-04-08 11:30:00\t\tnan\t0\t\n"
+                                      + "18\t53.1\t13.5\t2003-04-11 12:00:00\tB\t\t1\t\n"
+                                      + "19\t-10.25\t170.0\t2003-04-12 00:00:00\tA\t0.25\t0\t\n";
+
+    @Test
+    public void testCsvRecords() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, BinaryRecordSource.write(csvRecordSource(), out));
+        BinaryRecordSource recordSource = BinaryRecordSource.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(4, recordSource.getNumRecords());
+        assertTrue(recordSource.getHeader().hasLocation());
+        assertTrue(recordSource.getHeader().hasTime());
+        assertArrayEquals(new String[]{"ID", "LAT", "LONG", "TIME", "SITE", "CHL", "FLAG", "COMMENT"},
+                          recordSource.getHeader().getAttributeNames());
+        assertEquals(csvRecordSource().getTimeAndLocationColumnDescription(),
+                     recordSource.getTimeAndLocationColumnDescription());
+        assertRecordsEqual(csvRecordSource().getRecords(), recordSource.getRecords());
+    }
+
+    @Test
+    public void testMemoryMappedFile() throws Exception {
+        File file = File.createTempFile("BinaryRecordSourceTest", BinaryRecordSource.EXTENSION);
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                BinaryRecordSource.write(csvRecordSource(), out);
+            }
+            BinaryRecordSource recordSource = BinaryRecordSource.open(file);
+            assertRecordsEqual(csvRecordSource().getRecords(), recordSource.getRecords());
+            // the records can be iterated again
+            assertRecordsEqual(csvRecordSource().getRecords(), recordSource.getRecords());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecordsWithoutLocationAndTime() throws Exception {
+        DefaultRecordSource source = new DefaultRecordSource(new DefaultHeader(false, false, "name", "value"));
+        source.addRecord(new DefaultRecord(1, null, null, new Object[]{"x", 1.5}));
+        source.addRecord(new DefaultRecord(2, null, null, new Object[]{null, null}));
+        source.addRecord(new DefaultRecord(3, null, null, new Object[]{"x", Double.NaN}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRecordSource.write(source, out);
+        BinaryRecordSource recordSource = BinaryRecordSource.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertFalse(recordSource.getHeader().hasLocation());
+        assertFalse(recordSource.getHeader().hasTime());
+        assertRecordsEqual(source.getRecords(), recordSource.getRecords());
+    }
+
+    @Test
+    public void testPlacemarkLikeRecords() throws Exception {
+        DefaultRecordSource source = new DefaultRecordSource(new DefaultHeader(true, false, "name", "lat", "lon"));
+        source.addRecord(new DefaultRecord(0, new GeoPos(53.123456789, 10.987654321), null,
+                                           new Object[]{"pin_1", 53.123456789, 10.987654321}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRecordSource.write(source, out);
+        BinaryRecordSource recordSource = BinaryRecordSource.read(new ByteArrayInputStream(out.toByteArray()));
+        Record record = recordSource.getRecords().iterator().next();
+        assertEquals(53.123456789, record.getLocation().getLat(), 0.0);
+        assertEquals(10.987654321, record.getLocation().getLon(), 0.0);
+        assertNull(record.getTime());
+    }
+
+    @Test
+    public void testUnsupportedAttributeType() throws Exception {
+        DefaultRecordSource source = new DefaultRecordSource(new DefaultHeader(false, false, "count"));
+        source.addRecord(new DefaultRecord(0, null, null, new Object[]{42}));
+        try {
+            BinaryRecordSource.write(source, new ByteArrayOutputStream());
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("unsupported type Integer of attribute count", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testNotABinaryRecordFile() throws Exception {
+        try {
+            BinaryRecordSource.read(new ByteArrayInputStream(CSV.getBytes()));
+            fail();
+        } catch (IOException expected) {
+            assertEquals("not a binary record file", expected.getMessage());
+        }
+    }
+
+    private static CsvRecordSource csvRecordSource() throws Exception {
+        return new CsvRecordSource(new StringReader(CSV), DateUtils.createDateFormat("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    private static void assertRecordsEqual(Iterable<Record> expectedRecords, Iterable<Record> actualRecords) {
+        List<Record> expected = toList(expectedRecords);
+        List<Record> actual = toList(actualRecords);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Record expectedRecord = expected.get(i);
+            Record actualRecord = actual.get(i);
+            assertEquals(expectedRecord.getId(), actualRecord.getId());
+            GeoPos expectedLocation = expectedRecord.getLocation();
+            if (expectedLocation != null) {
+                assertEquals(expectedLocation.getLat(), actualRecord.getLocation().getLat(), 0.0);
+                assertEquals(expectedLocation.getLon(), actualRecord.getLocation().getLon(), 0.0);
+            } else {
+                assertNull(actualRecord.getLocation());
+            }
+            Date expectedTime = expectedRecord.getTime();
+            assertEquals(expectedTime, actualRecord.getTime());
+            assertArrayEquals(expectedRecord.getAttributeValues(), actualRecord.getAttributeValues());
+        }
+    }
+
+    private static List<Record> toList(Iterable<Record> records) {
+        List<Record> list = new ArrayList<>();
+        Iterator<Record> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+}
@@ -133,6 +133,18 @@ public class MAMapperTest {
         testMatchUp(collectedMatchUps, 5);
     }
 
+    @Test
+    public void testRecordKey() throws Exception {
+        Text key = new Text();
+        byte[] keyTemplate = MAMapper.createRecordKeyTemplate("MER_RR__1P_TEST");
+        MAMapper.setRecordKey(key, keyTemplate, 42);
+        assertEquals("000042_MER_RR__1P_TEST", key.toString());
+        MAMapper.setRecordKey(key, keyTemplate, 7);
+        assertEquals("000007_MER_RR__1P_TEST", key.toString());
+        MAMapper.setRecordKey(key, keyTemplate, 1234567);
+        assertEquals("1234567_MER_RR__1P_TEST", key.toString());
+    }
+
     private void testMatchUp(List<RecordWritable> collectedMatchUps, int matchUpIndex) {
         testMatchUp(collectedMatchUps, matchUpIndex, "");
     }
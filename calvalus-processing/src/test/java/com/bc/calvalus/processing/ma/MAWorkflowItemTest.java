@@ -54,10 +54,15 @@ public class MAWorkflowItemTest {
 
         assertSame(MAMapper.class, job.getMapperClass());
         assertSame(Text.class, job.getMapOutputKeyClass());
-        assertSame(RecordWritable.class, job.getMapOutputValueClass());
+        assertSame(SchemaRecordWritable.class, job.getMapOutputValueClass());
+        assertSame(RecordWritable.class, job.getOutputValueClass());
 
         assertSame(SequenceFileOutputFormat.class, job.getOutputFormatClass());
         assertEquals("out_004", FileOutputFormat.getOutputPath(job).getName());
 
+        jobConfig.setBoolean(SchemaRecordWritable.SCHEMA_RECORDS_ENABLED, false);
+        job = Job.getInstance(jobConfig);
+        maWorkflowItem.configureJob(job);
+        assertSame(RecordWritable.class, job.getMapOutputValueClass());
     }
 }
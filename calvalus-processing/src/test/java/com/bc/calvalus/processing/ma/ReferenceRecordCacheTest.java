@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceRecordCacheTest {
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("recordcache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(cacheDir);
+    }
+
+    @Test
+    public void testOnlyExpiredCacheFilesAreDeleted() throws Exception {
+        long now = System.currentTimeMillis();
+        File unused = createFile("insitu.csv-1a2b-1000.records", now - TimeUnit.DAYS.toMillis(40));
+        File previousVersionInUse = createFile("insitu.csv-1a2b-2000.records", now - TimeUnit.DAYS.toMillis(5));
+        File current = createFile("insitu.csv-1a2b-3000.records", now);
+        File leftOver = createFile("_insitu.csv-1a2b-2500.records", now - TimeUnit.DAYS.toMillis(40));
+        File other = createFile("readme.txt", now - TimeUnit.DAYS.toMillis(40));
+
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration());
+        ReferenceRecordCache.deleteExpiredCacheFiles(fileSystem, new Path(cacheDir.toURI()),
+                                                     now - TimeUnit.DAYS.toMillis(30));
+
+        assertFalse(unused.exists());
+        assertFalse(leftOver.exists());
+        assertTrue(previousVersionInUse.exists());
+        assertTrue(current.exists());
+        assertTrue(other.exists());
+    }
+
+    @Test
+    public void testMissingCacheDirIsIgnored() throws Exception {
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration());
+        ReferenceRecordCache.deleteExpiredCacheFiles(fileSystem, new Path(new File(cacheDir, "missing").toURI()),
+                                                     System.currentTimeMillis());
+    }
+
+    private File createFile(String name, long modificationTime) throws IOException {
+        File file = new File(cacheDir, name);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(modificationTime));
+        return file;
+    }
+}
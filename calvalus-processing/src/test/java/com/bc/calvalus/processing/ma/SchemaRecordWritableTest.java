@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class SchemaRecordWritableTest {
+
+    private static final Object[] ATTRIBUTE_NAMES = {"site", "id", "chl", "time", "rrs_1", "rrs_2"};
+    private static final Object[] ANNOTATION_NAMES = {DefaultHeader.ANNOTATION_EXCLUSION_REASON};
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        SchemaRecordWritable.Schema schema = new SchemaRecordWritable.Schema(6, 1);
+        Object[][] records = {
+                {"Benguela", 76432, null, new Date(1313740506645L),
+                        new AggregatedNumber(15, 25, 5, 0.0, 1.0, 0.5, 0.1),
+                        new AggregatedNumber(4, 9, 1, 0.0, 1.0, 3.4, 0.2, new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9})},
+                {"Cape Point", 76433, -2.14, null, null,
+                        new AggregatedNumber(0, 9, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, new float[0])},
+        };
+
+        SchemaRecordWritable writable = new SchemaRecordWritable();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(out);
+        for (Object[] record : records) {
+            writable.setValues(schema, record, new Object[]{""});
+            writable.write(dataOut);
+        }
+        writable.setHeader(schema, ATTRIBUTE_NAMES, ANNOTATION_NAMES);
+        writable.write(dataOut);
+        dataOut.close();
+
+        assertArrayEquals(new RecordWritable.Type[]{
+                RecordWritable.Type.STRING, RecordWritable.Type.INTEGER, RecordWritable.Type.DOUBLE,
+                RecordWritable.Type.DATE, RecordWritable.Type.AGGREGATED_NUMBER, RecordWritable.Type.AGGREGATED_NUMBER
+        }, schema.getAttributeTypes());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        SchemaRecordWritable copy = new SchemaRecordWritable();
+        copy.readFields(in);
+        assertFalse(copy.isHeader());
+        byte[] firstRecord = copyOfEncoding(copy);
+        copy.readFields(in);
+        byte[] secondRecord = copyOfEncoding(copy);
+        copy.readFields(in);
+        assertTrue(copy.isHeader());
+        assertArrayEquals(ATTRIBUTE_NAMES, copy.getAttributeValues());
+        assertArrayEquals(ANNOTATION_NAMES, copy.getAnnotationValues());
+        SchemaRecordWritable.Schema readSchema = copy.getSchema();
+        assertArrayEquals(schema.getAttributeTypes(), readSchema.getAttributeTypes());
+
+        SchemaRecordWritable record = readRecord(firstRecord);
+        record.setSchema(readSchema);
+        assertArrayEquals(records[0], record.getAttributeValues());
+        assertArrayEquals(new Object[]{""}, record.getAnnotationValues());
+        assertNull(((AggregatedNumber) record.getAttributeValues()[4]).data);
+        assertEquals(9.0, ((AggregatedNumber) record.getAttributeValues()[5]).data[8], 1e-6F);
+
+        record = readRecord(secondRecord);
+        record.setSchema(readSchema);
+        assertArrayEquals(records[1], record.getAttributeValues());
+        assertArrayEquals(new float[0], ((AggregatedNumber) record.getAttributeValues()[5]).data, 0.0F);
+    }
+
+    @Test
+    public void testValueOfOtherTypeThanColumn() throws Exception {
+        SchemaRecordWritable.Schema schema = new SchemaRecordWritable.Schema(1, 0);
+        SchemaRecordWritable writable = new SchemaRecordWritable();
+        writable.setValues(schema, new Object[]{1.5F}, new Object[0]);
+        writable.write(new DataOutputStream(new ByteArrayOutputStream()));
+        writable.setValues(schema, new Object[]{7}, new Object[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(out));
+
+        SchemaRecordWritable record = readRecord(out.toByteArray());
+        record.setSchema(schema);
+        assertEquals(RecordWritable.Type.FLOAT, schema.getAttributeTypes()[0]);
+        assertArrayEquals(new Object[]{7}, record.getAttributeValues());
+    }
+
+    @Test
+    public void testSchemaIsRequiredToDecode() throws Exception {
+        SchemaRecordWritable writable = new SchemaRecordWritable();
+        writable.setValues(new SchemaRecordWritable.Schema(1, 0), new Object[]{"x"}, new Object[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(out));
+
+        SchemaRecordWritable record = readRecord(out.toByteArray());
+        try {
+            record.getAttributeValues();
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("schema of data record not set", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testSmallerThanRecordWritable() throws Exception {
+        Object[] values = new Object[20];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new AggregatedNumber(9, 9, 0, 0.1, 0.9, 0.5, 0.2, new float[9]);
+        }
+        Object[] annotationValues = {""};
+
+        ByteArrayOutputStream recordOut = new ByteArrayOutputStream();
+        new RecordWritable(values, annotationValues).write(new DataOutputStream(recordOut));
+        SchemaRecordWritable writable = new SchemaRecordWritable();
+        writable.setValues(new SchemaRecordWritable.Schema(20, 1), values, annotationValues);
+        ByteArrayOutputStream schemaRecordOut = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(schemaRecordOut));
+
+        assertTrue(schemaRecordOut.size() < recordOut.size());
+    }
+
+    @Test
+    public void testToString() throws Exception {
+        SchemaRecordWritable writable = new SchemaRecordWritable();
+        writable.setValues(new SchemaRecordWritable.Schema(2, 1), new Object[]{"Benguela", 0.5}, new Object[]{"OVERLAPPING"});
+        assertEquals("Benguela\t0.5\tOVERLAPPING", writable.toString());
+    }
+
+    private static byte[] copyOfEncoding(SchemaRecordWritable writable) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(out));
+        return out.toByteArray();
+    }
+
+    private static SchemaRecordWritable readRecord(byte[] bytes) throws Exception {
+        SchemaRecordWritable record = new SchemaRecordWritable();
+        record.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+        return record;
+    }
+}
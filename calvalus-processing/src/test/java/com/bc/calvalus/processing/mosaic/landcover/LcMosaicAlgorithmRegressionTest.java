@@ -0,0 +1,777 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.mosaic.landcover;
+
+import com.bc.calvalus.processing.mosaic.TileIndexWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.esa.snap.binning.support.VariableContextImpl;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.bc.calvalus.processing.mosaic.landcover.AbstractLcMosaicAlgorithm.*;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the band-wise temporal aggregation of the land cover mosaic algorithms with their
+ * previous per-pixel implementation, which is kept here, on random tiles with all status classes.
+ */
+public class LcMosaicAlgorithmRegressionTest {
+
+    private static final int TILE_SIZE = 24;
+    private static final int NUM_ELEMS = TILE_SIZE * TILE_SIZE;
+    private static final int NUM_WEEKS = 12;
+    private static final int[] ALL_STATUS = {
+            STATUS_INVALID, STATUS_LAND, STATUS_WATER, STATUS_SNOW, STATUS_CLOUD, STATUS_CLOUD_SHADOW,
+            STATUS_HAZE, STATUS_BRIGHT, STATUS_TEMPORAL_CLOUD, STATUS_DARK
+    };
+    private static final TileIndexWritable TILE_INDEX = new TileIndexWritable(0, 0, 0, 0);
+
+    @Test
+    public void testMerisAggregationEqualsPerPixelAggregation() throws Exception {
+        for (boolean bestPixelAggregation : new boolean[]{false, true}) {
+            for (boolean temporalCloudFilter : new boolean[]{false, true}) {
+                assertLcAggregationEqualsPerPixelAggregation(merisVariableContext(), "MERIS", "300m", "sdr_8",
+                                                             bestPixelAggregation, temporalCloudFilter);
+            }
+        }
+    }
+
+    @Test
+    public void testMsiTc4AggregationEqualsPerPixelAggregation() throws Exception {
+        for (boolean bestPixelAggregation : new boolean[]{false, true}) {
+            for (boolean temporalCloudFilter : new boolean[]{false, true}) {
+                assertLcAggregationEqualsPerPixelAggregation(msiVariableContext(), "MSI", "20m", "tc4",
+                                                             bestPixelAggregation, temporalCloudFilter);
+            }
+        }
+    }
+
+    @Test
+    public void testSeasonAggregationEqualsPerPixelAggregation() throws Exception {
+        Configuration conf = createConfiguration("MERIS", "300m", "sdr_8", false);
+        LCSeasonMosaicAlgorithm algorithm = new LCSeasonMosaicAlgorithm();
+        algorithm.setConf(conf);
+        algorithm.setVariableContext(new VariableContextImpl());
+        PerPixelSeasonAlgorithm perPixelAlgorithm = new PerPixelSeasonAlgorithm(TILE_SIZE);
+
+        Random random = new Random(42);
+        algorithm.initTemporal(TILE_INDEX);
+        perPixelAlgorithm.initTemporal();
+        for (int week = 0; week < NUM_WEEKS; week++) {
+            float[][] samples = new float[PerPixelSeasonAlgorithm.NUM_BANDS][NUM_ELEMS];
+            for (int i = 0; i < NUM_ELEMS; i++) {
+                samples[0][i] = random.nextInt(PerPixelSeasonAlgorithm.STATUS_CLOUD_SHADOW + 1);
+                for (int counter = 1; counter <= 5; counter++) {
+                    samples[counter][i] = random.nextInt(3);
+                }
+                for (int band = 6; band < samples.length; band++) {
+                    samples[band][i] = random.nextInt(50) == 0 ? Float.NaN : 0.5f * random.nextFloat();
+                }
+            }
+            algorithm.processTemporal(samples);
+            perPixelAlgorithm.processTemporal(samples);
+        }
+        assertBandsEqual("season", perPixelAlgorithm.getTemporalResult(), algorithm.getTemporalResult());
+    }
+
+    @Test
+    public void testSdr8AggregationEqualsPerPixelAggregation() throws Exception {
+        assertSdr8AggregationEqualsPerPixelAggregation("sdr_8", "ndvi");
+    }
+
+    @Test
+    public void testTc4AggregationEqualsPerPixelAggregation() throws Exception {
+        assertSdr8AggregationEqualsPerPixelAggregation("tc4", "tc1");
+    }
+
+    private static void assertLcAggregationEqualsPerPixelAggregation(VariableContextImpl variableContext,
+                                                                     String sensor, String spatialResolution,
+                                                                     String temporalCloudBandName,
+                                                                     boolean bestPixelAggregation,
+                                                                     boolean temporalCloudFilter) throws Exception {
+        String testCase = String.format("%s %s bestPixel=%s temporalCloudFilter=%s",
+                                        sensor, temporalCloudBandName, bestPixelAggregation, temporalCloudFilter);
+        Configuration conf = createConfiguration(sensor, spatialResolution, temporalCloudBandName, bestPixelAggregation);
+        LCMosaicAlgorithm algorithm = new LCMosaicAlgorithm();
+        algorithm.setConf(conf);
+        algorithm.setVariableContext(variableContext);
+        PerPixelLcMosaicAlgorithm perPixelAlgorithm = new PerPixelLcMosaicAlgorithm();
+        perPixelAlgorithm.setConf(conf);
+        perPixelAlgorithm.setVariableContext(variableContext);
+
+        Random random = new Random(4711);
+        boolean tc4 = "tc4".equals(temporalCloudBandName);
+        float[][] sdrCloudDataSamples = new float[2][NUM_ELEMS];
+        for (int i = 0; i < NUM_ELEMS; i++) {
+            sdrCloudDataSamples[0][i] = random.nextInt(10) == 0 ? Float.NaN
+                                                               : tc4 ? 0.4f * random.nextFloat() - 0.2f : 0.5f * random.nextFloat();
+            sdrCloudDataSamples[1][i] = random.nextInt(10) == 0 ? Float.NaN
+                                                               : tc4 ? 0.8f * random.nextFloat() : 0.3f * random.nextFloat();
+        }
+
+        algorithm.initTemporal(TILE_INDEX);
+        perPixelAlgorithm.initTemporal(TILE_INDEX);
+        if (temporalCloudFilter) {
+            algorithm.sdrCloudDataSamples = sdrCloudDataSamples;
+            perPixelAlgorithm.sdrCloudDataSamples = sdrCloudDataSamples;
+        }
+        int numVariables = variableContext.getVariableCount();
+        for (int week = 0; week < NUM_WEEKS; week++) {
+            float[][] samples = new float[numVariables][NUM_ELEMS];
+            for (int i = 0; i < NUM_ELEMS; i++) {
+                int status = ALL_STATUS[random.nextInt(ALL_STATUS.length)];
+                samples[0][i] = status;
+                // deep water, and invalid land or snow
+                boolean noSdrs = (status == STATUS_WATER && random.nextBoolean())
+                                 || ((status == STATUS_LAND || status == STATUS_SNOW) && random.nextInt(10) == 0);
+                for (int band = 1; band < numVariables; band++) {
+                    samples[band][i] = noSdrs || random.nextInt(100) == 0 ? Float.NaN : 0.5f * random.nextFloat();
+                }
+            }
+            algorithm.processTemporal(samples);
+            perPixelAlgorithm.processTemporal(samples);
+            assertBandsEqual(testCase + " week " + week, perPixelAlgorithm.aggregatedSamples, algorithm.aggregatedSamples);
+            assertArrayEquals(testCase + " week " + week, perPixelAlgorithm.deepWaterCounter, algorithm.deepWaterCounter);
+        }
+        assertBandsEqual(testCase, perPixelAlgorithm.getTemporalResult(), algorithm.getTemporalResult());
+    }
+
+    private static void assertSdr8AggregationEqualsPerPixelAggregation(String temporalCloudBandName,
+                                                                       String secondBandName) throws Exception {
+        Configuration conf = createConfiguration("MERIS", "300m", temporalCloudBandName, false);
+        VariableContextImpl variableContext = new VariableContextImpl();
+        variableContext.defineVariable("status");
+        variableContext.defineVariable(temporalCloudBandName);
+        variableContext.defineVariable(secondBandName);
+        variableContext.defineVariable("mjd");
+        LcSDR8MosaicAlgorithm algorithm = new LcSDR8MosaicAlgorithm();
+        algorithm.setConf(conf);
+        algorithm.setVariableContext(variableContext);
+        PerPixelSdr8Algorithm perPixelAlgorithm = new PerPixelSdr8Algorithm(TILE_SIZE, new int[]{0, 1, 2, 3},
+                                                                            "tc4".equals(temporalCloudBandName), 0.075f);
+
+        Random random = new Random(815);
+        algorithm.initTemporal(TILE_INDEX);
+        perPixelAlgorithm.initTemporal();
+        for (int week = 0; week < NUM_WEEKS; week++) {
+            float[][] samples = new float[4][NUM_ELEMS];
+            for (int i = 0; i < NUM_ELEMS; i++) {
+                samples[0][i] = ALL_STATUS[random.nextInt(ALL_STATUS.length)];
+                samples[1][i] = random.nextInt(20) == 0 ? Float.NaN : 0.5f * random.nextFloat();
+                samples[2][i] = random.nextInt(20) == 0 ? Float.NaN : random.nextFloat() - 0.2f;
+                // some pixels are observed by the same orbit only
+                samples[3][i] = 55000.0f + (i % 7 == 0 ? 0 : 7 * week) + 0.1f * random.nextFloat();
+            }
+            algorithm.processTemporal(samples);
+            perPixelAlgorithm.processTemporal(samples);
+        }
+        assertBandsEqual(temporalCloudBandName, perPixelAlgorithm.getTemporalResult(), algorithm.getTemporalResult());
+    }
+
+    private static Configuration createConfiguration(String sensor, String spatialResolution,
+                                                     String temporalCloudBandName, boolean bestPixelAggregation) {
+        Configuration conf = new Configuration(false);
+        conf.set("calvalus.lc.sensor", sensor);
+        conf.set("spatialResolution", spatialResolution);
+        conf.setInt("calvalus.mosaic.tileSize", TILE_SIZE);
+        conf.set("calvalus.lc.temporalCloudBandName", temporalCloudBandName);
+        conf.set("calvalus.lc.temporalCloudFilterThreshold", "0.075");
+        conf.setBoolean("calvalus.lc.bestpixelaggregation", bestPixelAggregation);
+        return conf;
+    }
+
+    private static VariableContextImpl merisVariableContext() {
+        VariableContextImpl variableContext = new VariableContextImpl();
+        variableContext.defineVariable("status");
+        for (int i = 1; i <= 15; i++) {
+            variableContext.defineVariable("sdr_" + i);
+        }
+        variableContext.defineVariable("ndvi");
+        for (int i = 1; i <= 15; i++) {
+            variableContext.defineVariable("sdr_error_" + i);
+        }
+        return variableContext;
+    }
+
+    private static VariableContextImpl msiVariableContext() {
+        VariableContextImpl variableContext = new VariableContextImpl();
+        variableContext.defineVariable("status");
+        for (String bandName : LcL3SensorConfig.LcL3MsiConfig.BANDNAMES) {
+            variableContext.defineVariable(bandName);
+        }
+        variableContext.defineVariable("ndvi");
+        return variableContext;
+    }
+
+    private static void assertBandsEqual(String message, float[][] expected, float[][] actual) {
+        assertEquals(message, expected.length, actual.length);
+        for (int band = 0; band < expected.length; band++) {
+            // bit-identical, NaN equals NaN
+            assertArrayEquals(message + " band " + band, expected[band], actual[band], 0.0f);
+        }
+    }
+
+    /**
+     * The per-pixel temporal aggregation of {@link AbstractLcMosaicAlgorithm} before it was done band by band,
+     * without the debug output.
+     */
+    private static class PerPixelLcMosaicAlgorithm extends LCMosaicAlgorithm {
+
+        @Override
+        public void processTemporal(float[][] samples) {
+            int numElems = tileSize * tileSize;
+            for (int i = 0; i < numElems; i++) {
+                int status = (int) samples[varIndexes[0]][i];
+                int oldStatus = (int) aggregatedSamples[STATUS_BAND_INDEX][i];
+
+                //check for invalid pixels
+                float sdr_1 = samples[varIndexes[SDR_L2_OFFSET]][i];
+                if ((status == STATUS_LAND || status == STATUS_SNOW) && Float.isNaN(sdr_1)) {
+                    status = STATUS_INVALID;
+                }
+
+                if (sdrCloudDataSamples != null) {
+                    // temporal test
+                    if (isTemporalTc4Based) {
+                        if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE) {
+                            float tc4CloudThreshold = sdrCloudDataSamples[0][i];
+                            if (!Float.isNaN(tc4CloudThreshold)) {
+                                float B2_ac = samples[varIndexes[SDR_L2_OFFSET + 1]][i];
+                                float B3_ac = samples[varIndexes[SDR_L2_OFFSET + 2]][i];
+                                float B4_ac = samples[varIndexes[SDR_L2_OFFSET + 3]][i];
+                                float B8A_ac = samples[varIndexes[SDR_L2_OFFSET + 8]][i];
+                                float B11_ac = samples[varIndexes[SDR_L2_OFFSET + 9]][i];
+                                float B12_ac = samples[varIndexes[SDR_L2_OFFSET + 10]][i];
+                                float tc4 = (float) (-0.8239 * B2_ac + 0.0849 * B3_ac + 0.4396 * B4_ac - 0.058 * B8A_ac + 0.2013 * B11_ac - 0.2773 * B12_ac);
+                                if (tc4 < tc4CloudThreshold) {
+                                    status = STATUS_TEMPORAL_CLOUD;
+                                } else if (status == STATUS_BRIGHT || status == STATUS_HAZE) {
+                                    // we observe that the feature is stable over time, we assume it is clear
+                                    status = STATUS_LAND;
+                                }
+                            }
+                        }
+                        if (status == STATUS_LAND || status == STATUS_DARK) {
+                            float tc1CloudThreshold = sdrCloudDataSamples[1][i];
+                            if (!Float.isNaN(tc1CloudThreshold)) {
+                                float B2_ac = samples[varIndexes[SDR_L2_OFFSET + 1]][i];
+                                float B3_ac = samples[varIndexes[SDR_L2_OFFSET + 2]][i];
+                                float B4_ac = samples[varIndexes[SDR_L2_OFFSET + 3]][i];
+                                float B8A_ac = samples[varIndexes[SDR_L2_OFFSET + 8]][i];
+                                float B11_ac = samples[varIndexes[SDR_L2_OFFSET + 9]][i];
+                                float B12_ac = samples[varIndexes[SDR_L2_OFFSET + 10]][i];
+                                float tc1 = (float) (0.3029 * B2_ac + 0.2786 * B3_ac + 0.4733 * B4_ac + 0.5599 * B8A_ac + 0.508 * B11_ac + 0.1872 * B12_ac);
+                                if (tc1 < tc1CloudThreshold) {
+                                    status = STATUS_CLOUD_SHADOW;
+                                }
+                            }
+                        }
+                    } else if (status == STATUS_LAND) {
+                        float sdr8 = samples[varIndexes[temporalCloudBandIndex]][i];
+                        float sdr8CloudThreshold = sdrCloudDataSamples[0][i];
+                        float sdr8CloudShadowThreshold = sdrCloudDataSamples[1][i];
+                        status = perPixelTemporalCloudCheck(sdr8, sdr8CloudThreshold);
+                        // added for ARGI processing
+                        if (status == STATUS_LAND) {
+                            status = perPixelTemporalCloudShadowCheck2(sdr8, sdr8CloudShadowThreshold);
+                        }
+                    }
+                }
+
+                if (status == STATUS_LAND) {
+                    int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+                    // If we haven't seen LAND so far,
+                    // but we had SNOW, WATER or CLOUD_SHADOW => clear SDRs
+                    if (landCount == 0) {
+                        int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+                        int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                        int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                        if (snowCount > 0 || waterCount > 0 || shadowCount > 0) {
+                            perPixelClearSdr(i, 0.0f);
+                        }
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_LAND;
+                    }
+                    // Since we have seen LAND now, accumulate LAND SDRs
+                    if (!bestPixelAggregation) {
+                        perPixelAddSdrs(samples, i);
+                    } else {
+                        perPixelSelectSdrs(samples, i, landCount);
+                    }
+                    // Count LAND
+                    aggregatedSamples[STATUS_LAND][i] = landCount + 1;
+                } else if (status == STATUS_SNOW) {
+                    int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+                    // If we haven't seen LAND so far, accumulate SNOW SDRs
+                    if (landCount == 0) {
+                        // if there have been WATER or CLOUD_SHADOW  before => clear SDR
+                        int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                        int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                        if (waterCount > 0 || shadowCount > 0) {
+                            perPixelClearSdr(i, 0.0f);
+                        }
+                        if (!bestPixelAggregation) {
+                            perPixelAddSdrs(samples, i);
+                        } else {
+                            perPixelSelectSdrs(samples, i, (int) aggregatedSamples[STATUS_SNOW][i]);
+                        }
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_SNOW;
+                    }
+                    // Count SNOW
+                    aggregatedSamples[STATUS_SNOW][i]++;
+                } else if (status == STATUS_WATER) {
+                    if (Float.isNaN(sdr_1)) {
+                        // deep water
+                        deepWaterCounter[i]++;
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
+                    } else {
+                        // shallow water
+                        // only aggregate if, no LAND or SNOW before
+                        int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+                        int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+                        if (landCount == 0 && snowCount == 0) {
+                            // if there was a CLOUD_SHADOW before => clear SDR
+                            int shadowCount = (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                            if (shadowCount > 0) {
+                                perPixelClearSdr(i, 0.0f);
+                            }
+                            if (!bestPixelAggregation) {
+                                perPixelAddSdrs(samples, i);
+                            } else {
+                                perPixelSelectSdrs(samples, i, (int) aggregatedSamples[STATUS_WATER][i]);
+                            }
+                            aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
+                        }
+                        aggregatedSamples[STATUS_WATER][i]++;
+                    }
+                } else if (status == STATUS_CLOUD_SHADOW) {
+                    // Count CLOUD_SHADOW
+                    int landCount = (int) aggregatedSamples[STATUS_LAND][i];
+                    int snowCount = (int) aggregatedSamples[STATUS_SNOW][i];
+                    int waterCount = (int) aggregatedSamples[STATUS_WATER][i];
+                    if (landCount == 0 && snowCount == 0 && waterCount == 0) {
+                        // only aggregate SDR, if no LAND, WATER or SNOW have been aggregated before
+                        if (status != oldStatus) {
+                            perPixelClearSdr(i, 0.0f);
+                            aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
+                        }
+                        if (!bestPixelAggregation) {
+                            perPixelAddSdrs(samples, i);
+                        } else {
+                            perPixelSelectSdrs(samples, i, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
+                        }
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD_SHADOW;
+                    }
+                    aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;
+                } else if (status == STATUS_CLOUD) {
+                    // Count CLOUD
+                    aggregatedSamples[STATUS_CLOUD][i]++;
+                    if (oldStatus != STATUS_LAND &&
+                        oldStatus != STATUS_SNOW &&
+                        oldStatus != STATUS_WATER &&
+                        oldStatus != STATUS_CLOUD_SHADOW &&
+                        oldStatus != STATUS_BRIGHT &&
+                        oldStatus != STATUS_DARK &&
+                        oldStatus != STATUS_HAZE &&
+                        oldStatus != STATUS_TEMPORAL_CLOUD) {
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_CLOUD;
+                    }
+                } else if (status == STATUS_TEMPORAL_CLOUD) {
+                    // Count CLOUD
+                    aggregatedSamples[STATUS_CLOUD][i]++;
+                    if (oldStatus != STATUS_LAND &&
+                        oldStatus != STATUS_SNOW &&
+                        oldStatus != STATUS_WATER &&
+                        oldStatus != STATUS_CLOUD_SHADOW &&
+                        oldStatus != STATUS_BRIGHT &&
+                        oldStatus != STATUS_DARK &&
+                        oldStatus != STATUS_HAZE) {
+                        aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_TEMPORAL_CLOUD;
+                    }
+                } else if (status == STATUS_BRIGHT || status == STATUS_DARK || status == STATUS_HAZE) {
+                    if (oldStatus != STATUS_LAND &&
+                        oldStatus != STATUS_SNOW &&
+                        oldStatus != STATUS_WATER &&
+                        oldStatus != STATUS_CLOUD_SHADOW &&
+                        (status == STATUS_BRIGHT ||
+                         (status == STATUS_DARK && oldStatus != STATUS_BRIGHT) ||
+                         (status == STATUS_HAZE && oldStatus != STATUS_BRIGHT && oldStatus != STATUS_DARK))) {
+                        if (status != oldStatus) {
+                            perPixelClearSdr(i, 0.0f);
+                            aggregatedSamples[STATUS_CLOUD_SHADOW][i] = 0;
+                            aggregatedSamples[STATUS_BAND_INDEX][i] = status;
+                        }
+                        if (!bestPixelAggregation) {
+                            perPixelAddSdrs(samples, i);
+                        } else {
+                            perPixelSelectSdrs(samples, i, (int) aggregatedSamples[STATUS_CLOUD_SHADOW][i]);
+                        }
+                        aggregatedSamples[STATUS_CLOUD_SHADOW][i]++;  // cloud shadow count abused for bright, dark, or haze
+                    }
+                }
+            }
+        }
+
+        @Override
+        public float[][] getTemporalResult() {
+            int numElems = tileSize * tileSize;
+            for (int i = 0; i < numElems; i++) {
+                int status = (int) aggregatedSamples[STATUS_BAND_INDEX][i];
+                float wSum = 0f;
+                if ((status == STATUS_LAND || status == STATUS_SNOW || status == STATUS_WATER || status == STATUS_CLOUD_SHADOW) && deepWaterCounter[i] == 0) {
+                    wSum = aggregatedSamples[status][i];
+                } else if (status == STATUS_BRIGHT || status == STATUS_DARK || status == STATUS_HAZE) {
+                    wSum = aggregatedSamples[STATUS_CLOUD_SHADOW][i];
+                }
+                if (wSum != 0f) {
+                    for (int j = SDR_AGGREGATED_OFFSET; j < SDR_AGGREGATED_OFFSET + sensorConfig.getBandNames().length + 1; j++) {  // sdr + ndvi
+                        aggregatedSamples[j][i] /= wSum;
+                    }
+                    for (int j = SDR_AGGREGATED_OFFSET + sensorConfig.getBandNames().length + 1; j < aggregatedSamples.length; j++) {  // sdr_error
+                        aggregatedSamples[j][i] = ((float) Math.sqrt(aggregatedSamples[j][i])) / wSum;
+                    }
+                } else {
+                    perPixelClearSdr(i, Float.NaN);
+                }
+                if (deepWaterCounter[i] > 0) {
+                    aggregatedSamples[STATUS_WATER][i] = (int) aggregatedSamples[STATUS_WATER][i] + deepWaterCounter[i];
+                    aggregatedSamples[STATUS_BAND_INDEX][i] = STATUS_WATER;
+                }
+            }
+            return aggregatedSamples;
+        }
+
+        private static int perPixelTemporalCloudCheck(float sdr8, float sdr8CloudThreshold) {
+            if (!Float.isNaN(sdr8CloudThreshold) && sdr8 > sdr8CloudThreshold) {
+                return STATUS_TEMPORAL_CLOUD;
+            } else {
+                return STATUS_LAND;
+            }
+        }
+
+        private static int perPixelTemporalCloudShadowCheck2(float sdr8, float sdr8CloudShadowThreshold) {
+            if (!Float.isNaN(sdr8CloudShadowThreshold) && sdr8 < sdr8CloudShadowThreshold) {
+                return STATUS_CLOUD_SHADOW;
+            } else {
+                return STATUS_LAND;
+            }
+        }
+
+        private void perPixelClearSdr(int i, float value) {
+            for (int j = SDR_AGGREGATED_OFFSET; j < aggregatedSamples.length; j++) {  // sdr + ndvi + sdr_error
+                aggregatedSamples[j][i] = value;
+            }
+        }
+
+        private void perPixelAddSdrs(float[][] samples, int i) {
+            final int numBands = sensorConfig.getBandNames().length;
+            final boolean uncertaintiesAreSquares = sensorConfig.isUncertaintiesAreSquares();
+            for (int j = SDR_AGGREGATED_OFFSET; j < SDR_AGGREGATED_OFFSET + numBands + 1; ++j) { // sdr + ndvi
+                final int sdrJ = j - SDR_AGGREGATED_OFFSET + SDR_L2_OFFSET;
+                aggregatedSamples[j][i] += samples[varIndexes[sdrJ]][i];
+            }
+            for (int j = SDR_AGGREGATED_OFFSET + numBands + 1; j < aggregatedSamples.length; ++j) {  // uncertainty
+                final int sdrJ = j - SDR_AGGREGATED_OFFSET + SDR_L2_OFFSET;
+                final float sdrErrorMeasurement = samples[varIndexes[sdrJ]][i];
+                aggregatedSamples[j][i] += uncertaintiesAreSquares ? sdrErrorMeasurement : (sdrErrorMeasurement * sdrErrorMeasurement);
+            }
+        }
+
+        private void perPixelSelectSdrs(float[][] samples, int i, int count) {
+            if (count < 1) {
+                perPixelAddSdrs(samples, i);
+            } else if (sensorConfig.isBetterPixel(samples, SDR_L2_OFFSET, aggregatedSamples, SDR_AGGREGATED_OFFSET, count, i)) {
+                perPixelClearSdr(i, 0.0f);
+                perPixelAddSdrs(samples, i);
+                for (int j = SDR_AGGREGATED_OFFSET; j < aggregatedSamples.length; j++) {  // sdr + ndvi + sdr_error
+                    aggregatedSamples[j][i] *= count + 1;  // set weight
+                }
+            } else {
+                for (int j = SDR_AGGREGATED_OFFSET; j < aggregatedSamples.length; j++) {  // sdr + ndvi + sdr_error
+                    aggregatedSamples[j][i] /= count;
+                    aggregatedSamples[j][i] *= count + 1;  // increase weight
+                }
+            }
+        }
+    }
+
+    /**
+     * The per-pixel temporal aggregation of {@link LCSeasonMosaicAlgorithm} before it was done band by band.
+     */
+    private static class PerPixelSeasonAlgorithm {
+
+        private static final int STATUS = 0;
+        static final int STATUS_INVALID = 0;
+        static final int STATUS_LAND = 1;
+        static final int STATUS_WATER = 2;
+        static final int STATUS_SNOW = 3;
+        static final int STATUS_CLOUD = 4;
+        static final int STATUS_CLOUD_SHADOW = 5;
+        private static final int NUM_COUNTERS = 5;
+        private static final int SDR_OFFSET = NUM_COUNTERS + 1;
+        private static final int NUM_SDR_BANDS = 15;
+        static final int NUM_BANDS = 1 + 5 + 15 + 1 + 15;
+
+        private final int tileSize;
+        private float[][] aggregatedSamples;
+
+        PerPixelSeasonAlgorithm(int tileSize) {
+            this.tileSize = tileSize;
+        }
+
+        void initTemporal() {
+            aggregatedSamples = new float[NUM_BANDS][tileSize * tileSize];
+        }
+
+        void processTemporal(float[][] samples) {
+            int numElems = tileSize * tileSize;
+            for (int i = 0; i < numElems; i++) {
+                int sampleStatus = (int) samples[STATUS][i];
+                int previousStatus = (int) aggregatedSamples[STATUS][i];
+
+                if (sampleStatus == STATUS_LAND) {
+                    // If we haven't seen LAND so far, but we had SNOW or WATER, delete SDRs measurements
+                    if (previousStatus != STATUS_LAND) {
+                        clearSDR(i, 0.0f);
+                        aggregatedSamples[STATUS][i] = STATUS_LAND;
+                    }
+                    // Since we have seen LAND now, accumulate LAND SDRs
+                    final int sampleLandCount = (int) samples[STATUS_LAND][i];
+                    addSdrs(samples, sampleLandCount, i);
+                } else if (sampleStatus == STATUS_SNOW) {
+                    // If we haven't seen LAND so far, accumulate SNOW SDRs
+                    if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW) {
+                        clearSDR(i, 0.0f);
+                        aggregatedSamples[STATUS][i] = STATUS_SNOW;
+                    }
+                    if (previousStatus != STATUS_LAND) {
+                        final int sampleSnowCount = (int) samples[STATUS_SNOW][i];
+                        addSdrs(samples, sampleSnowCount, i);
+                    }
+                } else if (sampleStatus == STATUS_WATER) {
+                    if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW && previousStatus != STATUS_WATER) {
+                        clearSDR(i, 0.0f);
+                        aggregatedSamples[STATUS][i] = STATUS_WATER;
+                    }
+                    if (previousStatus != STATUS_LAND && previousStatus != STATUS_SNOW) {
+                        final int sampleWaterCount = (int) samples[STATUS_WATER][i];
+                        addSdrs(samples, sampleWaterCount, i);
+                    }
+                } else if (sampleStatus == STATUS_CLOUD || sampleStatus == STATUS_CLOUD_SHADOW) {
+                    if (previousStatus == STATUS_INVALID) {
+                        aggregatedSamples[STATUS][i] = STATUS_CLOUD;
+                    }
+                }
+                for (int j = 0; j < NUM_COUNTERS; j++) {
+                    aggregatedSamples[j + 1][i] += samples[j + 1][i];
+                }
+            }
+        }
+
+        float[][] getTemporalResult() {
+            int numElems = tileSize * tileSize;
+            for (int i = 0; i < numElems; i++) {
+                int status = (int) aggregatedSamples[STATUS][i];
+
+                float wSum = 0f;
+                if ((status == STATUS_LAND || status == STATUS_SNOW || status == STATUS_WATER)) {
+                    wSum = aggregatedSamples[status][i];
+                }
+                if (wSum != 0f) {
+                    for (int j = 0; j < NUM_SDR_BANDS + NUM_SDR_BANDS + 1; j++) {  // sdr + ndvi + sdr_error
+                        aggregatedSamples[SDR_OFFSET + j][i] /= wSum;
+                    }
+                } else {
+                    clearSDR(i, Float.NaN);
+                }
+            }
+            return aggregatedSamples;
+        }
+
+        private void clearSDR(int i, float value) {
+            for (int j = 0; j < NUM_SDR_BANDS + NUM_SDR_BANDS + 1; j++) {
+                aggregatedSamples[SDR_OFFSET + j][i] = value;
+            }
+        }
+
+        private void addSdrs(float[][] samples, int weightCount, int i) {
+            int sdrOffset = SDR_OFFSET;
+            for (int j = 0; j < NUM_SDR_BANDS + 1; j++) { // sdr + ndvi
+                float sdrMeasurement = samples[sdrOffset + j][i] * weightCount;
+                aggregatedSamples[sdrOffset + j][i] += sdrMeasurement;
+            }
+            sdrOffset += NUM_SDR_BANDS + 1;
+            for (int j = 0; j < NUM_SDR_BANDS; j++) { // sdr_error
+                float sdrErrorMeasurement = samples[sdrOffset + j][i] * weightCount;
+                aggregatedSamples[sdrOffset + j][i] += (sdrErrorMeasurement * sdrErrorMeasurement);
+            }
+        }
+    }
+
+    /**
+     * The per-pixel temporal aggregation of {@link LcSDR8MosaicAlgorithm} before it was done band by band,
+     * without the debug output.
+     */
+    private static class PerPixelSdr8Algorithm {
+
+        private static final int STATUS_LAND = 1;
+        private static final int STATUS_WATER = 2;
+        private static final int STATUS_HAZE = 11;
+        private static final int STATUS_BRIGHT = 12;
+        private static final int STATUS_DARK = 15;
+
+        private static final int SAMPLE_INDEX_STATUS = 0;
+        private static final int SAMPLE_INDEX_SDR8 = 1;
+        private static final int SAMPLE_INDEX_NDVI = 2;
+        private static final int SAMPLE_INDEX_TC1 = 2;
+        private static final int SAMPLE_INDEX_MJD = 3;
+
+        private static final int AGG_INDEX_COUNT = 0;
+        private static final int AGG_INDEX_SDR_SUM = 1;
+        private static final int AGG_INDEX_SDR_SQSUM = 2;
+        private static final int AGG_INDEX_STATUS = 3;
+        private static final int AGG_INDEX_TC1_COUNT = 4;
+        private static final int AGG_INDEX_TC1_SUM = 5;
+        private static final int AGG_INDEX_TC1_SQSUM = 6;
+        private static final int AGG_INDEX_TC1_STATUS = 7;
+        private static final int AGG_INDEX_MJD = 8;
+        private static final int AGG_INDEX_TC1_MJD = 9;
+        private static final int AGG_INDEX_MAXNDVI = 4;
+        private static final int AGG_INDEX_SDR4MAXNDVI = 5;
+        private static final int NUM_AGGREGATION_BANDS = 10;
+
+        private final int tileSize;
+        private final int[] varIndexes;
+        private final boolean withTc4;
+        private final float applyFilterThresh;
+        private float[][] aggregatedSamples;
+
+        PerPixelSdr8Algorithm(int tileSize, int[] varIndexes, boolean withTc4, float applyFilterThresh) {
+            this.tileSize = tileSize;
+            this.varIndexes = varIndexes;
+            this.withTc4 = withTc4;
+            this.applyFilterThresh = applyFilterThresh;
+        }
+
+        void initTemporal() {
+            aggregatedSamples = new float[NUM_AGGREGATION_BANDS][tileSize * tileSize];
+        }
+
+        void processTemporal(float[][] samples) {
+            int numElems = tileSize * tileSize;
+            for (int i = 0; i < numElems; i++) {
+                int status = (int) samples[varIndexes[SAMPLE_INDEX_STATUS]][i];
+                float mjd = samples[varIndexes[SAMPLE_INDEX_MJD]][i];
+                if (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE || status == STATUS_DARK || status == STATUS_WATER) {
+                    int oldStatus = (int) aggregatedSamples[AGG_INDEX_STATUS][i];
+                    if (oldStatus == 0.0f) {
+                        aggregatedSamples[AGG_INDEX_STATUS][i] = status;
+                        aggregatedSamples[AGG_INDEX_MJD][i] = mjd;
+                    }
+                    // accumulate LAND SDRs
+                    float sdr = samples[varIndexes[SAMPLE_INDEX_SDR8]][i];
+                    if (!Float.isNaN(sdr)) {
+                        aggregatedSamples[AGG_INDEX_COUNT][i]++;
+                        aggregatedSamples[AGG_INDEX_SDR_SUM][i] += sdr;
+                        aggregatedSamples[AGG_INDEX_SDR_SQSUM][i] += sdr * sdr;
+                        if (aggregatedSamples[AGG_INDEX_COUNT][i] > 1 && isNotSameOrbit(mjd, aggregatedSamples[AGG_INDEX_MJD][i])) {
+                            aggregatedSamples[AGG_INDEX_MJD][i] = Float.NaN;
+                        }
+                        if (!withTc4) {
+                            float ndvi = samples[varIndexes[SAMPLE_INDEX_NDVI]][i];
+                            if (aggregatedSamples[AGG_INDEX_COUNT][i] == 1) {
+                                // first pixel
+                                aggregatedSamples[AGG_INDEX_MAXNDVI][i] = ndvi;
+                                aggregatedSamples[AGG_INDEX_SDR4MAXNDVI][i] = sdr;
+                            } else if (ndvi > aggregatedSamples[AGG_INDEX_MAXNDVI][i]) {
+                                aggregatedSamples[AGG_INDEX_MAXNDVI][i] = ndvi;
+                                aggregatedSamples[AGG_INDEX_SDR4MAXNDVI][i] = sdr;
+                            }
+                        }
+                    }
+                }
+
+                if (withTc4 && (status == STATUS_LAND || status == STATUS_BRIGHT || status == STATUS_HAZE || status == STATUS_DARK || status == STATUS_WATER)) {
+                    int oldStatus = (int) aggregatedSamples[AGG_INDEX_TC1_STATUS][i];
+                    if (oldStatus == 0.0f) {
+                        aggregatedSamples[AGG_INDEX_TC1_STATUS][i] = status;
+                        aggregatedSamples[AGG_INDEX_TC1_MJD][i] = mjd;
+                    }
+                    // accumulate LAND SDRs
+                    float sdr = samples[varIndexes[SAMPLE_INDEX_TC1]][i];
+                    if (!Float.isNaN(sdr)) {
+                        aggregatedSamples[AGG_INDEX_TC1_COUNT][i]++;
+                        aggregatedSamples[AGG_INDEX_TC1_SUM][i] += sdr;
+                        aggregatedSamples[AGG_INDEX_TC1_SQSUM][i] += sdr * sdr;
+                        if (aggregatedSamples[AGG_INDEX_TC1_COUNT][i] > 1 && isNotSameOrbit(mjd, aggregatedSamples[AGG_INDEX_TC1_MJD][i])) {
+                            aggregatedSamples[AGG_INDEX_TC1_MJD][i] = Float.NaN;
+                        }
+                    }
+                }
+            }
+        }
+
+        private static boolean isNotSameOrbit(float mjd1, float mjd2) {
+            return !(Math.abs(mjd1 - mjd2) < 1.0f);
+        }
+
+        float[][] getTemporalResult() {
+            int numElems = tileSize * tileSize;
+            float[][] result = new float[2][numElems];
+            for (int i = 0; i < numElems; i++) {
+                result[0][i] = Float.NaN;
+                result[1][i] = Float.NaN;
+                float count = aggregatedSamples[AGG_INDEX_COUNT][i];
+                if (count >= 2 && Float.isNaN(aggregatedSamples[AGG_INDEX_MJD][i])) {
+                    double sdrSum = aggregatedSamples[AGG_INDEX_SDR_SUM][i];
+                    double sdrSqrSum = aggregatedSamples[AGG_INDEX_SDR_SQSUM][i];
+                    double sdr4MaxNdvi;
+                    double sdrMean = sdrSum / count;
+                    double sdrSigma = Math.sqrt(sdrSqrSum / count - sdrMean * sdrMean);
+                    if (!withTc4) {
+                        double tau1 = sdrSigma / sdrMean;
+                        if (tau1 > applyFilterThresh) {
+                            double tau2 = sdrMean + sdrSigma;
+                            double tau3 = sdrMean * 1.35;
+                            sdr4MaxNdvi = aggregatedSamples[AGG_INDEX_SDR4MAXNDVI][i];
+                            double tau4 = sdr4MaxNdvi + 2 * sdrSigma;
+                            double tau5 = sdrMean - sdrSigma;
+                            double tau6 = sdrMean * 0.65;
+                            double sdrCloudDetector = Math.min(Math.min(tau3, tau2), tau4);
+                            double sdrCloudShadowDetector = Math.min(tau5, tau6);
+                            result[0][i] = (float) sdrCloudDetector;
+                            result[1][i] = (float) sdrCloudShadowDetector;
+                        }
+                    } else {
+                        double sdrCloudDetector = Math.min(sdrMean - sdrSigma * 1.4, sdrMean * 1.4);
+                        result[0][i] = (float) sdrCloudDetector;
+                    }
+                }
+                count = aggregatedSamples[AGG_INDEX_TC1_COUNT][i];
+                if (withTc4 && count >= 2 && Float.isNaN(aggregatedSamples[AGG_INDEX_TC1_MJD][i])) {
+                    double sdrSum = aggregatedSamples[AGG_INDEX_TC1_SUM][i];
+                    double sdrSqrSum = aggregatedSamples[AGG_INDEX_TC1_SQSUM][i];
+                    double sdrMean = sdrSum / count;
+                    double sdrSigma = Math.sqrt(sdrSqrSum / count - sdrMean * sdrMean);
+                    double sdrCloudShadowDetector = (sdrMean - sdrSigma) * 0.9;
+                    result[1][i] = (float) sdrCloudShadowDetector;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -40,6 +40,8 @@ public class RAConfigTest {
                 "  <withProductNames>false</withProductNames>\n" +
                 "  <goodPixelExpression>not cloud and water</goodPixelExpression>\n" +
                 "  <percentiles>2,50,99</percentiles>\n" +
+                "  <percentileMode>exact</percentileMode>\n" +
+                "  <percentileAccuracy>0.01</percentileAccuracy>\n" +
                 "  <bands>\n" +
                 "    <band>\n" +
                 "      <name>chl</name>\n" +
@@ -89,5 +91,7 @@ public class RAConfigTest {
         RAConfig raConfig = RAConfig.fromXml(expected);
         assertEquals(false, raConfig.isBinValuesAsRatio());
         assertNull(raConfig.getPercentiles());
+        assertEquals(RAConfig.PERCENTILE_MODE_EXACT, raConfig.getPercentileMode());
+        assertEquals(0.01, raConfig.getPercentileAccuracy(), 1e-9);
     }
 }
\ No newline at end of file
@@ -51,4 +51,27 @@ public class AccumulatorTest {
         acc.accumulateNoNaN(1, Float.NaN, 2, 3);
         assertArrayEquals(new float[]{1, 2, 3}, acc.getValues(), 1E-5f);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAccumulateAcrossChunks() throws Exception {
+        Accumulator acc = new Accumulator();
+        float[] samples = new float[Accumulator.CHUNK_SIZE - 1];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i;
+        }
+        acc.accumulate(samples);
+        acc.accumulate(-1, -2, -3);
+        acc.accumulateNoNaN(-4, Float.NaN);
+        assertEquals(Accumulator.CHUNK_SIZE + 3, acc.size());
+        float[] values = acc.getValues();
+        assertEquals(Accumulator.CHUNK_SIZE + 3, values.length);
+        assertEquals(Accumulator.CHUNK_SIZE - 2, values[Accumulator.CHUNK_SIZE - 2], 1E-5f);
+        assertEquals(-1, values[Accumulator.CHUNK_SIZE - 1], 1E-5f);
+        assertEquals(-2, values[Accumulator.CHUNK_SIZE], 1E-5f);
+        assertEquals(-4, values[Accumulator.CHUNK_SIZE + 2], 1E-5f);
+
+        acc.clear();
+        assertEquals(0, acc.size());
+        assertArrayEquals(new float[0], acc.getValues(), 1E-5f);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ExactPercentilesTest {
+
+    private static final int[] PERCENTILES = {0, 1, 5, 25, 50, 75, 95, 99, 100};
+
+    @Test
+    public void testSameAsSorting() throws Exception {
+        Random random = new Random(42);
+        for (int n : new int[]{1, 2, 3, 10, 101, 10000}) {
+            float[] samples = new float[n];
+            for (int i = 0; i < n; i++) {
+                samples[i] = random.nextFloat() * 100;
+            }
+            assertSameAsSorting(samples);
+        }
+    }
+
+    @Test
+    public void testManyEqualValues() throws Exception {
+        float[] samples = new float[5000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i % 3;
+        }
+        assertSameAsSorting(samples);
+        Arrays.fill(samples, 7f);
+        assertSameAsSorting(samples);
+    }
+
+    @Test
+    public void testSortedInput() throws Exception {
+        float[] samples = new float[5000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = samples.length - i;
+        }
+        assertSameAsSorting(samples);
+    }
+
+    @Test
+    public void testNaNAndEmpty() throws Exception {
+        ExactPercentiles percentiles = new ExactPercentiles();
+        percentiles.accumulate(Float.NaN);
+        assertTrue(Double.isNaN(percentiles.computePercentiles(new int[]{50})[0]));
+        percentiles.accumulate(1, Float.NaN, 3);
+        assertEquals(2.0, percentiles.computePercentiles(new int[]{50})[0], 1E-6);
+        percentiles.clear();
+        assertTrue(Double.isNaN(percentiles.computePercentiles(new int[]{50})[0]));
+    }
+
+    @Test
+    public void testGetRanks() throws Exception {
+        assertArrayEquals(new long[]{0, 3, 4, 5, 9}, ExactPercentiles.getRanks(new int[]{5, 40, 50, 95}, 10));
+        assertArrayEquals(new long[0], ExactPercentiles.getRanks(new int[]{50}, 0));
+    }
+
+    @Test
+    public void testSelectionAcrossSmallChunks() throws Exception {
+        Random random = new Random(7);
+        for (int n : new int[]{1, 7, 8, 9, 100, 5001}) {
+            float[] samples = new float[n];
+            for (int i = 0; i < n; i++) {
+                samples[i] = random.nextInt(50) + random.nextFloat();
+            }
+            for (int chunkSize : new int[]{1, 2, 8}) {
+                assertSameAsSorting(new ExactPercentiles(chunkSize), samples);
+            }
+        }
+    }
+
+    @Test
+    public void testChunkSizeMustBePowerOfTwo() throws Exception {
+        try {
+            new ExactPercentiles(6);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertSameAsSorting(float[] samples) {
+        assertSameAsSorting(new ExactPercentiles(), samples);
+    }
+
+    private static void assertSameAsSorting(ExactPercentiles percentiles, float[] samples) {
+        percentiles.accumulate(samples);
+        double[] actual = percentiles.computePercentiles(PERCENTILES);
+
+        float[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            assertEquals(Statistics.computePercentile(PERCENTILES[i], sorted), actual[i], 0.0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LongHistogramTest {
+
+    @Test
+    public void testCountSamples() throws Exception {
+        LongHistogram histogram = new LongHistogram(4, 0.0, 1.0);
+        histogram.countSamples(0, new float[]{-0.5f, 0.0f, 0.1f, 0.3f, 0.5f, Float.NaN, 0.99f, 1.0f, 1.5f, 0.2f}, 1, 8);
+
+        assertArrayEquals(new long[]{2, 1, 1, 2}, histogram.getBins(0));
+        assertEquals(0, histogram.getBelowCount(0));
+        assertEquals(1, histogram.getAboveCount(0));
+        assertEquals(6, histogram.getTotal(0));
+
+        histogram.clear();
+        assertArrayEquals(new long[4], histogram.getBins(0));
+        assertEquals(0, histogram.getAboveCount(0));
+    }
+
+    @Test
+    public void testBandsAreSeparate() throws Exception {
+        LongHistogram histogram = new LongHistogram(new int[]{2, 3}, new double[]{0.0, 10.0}, new double[]{1.0, 13.0}, 0);
+        histogram.countSamples(0, new float[]{0.25f, -1.0f}, 0, 2);
+        histogram.countSamples(1, new float[]{10.5f, 12.5f, 12.5f, 20.0f}, 0, 4);
+
+        assertArrayEquals(new long[]{1, 0}, histogram.getBins(0));
+        assertEquals(1, histogram.getBelowCount(0));
+        assertEquals(0, histogram.getAboveCount(0));
+        assertArrayEquals(new long[]{1, 0, 2}, histogram.getBins(1));
+        assertEquals(0, histogram.getBelowCount(1));
+        assertEquals(1, histogram.getAboveCount(1));
+    }
+
+    @Test
+    public void testMergeAndWrite() throws Exception {
+        LongHistogram histogram = new LongHistogram(3, 0.0, 3.0);
+        histogram.countSamples(0, new float[]{0.5f, 1.5f, 4.0f}, 0, 3);
+        LongHistogram other = new LongHistogram(3, 0.0, 3.0);
+        other.countSamples(0, new float[]{1.5f, 2.5f, -1.0f}, 0, 3);
+        histogram.merge(other);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        histogram.write(new DataOutputStream(out));
+        LongHistogram copy = new LongHistogram();
+        copy.readFields(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(1, copy.getNumBands());
+        assertEquals(3, copy.getNumBins(0));
+        assertEquals(0.0, copy.getLowValue(0), 0.0);
+        assertEquals(3.0, copy.getHighValue(0), 0.0);
+        assertArrayEquals(new long[]{1, 2, 1}, copy.getBins(0));
+        assertEquals(1, copy.getBelowCount(0));
+        assertEquals(1, copy.getAboveCount(0));
+
+        try {
+            histogram.merge(new LongHistogram(3, 0.0, 4.0));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertEquals("cannot merge histograms with different bins", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        float[] samples = new float[10000];
+        Random random = new Random(4711);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 1.2f * random.nextFloat() - 0.1f;
+        }
+        LongHistogram expected = new LongHistogram(10, 0.0, 1.0);
+        LongHistogram concurrent = new LongHistogram(new int[]{10}, new double[]{0.0}, new double[]{1.0}, 4);
+        assertTrue(concurrent.isConcurrent());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int chunk = 0; chunk < 100; chunk++) {
+            expected.countSamples(0, samples, 0, samples.length);
+            executorService.execute(() -> concurrent.countSamples(0, samples, 0, samples.length));
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertArrayEquals(expected.getBins(0), concurrent.getBins(0));
+        assertEquals(expected.getBelowCount(0), concurrent.getBelowCount(0));
+        assertEquals(expected.getAboveCount(0), concurrent.getAboveCount(0));
+
+        // a concurrent histogram is a partial aggregate like any other
+        LongHistogram merged = new LongHistogram(10, 0.0, 1.0);
+        merged.merge(concurrent);
+        assertArrayEquals(expected.getBins(0), merged.getBins(0));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    private static final int[] PERCENTILES = {5, 25, 50, 75, 95};
+
+    @Test
+    public void testSmallInputIsExact() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        sketch.accumulate(5, 1, Float.NaN, 4, 2, 3);
+        assertEquals(5, sketch.getCount());
+        assertArrayEquals(new double[]{1, 2, 3, 4, 5}, sketch.computePercentiles(new int[]{0, 25, 50, 75, 100}), 0.0);
+    }
+
+    @Test
+    public void testRankError() throws Exception {
+        float[] samples = shuffledRange(200000, new Random(1));
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        sketch.accumulate(samples);
+        assertRankError(sketch, samples.length, 0.01);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        float[] samples = shuffledRange(100000, new Random(2));
+        QuantileSketch merged = new QuantileSketch(0.01);
+        for (int part = 0; part < 10; part++) {
+            QuantileSketch sketch = new QuantileSketch(0.01);
+            sketch.accumulate(Arrays.copyOfRange(samples, part * 10000, (part + 1) * 10000));
+            merged.merge(sketch);
+        }
+        assertEquals(samples.length, merged.getCount());
+        assertRankError(merged, samples.length, 0.01);
+    }
+
+    @Test
+    public void testEmptyAndClear() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(0.05);
+        assertTrue(Double.isNaN(sketch.computePercentiles(PERCENTILES)[0]));
+        sketch.accumulate(1, 2, 3);
+        sketch.clear();
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.computePercentiles(PERCENTILES)[2]));
+    }
+
+    @Test
+    public void testK() throws Exception {
+        assertTrue(QuantileSketch.getK(0.01) > QuantileSketch.getK(0.05));
+        try {
+            QuantileSketch.getK(0.0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // the values are 0..n-1, so a value is its own rank
+    private static void assertRankError(QuantileSketch sketch, int n, double accuracy) {
+        double[] values = sketch.computePercentiles(PERCENTILES);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            double expectedRank = PERCENTILES[i] / 100.0 * n;
+            assertEquals("p" + PERCENTILES[i], expectedRank, values[i], accuracy * n);
+        }
+    }
+
+    private static float[] shuffledRange(int n, Random random) {
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            float t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+}
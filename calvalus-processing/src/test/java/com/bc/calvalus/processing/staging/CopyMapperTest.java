@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.staging;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CopyMapperTest {
+
+    private File testDir;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("CopyMapperTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(testDir);
+    }
+
+    @Test
+    public void testStagedDirectoryContents() throws Exception {
+        File outputDir = new File(testDir, "output");
+        writeFile(new File(outputDir, "L2_of_MER_RR_1.nc"), 1000);
+        writeFile(new File(outputDir, "L2_of_MER_RR_2.SAFE/manifest.safe"), 10);
+        writeFile(new File(outputDir, "L2_of_MER_RR_2.SAFE/measurement/chl.img"), 2000);
+        File stagingDir = new File(testDir, "staging");
+
+        FileSystem localFileSystem = FileSystem.getLocal(new Configuration());
+        FileSystem rawFileSystem = CopyMapper.getRawFileSystem(localFileSystem);
+        long bytes = 0;
+        for (String name : new String[]{"L2_of_MER_RR_1.nc", "L2_of_MER_RR_2.SAFE"}) {
+            bytes += CopyMapper.copy(localFileSystem, new Path(new File(outputDir, name).toURI()),
+                                     rawFileSystem, new Path(new File(stagingDir, name).toURI()), () -> {});
+        }
+
+        assertEquals(3010, bytes);
+        assertEquals(listFiles(outputDir, ""), listFiles(stagingDir, ""));
+        assertEquals("[L2_of_MER_RR_1.nc, L2_of_MER_RR_2.SAFE/manifest.safe, L2_of_MER_RR_2.SAFE/measurement/chl.img]",
+                     listFiles(stagingDir, "").toString());
+        assertEquals(2000, new File(stagingDir, "L2_of_MER_RR_2.SAFE/measurement/chl.img").length());
+    }
+
+    @Test
+    public void testCopyThroughChecksumFileSystemWritesChecksums() throws Exception {
+        // the reason why the staging writes through the raw file system
+        File file = new File(testDir, "product.nc");
+        writeFile(file, 10);
+        FileSystem localFileSystem = FileSystem.getLocal(new Configuration());
+        CopyMapper.copy(localFileSystem, new Path(file.toURI()),
+                        localFileSystem, new Path(new File(testDir, "copy.nc").toURI()), () -> {});
+        assertTrue(new File(testDir, ".copy.nc.crc").exists());
+    }
+
+    private static void writeFile(File file, int length) throws IOException {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+    }
+
+    private static List<String> listFiles(File dir, String prefix) {
+        List<String> names = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    names.addAll(listFiles(file, prefix + file.getName() + "/"));
+                } else {
+                    names.add(prefix + file.getName());
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -863,6 +863,20 @@ public class ProductionTool {
                 .withLongOpt("verify")
                 .withDescription("Verify existence and size to avoid double copying, defaults to false")
                 .create());
+        options.addOption(OptionBuilder
+                .withLongOpt("streams")
+                .hasArg()
+                .withDescription("Number of files copied in parallel, defaults to 1")
+                .create());  // (sub) commands don't have short options
+        options.addOption(OptionBuilder
+                .withLongOpt("journal")
+                .hasArg()
+                .withDescription("Local file recording copied files, used to resume an interrupted ingestion")
+                .create());  // (sub) commands don't have short options
+        options.addOption(OptionBuilder
+                .withLongOpt("checksum")
+                .withDescription("Compute MD5 checksums while copying, reported and recorded in the journal")
+                .create());
         options.addOption(OptionBuilder
                 .withLongOpt("test-auth")
                 .withDescription("Test authentication by SAML token. Print SAML token on success.")
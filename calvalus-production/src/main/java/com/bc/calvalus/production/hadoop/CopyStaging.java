@@ -22,6 +22,7 @@ import com.bc.calvalus.commons.ProcessStatus;
 import com.bc.calvalus.processing.ProcessingService;
 import com.bc.calvalus.production.Production;
 import com.bc.calvalus.production.ProductionStaging;
+import com.bc.ceres.core.CanceledException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -103,12 +104,19 @@ class CopyStaging extends ProductionStaging {
                 production.setStagingStatus(new ProcessStatus(ProcessState.RUNNING, (i + 1.0F) / fileStatuses.length, path.getName()));
             }
         }
+        zipIfSmall(production, stagingDir, totalFilesSize);
+
+        production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
+    }
+
+    /**
+     * Adds a zip of all staged files if they are small enough to be downloaded at once.
+     */
+    static void zipIfSmall(Production production, File stagingDir, long totalFilesSize) throws IOException, CanceledException {
         if (totalFilesSize < 2L * GIGABYTE) {
             String zipFilename = getSafeFilename(production.getName() + ".zip");
             zip(stagingDir, new File(stagingDir, zipFilename));
         }
-
-        production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
     }
 
     @Override
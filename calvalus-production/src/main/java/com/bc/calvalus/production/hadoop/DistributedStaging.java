@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.production.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.commons.WorkflowException;
+import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
+import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionStaging;
+import org.apache.hadoop.conf.Configuration;
+import org.esa.snap.core.util.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A staging that runs as Hadoop job on the cluster, e.g. a {@link com.bc.calvalus.processing.staging.CopyWorkflowItem}
+ * or a {@link com.bc.calvalus.processing.l2.L2FormattingWorkflowItem}, which writes directly into the staging directory.
+ * The staging directory must be on a file system that is mounted on all nodes under the same path.
+ * The production server only submits the job and forwards the job status as staging status.
+ * The job must not mark its output as successful, see {@link #configureJob(Configuration)}.
+ */
+class DistributedStaging extends ProductionStaging {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final long POLL_INTERVAL_MILLIS = 5000L;
+
+    private final HadoopWorkflowItem workflowItem;
+    private final File stagingDir;
+
+    public DistributedStaging(Production production, HadoopWorkflowItem workflowItem, File stagingDir) {
+        super(production);
+        this.workflowItem = workflowItem;
+        this.stagingDir = stagingDir;
+    }
+
+    /**
+     * Configures a staging job not to write the {@code _SUCCESS} marker into the staging directory.
+     */
+    static void configureJob(Configuration jobConfig) {
+        jobConfig.setBoolean("mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
+    }
+
+    @Override
+    public void performStaging() throws Throwable {
+        Production production = getProduction();
+        production.setStagingStatus(new ProcessStatus(ProcessState.RUNNING, 0.0F, ""));
+        if (!stagingDir.exists()) {
+            stagingDir.mkdirs();
+        }
+        LOG.info("staging dir is: " + stagingDir + ", staging job " + workflowItem.getJobName());
+
+        workflowItem.submit();
+        while (true) {
+            if (isCancelled()) {
+                return;
+            }
+            workflowItem.updateStatus();
+            ProcessStatus jobStatus = workflowItem.getStatus();
+            if (jobStatus.getState() == ProcessState.COMPLETED) {
+                break;
+            } else if (jobStatus.isDone()) {
+                throw new IOException("staging job " + workflowItem.getJobId() + " failed: " + jobStatus.getMessage());
+            }
+            production.setStagingStatus(new ProcessStatus(ProcessState.RUNNING,
+                                                          0.95F * jobStatus.getProgress(),
+                                                          jobStatus.getMessage()));
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+
+        removeJobFiles(stagingDir);
+        completeStaging();
+        production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
+    }
+
+    /**
+     * Removes the files of the output committer from the staging directory, the {@code _SUCCESS} marker
+     * and the {@code .*.crc} checksum files of the local file system, so that they are not offered
+     * for download or packed into the production zip.
+     */
+    static void removeJobFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                if (name.equals("_temporary")) {
+                    FileUtils.deleteTree(file);
+                } else {
+                    removeJobFiles(file);
+                }
+            } else if (name.equals("_SUCCESS") || (name.startsWith(".") && name.endsWith(".crc"))) {
+                if (!file.delete()) {
+                    LOG.warning("failed to remove " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the size of the files in the directory and its sub-directories
+     */
+    static long getTotalSize(File dir) {
+        long totalSize = 0L;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                totalSize += file.isDirectory() ? getTotalSize(file) : file.length();
+            }
+        }
+        return totalSize;
+    }
+
+    /**
+     * Called in the production server after the staging job has been completed successfully.
+     */
+    protected void completeStaging() throws Exception {
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        try {
+            workflowItem.kill();
+        } catch (WorkflowException e) {
+            LOG.log(Level.WARNING, "failed to kill staging job: " + e.getMessage(), e);
+        }
+        FileUtils.deleteTree(stagingDir);
+        getProduction().setStagingStatus(new ProcessStatus(ProcessState.CANCELLED));
+    }
+}
@@ -22,6 +22,7 @@ import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessingService;
 import com.bc.calvalus.processing.ProcessorDescriptor;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
+import com.bc.calvalus.processing.staging.CopyWorkflowItem;
 import com.bc.calvalus.production.Production;
 import com.bc.calvalus.production.ProductionException;
 import com.bc.calvalus.production.ProductionRequest;
@@ -34,6 +35,7 @@ import com.bc.calvalus.staging.StagingService;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.Collections;
@@ -145,12 +147,53 @@ public abstract class HadoopProductionType implements ProductionType {
     protected Staging createUnsubmittedStaging(Production production) throws IOException {
         String userName = production.getProductionRequest().getUserName();
         Configuration conf = getProcessingService().getJobClient(userName).getConf();
+        if (isDistributedStaging(production, conf)) {
+            return createDistributedCopyStaging(production);
+        }
         return new CopyStaging(production,
                                conf,
                                getProcessingService().getFileSystem(userName, conf, new Path(production.getOutputPath())),
                                getStagingService().getStagingDir());
     }
 
+    /**
+     * Staging runs as Hadoop job if {@link JobConfigNames#CALVALUS_STAGING_DISTRIBUTED} is set in the request
+     * or, as default for all productions, in the Hadoop configuration of the production server.
+     */
+    protected boolean isDistributedStaging(Production production, Configuration conf) {
+        String distributed = production.getProductionRequest().getString(JobConfigNames.CALVALUS_STAGING_DISTRIBUTED, null);
+        if (distributed != null) {
+            return Boolean.parseBoolean(distributed);
+        }
+        return conf.getBoolean(JobConfigNames.CALVALUS_STAGING_DISTRIBUTED, false);
+    }
+
+    /**
+     * Creates a staging that copies the output files of the production with one map task per file.
+     */
+    protected Staging createDistributedCopyStaging(Production production) throws IOException {
+        ProductionRequest productionRequest = production.getProductionRequest();
+        File stagingDir = new File(getStagingService().getStagingDir(), production.getStagingPath());
+        Configuration jobConfig;
+        try {
+            jobConfig = createJobConfig(productionRequest);
+        } catch (ProductionException e) {
+            throw new IOException(e);
+        }
+        // all files and directories with an extension, like the glob of the CopyStaging, but not the _SUCCESS or _metrics entries
+        jobConfig.set(JobConfigNames.CALVALUS_INPUT_PATH_PATTERNS, production.getOutputPath() + "/[^_/][^/]*\\.[^/]*");
+        jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_DIR, stagingDir.toURI().toString());
+        DistributedStaging.configureJob(jobConfig);
+        CopyWorkflowItem workflowItem = new CopyWorkflowItem(getProcessingService(), productionRequest.getUserName(),
+                                                             "Staging " + production.getName(), jobConfig);
+        return new DistributedStaging(production, workflowItem, stagingDir) {
+            @Override
+            protected void completeStaging() throws Exception {
+                CopyStaging.zipIfSmall(production, stagingDir, DistributedStaging.getTotalSize(stagingDir));
+            }
+        };
+    }
+
     protected final Configuration createJobConfig(ProductionRequest productionRequest) throws ProductionException {
         try {
             Configuration jobConfig = getProcessingService().createJobConfig(productionRequest.getUserName());
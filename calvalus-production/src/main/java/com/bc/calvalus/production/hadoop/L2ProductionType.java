@@ -6,17 +6,20 @@ import com.bc.calvalus.inventory.ProductSet;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.ProcessorDescriptor;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
+import com.bc.calvalus.processing.l2.L2FormattingWorkflowItem;
 import com.bc.calvalus.processing.l2.L2WorkflowItem;
 import com.bc.calvalus.production.Production;
 import com.bc.calvalus.production.ProductionException;
 import com.bc.calvalus.production.ProductionRequest;
 import com.bc.calvalus.production.ProductionType;
+import com.bc.calvalus.production.ProductionWriter;
 import com.bc.calvalus.staging.Staging;
 import com.bc.calvalus.staging.StagingService;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
 import org.esa.snap.core.util.StringUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.List;
@@ -64,12 +67,47 @@ public class L2ProductionType extends HadoopProductionType {
 
     @Override
     protected Staging createUnsubmittedStaging(Production production) throws IOException {
+        String userName = production.getProductionRequest().getUserName();
+        if (isDistributedStaging(production, getProcessingService().getJobClient(userName).getConf())) {
+            return createDistributedFormattingStaging(production);
+        }
         throw new UnsupportedOperationException("Staging disabled for L2 use L2Plus instead.");
 //        return new L2Staging(production,
 //                             getProcessingService().getJobClient(production.getProductionRequest().getUsername()).getConf(),
 //                             getStagingService().getStagingDir());
     }
 
+    /**
+     * Creates a staging that converts the L2 sequence files into the requested output format
+     * and zips them into the staging directory, with one map task per product.
+     */
+    private Staging createDistributedFormattingStaging(Production production) throws IOException {
+        ProductionRequest productionRequest = production.getProductionRequest();
+        File stagingDir = new File(getStagingService().getStagingDir(), production.getStagingPath());
+        String outputFormat = productionRequest.getString("outputFormat",
+                                                          productionRequest.getString(JobConfigNames.CALVALUS_OUTPUT_FORMAT, "BEAM-DIMAP"));
+        Configuration jobConfig;
+        try {
+            jobConfig = createJobConfig(productionRequest);
+        } catch (ProductionException e) {
+            throw new IOException(e);
+        }
+        jobConfig.set(JobConfigNames.CALVALUS_INPUT_PATH_PATTERNS, production.getOutputPath() + "/[^_/][^/]*\\.seq");
+        jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_DIR, stagingDir.toURI().toString());
+        jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_FORMAT, outputFormat);
+        jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION, "zip");
+        jobConfig.set(JobConfigNames.CALVALUS_PROCESS_ALL, "true");
+        DistributedStaging.configureJob(jobConfig);
+        L2FormattingWorkflowItem workflowItem = new L2FormattingWorkflowItem(getProcessingService(), productionRequest.getUserName(),
+                                                                             "Staging " + production.getName(), jobConfig);
+        return new DistributedStaging(production, workflowItem, stagingDir) {
+            @Override
+            protected void completeStaging() throws Exception {
+                new ProductionWriter(production).write(stagingDir);
+            }
+        };
+    }
+
     L2WorkflowItem createWorkflowItem(String productionId,
                                       String productionName,
                                       ProductionRequest productionRequest) throws ProductionException {
@@ -9,6 +9,7 @@ import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.analysis.QLWorkflowItem;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.l3.L3FormatWorkflowItem;
+import com.bc.calvalus.processing.l3.L3MultiPeriod;
 import com.bc.calvalus.processing.l3.L3WorkflowItem;
 import com.bc.calvalus.production.Production;
 import com.bc.calvalus.production.ProductionException;
@@ -82,54 +83,49 @@ public class L3ProductionType extends HadoopProductionType {
         String l3ConfigXml = getL3ConfigXml(productionRequest);
         String[] l3OutputDirs = new String[dateRanges.size()];
 
-        Workflow workflow = new Workflow.Parallel();
+        Workflow workflow = new Workflow.Graph(productionRequest.getInteger(JobConfigNames.CALVALUS_PRODUCTION_MAX_RUNNING_JOBS, 0));
         workflow.setSustainable(false);
-        for (int i = 0; i < dateRanges.size(); i++) {
-            DateRange dateRange = dateRanges.get(i);
-
-            String singleRangeOutputDir = getOutputPath(productionRequest, productionId, "-L3-" + (i + 1));
-            l3OutputDirs[i] = singleRangeOutputDir;
-
-            Configuration jobConfig = createJobConfig(productionRequest);
-            setDefaultProcessorParameters(processorProductionRequest, jobConfig);
-            setRequestParameters(productionRequest, jobConfig);
-            processorProductionRequest.configureProcessor(jobConfig);
-
-            setInputLocationParameters(productionRequest, jobConfig);
-            jobConfig.set(JobConfigNames.CALVALUS_INPUT_REGION_NAME, productionRequest.getRegionName());
-            jobConfig.set(JobConfigNames.CALVALUS_INPUT_DATE_RANGES, dateRange.toString());
-
-            jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_DIR, singleRangeOutputDir);
-
-            // we have to replace here again since it is the default processor parameters that contains the bundle info
-            jobConfig.set(JobConfigNames.CALVALUS_L3_PARAMETERS,
-                          (jobConfig.get("calvalus.snap.bundle", "").contains("beam"))
-                                  ? l3ConfigXml.replace("<planetaryGrid>org.esa.snap.binning.support.",
-                                                        "<planetaryGrid>org.esa.beam.binning.support.")
-                                  : l3ConfigXml);
-            jobConfig.set(JobConfigNames.CALVALUS_REGION_GEOMETRY,
-                          regionGeometry != null ? regionGeometry.toString() : "");
-            String date1Str = ProductionRequest.getDateFormat().format(dateRange.getStartDate());
-            String date2Str = ProductionRequest.getDateFormat().format(dateRange.getStopDate());
-            jobConfig.set(JobConfigNames.CALVALUS_MIN_DATE, date1Str);
-            jobConfig.set(JobConfigNames.CALVALUS_MAX_DATE, date2Str);
-
-            Integer superSampling = productionRequest.getInteger("superSampling", 1);
-            if (superSampling > 1) {
-                jobConfig.setBoolean("calvalus.system.snap.pixelGeoCoding.fractionAccuracy", true);
-                jobConfig.setBoolean("calvalus.system.beam.pixelGeoCoding.fractionAccuracy", true);
+        // a data day start time is defined once for all periods, and single reducers format directly
+        boolean multiPeriod = productionRequest.getBoolean(JobConfigNames.CALVALUS_L3_MULTI_PERIOD, false)
+                              && dateRanges.size() > 1 && !(singleReducer && requiresFormatting)
+                              && productionRequest.getString(JobConfigNames.CALVALUS_L3_START_UTC, null) == null;
+        if (multiPeriod) {
+            // one job bins all periods, each period is written into a sub-directory of the job output
+            String multiPeriodOutputDir = getOutputPath(productionRequest, productionId, "-L3");
+            for (int i = 0; i < dateRanges.size(); i++) {
+                l3OutputDirs[i] = multiPeriodOutputDir + "/" + L3MultiPeriod.getPeriodDirName(i);
             }
-
-            if (singleReducer && requiresFormatting) {
-                jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_FORMAT, outputFormat);
-
-                // is in fact dependent on the outputFormat TODO unify
-                String outputCompression = productionRequest.getString("outputCompression", productionRequest.getString(
-                        JobConfigNames.CALVALUS_OUTPUT_COMPRESSION, "gz"));
-                jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION, outputCompression);
+            DateRange fullRange = new DateRange(dateRanges.get(0).getStartDate(),
+                                                dateRanges.get(dateRanges.size() - 1).getStopDate());
+            Configuration jobConfig = createL3JobConfig(productionRequest, processorProductionRequest, l3ConfigXml,
+                                                        regionGeometry, fullRange, multiPeriodOutputDir);
+            jobConfig.set(JobConfigNames.CALVALUS_INPUT_DATE_RANGES, L3MultiPeriod.format(L3MultiPeriod.mergePeriods(dateRanges)));
+            jobConfig.set(JobConfigNames.CALVALUS_L3_PERIODS, L3MultiPeriod.format(dateRanges));
+            String date1Str = ProductionRequest.getDateFormat().format(fullRange.getStartDate());
+            workflow.add(new L3WorkflowItem(getProcessingService(), productionRequest.getUserName(),
+                                            productionName + " " + date1Str + " (" + dateRanges.size() + " periods)", jobConfig));
+        } else {
+            for (int i = 0; i < dateRanges.size(); i++) {
+                DateRange dateRange = dateRanges.get(i);
+
+                String singleRangeOutputDir = getOutputPath(productionRequest, productionId, "-L3-" + (i + 1));
+                l3OutputDirs[i] = singleRangeOutputDir;
+
+                Configuration jobConfig = createL3JobConfig(productionRequest, processorProductionRequest, l3ConfigXml,
+                                                            regionGeometry, dateRange, singleRangeOutputDir);
+                String date1Str = ProductionRequest.getDateFormat().format(dateRange.getStartDate());
+
+                if (singleReducer && requiresFormatting) {
+                    jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_FORMAT, outputFormat);
+
+                    // is in fact dependent on the outputFormat TODO unify
+                    String outputCompression = productionRequest.getString("outputCompression", productionRequest.getString(
+                            JobConfigNames.CALVALUS_OUTPUT_COMPRESSION, "gz"));
+                    jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION, outputCompression);
+                }
+                WorkflowItem item = new L3WorkflowItem(getProcessingService(), productionRequest.getUserName(), productionName + " " + date1Str, jobConfig);
+                workflow.add(item);
             }
-            WorkflowItem item = new L3WorkflowItem(getProcessingService(), productionRequest.getUserName(), productionName + " " + date1Str, jobConfig);
-            workflow.add(item);
         }
 
         boolean hasQuicklookParameters = productionRequest.getString(JobConfigNames.CALVALUS_QUICKLOOK_PARAMETERS, null) != null;
@@ -199,6 +195,42 @@ public class L3ProductionType extends HadoopProductionType {
                               workflow);
     }
 
+    private Configuration createL3JobConfig(ProductionRequest productionRequest,
+                                            ProcessorProductionRequest processorProductionRequest,
+                                            String l3ConfigXml, Geometry regionGeometry,
+                                            DateRange dateRange, String outputDir) throws ProductionException {
+        Configuration jobConfig = createJobConfig(productionRequest);
+        setDefaultProcessorParameters(processorProductionRequest, jobConfig);
+        setRequestParameters(productionRequest, jobConfig);
+        processorProductionRequest.configureProcessor(jobConfig);
+
+        setInputLocationParameters(productionRequest, jobConfig);
+        jobConfig.set(JobConfigNames.CALVALUS_INPUT_REGION_NAME, productionRequest.getRegionName());
+        jobConfig.set(JobConfigNames.CALVALUS_INPUT_DATE_RANGES, dateRange.toString());
+
+        jobConfig.set(JobConfigNames.CALVALUS_OUTPUT_DIR, outputDir);
+
+        // we have to replace here again since it is the default processor parameters that contains the bundle info
+        jobConfig.set(JobConfigNames.CALVALUS_L3_PARAMETERS,
+                      (jobConfig.get("calvalus.snap.bundle", "").contains("beam"))
+                              ? l3ConfigXml.replace("<planetaryGrid>org.esa.snap.binning.support.",
+                                                    "<planetaryGrid>org.esa.beam.binning.support.")
+                              : l3ConfigXml);
+        jobConfig.set(JobConfigNames.CALVALUS_REGION_GEOMETRY,
+                      regionGeometry != null ? regionGeometry.toString() : "");
+        String date1Str = ProductionRequest.getDateFormat().format(dateRange.getStartDate());
+        String date2Str = ProductionRequest.getDateFormat().format(dateRange.getStopDate());
+        jobConfig.set(JobConfigNames.CALVALUS_MIN_DATE, date1Str);
+        jobConfig.set(JobConfigNames.CALVALUS_MAX_DATE, date2Str);
+
+        Integer superSampling = productionRequest.getInteger("superSampling", 1);
+        if (superSampling > 1) {
+            jobConfig.setBoolean("calvalus.system.snap.pixelGeoCoding.fractionAccuracy", true);
+            jobConfig.setBoolean("calvalus.system.beam.pixelGeoCoding.fractionAccuracy", true);
+        }
+        return jobConfig;
+    }
+
     /**
      * Generates a list of date ranges from min, may, period, and compositing period.
      * The method supports also monthly with the period -30 and weekly with the period -7.
@@ -176,6 +176,8 @@ public class RAProductionType extends HadoopProductionType {
 
         raConfig.setGoodPixelExpression(productionRequest.getXmlDecodedString("goodPixelExpression", null));
         raConfig.setPercentiles(productionRequest.getString("percentiles", ""));
+        raConfig.setPercentileMode(productionRequest.getString("percentileMode", RAConfig.PERCENTILE_MODE_EXACT));
+        raConfig.setPercentileAccuracy(productionRequest.getDouble("percentileAccuracy", 0.01));
         raConfig.setWritePerRegion(productionRequest.getBoolean("writePerRegion", Boolean.TRUE));
         raConfig.setWriteSeparateHistogram(productionRequest.getBoolean("writeSeparateHistogram", Boolean.TRUE));
         raConfig.setWritePixelValues(productionRequest.getBoolean("writePixelValues", Boolean.FALSE));
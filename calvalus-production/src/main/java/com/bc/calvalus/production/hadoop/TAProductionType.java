@@ -2,6 +2,7 @@ package com.bc.calvalus.production.hadoop;
 
 import com.bc.calvalus.commons.DateRange;
 import com.bc.calvalus.commons.Workflow;
+import com.bc.calvalus.commons.WorkflowItem;
 import com.bc.calvalus.inventory.FileSystemService;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
@@ -19,6 +20,7 @@ import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -74,8 +76,9 @@ public class TAProductionType extends HadoopProductionType {
         final boolean isSkipL3 = productionRequest.getBoolean(JobConfigNames.CALVALUS_TA_SKIPL3_FLAG, false);
 
         // construct workflow
-        Workflow.Sequential taSequence = new Workflow.Sequential();
-        Workflow.Parallel l3Set = new Workflow.Parallel();
+        // the TA item is submitted when all L3 items have completed, at most maxRunningJobs jobs at a time
+        Workflow.Graph taWorkflow = new Workflow.Graph(productionRequest.getInteger(JobConfigNames.CALVALUS_PRODUCTION_MAX_RUNNING_JOBS, 0));
+        List<WorkflowItem> l3Items = new ArrayList<WorkflowItem>();
         StringBuffer l3OutputDirs = new StringBuffer();
 
         // add L3 items
@@ -85,7 +88,8 @@ public class TAProductionType extends HadoopProductionType {
             final String l3OutputDir = getOutputPath(productionRequest, productionId, "-L3-" + centreDate);
             if (! isSkipL3) {
                 final L3WorkflowItem l3WorkflowItem = createL3WorkflowItem(productionRequest, productionName, l3ConfigXml, regionGeometry, dateRange, centreDate, l3OutputDir);
-                l3Set.add(l3WorkflowItem);
+                taWorkflow.add(l3WorkflowItem);
+                l3Items.add(l3WorkflowItem);
             }
             if (i != 0) {
                 l3OutputDirs.append(",");
@@ -96,10 +100,7 @@ public class TAProductionType extends HadoopProductionType {
         // add TA item
         final String taOutputDir = getOutputPath(productionRequest, productionId, "-TA");
         final TAWorkflowItem taWorkflowItem = createTaWorkflowItem(productionRequest, productionName, l3ConfigXml, taConfig, dateRanges, l3OutputDirs, taOutputDir);
-        if (! isSkipL3) {
-            taSequence.add(l3Set);
-        }
-        taSequence.add(taWorkflowItem);
+        taWorkflow.addAfter(taWorkflowItem, l3Items.toArray(new WorkflowItem[l3Items.size()]));
 
         // return production of workflow
         return new Production(productionId,
@@ -108,7 +109,7 @@ public class TAProductionType extends HadoopProductionType {
                               stagingDir,
                               autoStaging,
                               productionRequest,
-                              taSequence);
+                              taWorkflow);
     }
 
     @Override
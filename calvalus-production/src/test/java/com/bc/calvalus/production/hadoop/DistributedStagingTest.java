@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.production.hadoop;
+
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DistributedStagingTest {
+
+    private File stagingDir;
+
+    @Before
+    public void setUp() throws Exception {
+        stagingDir = Files.createTempDirectory("DistributedStagingTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(stagingDir);
+    }
+
+    @Test
+    public void testRemoveJobFiles() throws Exception {
+        writeFile("_SUCCESS", 0);
+        writeFile(".L2_of_MER_RR_1.zip.crc", 12);
+        writeFile("L2_of_MER_RR_1.zip", 100);
+        writeFile("L2_of_MER_RR_2.SAFE/.manifest.safe.crc", 12);
+        writeFile("L2_of_MER_RR_2.SAFE/manifest.safe", 10);
+        writeFile("_temporary/0/task_1/L2_of_MER_RR_3.zip", 100);
+
+        DistributedStaging.removeJobFiles(stagingDir);
+
+        assertArrayEquals(new String[]{"L2_of_MER_RR_1.zip", "L2_of_MER_RR_2.SAFE"}, sortedNames(stagingDir));
+        assertArrayEquals(new String[]{"manifest.safe"}, sortedNames(new File(stagingDir, "L2_of_MER_RR_2.SAFE")));
+        assertEquals(110, DistributedStaging.getTotalSize(stagingDir));
+    }
+
+    private void writeFile(String path, int length) throws IOException {
+        File file = new File(stagingDir, path);
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+    }
+
+    private static String[] sortedNames(File dir) {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        return names;
+    }
+}
@@ -4,6 +4,7 @@ import com.bc.calvalus.JobClientsMap;
 import com.bc.calvalus.commons.DateRange;
 import com.bc.calvalus.commons.Workflow;
 import com.bc.calvalus.commons.WorkflowItem;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.l3.L3FormatWorkflowItem;
 import com.bc.calvalus.processing.l3.L3WorkflowItem;
@@ -21,7 +22,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -56,7 +59,7 @@ public class L3ProductionTypeTest {
         assertEquals(2, sequenceWfs.length);
 
         WorkflowItem wfL3Parallel = sequenceWfs[0];
-        assertSame(Workflow.Parallel.class, wfL3Parallel.getClass());
+        assertSame(Workflow.Graph.class, wfL3Parallel.getClass());
         WorkflowItem[] parallelWfs = wfL3Parallel.getItems();
         assertNotNull(parallelWfs);
         assertEquals(3, parallelWfs.length);
@@ -74,6 +77,30 @@ public class L3ProductionTypeTest {
                      l3formatWorkflowItem.getOutputDir().startsWith("hdfs://master00:9000/calvalus/outputs/home/ewa/"));
     }
 
+    @Test
+    public void testCreateMultiPeriodProduction() throws ProductionException, IOException {
+        Map<String, String> parameters = new HashMap<>(createValidL3ProductionRequest().getParameters());
+        parameters.put(JobConfigNames.CALVALUS_L3_MULTI_PERIOD, "true");
+        Production production = productionType.createProduction(new ProductionRequest("L3", "ewa", parameters));
+
+        WorkflowItem[] sequenceWfs = production.getWorkflow().getItems();
+        assertEquals(2, sequenceWfs.length);
+        WorkflowItem[] l3Wfs = sequenceWfs[0].getItems();
+        assertEquals(1, l3Wfs.length);
+        testL3Item(l3Wfs[0], "2010-06-15", "2010-07-29");
+        L3WorkflowItem l3WorkflowItem = (L3WorkflowItem) l3Wfs[0];
+        assertEquals("[2010-06-15:2010-06-19],[2010-07-05:2010-07-09],[2010-07-25:2010-07-29]",
+                     l3WorkflowItem.getJobConfig().get(JobConfigNames.CALVALUS_L3_PERIODS));
+        assertEquals("[2010-06-15:2010-06-19],[2010-07-05:2010-07-09],[2010-07-25:2010-07-29]",
+                     l3WorkflowItem.getJobConfig().get(JobConfigNames.CALVALUS_INPUT_DATE_RANGES));
+
+        L3FormatWorkflowItem l3formatWorkflowItem = (L3FormatWorkflowItem) sequenceWfs[1];
+        String[] formatInputDirs = l3formatWorkflowItem.getInputDir().split(",");
+        assertEquals(3, formatInputDirs.length);
+        assertEquals(l3WorkflowItem.getOutputDir() + "/L3-1", formatInputDirs[0]);
+        assertEquals(l3WorkflowItem.getOutputDir() + "/L3-3", formatInputDirs[2]);
+    }
+
     private void testL3Item(WorkflowItem item, String date1, String date2) {
         assertSame(L3WorkflowItem.class, item.getClass());
         L3WorkflowItem l3WorkflowItem = (L3WorkflowItem) item;
@@ -1,6 +1,7 @@
 package com.bc.calvalus.production.hadoop;
 
 import com.bc.calvalus.JobClientsMap;
+import com.bc.calvalus.commons.Workflow;
 import com.bc.calvalus.commons.WorkflowItem;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.l3.L3WorkflowItem;
@@ -21,6 +22,7 @@ import java.io.IOException;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class TAProductionTypeTest {
@@ -45,15 +47,17 @@ public class TAProductionTypeTest {
         assertEquals(true, production.getId().contains("_" + "TA" + "_"));
         assertNotNull(production.getWorkflow());
         assertNotNull(production.getWorkflow().getItems());
-        assertEquals(2, production.getWorkflow().getItems().length);
+        assertSame(Workflow.Graph.class, production.getWorkflow().getClass());
+        WorkflowItem[] items = production.getWorkflow().getItems();
+        assertEquals(6, items.length);
 
         // Note that periodLength=compositingPeriodLength=3
-        testItem(production.getWorkflow().getItems()[0].getItems()[0], "2010-06-01", "2010-06-03");
-        testItem(production.getWorkflow().getItems()[0].getItems()[1], "2010-06-04", "2010-06-06");
-        testItem(production.getWorkflow().getItems()[0].getItems()[2], "2010-06-07", "2010-06-09");
-        testItem(production.getWorkflow().getItems()[0].getItems()[3], "2010-06-10", "2010-06-12");
-        testItem(production.getWorkflow().getItems()[0].getItems()[4], "2010-06-13", "2010-06-15");
-        testTaItem(production.getWorkflow().getItems()[1], "2010-06-01", "2010-06-15", (L3WorkflowItem) production.getWorkflow().getItems()[0].getItems()[0]);
+        testItem(items[0], "2010-06-01", "2010-06-03");
+        testItem(items[1], "2010-06-04", "2010-06-06");
+        testItem(items[2], "2010-06-07", "2010-06-09");
+        testItem(items[3], "2010-06-10", "2010-06-12");
+        testItem(items[4], "2010-06-13", "2010-06-15");
+        testTaItem(items[5], "2010-06-01", "2010-06-15", (L3WorkflowItem) items[0]);
     }
 
     private void testItem(WorkflowItem item1, String date1, String date2) {